@@ -8,8 +8,15 @@ CREATE UNIQUE INDEX auditrecorddata_idx2 ON AuditRecordData (nodeId,sequenceNumb
 CREATE INDEX auditrecorddata_idx3 ON AuditRecordData (timeStamp);
 
 -- Selecting archivables from the archive in the AdminGUI is usually
--- ordered by time stamp.
-CREATE INDEX archivedata_idx3 ON ArchiveData (time);
+-- ordered by time stamp and paged using the time stamp and unique ID of the
+-- last entry.
+CREATE INDEX archivedata_idx3 ON ArchiveData (time,uniqueId);
+
+-- Looking up archivables by request IP or request certificate for a signer.
+-- Lookups by archive ID use the archivedata_uniq1 constraint from the table
+-- definition.
+CREATE INDEX archivedata_idx4 ON ArchiveData (signerid,requestIP,type);
+CREATE INDEX archivedata_idx5 ON ArchiveData (signerid,requestIssuerDN,requestCertSerialnumber,type);
 
 -- Selecting by signerType is done by the services loader
 CREATE INDEX signerconfigdata_idx2 ON signerconfigdata (signerType);
@@ -56,6 +56,17 @@ CREATE TABLE `KeyUsageCounter` (
 ) ENGINE=INNODB DEFAULT CHARSET=utf8;
 
 
+--
+-- Table structure for table `ServiceLease`
+--
+CREATE TABLE `ServiceLease` (
+  `serviceId` int(11) NOT NULL,
+  `owner` varchar(255) DEFAULT NULL,
+  `expireTime` bigint(20) NOT NULL,
+  PRIMARY KEY (`serviceId`)
+) ENGINE=INNODB DEFAULT CHARSET=utf8;
+
+
 --
 -- Table structure for table `ArchiveData`
 --
@@ -70,7 +81,8 @@ CREATE TABLE `ArchiveData` (
   `requestIP` varchar(255) DEFAULT NULL,
   `archiveData` mediumtext,
   `dataEncoding` int(11) DEFAULT NULL,
-  PRIMARY KEY (`uniqueId`)
+  PRIMARY KEY (`uniqueId`),
+  UNIQUE KEY `archivedata_uniq1` (`signerid`,`archiveid`,`type`)
 ) ENGINE=INNODB DEFAULT CHARSET=utf8;
 
 
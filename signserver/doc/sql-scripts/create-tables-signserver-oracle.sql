@@ -59,6 +59,17 @@ CREATE TABLE "KEYUSAGECOUNTER" (
 );
 
 
+--
+-- Table structure for table `ServiceLease`
+--
+CREATE TABLE "SERVICELEASE" (
+	"SERVICEID" NUMBER(10,0) NOT NULL, 
+	"OWNER" VARCHAR2(255 CHAR), 
+	"EXPIRETIME" NUMBER(19,0) NOT NULL, 
+ 	PRIMARY KEY ("SERVICEID")
+);
+
+
 --
 -- Table structure for table `ArchiveData`
 --
@@ -73,7 +84,8 @@ CREATE TABLE "ARCHIVEDATA" (
 	"TIME" NUMBER(19,0) NOT NULL, 
 	"TYPE" NUMBER(10,0) NOT NULL, 
     "DATAENCODING" NUMBER(10,0), 
-	PRIMARY KEY ("UNIQUEID")
+	PRIMARY KEY ("UNIQUEID"), 
+	CONSTRAINT "ARCHIVEDATA_UNIQ1" UNIQUE ("SIGNERID", "ARCHIVEID", "TYPE")
 );
 
 
@@ -55,6 +55,17 @@ CREATE TABLE keyusagecounter (
 );
 
 
+--
+-- Name: servicelease; Type: TABLE; Schema: public; Owner: signserver; Tablespace: 
+--
+
+CREATE TABLE servicelease (
+    serviceid integer NOT NULL,
+    owner character varying(255),
+    expiretime bigint NOT NULL
+);
+
+
 --
 -- Name: archivedata; Type: TABLE; Schema: public; Owner: signserver; Tablespace: 
 --
@@ -105,6 +116,13 @@ CREATE SEQUENCE hibernate_sequence
 ALTER TABLE ONLY archivedata
     ADD CONSTRAINT archivedata_pkey PRIMARY KEY (uniqueid);
 
+--
+-- Name: archivedata_uniq1; Type: CONSTRAINT; Schema: public; Owner: signserver; Tablespace: 
+--
+
+ALTER TABLE ONLY archivedata
+    ADD CONSTRAINT archivedata_uniq1 UNIQUE (signerid, archiveid, type);
+
 --
 -- Name: auditrecorddata_pkey; Type: CONSTRAINT; Schema: public; Owner: signserver; Tablespace: 
 --
@@ -127,6 +145,14 @@ ALTER TABLE ONLY keyusagecounter
     ADD CONSTRAINT keyusagecounter_pkey PRIMARY KEY (keyhash);
 
 
+--
+-- Name: servicelease_pkey; Type: CONSTRAINT; Schema: public; Owner: signserver; Tablespace: 
+--
+
+ALTER TABLE ONLY servicelease
+    ADD CONSTRAINT servicelease_pkey PRIMARY KEY (serviceid);
+
+
 --
 -- Name: signerconfigdata_pkey; Type: CONSTRAINT; Schema: public; Owner: signserver; Tablespace: 
 --
@@ -4,6 +4,8 @@ DROP INDEX auditrecorddata_idx2 ON AuditRecordData;
 DROP INDEX auditrecorddata_idx3 ON AuditRecordData;
 
 DROP INDEX archivedata_idx3 ON ArchiveData;
+DROP INDEX archivedata_idx4 ON ArchiveData;
+DROP INDEX archivedata_idx5 ON ArchiveData;
 
 DROP INDEX signerconfigdata_idx2 ON signerconfigdata;
 DROP INDEX signerconfigdata_idx3 ON signerconfigdata;
@@ -27,6 +27,12 @@ DROP TABLE IF EXISTS `signerconfigdata`;
 DROP TABLE IF EXISTS `KeyUsageCounter`;
 
 
+--
+-- Drop table `ServiceLease`
+--
+DROP TABLE IF EXISTS `ServiceLease`;
+
+
 --
 -- Drop table `ArchiveData`
 --
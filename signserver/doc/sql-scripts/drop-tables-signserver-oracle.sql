@@ -28,6 +28,12 @@ DROP TABLE "SIGNERCONFIGDATA";
 DROP TABLE "KEYUSAGECOUNTER";
 
 
+--
+-- Drop table `ServiceLease`
+--
+DROP TABLE "SERVICELEASE";
+
+
 --
 -- Drop table `ArchiveData`
 --
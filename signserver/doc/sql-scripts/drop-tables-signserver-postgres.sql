@@ -22,6 +22,11 @@ DROP TABLE IF EXISTS signerconfigdata;
 --
 DROP TABLE IF EXISTS keyusagecounter;
 
+--
+-- Drop table `ServiceLease`
+--
+DROP TABLE IF EXISTS servicelease;
+
 
 --
 -- Drop table `ArchiveData`
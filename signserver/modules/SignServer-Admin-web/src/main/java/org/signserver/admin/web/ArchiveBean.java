@@ -42,6 +42,7 @@ import org.signserver.admin.common.query.QueryOperator;
 import org.signserver.admin.common.query.QueryCondition;
 import org.signserver.admin.common.query.QueryOrdering;
 import org.signserver.common.ArchiveMetadata;
+import org.signserver.common.ArchiveSearchCursor;
 import org.signserver.common.SignServerException;
 import org.signserver.admin.common.auth.AdminNotAuthorizedException;
 import org.signserver.admin.web.ejb.AdminWebSessionBean;
@@ -129,7 +130,19 @@ public class ArchiveBean {
 
     public void reloadAction() throws IOException {
         entries = null;
-        FacesContext.getCurrentInstance().getExternalContext().redirect("archive.xhtml?q=" + StringUtils.join(createQueryStrings(conditions), "&q=") + "&fromIndex=" + (pagination.getFromIndex() + 1) + "&maxEntries=" + pagination.getMaxEntries());
+        FacesContext.getCurrentInstance().getExternalContext().redirect("archive.xhtml?q=" + StringUtils.join(createQueryStrings(conditions), "&q=") + "&fromIndex=" + (pagination.getFromIndex() + 1) + "&maxEntries=" + pagination.getMaxEntries() + createCursorString());
+    }
+
+    private String createCursorString() {
+        final String cursor = pagination.getCursor();
+        if (cursor == null) {
+            return "";
+        }
+        try {
+            return "&cursor=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
     }
 
     public void firstAction() throws IOException {
@@ -151,6 +164,14 @@ public class ArchiveBean {
         reloadAction();
     }
 
+    public String getCursor() {
+        return pagination.getCursor();
+    }
+
+    public void setCursor(String cursor) {
+        pagination.setCursor(cursor);
+    }
+
     public Integer getMaxEntries() {
         return pagination.getMaxEntries();
     }
@@ -183,18 +204,34 @@ public class ArchiveBean {
             ordering.setColumn(ArchiveMetadata.TIME);
 
             Boolean moreAvailable = null;
+            String nextCursor = null;
             try {
-
-                List<ArchiveMetadata> results = workerSessionBean.queryArchive(authBean.getAdminCertificate(),
-                        pagination.getFromIndex(), pagination.getMaxEntries(),
-                        getConditions(),
-                        Collections.singletonList(ordering), false);
+                // Query one entry more than displayed to know if there are
+                // more without counting
+                final int max = pagination.getMaxEntries();
+                final String cursor = pagination.getCursor();
+                List<ArchiveMetadata> results;
+                if (cursor != null || pagination.getFromIndex() == 0) {
+                    results = workerSessionBean.queryArchiveAfter(authBean.getAdminCertificate(),
+                            cursor, max + 1,
+                            getConditions(), false);
+                } else {
+                    results = workerSessionBean.queryArchive(authBean.getAdminCertificate(),
+                            pagination.getFromIndex(), max + 1,
+                            getConditions(),
+                            Collections.singletonList(ordering), false);
+                }
                 if (results == null) {
                     entries = Collections.emptyList();
                 } else {
+                    moreAvailable = results.size() > max;
+                    if (moreAvailable) {
+                        results = results.subList(0, max);
+                        nextCursor = ArchiveSearchCursor.after(results.get(max - 1)).toString();
+                    }
                     entries = convert(results);
                 }
-                pagination.updateResults(entries.size(), moreAvailable);
+                pagination.updateResults(entries.size(), moreAvailable, nextCursor);
 
             } catch (SignServerException ex) {
                 queryError = ex.getMessage();
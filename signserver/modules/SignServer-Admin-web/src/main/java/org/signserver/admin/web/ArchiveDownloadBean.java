@@ -26,6 +26,7 @@ import javax.faces.bean.ViewScoped;
 import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import org.apache.log4j.Logger;
+import org.signserver.common.ArchiveExportHandler;
 import org.signserver.common.ArchiveMetadata;
 import org.signserver.common.SignServerException;
 import org.signserver.admin.common.auth.AdminNotAuthorizedException;
@@ -45,6 +46,9 @@ public class ArchiveDownloadBean {
      */
     private static final Logger LOG = Logger.getLogger(ArchiveDownloadBean.class);
 
+    /** Number of archive entries to load from the database at a time. */
+    private static final int EXPORT_BATCH_SIZE = 20;
+
     @EJB
     private AdminWebSessionBean workerSessionBean;
 
@@ -102,29 +106,24 @@ public class ArchiveDownloadBean {
                     }
                 }
 
-                List<ArchiveMetadata> results = workerSessionBean.queryArchiveWithIds(authBean.getAdminCertificate(), ids, true);
-
-                if (results == null || results.isEmpty()) {
-                    errorMessage = "No such archive entries";
-                } else {
-                    final FacesContext context = FacesContext.getCurrentInstance();
-                    final ExternalContext externalContext = context.getExternalContext();
-
-                    externalContext.responseReset();
+                final FacesContext context = FacesContext.getCurrentInstance();
+                final ExternalContext externalContext = context.getExternalContext();
+                final ZipExportHandler handler = new ZipExportHandler(externalContext);
 
-                    // No content-length as we will be streaming
-                    externalContext.setResponseContentType("application/zip");
-                    externalContext.setResponseHeader("Content-Disposition", "attachment; filename=\"archives.zip");
-
-                    try (ZipOutputStream out = new ZipOutputStream(externalContext.getResponseOutputStream())) {
-                        for (ArchiveMetadata data : results) {
-                            ZipEntry entry = new ZipEntry(ArchiveMetadata.suggestedFilename(data.getArchiveId(), data.getType()));
-                            out.putNextEntry(entry);
-                            out.write(data.getArchiveData());
-                            out.closeEntry();
-                        }
+                // Export a batch of entries at a time so that only a limited
+                // number of entries are loaded at once
+                int count = 0;
+                try {
+                    for (int i = 0; i < ids.size(); i += EXPORT_BATCH_SIZE) {
+                        count += workerSessionBean.exportArchiveWithIds(authBean.getAdminCertificate(), ids.subList(i, Math.min(i + EXPORT_BATCH_SIZE, ids.size())), handler);
                     }
+                } finally {
+                    handler.close();
+                }
 
+                if (count == 0) {
+                    errorMessage = "No such archive entries";
+                } else {
                     context.responseComplete();
                 }
 
@@ -157,4 +156,44 @@ public class ArchiveDownloadBean {
         }
     }
 
+    /**
+     * Handler writing each exported entry to a ZIP file in the response.
+     * The response is not started until the first entry is available so that
+     * an error message can still be shown if there are no entries.
+     */
+    private static class ZipExportHandler implements ArchiveExportHandler {
+
+        private final ExternalContext externalContext;
+        private ZipOutputStream out;
+
+        ZipExportHandler(final ExternalContext externalContext) {
+            this.externalContext = externalContext;
+        }
+
+        @Override
+        public OutputStream beginEntry(final ArchiveMetadata entry) throws IOException {
+            if (out == null) {
+                externalContext.responseReset();
+
+                // No content-length as we will be streaming
+                externalContext.setResponseContentType("application/zip");
+                externalContext.setResponseHeader("Content-Disposition", "attachment; filename=\"archives.zip");
+
+                out = new ZipOutputStream(externalContext.getResponseOutputStream());
+            }
+            out.putNextEntry(new ZipEntry(ArchiveMetadata.suggestedFilename(entry.getArchiveId(), entry.getType())));
+            return out;
+        }
+
+        @Override
+        public void endEntry(final ArchiveMetadata entry) throws IOException {
+            out.closeEntry();
+        }
+
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
 }
@@ -44,6 +44,7 @@ import org.signserver.admin.common.query.OperatorsPerColumnUtil;
 import org.signserver.admin.common.query.QueryOperator;
 import org.signserver.admin.common.query.QueryCondition;
 import org.signserver.admin.common.query.QueryOrdering;
+import org.signserver.common.AuditLogSearchCursor;
 import org.signserver.common.SignServerException;
 import org.signserver.admin.common.auth.AdminNotAuthorizedException;
 import org.signserver.admin.web.ejb.AdminWebSessionBean;
@@ -129,7 +130,19 @@ public class AuditLogBean {
 
     public void reloadAction() throws IOException {
         entries = null;
-        FacesContext.getCurrentInstance().getExternalContext().redirect("auditlog.xhtml?q=" + StringUtils.join(createQueryStrings(conditions), "&q=") + "&fromIndex=" + (pagination.getFromIndex() + 1) + "&maxEntries=" + pagination.getMaxEntries());
+        FacesContext.getCurrentInstance().getExternalContext().redirect("auditlog.xhtml?q=" + StringUtils.join(createQueryStrings(conditions), "&q=") + "&fromIndex=" + (pagination.getFromIndex() + 1) + "&maxEntries=" + pagination.getMaxEntries() + createCursorString());
+    }
+
+    private String createCursorString() {
+        final String cursor = pagination.getCursor();
+        if (cursor == null) {
+            return "";
+        }
+        try {
+            return "&cursor=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
     }
 
     public void firstAction() throws UnsupportedEncodingException, IOException {
@@ -151,6 +164,14 @@ public class AuditLogBean {
         reloadAction();
     }
 
+    public String getCursor() {
+        return pagination.getCursor();
+    }
+
+    public void setCursor(String cursor) {
+        pagination.setCursor(cursor);
+    }
+
     public Integer getMaxEntries() {
         return pagination.getMaxEntries();
     }
@@ -183,18 +204,35 @@ public class AuditLogBean {
             ordering.setColumn(AuditRecordData.FIELD_TIMESTAMP);
 
             Boolean moreAvailable = null;
+            String nextCursor = null;
             try {
-
-                List<? extends AuditLogEntry> results = workerSessionBean.queryAuditLog(authBean.getAdminCertificate(),
-                        pagination.getFromIndex(), pagination.getMaxEntries(),
-                        getConditions(),
-                        Collections.singletonList(ordering));
+                // Query one entry more than displayed to know if there are
+                // more without counting
+                final int max = pagination.getMaxEntries();
+                final String cursor = pagination.getCursor();
+                List<? extends AuditLogEntry> results;
+                if (cursor != null || pagination.getFromIndex() == 0) {
+                    results = workerSessionBean.queryAuditLogFromCursor(authBean.getAdminCertificate(),
+                            cursor, max + 1,
+                            getConditions());
+                } else {
+                    results = workerSessionBean.queryAuditLog(authBean.getAdminCertificate(),
+                            pagination.getFromIndex(), max + 1,
+                            getConditions(),
+                            Collections.singletonList(ordering));
+                }
                 if (results == null) {
                     entries = Collections.emptyList();
                 } else {
+                    moreAvailable = results.size() > max;
+                    if (moreAvailable) {
+                        results = results.subList(0, max);
+                        final AuditLogSearchCursor previous = cursor == null ? null : AuditLogSearchCursor.parse(cursor);
+                        nextCursor = AuditLogSearchCursor.after(previous, results).toString();
+                    }
                     entries = convert(results);
                 }
-                pagination.updateResults(entries.size(), moreAvailable);
+                pagination.updateResults(entries.size(), moreAvailable, nextCursor);
 
             } catch (javax.ejb.EJBTransactionRolledbackException ex) {
                 queryError = ex.getMessage();
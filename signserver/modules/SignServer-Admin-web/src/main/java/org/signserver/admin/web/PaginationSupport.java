@@ -13,6 +13,12 @@
 package org.signserver.admin.web;
 
 /**
+ * Keeps track of the current page of query results.
+ *
+ * Stepping forward uses the search cursor of the next page when the query
+ * provided one so that the database can seek directly to it instead of
+ * skipping all entries before it. Other navigation falls back to the
+ * offset.
  *
  * @author Markus Kilås
  * @version $Id: PaginationSupport.java 7998 2017-01-25 09:07:59Z netmackan $
@@ -25,6 +31,10 @@ public class PaginationSupport {
     private boolean enablePrevious;
     private boolean enableNext;
     private int fromIndex;
+    private String cursor;
+    private int cursorIndex;
+    private String nextCursor;
+    private int nextCursorIndex;
 
     public int getFromIndex() {
         return fromIndex;
@@ -34,6 +44,25 @@ public class PaginationSupport {
         this.fromIndex = Math.max(0, fromIndex);
     }
 
+    /**
+     * @return The search cursor for the current page or null if the page
+     * should be queried using the offset
+     */
+    public String getCursor() {
+        return cursor != null && cursorIndex == fromIndex ? cursor : null;
+    }
+
+    /**
+     * Sets the search cursor for the current page. Must be called after the
+     * from index has been set as the cursor is only used for that index.
+     *
+     * @param cursor the search cursor or null
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor == null || cursor.trim().isEmpty() ? null : cursor;
+        this.cursorIndex = fromIndex;
+    }
+
     public int getMaxEntries() {
         return maxEntries;
     }
@@ -60,6 +89,7 @@ public class PaginationSupport {
 
     public void goToFirst() {
         fromIndex = 0;
+        cursor = null;
     }
 
     public void goBackwards() {
@@ -69,15 +99,40 @@ public class PaginationSupport {
             index = 0;
         }
         fromIndex = index;
+        cursor = null;
     }
 
     public void goForward() {
-        // Step forward
-        final int index = fromIndex + maxEntries;
-        fromIndex = index;
+        if (nextCursor != null) {
+            // Continue from where the current page ended
+            fromIndex = nextCursorIndex;
+            cursor = nextCursor;
+            cursorIndex = fromIndex;
+        } else {
+            // Step forward
+            final int index = fromIndex + maxEntries;
+            fromIndex = index;
+            cursor = null;
+        }
     }
 
     public void updateResults(int size, Boolean moreAvailable) {
+        updateResults(size, moreAvailable, null);
+    }
+
+    /**
+     * Updates the state after a query.
+     *
+     * @param size number of entries returned
+     * @param moreAvailable true if there are more entries, false if not or
+     * null if unknown
+     * @param nextCursor search cursor for the page after the entries returned
+     * or null if none
+     */
+    public void updateResults(int size, Boolean moreAvailable, String nextCursor) {
+        this.nextCursor = nextCursor;
+        this.nextCursorIndex = fromIndex + size;
+
         if (size < 1) {
             queryingToIndex = fromIndex + maxEntries; // We pretend we got all entries
             enableNext = false;
@@ -28,6 +28,7 @@ import org.signserver.common.CryptoTokenAuthenticationFailureException;
 import org.signserver.common.CryptoTokenOfflineException;
 import org.signserver.common.InvalidWorkerIdException;
 import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.WorkerStatus;
 import org.signserver.admin.common.auth.AdminNotAuthorizedException;
 import org.signserver.admin.web.ejb.AdminWebSessionBean;
 import static org.signserver.common.SignServerConstants.DISABLED;
@@ -83,25 +84,30 @@ public class WorkersBean {
         this.workersRequestedSelected = workersRequestedSelected;
     }
 
-    @SuppressWarnings("UseSpecificCatch")
     public List<Worker> getWorkers() throws AdminNotAuthorizedException {
         if (workers == null) {
-            workers = new ArrayList<>();
-            for (int id : workerSessionBean.getAllWorkers(authBean.getAdminCertificate())) {
+            final List<Integer> ids = workerSessionBean.getAllWorkers(authBean.getAdminCertificate());
+            final List<WorkerIdentifier> wis = new ArrayList<>(ids.size());
+            for (int id : ids) {
+                wis.add(new WorkerIdentifier(id));
+            }
+
+            // Query the status of all workers in one call
+            final List<WorkerStatus> statuses = workerSessionBean.getStatuses(authBean.getAdminCertificate(), wis);
+
+            workers = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                final int id = ids.get(i);
                 Properties config = workerSessionBean.getCurrentWorkerConfig(authBean.getAdminCertificate(), id).getProperties();
                 final String name = config.getProperty("NAME", String.valueOf(id));
                 Worker w = new Worker(id, true, name, config);
-                try {
-                    boolean workerSetAsDisabled = config.getProperty(DISABLED, "FALSE").equalsIgnoreCase("TRUE");
-                    if (workerSetAsDisabled) {
-                        w.setStatus(text.getString("DISABLED"));
-                    } else {
-                        w.setStatus(workerSessionBean.getStatus(authBean.getAdminCertificate(),
-                                new WorkerIdentifier(id)).getFatalErrors().isEmpty()
-                                        ? text.getString("ACTIVE") : text.getString("OFFLINE"));
-                    }
-                } catch (Throwable ignored) { // NOPMD: We safe-guard for bugs in worker implementations and don't want the GUI to fail for those.
-                    w.setStatus(text.getString("OFFLINE"));
+                boolean workerSetAsDisabled = config.getProperty(DISABLED, "FALSE").equalsIgnoreCase("TRUE");
+                if (workerSetAsDisabled) {
+                    w.setStatus(text.getString("DISABLED"));
+                } else {
+                    final WorkerStatus status = statuses.get(i);
+                    w.setStatus(status != null && status.getFatalErrors().isEmpty()
+                                    ? text.getString("ACTIVE") : text.getString("OFFLINE"));
                 }
 
                 workers.add(w);
@@ -44,7 +44,10 @@ import org.signserver.admin.common.query.QueryCondition;
 import org.signserver.admin.common.query.QueryOrdering;
 import org.signserver.admin.common.query.QueryUtil;
 import org.signserver.common.AbstractCertReqData;
+import org.signserver.common.ArchiveExportHandler;
 import org.signserver.common.ArchiveMetadata;
+import org.signserver.common.ArchiveSearchCursor;
+import org.signserver.common.AuditLogSearchCursor;
 import org.signserver.common.AuthorizedClient;
 import org.signserver.common.Base64SignerCertReqData;
 import org.signserver.common.CertificateMatchingRule;
@@ -155,6 +158,11 @@ public class AdminWebSessionBean {
         return worker.getStatus(wi);
     }
     
+    public List<WorkerStatus> getStatuses(final X509Certificate adminCertificate, final List<WorkerIdentifier> wis) throws AdminNotAuthorizedException {
+        auth.requireAdminAuthorization(adminCertificate, "getStatuses", String.valueOf(wis.size()));
+        return worker.getStatuses(wis);
+    }
+
     public boolean isTokenActive(final X509Certificate adminCertificate, final WorkerIdentifier wi) throws InvalidWorkerIdException, AuthorizationDeniedException, AdminNotAuthorizedException {
         auth.requireAdminAuthorization(adminCertificate, "isTokenActive", wi.toString());
         return worker.isTokenActive(wi);
@@ -674,6 +682,52 @@ public class AdminWebSessionBean {
         }
     }
 
+    /**
+     * Query the audit log for the entries after the given search cursor,
+     * newest first.
+     *
+     * @param adminCertificate of the administrator
+     * @param cursor search cursor or null for the first page
+     * @param max maximum number of entries
+     * @param conditions to match
+     * @return the matching entries
+     * @throws SignServerException in case of failure or malformed cursor
+     * @throws AdminNotAuthorizedException if not authorized
+     */
+    public List<? extends AuditLogEntry> queryAuditLogFromCursor(
+            final X509Certificate adminCertificate,
+            final String cursor, int max, final List<QueryCondition> conditions) throws SignServerException, AdminNotAuthorizedException {
+        final AdminInfo adminInfo = auth.requireAuditorAuthorization(adminCertificate, "queryAuditLogFromCursor", cursor, String.valueOf(max));
+
+        if (cursor != null) {
+            try {
+                AuditLogSearchCursor.parse(cursor);
+            } catch (IllegalArgumentException ex) {
+                throw new SignServerException(ex.getMessage());
+            }
+        }
+
+        // For now we only query one of the available audit devices
+        Set<String> devices = auditor.getQuerySupportingLogDevices();
+        if (devices.isEmpty()) {
+            throw new SignServerException("No log devices available for querying");
+        }
+        final String device = devices.iterator().next();
+
+        final List<Elem> elements = QueryUtil.toElements(conditions);
+        final QueryCriteria qc = QueryCriteria.create();
+
+        if (!elements.isEmpty()) {
+            qc.add(QueryUtil.andAll(elements, 0));
+        }
+
+        try {
+            return worker.selectAuditLogsFromCursor(adminInfo, cursor, max, qc, device);
+        } catch (AuthorizationDeniedException ex) {
+            throw new AdminNotAuthorizedException(ex.getMessage());
+        }
+    }
+
     public List<ArchiveMetadata> queryArchive(
             final X509Certificate adminCertificate,
             int startIndex,
@@ -703,6 +757,51 @@ public class AdminWebSessionBean {
         }
     }
 
+    /**
+     * Query the archive for the entries after the given search cursor,
+     * newest first.
+     *
+     * @param adminCertificate of the administrator
+     * @param after search cursor or null for the first page
+     * @param max maximum number of entries
+     * @param conditions to match
+     * @param includeData if the archived data should be included
+     * @return the matching entries
+     * @throws SignServerException in case of failure or malformed cursor
+     * @throws AdminNotAuthorizedException if not authorized
+     */
+    public List<ArchiveMetadata> queryArchiveAfter(
+            final X509Certificate adminCertificate,
+            final String after,
+            int max,
+            final List<QueryCondition> conditions,
+            final boolean includeData)
+                    throws SignServerException, AdminNotAuthorizedException {
+        final AdminInfo adminInfo = auth.requireArchiveAuditorAuthorization(adminCertificate, "queryArchiveAfter", after, String.valueOf(max));
+
+        if (after != null) {
+            try {
+                ArchiveSearchCursor.parse(after);
+            } catch (IllegalArgumentException ex) {
+                throw new SignServerException(ex.getMessage());
+            }
+        }
+
+        final List<Elem> elements = QueryUtil.toElements(conditions);
+        final QueryCriteria qc = QueryCriteria.create();
+
+        if (!elements.isEmpty()) {
+            qc.add(QueryUtil.andAll(elements, 0));
+        }
+
+        try {
+            return worker.searchArchiveAfter(adminInfo, after,
+                    max, qc, includeData);
+        } catch (AuthorizationDeniedException ex) {
+            throw new AdminNotAuthorizedException(ex.getMessage());
+        }
+    }
+
     public List<ArchiveMetadata> queryArchiveWithIds(
             final X509Certificate adminCertificate,
             List<String> uniqueIds,
@@ -718,6 +817,21 @@ public class AdminWebSessionBean {
         }
     }
 
+    public int exportArchiveWithIds(
+            final X509Certificate adminCertificate,
+            List<String> uniqueIds,
+            ArchiveExportHandler handler)
+            throws AdminNotAuthorizedException, IOException {
+        final AdminInfo adminInfo =
+                auth.requireArchiveAuditorAuthorization(adminCertificate, "exportArchiveWithIds");
+
+        try {
+            return worker.exportArchiveWithIds(adminInfo, uniqueIds, handler);
+        } catch (AuthorizationDeniedException ex) {
+            throw new AdminNotAuthorizedException(ex.getMessage());
+        }
+    }
+
     // Add all method calls needed from WorkerSessionLocal here and
     // make sure to call auth.requireAdminAuthorization() first (see AdminWS)
     // ...
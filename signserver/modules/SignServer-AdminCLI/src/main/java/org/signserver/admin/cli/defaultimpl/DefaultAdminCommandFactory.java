@@ -13,6 +13,7 @@
 package org.signserver.admin.cli.defaultimpl;
 
 import org.signserver.admin.cli.defaultimpl.token.QueryTokenEntriesCommand;
+import org.signserver.admin.cli.defaultimpl.archive.ExportArchiveCommand;
 import org.signserver.admin.cli.defaultimpl.archive.FindFromArchiveIdCommand;
 import org.signserver.admin.cli.defaultimpl.archive.FindFromRequestCertCommand;
 import org.signserver.admin.cli.defaultimpl.archive.FindFromRequestIPCommand;
@@ -74,6 +75,7 @@ public class DefaultAdminCommandFactory extends AbstractCommandFactory implement
         put("archive", "findfromrequestcert", FindFromRequestCertCommand.class);
         put("archive", "findfromrequestip", FindFromRequestIPCommand.class);
         put("archive", "query", QueryArchiveCommand.class);
+        put("archive", "export", ExportArchiveCommand.class);
         
         put("auditlog", QueryAuditLogCommand.class);
     }
@@ -0,0 +1,195 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.admin.cli.defaultimpl.archive;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.List;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.cesecore.util.query.Elem;
+import org.cesecore.util.query.QueryCriteria;
+import org.cesecore.util.query.elems.RelationalOperator;
+import org.cesecore.util.query.elems.Term;
+import org.signserver.admin.cli.defaultimpl.AdminCommandHelper;
+import org.signserver.admin.common.query.ArchiveFields;
+import org.signserver.admin.common.query.QueryUtil;
+import org.signserver.cli.spi.AbstractCommand;
+import org.signserver.cli.spi.CommandFailureException;
+import org.signserver.cli.spi.IllegalCommandArgumentsException;
+import org.signserver.cli.spi.UnexpectedCommandFailureException;
+import org.signserver.common.ArchiveDataVO;
+import org.signserver.common.ArchiveMetadata;
+import org.signserver.common.ArchiveSearchCursor;
+
+/**
+ * Export all archive entries matching the criteria to files.
+ *
+ * The entries are fetched in batches ordered by time and unique ID, each batch
+ * continuing after the last entry of the previous one, so that any number of
+ * entries can be exported without holding more than one batch in memory.
+ *
+ * @version $Id$
+ */
+public class ExportArchiveCommand extends AbstractCommand {
+
+    private AdminCommandHelper helper = new AdminCommandHelper();
+
+    /** Option strings */
+    public static final String REQUEST = "request";
+    public static final String RESPONSE = "response";
+    public static final String OUTPATH = "outpath";
+    public static final String BATCHSIZE = "batchsize";
+
+    /** Default number of entries fetched at a time. */
+    private static final int DEFAULT_BATCHSIZE = 100;
+
+    /** The command line options */
+    private static final Options OPTIONS;
+
+    private int batchSize = DEFAULT_BATCHSIZE;
+    private QueryCriteria qc;
+    private File outPath;
+
+    static {
+        OPTIONS = new Options();
+        OPTIONS.addOption(ArchiveFields.CRITERIA, true, "Search criteria (can specify multiple criterias)");
+        OPTIONS.addOption(REQUEST, false, "Export only requests");
+        OPTIONS.addOption(RESPONSE, false, "Export only responses");
+        OPTIONS.addOption(OUTPATH, true, "Directory to write the archive data to");
+        OPTIONS.addOption(BATCHSIZE, true, "Number of entries to fetch at a time. Default: " + DEFAULT_BATCHSIZE);
+    }
+
+    @Override
+    public String getDescription() {
+        return "Export the content of the archive";
+    }
+
+    @Override
+    public String getUsages() {
+        return "Usage: signserver archive export -outpath <path> [-criteria  \"<field> <op> <value>\" [-criteria...]] [-request|-response] [-batchsize <number>]\n"
+        + "<field> is a field name from the archive: archiveid, requestCertSerialnumber, requestIP, requestIssuerDN, signerid, time, type, uniqueId\n"
+        + "<op> is a relational operator: GT, GE, LT, LE, EQ, NEQ, LIKE, NULL, NOTNULL\n"
+        + "-request exports only entries for requests\n"
+        + "-response exports only entries for responses\n"
+        + "All matching entries are exported, -batchsize entries at a time\n"
+        + "Example: signserver archive export -outpath /tmp/out -criteria \"signerid EQ 1\"\n"
+        + "Example: signserver archive export -outpath /tmp/out -criteria \"time GE 1546300800000\" -criteria \"time LT 1548979200000\" -response\n\n";
+    }
+
+    @Override
+    public int execute(String... args) throws IllegalCommandArgumentsException,
+            CommandFailureException, UnexpectedCommandFailureException {
+        qc = QueryCriteria.create();
+
+        try {
+            parseCommandLine(new DefaultParser().parse(OPTIONS, args));
+        } catch (ParseException ex) {
+            throw new IllegalCommandArgumentsException(ex.getMessage());
+        }
+
+        try {
+            long exportedItems = 0;
+            String after = null;
+            List<? extends ArchiveMetadata> entries;
+
+            do {
+                entries = helper.getWorkerSession().searchArchiveAfter(after, batchSize, qc, true);
+
+                for (final ArchiveMetadata entry : entries) {
+                    saveEntry(entry);
+                    after = ArchiveSearchCursor.after(entry).toString();
+                    exportedItems++;
+                }
+
+                if (!entries.isEmpty()) {
+                    out.println(String.format("Exported %d archive entries", exportedItems));
+                }
+            } while (entries.size() == batchSize);
+
+            out.println(String.format("\nExported %d archive entries in total to %s",
+                    exportedItems, outPath.getAbsolutePath()));
+            out.println("\n\n");
+            return 0;
+        } catch (Exception e) {
+            throw new UnexpectedCommandFailureException(e);
+        }
+    }
+
+    private void saveEntry(final ArchiveMetadata entry) throws IOException {
+        final File outfile = new File(outPath, entry.suggestedFilename());
+        try (OutputStream fos = new FileOutputStream(outfile)) {
+            fos.write(entry.getArchiveData());
+        }
+    }
+
+    private void parseCommandLine(final CommandLine line) throws ParseException {
+        final String batchSizeString = line.getOptionValue(BATCHSIZE);
+
+        if (batchSizeString != null) {
+            try {
+                batchSize = Integer.parseInt(batchSizeString);
+
+                if (batchSize <= 0) {
+                    throw new ParseException("Too small value specified for batch size: " + batchSize);
+                }
+            } catch (NumberFormatException ex) {
+                throw new ParseException("Invalid batch size value: " + batchSizeString);
+            }
+        }
+
+        if (line.hasOption(REQUEST) && line.hasOption(RESPONSE)) {
+            throw new ParseException("Can not specify both -request and -response at the same time");
+        } else if (line.hasOption(REQUEST)) {
+            qc.add(new Term(RelationalOperator.EQ, ArchiveMetadata.TYPE, ArchiveDataVO.TYPE_REQUEST));
+        } else if (line.hasOption(RESPONSE)) {
+            qc.add(new Term(RelationalOperator.EQ, ArchiveMetadata.TYPE, ArchiveDataVO.TYPE_RESPONSE));
+        }
+
+        if (line.hasOption(OUTPATH)) {
+            outPath = new File(line.getOptionValue(OUTPATH));
+
+            if (!outPath.isDirectory()) {
+                throw new ParseException("Output path must be a directory");
+            }
+        } else {
+            throw new ParseException("Must specify an output path.");
+        }
+
+        final String[] criterias = line.getOptionValues(ArchiveFields.CRITERIA);
+
+        final List<Elem> terms = new LinkedList<>();
+
+        if (criterias != null && criterias.length > 0) {
+            for (final String criteria : criterias) {
+                try {
+                    terms.add(QueryArchiveCommand.parseCriteria(criteria));
+                } catch (NumberFormatException e) {
+                    throw new ParseException("Invalid critera, expected a numeric value: " + criteria);
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException("Invalid critera specified: " + e.getMessage() + ": " +
+                            criteria);
+                } catch (java.text.ParseException e) {
+                    throw new ParseException("Invalid date specified: " + criteria);
+                }
+            }
+
+            qc.add(QueryUtil.andAll(terms, 0));
+        }
+    }
+}
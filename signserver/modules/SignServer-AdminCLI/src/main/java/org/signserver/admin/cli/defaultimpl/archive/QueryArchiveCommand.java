@@ -27,6 +27,7 @@ import org.signserver.cli.spi.IllegalCommandArgumentsException;
 import org.signserver.cli.spi.UnexpectedCommandFailureException;
 import org.signserver.common.ArchiveDataVO;
 import org.signserver.common.ArchiveMetadata;
+import org.signserver.common.ArchiveSearchCursor;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.Options;
@@ -53,11 +54,13 @@ public class QueryArchiveCommand extends AbstractCommand {
     public static final String REQUEST = "request";
     public static final String RESPONSE = "response";
     public static final String OUTPATH = "outpath";
+    public static final String CURSOR = "cursor";
     
     /** The command line options */
     private static final Options OPTIONS;
     
-    private int from;
+    private Integer from;
+    private String cursor;
     private int limit;
     private boolean printHeader;
     private QueryCriteria qc;
@@ -73,6 +76,7 @@ public class QueryArchiveCommand extends AbstractCommand {
         OPTIONS.addOption(ArchiveFields.CRITERIA, true, "Search criteria (can specify multiple criterias)");
         OPTIONS.addOption(ArchiveFields.FROM, true, "Lower index in search result (0-based)");
         OPTIONS.addOption(ArchiveFields.LIMIT, true, "Maximum number of search results");
+        OPTIONS.addOption(CURSOR, true, "Continue after the last entry of a previous query");
         OPTIONS.addOption(ArchiveFields.HEADER, false, "Print a column header");
         OPTIONS.addOption(REQUEST, false, "Search for requests");
         OPTIONS.addOption(RESPONSE, false, "Search for responses");
@@ -86,16 +90,18 @@ public class QueryArchiveCommand extends AbstractCommand {
 
     @Override
     public String getUsages() {
-        return "Usage: signserver archive query -limit <number> [-criteria  \"<field> <op> <value>\" [-criteria...]] [-from <index>] [-header] [-request|-response] [-outpath <path>]\n"
+        return "Usage: signserver archive query -limit <number> [-criteria  \"<field> <op> <value>\" [-criteria...]] [-from <index>|-cursor <cursor>] [-header] [-request|-response] [-outpath <path>]\n"
         + "<field> is a field name from the archive: archiveid, requestCertSerialnumber, requestIP, requestIssuerDN, signerid, time, type, uniqueId\n"
         + "<op> is a relational operator: GT, GE, LT, LE, EQ, NEQ, LIKE, NULL, NOTNULL\n"
 	+ "-request shows only entries for requests\n"
 	+ "-response shows only entries for responses\n"
         + "if the -outpath option is given, archive data for the matched items are written to the given directory\n"
+        + "unless the -from option is given, a cursor is printed when there are more results and the next results can be queried by giving it with the -cursor option\n"
         + "Example: signserver archive query -limit 10 -criteria \"signerid EQ 1\"\n"
 	+ "Example: signserver archive query -limit 10 -criteria \"signerid EQ 1\" -request\n"
         + "Example: signserver archive query -limit 10 -criteria \"time GT 1359623137000\" -criteria \"requestIP EQ 127.0.0.1\"\n"
-        + "Example: signserver archive query -limit 10 -criteria \"signerid EQ 1\" -outpath /tmp/out\n\n";
+        + "Example: signserver archive query -limit 10 -criteria \"signerid EQ 1\" -outpath /tmp/out\n"
+        + "Example: signserver archive query -limit 10 -criteria \"signerid EQ 1\" -cursor \"1539849600000;016686303c00;0;1;9c2b8e3f6d1a47b5\"\n\n";
     }
 
     @Override
@@ -120,8 +126,18 @@ public class QueryArchiveCommand extends AbstractCommand {
             }
  
             // Perform the query
-            List<? extends ArchiveMetadata> entries =
-                    helper.getWorkerSession().searchArchive(from, limit, qc, downloadData);
+            List<? extends ArchiveMetadata> entries;
+            String nextCursor = null;
+            if (from == null) {
+                // Query one entry more than printed to know if there are more
+                entries = helper.getWorkerSession().searchArchiveAfter(cursor, limit + 1, qc, downloadData);
+                if (entries.size() > limit) {
+                    entries = entries.subList(0, limit);
+                    nextCursor = ArchiveSearchCursor.after(entries.get(limit - 1)).toString();
+                }
+            } else {
+                entries = helper.getWorkerSession().searchArchive(from, limit, qc, downloadData);
+            }
     
             for (final ArchiveMetadata entry : entries) {
                 // render the result
@@ -155,6 +171,10 @@ public class QueryArchiveCommand extends AbstractCommand {
                 out.print(String.format("\nDownloaded %d archive entries",
                         downloadedItems));
             }
+
+            if (nextCursor != null) {
+                out.print("\nNext cursor: " + nextCursor);
+            }
             
             out.println("\n\n");
             return 0;
@@ -166,14 +186,15 @@ public class QueryArchiveCommand extends AbstractCommand {
     private void saveEntry(final ArchiveMetadata entry) throws IOException {
         final String fileName = entry.suggestedFilename();
         final File outfile = new File(outPath, fileName);
-        final FileOutputStream fis = new FileOutputStream(outfile);
-        
-        fis.write(entry.getArchiveData());
+        try (FileOutputStream fis = new FileOutputStream(outfile)) {
+            fis.write(entry.getArchiveData());
+        }
     }
     
     private void parseCommandLine(final CommandLine line) throws ParseException {
         final String fromString = line.getOptionValue(ArchiveFields.FROM);
         final String limitString = line.getOptionValue(ArchiveFields.LIMIT);
+        cursor = line.getOptionValue(CURSOR);
         
         printHeader = line.hasOption(ArchiveFields.HEADER);
         
@@ -184,6 +205,17 @@ public class QueryArchiveCommand extends AbstractCommand {
                 throw new ParseException("Invalid from index value: " + fromString);
             }
         }
+
+        if (cursor != null) {
+            if (fromString != null) {
+                throw new ParseException("Can not specify both -from and -cursor at the same time");
+            }
+            try {
+                ArchiveSearchCursor.parse(cursor);
+            } catch (IllegalArgumentException ex) {
+                throw new ParseException(ex.getMessage());
+            }
+        }
         
         if (limitString != null) {
             try {
@@ -37,6 +37,7 @@ import org.signserver.cli.spi.AbstractCommand;
 import org.signserver.cli.spi.CommandFailureException;
 import org.signserver.cli.spi.IllegalCommandArgumentsException;
 import org.signserver.cli.spi.UnexpectedCommandFailureException;
+import org.signserver.common.AuditLogSearchCursor;
 
 /**
  * 
@@ -52,7 +53,11 @@ public class QueryAuditLogCommand extends AbstractCommand {
     /** The command line options */
     private static final Options OPTIONS;
 
-    private int from = 0;
+    /** Option strings */
+    public static final String CURSOR = "cursor";
+
+    private Integer from;
+    private String cursor;
     private int limit = 0;
     private boolean printHeader = false;
     
@@ -74,17 +79,20 @@ public class QueryAuditLogCommand extends AbstractCommand {
         OPTIONS.addOption(AuditLogFields.CRITERIA, true, "Search criteria (can specify multiple criterias)");
         OPTIONS.addOption(AuditLogFields.FROM, true, "Lower index in search result (0-based)");
         OPTIONS.addOption(AuditLogFields.LIMIT, true, "Maximum number of search results");
+        OPTIONS.addOption(CURSOR, true, "Continue after the last entry of a previous query");
         OPTIONS.addOption(AuditLogFields.HEADER, false, "Print a column header");
     }
     
     @Override
     public String getUsages() {
-        return "Usage: signserver auditlog -query -limit <number> [-criteria  \"<field> <op> <value>\" [-criteria...]] [-from <index>] [-header]\n"
+        return "Usage: signserver auditlog -query -limit <number> [-criteria  \"<field> <op> <value>\" [-criteria...]] [-from <index>|-cursor <cursor>] [-header]\n"
                 + "<field> is a field name from the audit log: additionalDetails, authToken, customId, eventStatus, eventType, module, nodeId,\n"
                 + "searchDetail1, searchDetail2, sequenceNumber, service, timeStamp\n"
                 + "<op> is a relational operator: GT, GE, LT, LE, EQ, NEQ, LIKE, NULL, NOTNULL\n"
+                + "Unless the -from option is given, a cursor is printed when there are more results and the next results can be queried by giving it with the -cursor option\n"
                 + "Example: signserver auditlog -query -limit 10 -criteria \"customId EQ 1\n"
-                + "Example: signserver auditlog -query -limit 10 -criteria \"timeStamp GT 1359623137000\" -criteria \"searchDetail2 EQ 1\"\n\n";
+                + "Example: signserver auditlog -query -limit 10 -criteria \"timeStamp GT 1359623137000\" -criteria \"searchDetail2 EQ 1\"\n"
+                + "Example: signserver auditlog -query -limit 10 -criteria \"customId EQ 1\" -cursor \"1359623137000;12@node1\"\n\n";
     }
     
     @Override
@@ -114,7 +122,19 @@ public class QueryAuditLogCommand extends AbstractCommand {
             }
             
             // Perform the query
-            List<? extends AuditLogEntry> entries = helper.getWorkerSession().selectAuditLogs(from, limit, qc, device);
+            List<? extends AuditLogEntry> entries;
+            String nextCursor = null;
+            if (from == null) {
+                // Query one entry more than printed to know if there are more
+                entries = helper.getWorkerSession().selectAuditLogsFromCursor(cursor, limit + 1, qc, device);
+                if (entries.size() > limit) {
+                    entries = entries.subList(0, limit);
+                    final AuditLogSearchCursor previous = cursor == null ? null : AuditLogSearchCursor.parse(cursor);
+                    nextCursor = AuditLogSearchCursor.after(previous, entries).toString();
+                }
+            } else {
+                entries = helper.getWorkerSession().selectAuditLogs(from, limit, qc, device);
+            }
             for (AuditLogEntry entry : entries) {
                 
                 // Render the result
@@ -132,7 +152,11 @@ public class QueryAuditLogCommand extends AbstractCommand {
                         
                 getOutputStream().println(buff.toString());
             }
-            
+
+            if (nextCursor != null) {
+                out.print("\nNext cursor: " + nextCursor);
+            }
+
             out.println("\n\n");
             return 0;
 
@@ -161,6 +185,7 @@ public class QueryAuditLogCommand extends AbstractCommand {
         
         final String fromString = line.getOptionValue(AuditLogFields.FROM);
         final String limitString = line.getOptionValue(AuditLogFields.LIMIT);
+        cursor = line.getOptionValue(CURSOR);
         
         printHeader = line.hasOption(AuditLogFields.HEADER);
         
@@ -171,6 +196,17 @@ public class QueryAuditLogCommand extends AbstractCommand {
                 throw new ParseException("Invalid from index value: " + fromString);
             }
         }
+
+        if (cursor != null) {
+            if (fromString != null) {
+                throw new ParseException("Can not specify both -from and -cursor at the same time");
+            }
+            try {
+                AuditLogSearchCursor.parse(cursor);
+            } catch (IllegalArgumentException ex) {
+                throw new ParseException(ex.getMessage());
+            }
+        }
         
         if (limitString != null) {
             try {
@@ -23,7 +23,11 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
 import org.apache.commons.io.IOUtils;
@@ -46,15 +50,26 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
     
     static final String ROUND_ROBIN_LOAD_BALANCING = "ROUND_ROBIN";    
 
+    static final String ADAPTIVE_LOAD_BALANCING = "ADAPTIVE";
+
     private static final String BASICAUTH_AUTHORIZATION = "Authorization";
 
     private static final String BASICAUTH_BASIC = "Basic";
 
+    private static final String GZIP = "gzip";
+
+    private static final String DEFLATE = "deflate";
+
     /** Logger for this class. */
     private static final Logger LOG = Logger.getLogger(HTTPDocumentSigner.class);
 
     private static final String BOUNDARY = "------------------signserver";
 
+    private static final String PART_SEPARATOR = "--" + BOUNDARY + CRLF;
+
+    /** Size of the buffer used when sending the request data. */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private final String workerName;
     private final int workerId;
 
@@ -74,6 +89,9 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
     
     private Map<String, String> metadata;
     private final int timeOutLimit;
+
+    /** If the request should be sent compressed. */
+    private final boolean compressRequest;
     
     private boolean connectionFailure;
 
@@ -84,7 +102,8 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
             final String workerName,
             final String username, final String password,
             final String pdfPassword,
-            final Map<String, String> metadata, final int timeOutLimit) {        
+            final Map<String, String> metadata, final int timeOutLimit,
+            final boolean compressRequest) {        
         this.hostsManager = hostsManager;
         this.port = port;
         this.servlet = servlet;
@@ -96,6 +115,7 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
         this.pdfPassword = pdfPassword;
         this.metadata = metadata;
         this.timeOutLimit = timeOutLimit;
+        this.compressRequest = compressRequest;
     }
     
     public HTTPDocumentSigner(final HostManager hostsManager,
@@ -105,7 +125,8 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
             final int workerId, 
             final String username, final String password,
             final String pdfPassword,
-            final Map<String, String> metadata, final int timeOutLimit) {        
+            final Map<String, String> metadata, final int timeOutLimit,
+            final boolean compressRequest) {        
         this.hostsManager = hostsManager;
         this.port = port;
         this.servlet = servlet;
@@ -117,6 +138,7 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
         this.pdfPassword = pdfPassword;
         this.metadata = metadata;
         this.timeOutLimit = timeOutLimit;
+        this.compressRequest = compressRequest;
     }
 
     @Override
@@ -146,15 +168,24 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
                 CryptoTokenOfflineException, SignServerException,
                 IOException {
         
-        final URL url = createServletURL(host);
+        // set it false in beginning as signing will be tried with new host
+        connectionFailure = false;
+
+        final long startTime = System.nanoTime();
+        boolean success = false;
         
         try {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Sending to URL: " + url.toString());
+            try {
+                final URL url = createServletURL(host);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Sending to URL: " + url.toString());
+                }
+                sendRequest(url, in, size, out, requestContext);
+                success = true;
+            } finally {
+                hostsManager.releaseHost(host, System.nanoTime() - startTime, success);
             }
 
-            sendRequest(url, in, size, out, requestContext);
-
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Got sign response");
             }
@@ -191,9 +222,6 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
         OutputStream requestOut = null;
         InputStream responseIn = null;        
 
-        // set it false in beginning as signing will be tried with new host
-        connectionFailure = false;
-
         try {
             final HttpURLConnection conn = (HttpURLConnection) processServlet.openConnection();
             
@@ -205,6 +233,9 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
             conn.setDoOutput(true);
             conn.setAllowUserInteraction(false);
 
+            // Accept compressed responses
+            conn.setRequestProperty("Accept-Encoding", GZIP + ", " + DEFLATE);
+
             if (username != null && password != null) {
                 conn.setRequestProperty(BASICAUTH_AUTHORIZATION, 
                         BASICAUTH_BASIC + " "
@@ -212,8 +243,7 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
             }
             
             final StringBuilder sb = new StringBuilder();
-            sb.append("--" + BOUNDARY);
-            sb.append(CRLF);
+            sb.append(PART_SEPARATOR);
             
             if (workerName == null) {
                 sb.append("Content-Disposition: form-data; name=\"workerId\"");
@@ -229,7 +259,7 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
             sb.append(CRLF);
             
             if (pdfPassword != null) {
-                sb.append("--" + BOUNDARY).append(CRLF)
+                sb.append(PART_SEPARATOR)
                     .append("Content-Disposition: form-data; name=\"pdfPassword\"").append(CRLF)
                     .append(CRLF)
                     .append(pdfPassword).append(CRLF);
@@ -239,15 +269,14 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
                 for (final String key : metadata.keySet()) {
                     final String value = metadata.get(key);
                     
-                    sb.append("--" + BOUNDARY).append(CRLF)
-                        .append("Content-Disposition: form-data; name=\"REQUEST_METADATA." + key + "\"").append(CRLF)
+                    sb.append(PART_SEPARATOR)
+                        .append("Content-Disposition: form-data; name=\"REQUEST_METADATA.").append(key).append("\"").append(CRLF)
                         .append(CRLF)
                         .append(value).append(CRLF);
                 }
             }
 
-            sb.append("--" + BOUNDARY);
-            sb.append(CRLF);
+            sb.append(PART_SEPARATOR);
             sb.append("Content-Disposition: form-data; name=\"datafile\"");
             sb.append("; filename=\"");
             if (requestContext.get("FILENAME") == null) {
@@ -269,19 +298,29 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
             final byte[] preData = sb.toString().getBytes("ASCII");
             final byte[] postData = ("\r\n--" + BOUNDARY + "--\r\n").getBytes("ASCII");
             
-            if (size >= 0) {
+            if (compressRequest) {
+                // The compressed size is not known in advance
+                conn.addRequestProperty("Content-Encoding", GZIP);
+                conn.setChunkedStreamingMode(COPY_BUFFER_SIZE);
+            } else if (size >= 0) {
                 final long totalSize = (long) preData.length + size + (long) postData.length;
                 conn.setFixedLengthStreamingMode(totalSize);
             }
 
             // Write the request: preData, data, postData
             requestOut = conn.getOutputStream();
+            if (compressRequest) {
+                requestOut = new GZIPOutputStream(requestOut, COPY_BUFFER_SIZE);
+            }
             requestOut.write(preData);
-            final long copied = IOUtils.copyLarge(in, requestOut);
+            final long copied = IOUtils.copyLarge(in, requestOut, new byte[COPY_BUFFER_SIZE]);
             if (copied != size) {
                 throw new IOException("Expected file size of " + size + " but only read " + copied + " bytes");
             }
             requestOut.write(postData);
+            if (requestOut instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) requestOut).finish();
+            }
             requestOut.flush();
 
             // Get the response
@@ -290,6 +329,7 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
             if (responseIn == null) {             
                 responseIn = conn.getInputStream();
             }
+            responseIn = decode(responseIn, conn.getContentEncoding());
 
             // Read the body to the output if OK otherwise to the error message
             if (responseCode < 400) {
@@ -341,4 +381,23 @@ public class HTTPDocumentSigner extends AbstractDocumentSigner {
 
     }
 
+    /**
+     * @return Stream decompressing the response body as it is read or the
+     * same stream if the body is not compressed
+     */
+    private static InputStream decode(final InputStream in, final String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return in;
+        }
+        switch (contentEncoding.trim().toLowerCase(Locale.ENGLISH)) {
+            case GZIP:
+            case "x-gzip":
+                return new GZIPInputStream(in, COPY_BUFFER_SIZE);
+            case DEFLATE:
+                return new InflaterInputStream(in);
+            default:
+                return in;
+        }
+    }
+
 }
@@ -13,30 +13,63 @@
 package org.signserver.client.cli.defaultimpl;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import org.apache.log4j.Logger;
 
 /**
  * Class containing logic for managing participant hosts under load balancing & fail over.
  *
+ * Hosts handed out are counted as having a request in flight until
+ * released with {@link #releaseHost(java.lang.String, long, boolean)}. If a
+ * maximum number of requests per host is configured, callers wait until a
+ * host has capacity. With adaptive load balancing the host with the lowest
+ * observed latency, weighted by its number of requests in flight, is chosen.
+ *
  * @author Vinay Singh
  * @version $Id: HostManager.java 9256 2018-04-13 17:49:27Z vinays $
  */
 public class HostManager {
 
     private static final Logger LOG = Logger.getLogger(HostManager.class);
+
+    /** Weight of a new latency sample in the moving average. */
+    private static final double LATENCY_SAMPLE_WEIGHT = 0.3;
     
     private final List<String> participantHosts;
     private int currentIndex = -1;
     private final boolean useLoadBalancing;
+    private final boolean adaptive;
+    private final int maxPerHost;
     private final Random random = new Random();
     private boolean firstRequestWithLoadBalancing;
     private int randomIndex = -1;
+    private final Map<String, HostStatistics> statistics = new LinkedHashMap<>();
 
     public HostManager(List<String> hosts, boolean useLoadBalancing) {
-        participantHosts = new ArrayList(hosts);
-        this.useLoadBalancing = useLoadBalancing;
+        this(hosts, useLoadBalancing ? HTTPDocumentSigner.ROUND_ROBIN_LOAD_BALANCING
+                : HTTPDocumentSigner.DEFAULT_LOAD_BALANCING, 0);
+    }
+
+    /**
+     * Creates an instance of HostManager.
+     *
+     * @param hosts participating hosts
+     * @param loadBalancing one of NONE, ROUND_ROBIN or ADAPTIVE
+     * @param maxPerHost maximum number of concurrent requests to a host or
+     * 0 for no limit
+     */
+    public HostManager(List<String> hosts, String loadBalancing, int maxPerHost) {
+        participantHosts = new ArrayList<>(hosts);
+        this.adaptive = HTTPDocumentSigner.ADAPTIVE_LOAD_BALANCING.equals(loadBalancing);
+        this.useLoadBalancing = adaptive || HTTPDocumentSigner.ROUND_ROBIN_LOAD_BALANCING.equals(loadBalancing);
+        this.maxPerHost = maxPerHost;
+
+        for (String host : participantHosts) {
+            statistics.put(host, new HostStatistics());
+        }
 
         if (useLoadBalancing) { // get randomized host for first attempt if loadbalancing is enabled
             randomIndex = getHostIndexByRandom();
@@ -46,16 +79,23 @@ public class HostManager {
     
     /**
      * Determines the next host to be used for sending signing request.
+     * The host should be released after the request has been sent.
      *
      * @returns host.
      */
     synchronized String getNextHostForRequest() {
-        if (participantHosts.isEmpty()) {
+        if (!awaitCapacity()) {
             return null;
         }
 
-        checkNextHostIndex();
+        if (adaptive && !firstRequestWithLoadBalancing) {
+            currentIndex = getLeastLoadedHostIndex();
+        } else {
+            checkNextHostIndex();
+            skipFullHosts();
+        }
         String host = participantHosts.get(currentIndex);
+        acquire(host);
         
         if (LOG.isDebugEnabled()) {
             LOG.debug("hosts size: " + participantHosts.size());
@@ -88,12 +128,18 @@ public class HostManager {
      * @returns host.
      */
     synchronized String getNextHostForRequestWhenFailure() {
-        if (participantHosts.isEmpty()) {
+        if (!awaitCapacity()) {
             return null;
         }
 
-        updateCurrentIndex();        
+        if (adaptive) {
+            currentIndex = getLeastLoadedHostIndex();
+        } else {
+            updateCurrentIndex();
+            skipFullHosts();
+        }
         String host = participantHosts.get(currentIndex);
+        acquire(host);
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("hosts size: " + participantHosts.size());
@@ -112,6 +158,103 @@ public class HostManager {
         }
     }
 
+    /**
+     * Waits until at least one host can take another request.
+     *
+     * @return false if there are no hosts left or if interrupted
+     */
+    private boolean awaitCapacity() {
+        while (!participantHosts.isEmpty()) {
+            for (String host : participantHosts) {
+                if (hasCapacity(host)) {
+                    return true;
+                }
+            }
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasCapacity(String host) {
+        return maxPerHost <= 0 || statistics.get(host).inFlight < maxPerHost;
+    }
+
+    private void skipFullHosts() {
+        while (!hasCapacity(participantHosts.get(currentIndex))) {
+            updateCurrentIndex();
+        }
+    }
+
+    /**
+     * Chooses the host with capacity having the lowest average latency
+     * weighted by its number of requests in flight. Hosts without any
+     * completed requests yet are preferred so that all hosts gets measured.
+     */
+    private int getLeastLoadedHostIndex() {
+        int best = -1;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < participantHosts.size(); i++) {
+            final String host = participantHosts.get(i);
+            if (hasCapacity(host)) {
+                final HostStatistics stats = statistics.get(host);
+                // Unmeasured hosts scores below zero, fewest in flight first
+                final double score = stats.requests == 0 ? -1.0 / (stats.inFlight + 1)
+                        : (double) stats.averageNanos * (stats.inFlight + 1);
+                if (score < bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void acquire(String host) {
+        statistics.get(host).inFlight++;
+    }
+
+    /**
+     * Releases a host previously returned by this instance after the request
+     * to it has completed.
+     *
+     * @param host to release
+     * @param elapsedNanos time the request took
+     * @param success true if the request was successful
+     */
+    synchronized void releaseHost(String host, long elapsedNanos, boolean success) {
+        final HostStatistics stats = statistics.get(host);
+        if (stats != null) {
+            if (stats.inFlight > 0) {
+                stats.inFlight--;
+            }
+            if (success) {
+                stats.requests++;
+                stats.totalNanos += elapsedNanos;
+                stats.averageNanos = stats.requests == 1 ? elapsedNanos
+                        : (long) (LATENCY_SAMPLE_WEIGHT * elapsedNanos + (1 - LATENCY_SAMPLE_WEIGHT) * stats.averageNanos);
+            } else {
+                stats.failures++;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return copy of the statistics collected for each host
+     */
+    synchronized Map<String, HostStatistics> getStatistics() {
+        final Map<String, HostStatistics> result = new LinkedHashMap<>();
+        for (Map.Entry<String, HostStatistics> entry : statistics.entrySet()) {
+            result.put(entry.getKey(), new HostStatistics(entry.getValue()));
+        }
+        return result;
+    }
+
     synchronized int getHostIndexByRandom() {
         return random.nextInt(participantHosts.size());
     }
@@ -127,10 +270,56 @@ public class HostManager {
         // the host and others just decrease the currentIndex (it may set currentIndex to negative value)
         if (participantHosts.remove(host)) {
             currentIndex = currentIndex - 1;
+            notifyAll();
         }
     }
 
     synchronized boolean hasHost() {
         return !participantHosts.isEmpty();
     }
+
+    /**
+     * Requests statistics for a host.
+     */
+    static class HostStatistics {
+        private int inFlight;
+        private long requests;
+        private long failures;
+        private long totalNanos;
+        private long averageNanos;
+
+        HostStatistics() {
+        }
+
+        HostStatistics(HostStatistics other) {
+            inFlight = other.inFlight;
+            requests = other.requests;
+            failures = other.failures;
+            totalNanos = other.totalNanos;
+            averageNanos = other.averageNanos;
+        }
+
+        int getInFlight() {
+            return inFlight;
+        }
+
+        long getRequests() {
+            return requests;
+        }
+
+        long getFailures() {
+            return failures;
+        }
+
+        long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return moving average of the latency of the successful requests
+         */
+        long getAverageNanos() {
+            return averageNanos;
+        }
+    }
 }
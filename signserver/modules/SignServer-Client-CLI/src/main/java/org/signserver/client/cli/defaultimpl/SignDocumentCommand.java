@@ -45,6 +45,7 @@ import org.signserver.common.CryptoTokenOfflineException;
 import org.signserver.common.IllegalRequestException;
 import org.signserver.common.SignServerException;
 import org.signserver.protocol.ws.client.SignServerWSClientFactory;
+import static org.signserver.client.cli.defaultimpl.HTTPDocumentSigner.ADAPTIVE_LOAD_BALANCING;
 import static org.signserver.client.cli.defaultimpl.HTTPDocumentSigner.DEFAULT_LOAD_BALANCING;
 import static org.signserver.client.cli.defaultimpl.HTTPDocumentSigner.ROUND_ROBIN_LOAD_BALANCING;
 
@@ -148,6 +149,18 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
     /** Option LOAD_BALANCING. */
     public static final String LOAD_BALANCING = "loadbalancing";
 
+    /** Option MAXPERHOST. */
+    public static final String MAXPERHOST = "maxperhost";
+
+    /** Option STATS. */
+    public static final String STATS = "stats";
+
+    /** Option COMPRESS. */
+    public static final String COMPRESS = "compress";
+
+    /** Option HASHTHREADS. */
+    public static final String HASHTHREADS = "hashthreads";
+
     /** The command line options. */
     private static final Options OPTIONS;
 
@@ -221,6 +234,14 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
                 TEXTS.getString("TIMEOUT_DESCRIPTION"));
         OPTIONS.addOption(LOAD_BALANCING, true,
                 TEXTS.getString("LOAD_BALANCING_DESCRIPTION"));
+        OPTIONS.addOption(MAXPERHOST, true,
+                TEXTS.getString("MAXPERHOST_DESCRIPTION"));
+        OPTIONS.addOption(STATS, false,
+                TEXTS.getString("STATS_DESCRIPTION"));
+        OPTIONS.addOption(COMPRESS, false,
+                TEXTS.getString("COMPRESS_DESCRIPTION"));
+        OPTIONS.addOption(HASHTHREADS, true,
+                TEXTS.getString("HASHTHREADS_DESCRIPTION"));
         for (Option option : KeyStoreOptions.getKeyStoreOptions()) {
             OPTIONS.addOption(option);
         }
@@ -286,8 +307,21 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
     private String fileType;
     private String timeOutString;
     private int timeOutLimit;    
-    private boolean useLoadBalancing;
     private String loadBalancing;
+    private String maxPerHostString;
+    private int maxPerHost;
+
+    /** If statistics should be printed after running in batch mode. */
+    private boolean stats;
+
+    /** If the request should be sent compressed. */
+    private boolean compress;
+
+    /** Number of threads producing the signature input ahead of the requests. */
+    private Integer hashThreads;
+
+    /** Signature input being produced ahead in batch mode if requested. */
+    private SignatureInputPipeline pipeline;
 
     private final KeyStoreOptions keyStoreOptions = new KeyStoreOptions();
 
@@ -300,6 +334,9 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
     private FileSpecificHandlerFactory handlerFactory;
     
     private HostManager hostsManager;
+
+    /** Statistics collected in batch mode if requested. */
+    private TransferStatistics statistics;
     
     @Override
     public String getDescription() {
@@ -320,10 +357,13 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             .append("g) ").append(COMMAND).append(" -workerid 3 -indir ./input/ -outdir ./output/ -threads 5 -hosts primaryhost,secondaryhost").append(NL)
             .append("h) ").append(COMMAND).append(" -workerid 3 -indir ./input/ -outdir ./output/ -threads 5 -hosts primaryhost,secondaryhost,otherhost -timeout 5000").append(NL)
             .append("i) ").append(COMMAND).append(" -workerid 3 -indir ./input/ -outdir ./output/ -threads 5 -hosts host1,host2,host3 -loadbalancing ROUND_ROBIN -timeout 5000").append(NL)
-            .append("j) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so").append(NL)
-            .append("k) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so -keyaliasprompt").append(NL)
-            .append("l) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so -keyalias admin3").append(NL)
-            .append("m) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11_CONFIG -keystore sunpkcs11.cfg").append(NL);
+            .append("j) ").append(COMMAND).append(" -workerid 3 -indir ./input/ -outdir ./output/ -threads 10 -hosts host1,host2,host3 -loadbalancing ADAPTIVE -maxperhost 4 -stats").append(NL)
+            .append("k) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so").append(NL)
+            .append("l) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so -keyaliasprompt").append(NL)
+            .append("m) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so -keyalias admin3").append(NL)
+            .append("n) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11_CONFIG -keystore sunpkcs11.cfg").append(NL)
+            .append("o) ").append(COMMAND).append(" -workername XMLSigner -infile /tmp/document.xml -compress").append(NL)
+            .append("p) ").append(COMMAND).append(" -workername MSAuthCodeCMSSigner -indir ./input/ -outdir ./output/ -clientside -digestalgorithm SHA-256 -threads 5 -hashthreads 2").append(NL);
 
         ByteArrayOutputStream bout = new ByteArrayOutputStream();
         final HelpFormatter formatter = new HelpFormatter();
@@ -478,6 +518,12 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
         timeOutString = line.getOptionValue(TIMEOUT);      
                 
         loadBalancing = line.getOptionValue(LOAD_BALANCING, DEFAULT_LOAD_BALANCING);
+        maxPerHostString = line.getOptionValue(MAXPERHOST);
+        stats = line.hasOption(STATS);
+        compress = line.hasOption(COMPRESS);
+        if (line.hasOption(HASHTHREADS)) {
+            hashThreads = Integer.parseInt(line.getOptionValue(HASHTHREADS, null));
+        }
                 
         try {
             final ConsolePasswordReader passwordReader = createConsolePasswordReader();
@@ -543,6 +589,14 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
         if (threads != null && threads < 1) {
             throw new IllegalCommandArgumentsException("Number of threads must be > 0");
         }
+
+        if (inDir == null && hashThreads != null) {
+            throw new IllegalCommandArgumentsException("Can not specify -hashthreads unless -indir");
+        }
+
+        if (hashThreads != null && hashThreads < 1) {
+            throw new IllegalCommandArgumentsException("Number of hash threads must be > 0");
+        }
         
         if (startAll && oneFirst) {
             throw new IllegalCommandArgumentsException("Can not specify both -onefirst and -startall");
@@ -579,6 +633,10 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             if (fileType != null) {
                 throw new IllegalCommandArgumentsException("Can only use -filetype with -clientside");
             }
+
+            if (hashThreads != null) {
+                throw new IllegalCommandArgumentsException("Can only use -hashthreads with -clientside");
+            }
         }
 
         if (host != null && hosts != null) {
@@ -596,6 +654,18 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
         if (timeOutString != null && protocol != Protocol.HTTP) {
             throw new IllegalCommandArgumentsException("Can only use -timeout with protocol HTTP");
         }
+
+        if (maxPerHostString != null && protocol != Protocol.HTTP) {
+            throw new IllegalCommandArgumentsException("Can only use -maxperhost with protocol HTTP");
+        }
+
+        if (compress && protocol != Protocol.HTTP) {
+            throw new IllegalCommandArgumentsException("Can only use -compress with protocol HTTP");
+        }
+
+        if (stats && inDir == null) {
+            throw new IllegalCommandArgumentsException("Can not specify -stats unless -indir");
+        }
         
         if (host != null) {
             if (host.trim().isEmpty()) {
@@ -614,7 +684,7 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             throw new IllegalCommandArgumentsException("-loadbalancing can not be empty");
         }
 
-        if (!Arrays.asList(DEFAULT_LOAD_BALANCING, ROUND_ROBIN_LOAD_BALANCING).contains(loadBalancing)) {
+        if (!Arrays.asList(DEFAULT_LOAD_BALANCING, ROUND_ROBIN_LOAD_BALANCING, ADAPTIVE_LOAD_BALANCING).contains(loadBalancing)) {
             throw new IllegalCommandArgumentsException("Not supported -loadbalancing: " + loadBalancing);
         }     
                            
@@ -632,11 +702,20 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
         } else {
             timeOutLimit = -1;
         }
-        
-        useLoadBalancing = loadBalancing.equals(ROUND_ROBIN_LOAD_BALANCING);
+
+        if (maxPerHostString != null) {
+            try {
+                maxPerHost = Integer.parseInt(maxPerHostString);
+                if (maxPerHost < 1) {
+                    throw new IllegalCommandArgumentsException("Maximum number of requests per host must be > 0");
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalCommandArgumentsException("Illegal maximum number of requests per host: " + maxPerHostString);
+            }
+        }
 
         //  it is right time to initialize HostsManager after all validations
-        hostsManager = new HostManager(hosts, useLoadBalancing);
+        hostsManager = new HostManager(hosts, loadBalancing, maxPerHost);
     }
 
     /**
@@ -730,13 +809,13 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
                                                     keyStoreOptions.isUseHTTPS(),
                                                     workerName, username,
                                                     currentPassword, pdfPassword,
-                                                    metadata, timeOutLimit);
+                                                    metadata, timeOutLimit, compress);
                 } else {
                     signer = new HTTPDocumentSigner(hostsManager, port, servlet,
                                                     keyStoreOptions.isUseHTTPS(),
                                                     workerId, username,
                                                     currentPassword, pdfPassword,
-                                                    metadata, timeOutLimit);
+                                                    metadata, timeOutLimit, compress);
                 }
             }
         }
@@ -833,6 +912,8 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             OutputStream outStream = null;
 
             try (final FileSpecificHandler handler =
+                    pipeline != null && inFile != null ?
+                    pipeline.take(inFile) :
                     inFile != null ?
                     createFileSpecificHandler(handlerFactory, inFile, outFile, extraOptions) :
                     createFileSpecificHandler(handlerFactory, bytes, size, outFile, extraOptions)) {
@@ -874,6 +955,10 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
                 
                 // Take stop time
                 final long estimatedTime = System.nanoTime() - startTime;
+
+                if (statistics != null) {
+                    statistics.registerSuccess(inFile == null ? size : inFile.length(), estimatedTime);
+                }
                 
                 if (LOG.isInfoEnabled()) {
                     LOG.info("Wrote " + outFile + ".");
@@ -962,6 +1047,9 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             }
         }
         if (cleanUpOutputFileOnFailure) {
+            if (statistics != null) {
+                statistics.registerFailure();
+            }
             cleanUpOutputFileOnFailure(outFile);
         }
         return success;
@@ -1036,6 +1124,21 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
                 }
                 final int threadCount = threads > inFiles.length ? inFiles.length : threads;
                 final ArrayList<TransferThread> consumers = new ArrayList<>();
+
+                if (stats) {
+                    statistics = new TransferStatistics();
+                }
+
+                // Produce the signature input of the next files while the
+                // transfer threads are busy with the requests
+                if (hashThreads != null) {
+                    pipeline = new SignatureInputPipeline(inFiles, hashThreads, threadCount + hashThreads, digestAlgorithm, new SignatureInputPipeline.HandlerCreator() {
+                        @Override
+                        public FileSpecificHandler createHandler(final File file) throws IOException {
+                            return createFileSpecificHandler(handlerFactory, file, new File(outDir, file.getName()), extraOptions);
+                        }
+                    });
+                }
                 
                 final Thread.UncaughtExceptionHandler handler = new Thread.UncaughtExceptionHandler() {
                     @Override
@@ -1072,6 +1175,15 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
                         LOG.debug("Interupted when waiting for thread: " + ex.getMessage());
                     }
                 }
+
+                if (pipeline != null) {
+                    pipeline.close();
+                }
+                
+                if (statistics != null) {
+                    statistics.printReport(out, System.nanoTime(),
+                            protocol == Protocol.HTTP ? hostsManager.getStatistics() : null);
+                }
                 
                 if (producer.isAborted()) {
                     throw new CommandFailureException("Aborted due to failure.");
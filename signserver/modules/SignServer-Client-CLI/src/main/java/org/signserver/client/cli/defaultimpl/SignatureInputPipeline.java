@@ -0,0 +1,263 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.client.cli.defaultimpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import org.signserver.common.IllegalRequestException;
+
+/**
+ * Produces the signature input of the files in batch mode on a dedicated
+ * pool of threads ahead of the transfer threads.
+ *
+ * Phase 1 of the file specific handlers (i.e. reading and hashing the input
+ * file for client-side hashing) of the next files then overlaps with the
+ * requests and assembling of the previous files. At most a window of files
+ * is prepared ahead so that the number of open handlers stays bounded.
+ *
+ * Files are prepared in the order they are expected to be requested. A file
+ * requested again (for instance after a password failure) is prepared again
+ * by the calling thread.
+ *
+ * All accessible methods in this class are thread-safe.
+ *
+ * @version $Id$
+ */
+public class SignatureInputPipeline implements AutoCloseable {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(SignatureInputPipeline.class);
+
+    /** Threads producing the signature input. */
+    private static final ThreadFactory HASH_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "hash-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /**
+     * Creates the file specific handler for an input file.
+     */
+    public interface HandlerCreator {
+
+        /**
+         * @param inFile to create the handler for
+         * @return The new handler
+         * @throws IOException in case the input file could not be used
+         */
+        FileSpecificHandler createHandler(File inFile) throws IOException;
+    }
+
+    private final File[] files;
+    private final int window;
+    private final String digestAlgorithm;
+    private final HandlerCreator creator;
+    private final ExecutorService executor;
+
+    /** Files being prepared or prepared but not yet taken. */
+    private final Map<File, Future<FileSpecificHandler>> prepared = new LinkedHashMap<>();
+
+    /** Files already prepared or taken. */
+    private final Set<File> started = new HashSet<>();
+
+    /** Index of the next file to prepare ahead. */
+    private int next;
+
+    private boolean closed;
+
+    /**
+     * Creates a new instance and starts preparing the first files.
+     *
+     * @param files in the order they will be requested
+     * @param threads number of threads producing the signature input
+     * @param window maximum number of files prepared ahead
+     * @param digestAlgorithm to produce the signature input with
+     * @param creator of the handlers
+     */
+    public SignatureInputPipeline(final File[] files, final int threads, final int window, final String digestAlgorithm, final HandlerCreator creator) {
+        this.files = files;
+        this.window = window;
+        this.digestAlgorithm = digestAlgorithm;
+        this.creator = creator;
+        this.executor = Executors.newFixedThreadPool(threads, HASH_THREAD_FACTORY);
+        synchronized (this) {
+            prepareAhead();
+        }
+    }
+
+    /**
+     * Gets the handler for a file with the signature input already produced,
+     * waiting for it if it is still being prepared. The caller is responsible
+     * for closing the handler.
+     *
+     * @param inFile to get the handler for
+     * @return Handler returning the prepared signature input
+     * @throws IOException in case of issues reading the input file
+     * @throws NoSuchAlgorithmException if the digest algorithm is not supported
+     * @throws IllegalRequestException for example: if file is already signed
+     */
+    public FileSpecificHandler take(final File inFile) throws IOException, NoSuchAlgorithmException, IllegalRequestException {
+        final Future<FileSpecificHandler> future;
+        synchronized (this) {
+            future = prepared.remove(inFile);
+            started.add(inFile);
+            prepareAhead();
+        }
+
+        if (future == null) {
+            return prepare(inFile);
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while producing signature input for " + inFile.getName(), ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) cause;
+            } else if (cause instanceof IllegalRequestException) {
+                throw (IllegalRequestException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Stops preparing files and closes the handlers of files prepared but not
+     * taken.
+     */
+    @Override
+    public void close() {
+        final Map<File, Future<FileSpecificHandler>> remaining;
+        synchronized (this) {
+            closed = true;
+            remaining = new LinkedHashMap<>(prepared);
+            prepared.clear();
+        }
+        for (Map.Entry<File, Future<FileSpecificHandler>> entry : remaining.entrySet()) {
+            final Future<FileSpecificHandler> future = entry.getValue();
+            if (!future.cancel(false)) {
+                // Already being prepared, wait for it to close the handler
+                try {
+                    future.get().close();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Preparing " + entry.getKey().getName() + " failed: " + ex.getCause());
+                    }
+                }
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts preparing the next files until the window is full.
+     */
+    private void prepareAhead() {
+        while (!closed && prepared.size() < window && next < files.length) {
+            final File file = files[next++];
+            if (started.add(file)) {
+                prepared.put(file, executor.submit(new Callable<FileSpecificHandler>() {
+                    @Override
+                    public FileSpecificHandler call() throws Exception {
+                        return prepare(file);
+                    }
+                }));
+            }
+        }
+    }
+
+    /**
+     * Creates the handler and produces the signature input.
+     */
+    private FileSpecificHandler prepare(final File inFile) throws IOException, NoSuchAlgorithmException, IllegalRequestException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Producing signature input for " + inFile.getName());
+        }
+        final FileSpecificHandler handler = creator.createHandler(inFile);
+        try {
+            return new PreparedHandler(handler, handler.produceSignatureInput(digestAlgorithm));
+        } catch (IOException | NoSuchAlgorithmException | IllegalRequestException | RuntimeException ex) {
+            handler.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Handler returning the already produced signature input and otherwise
+     * delegating to the handler it was produced by.
+     */
+    private static class PreparedHandler implements FileSpecificHandler {
+        private final FileSpecificHandler handler;
+        private final InputSource signatureInput;
+
+        PreparedHandler(final FileSpecificHandler handler, final InputSource signatureInput) {
+            this.handler = handler;
+            this.signatureInput = signatureInput;
+        }
+
+        @Override
+        public boolean isSignatureInputHash() {
+            return handler.isSignatureInputHash();
+        }
+
+        @Override
+        public InputSource produceSignatureInput(final String algorithm) {
+            return signatureInput;
+        }
+
+        @Override
+        public void assemble(final OutputCollector oc) throws IOException, IllegalArgumentException {
+            handler.assemble(oc);
+        }
+
+        @Override
+        public void close() {
+            handler.close();
+        }
+
+        @Override
+        public String getFileTypeIdentifier() {
+            return handler.getFileTypeIdentifier();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.client.cli.defaultimpl;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects statistics about the files processed in batch mode and prints a
+ * report with throughput and response time percentiles.
+ *
+ * @version $Id$
+ */
+public class TransferStatistics {
+
+    private final long startTime;
+    private long[] latencies = new long[64];
+    private int successes;
+    private int failures;
+    private long bytes;
+
+    public TransferStatistics() {
+        this(System.nanoTime());
+    }
+
+    TransferStatistics(final long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Registers a successfully processed file.
+     *
+     * @param size of the input
+     * @param elapsedNanos time it took to process the file
+     */
+    public synchronized void registerSuccess(final long size, final long elapsedNanos) {
+        if (successes == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[successes++] = elapsedNanos;
+        if (size > 0) {
+            bytes += size;
+        }
+    }
+
+    /**
+     * Registers a file that could not be processed.
+     */
+    public synchronized void registerFailure() {
+        failures++;
+    }
+
+    public synchronized int getSuccesses() {
+        return successes;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Get a percentile of the response times of the successful files.
+     *
+     * @param percentile between 0 and 100
+     * @return the response time in nanoseconds or 0 if no successful files
+     */
+    public synchronized long getPercentile(final double percentile) {
+        if (successes == 0) {
+            return 0;
+        }
+        final long[] sorted = Arrays.copyOf(latencies, successes);
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Prints the report.
+     *
+     * @param out to print to
+     * @param endTime when the processing ended, from System.nanoTime()
+     * @param hosts statistics for each host or null
+     */
+    public synchronized void printReport(final PrintStream out, final long endTime,
+            final Map<String, HostManager.HostStatistics> hosts) {
+        final double seconds = (endTime - startTime) / 1e9;
+
+        out.println("Statistics:");
+        out.println(String.format(Locale.ENGLISH, "  Files:        %d succeeded, %d failed", successes, failures));
+        out.println(String.format(Locale.ENGLISH, "  Bytes:        %d", bytes));
+        out.println(String.format(Locale.ENGLISH, "  Elapsed:      %.3f s", seconds));
+        if (seconds > 0) {
+            out.println(String.format(Locale.ENGLISH, "  Throughput:   %.2f files/s, %.2f MB/s",
+                    successes / seconds, bytes / seconds / (1024 * 1024)));
+        }
+        if (successes > 0) {
+            out.println(String.format(Locale.ENGLISH, "  Latency (ms): min %d, p50 %d, p90 %d, p99 %d, max %d",
+                    toMillis(getPercentile(0)), toMillis(getPercentile(50)),
+                    toMillis(getPercentile(90)), toMillis(getPercentile(99)),
+                    toMillis(getPercentile(100))));
+        }
+        if (hosts != null) {
+            for (Map.Entry<String, HostManager.HostStatistics> entry : hosts.entrySet()) {
+                final HostManager.HostStatistics host = entry.getValue();
+                final long average = host.getRequests() == 0 ? 0 : host.getTotalNanos() / host.getRequests();
+                out.println(String.format(Locale.ENGLISH, "  Host %s: %d requests, %d failed, average %d ms",
+                        entry.getKey(), host.getRequests(), host.getFailures(), toMillis(average)));
+            }
+        }
+    }
+
+    private static long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
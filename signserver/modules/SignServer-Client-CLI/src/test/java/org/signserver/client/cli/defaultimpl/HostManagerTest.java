@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.List;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
 import org.junit.Test;
 
 /**
@@ -141,4 +142,78 @@ public class HostManagerTest {
         assertEquals("host4", hostManager.getNextHostForRequest());
     }
 
+    /**
+     * Test checking that with ADAPTIVE load balancing all hosts are tried
+     * first and then the host with the lowest latency weighted by the
+     * number of requests in flight is chosen.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void test05GetNextHostWithAdaptiveLoadBalancing() throws Exception {
+        List<String> participantHosts = new ArrayList<>();
+        participantHosts.add("host1");
+        participantHosts.add("host2");
+        participantHosts.add("host3");
+
+        MockHostManager hostManager = new MockHostManager(participantHosts, HTTPDocumentSigner.ADAPTIVE_LOAD_BALANCING, 0);
+
+        // Unmeasured hosts first
+        assertEquals("host2", hostManager.getNextHostForRequest());
+        assertEquals("host1", hostManager.getNextHostForRequest());
+        assertEquals("host3", hostManager.getNextHostForRequest());
+
+        hostManager.releaseHost("host1", 10, true);
+        hostManager.releaseHost("host2", 50, true);
+        hostManager.releaseHost("host3", 30, true);
+
+        // host1 is fastest even with one request in flight (2 * 10 < 30)
+        assertEquals("host1", hostManager.getNextHostForRequest());
+        assertEquals("host1", hostManager.getNextHostForRequest());
+
+        // A slow response raises the average for host1 so host3 is preferred
+        hostManager.releaseHost("host1", 100, true);
+        assertEquals("host3", hostManager.getNextHostForRequestWhenFailure());
+
+        assertEquals(2, hostManager.getStatistics().get("host1").getRequests());
+        assertEquals(1, hostManager.getStatistics().get("host1").getInFlight());
+    }
+
+    /**
+     * Test checking that hosts having the maximum number of requests in
+     * flight are skipped and that requests wait until a host is released.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void test06GetNextHostWithMaxPerHost() throws Exception {
+        List<String> participantHosts = new ArrayList<>();
+        participantHosts.add("host1");
+        participantHosts.add("host2");
+
+        final MockHostManager hostManager = new MockHostManager(participantHosts, HTTPDocumentSigner.DEFAULT_LOAD_BALANCING, 1);
+
+        assertEquals("host1", hostManager.getNextHostForRequest());
+        assertEquals("host2", hostManager.getNextHostForRequest());
+
+        final List<String> result = new ArrayList<>();
+        final Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                final String host = hostManager.getNextHostForRequest();
+                synchronized (result) {
+                    result.add(host);
+                }
+            }
+        };
+        waiting.start();
+        waiting.join(200);
+        assertTrue("should wait for a free host", waiting.isAlive());
+
+        hostManager.releaseHost("host2", 10, true);
+        waiting.join(10000);
+        synchronized (result) {
+            assertEquals("host2", result.get(0));
+        }
+    }
 }
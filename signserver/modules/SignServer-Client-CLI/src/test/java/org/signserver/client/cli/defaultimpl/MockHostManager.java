@@ -26,6 +26,10 @@ public class MockHostManager extends HostManager {
         super(hosts, useLoadBalancing);
     }
 
+    public MockHostManager(List<String> hosts, String loadBalancing, int maxPerHost) {
+        super(hosts, loadBalancing, maxPerHost);
+    }
+
     @Override
     int getHostIndexByRandom() {
         return 1;
@@ -0,0 +1,170 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.client.cli.defaultimpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SignatureInputPipeline class.
+ *
+ * @version $Id$
+ */
+public class SignatureInputPipelineTest {
+
+    private static File[] createFiles(final int count) {
+        final File[] result = new File[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new File("file" + i);
+        }
+        return result;
+    }
+
+    /**
+     * Tests that each file is prepared once with the digest algorithm and
+     * that the prepared signature input is returned by the handler.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testTakeInOrder() throws Exception {
+        final File[] files = createFiles(5);
+        final MockCreator creator = new MockCreator();
+        try (SignatureInputPipeline instance = new SignatureInputPipeline(files, 2, 3, "SHA-256", creator)) {
+            for (File file : files) {
+                try (FileSpecificHandler handler = instance.take(file)) {
+                    final InputSource input = handler.produceSignatureInput("SHA-256");
+                    assertEquals("file name", file.getName(), input.getFileName());
+                    assertSame("same input", input, handler.produceSignatureInput("SHA-256"));
+                    assertEquals("type", "MOCK", handler.getFileTypeIdentifier());
+                }
+            }
+        }
+        assertEquals("handlers", files.length, creator.handlers.size());
+        for (MockHandler handler : creator.handlers) {
+            assertEquals("produced once", 1, handler.produced);
+            assertEquals("algorithm", "SHA-256", handler.algorithm);
+            assertTrue("closed", handler.closed);
+        }
+    }
+
+    /**
+     * Tests that at most the window of files is prepared ahead and that the
+     * handlers of files not taken are closed.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testWindow() throws Exception {
+        final MockCreator creator = new MockCreator();
+        final SignatureInputPipeline instance = new SignatureInputPipeline(createFiles(10), 1, 2, "SHA-256", creator);
+        instance.close();
+
+        assertTrue("at most window prepared: " + creator.handlers.size(), creator.handlers.size() <= 2);
+        for (MockHandler handler : creator.handlers) {
+            assertTrue("closed", handler.closed);
+        }
+    }
+
+    /**
+     * Tests that a failure preparing a file is thrown when it is taken.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFailure() throws Exception {
+        final File[] files = createFiles(2);
+        final MockCreator creator = new MockCreator();
+        creator.failing = files[0];
+        try (SignatureInputPipeline instance = new SignatureInputPipeline(files, 1, 2, "SHA-256", creator)) {
+            try {
+                instance.take(files[0]);
+                fail("Should have thrown FileNotFoundException");
+            } catch (FileNotFoundException expected) { // NOPMD
+                // OK
+            }
+            instance.take(files[1]).close();
+        }
+    }
+
+    /**
+     * Tests that a file taken again is prepared again.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testTakeAgain() throws Exception {
+        final File[] files = createFiles(1);
+        final MockCreator creator = new MockCreator();
+        try (SignatureInputPipeline instance = new SignatureInputPipeline(files, 1, 1, "SHA-256", creator)) {
+            instance.take(files[0]).close();
+            instance.take(files[0]).close();
+        }
+        assertEquals("handlers", 2, creator.handlers.size());
+    }
+
+    private static class MockCreator implements SignatureInputPipeline.HandlerCreator {
+        private final List<MockHandler> handlers = new CopyOnWriteArrayList<>();
+        private volatile File failing;
+
+        @Override
+        public FileSpecificHandler createHandler(final File inFile) throws IOException {
+            if (inFile.equals(failing)) {
+                throw new FileNotFoundException(inFile.getName());
+            }
+            final MockHandler handler = new MockHandler(inFile);
+            handlers.add(handler);
+            return handler;
+        }
+    }
+
+    private static class MockHandler implements FileSpecificHandler {
+        private final File inFile;
+        private volatile int produced;
+        private volatile String algorithm;
+        private volatile boolean closed;
+
+        MockHandler(final File inFile) {
+            this.inFile = inFile;
+        }
+
+        @Override
+        public boolean isSignatureInputHash() {
+            return true;
+        }
+
+        @Override
+        public InputSource produceSignatureInput(final String algorithm) {
+            this.produced++;
+            this.algorithm = algorithm;
+            return new InputSource(new ByteArrayInputStream(new byte[32]), 32, inFile.getName());
+        }
+
+        @Override
+        public void assemble(final OutputCollector oc) {
+            throw new UnsupportedOperationException("Not implemented");
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public String getFileTypeIdentifier() {
+            return "MOCK";
+        }
+    }
+}
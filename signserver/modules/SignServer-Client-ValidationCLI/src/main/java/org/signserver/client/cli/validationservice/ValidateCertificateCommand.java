@@ -14,29 +14,41 @@ package org.signserver.client.cli.validationservice;
 
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
 import org.apache.commons.cli.*;
+import org.apache.cxf.configuration.jsse.TLSClientParameters;
+import org.apache.cxf.endpoint.Client;
+import org.apache.cxf.frontend.ClientProxy;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.bouncycastle.util.encoders.Base64;
 import org.cesecore.util.CertTools;
 import org.signserver.cli.CommandLineInterface;
 import org.signserver.cli.spi.AbstractCommand;
 import org.signserver.cli.spi.CommandFailureException;
 import org.signserver.cli.spi.IllegalCommandArgumentsException;
 import org.signserver.client.cli.defaultimpl.HTTPException;
-import org.signserver.common.RequestAndResponseManager;
+import org.signserver.client.cli.validationservice.gen.IllegalRequestException_Exception;
+import org.signserver.client.cli.validationservice.gen.SignServerException_Exception;
+import org.signserver.client.cli.validationservice.gen.ValidationResponse;
+import org.signserver.client.cli.validationservice.gen.ValidationWS;
+import org.signserver.client.cli.validationservice.gen.ValidationWSService;
 import org.signserver.common.SignServerUtil;
-import org.signserver.protocol.ws.ProcessRequestWS;
-import org.signserver.protocol.ws.ProcessResponseWS;
-import org.signserver.protocol.ws.client.*;
-import org.signserver.validationservice.common.ValidateRequest;
+import org.signserver.protocol.ws.client.WSClientUtil;
 import org.signserver.validationservice.common.ValidateResponse;
 import org.signserver.validationservice.common.Validation;
 import org.signserver.validationservice.common.Validation.Status;
@@ -52,6 +64,9 @@ public class ValidateCertificateCommand extends AbstractCommand {
 
     private static final int DEFAULT_PORT = 8080;
     private static final int DEFAULT_SSLPORT = 8442;
+
+    /** Default URL of the validation webservice. */
+    private static final String DEFAULT_WS_SERVLET = "/signserver/ValidationWSService/ValidationWS";
     
     /** System-specific new line characters. **/
     private static final String NL = System.getProperty("line.separator");
@@ -62,6 +77,7 @@ public class ValidateCertificateCommand extends AbstractCommand {
     public static final String OPTION_HELP = "help";
     public static final String OPTION_SERVICE = "service";
     public static final String OPTION_CERT = "cert";
+    public static final String OPTION_CERTLIST = "certlist";
     public static final String OPTION_SILENT = "silent";
     public static final String OPTION_PEM = "pem";
     public static final String OPTION_DER = "der";
@@ -104,6 +120,7 @@ public class ValidateCertificateCommand extends AbstractCommand {
     private String[] hosts = null;
     private int port = DEFAULT_PORT;
     private File certPath = null;
+    private File certListPath = null;
     private String trustStorePath = null;
     private String trustStorePwd = null;
     private boolean useSSL = false;
@@ -120,55 +137,71 @@ public class ValidateCertificateCommand extends AbstractCommand {
         Option pem = new Option(OPTION_PEM, false, "Certificate is in PEM format (Default).");
         Option der = new Option(OPTION_DER, false, "Certificate is in DER format.");
 
-        OptionBuilder.withArgName("service-name");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("The name or id of the validation service to process request. (Required)");
-        Option serviceOption = OptionBuilder.create(OPTION_SERVICE);
-
-        OptionBuilder.withArgName("cert-file");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("Path to certificate file (DER or PEM) (Required).");
-        Option certOption = OptionBuilder.create(OPTION_CERT);
-
-        OptionBuilder.withArgName("hosts");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("A ',' separated string containing the hostnames of the validation service nodes. Ex 'host1.someorg.org,host2.someorg.org'. When using the HTTP protocol, only one host name can be specified. (Required).");
-        Option hostsOption = OptionBuilder.create(OPTION_HOSTS);
-
-        OptionBuilder.withArgName("port");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("Remote port of service (Default is 8080 or 8442 for SSL).");
-        Option portOption = OptionBuilder.create(OPTION_PORT);
-
-        OptionBuilder.withArgName("certpurposes");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("A ',' separated string containing requested certificate purposes.");
-        Option usagesOption = OptionBuilder.create(OPTION_CERTPURPOSES);
-
-        OptionBuilder.withArgName("jks-file");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("Path to JKS truststore containing trusted CA for SSL Server certificates.");
-        Option truststore = OptionBuilder.create(OPTION_TRUSTSTORE);
-
-        OptionBuilder.withArgName("password");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("Password to unlock the truststore.");
-        Option truststorepwd = OptionBuilder.create(OPTION_TRUSTSTOREPWD);
+        Option serviceOption = Option.builder(OPTION_SERVICE)
+                .argName("service-name")
+                .hasArg()
+                .desc("The name or id of the validation service to process request. (Required)")
+                .build();
+
+        Option certOption = Option.builder(OPTION_CERT)
+                .argName("cert-file")
+                .hasArg()
+                .desc("Path to certificate file (DER or PEM) (Required unless -certlist is used).")
+                .build();
+
+        Option certListOption = Option.builder(OPTION_CERTLIST)
+                .argName("list-file")
+                .hasArg()
+                .desc("Path to a text file listing the paths of the certificate files to validate, one per line. Can be used instead of -cert. When using the webservice protocol all certificates are sent in one batch request.")
+                .build();
+
+        Option hostsOption = Option.builder(OPTION_HOSTS)
+                .argName("hosts")
+                .hasArg()
+                .desc("A ',' separated string containing the hostnames of the validation service nodes. Ex 'host1.someorg.org,host2.someorg.org'. When using the HTTP protocol, only one host name can be specified. (Required).")
+                .build();
+
+        Option portOption = Option.builder(OPTION_PORT)
+                .argName("port")
+                .hasArg()
+                .desc("Remote port of service (Default is 8080 or 8442 for SSL).")
+                .build();
+
+        Option usagesOption = Option.builder(OPTION_CERTPURPOSES)
+                .argName("certpurposes")
+                .hasArg()
+                .desc("A ',' separated string containing requested certificate purposes.")
+                .build();
+
+        Option truststore = Option.builder(OPTION_TRUSTSTORE)
+                .argName("jks-file")
+                .hasArg()
+                .desc("Path to JKS truststore containing trusted CA for SSL Server certificates.")
+                .build();
+
+        Option truststorepwd = Option.builder(OPTION_TRUSTSTOREPWD)
+                .argName("password")
+                .hasArg()
+                .desc("Password to unlock the truststore.")
+                .build();
         
-        OptionBuilder.withArgName("servlet-url");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("URL to the webservice servlet. Default: " +
-        		SignServerWSClientFactory.DEFAULT_WSDL_URL + " when using the webservice protocol, otherwise /signserver/process");
-        Option servlet = OptionBuilder.create(OPTION_SERVLET);
+        Option servlet = Option.builder(OPTION_SERVLET)
+                .argName("servlet-url")
+                .hasArg()
+                .desc("URL to the webservice servlet. Default: " +
+        		DEFAULT_WS_SERVLET + " when using the webservice protocol, otherwise /signserver/process")
+                .build();
         
-        OptionBuilder.withArgName("protocol");
-        OptionBuilder.hasArg();
-        OptionBuilder.withDescription("Protocol to use, either WEBSERVICES or HTTP. Default: WEBSERVICES.");
-        Option protocol = OptionBuilder.create(OPTION_PROTOCOL);
+        Option protocol = Option.builder(OPTION_PROTOCOL)
+                .argName("protocol")
+                .hasArg()
+                .desc("Protocol to use, either WEBSERVICES or HTTP. Default: WEBSERVICES.")
+                .build();
         
         options.addOption(help);
         options.addOption(serviceOption);
         options.addOption(certOption);
+        options.addOption(certListOption);
         options.addOption(hostsOption);
         options.addOption(portOption);
         options.addOption(usagesOption);
@@ -195,11 +228,13 @@ public class ValidateCertificateCommand extends AbstractCommand {
         append("   2   : Certificate is not yet valid").append(NL).append("   3   : Certificate have expired").append(NL).
         append("   4   : Certificate doesn't verify").append(NL).append("   5   : CA Certificate have been revoked").append(NL).
         append("   6   : CA Certificate is not yet valid").append(NL).append("   7   : CA Certificate have expired").append(NL).
-        append("   8   : Certificate have no valid certificate purpose").append(NL).append(NL).
+        append("   8   : Certificate have no valid certificate purpose").append(NL).
+        append("When validating multiple certificates the value for the first certificate not valid is returned.").append(NL).append(NL).
         append("Sample usages:").append(NL).
         append("a) ").append(COMMAND).append(" -service CertValidationWorker -hosts localhost -cert").append(NL).append("    certificate.pem").append(NL).
         append("b) ").append(COMMAND).append(" -service 5806 -hosts localhost -cert certificate.pem").append(NL).append("    -truststore p12/truststore.jks -truststorepwd changeit").append(NL).
-        append("c) ").append(COMMAND).append(" -service CertValidationWorker -hosts localhost -cert certificate.pem -protocol HTTP").append(NL);
+        append("c) ").append(COMMAND).append(" -service CertValidationWorker -hosts localhost -cert certificate.pem -protocol HTTP").append(NL).
+        append("d) ").append(COMMAND).append(" -service CertValidationWorker -hosts localhost -certlist").append(NL).append("    certificates.txt").append(NL);
 
         ByteArrayOutputStream bout = new ByteArrayOutputStream();
         final HelpFormatter formatter = new HelpFormatter();
@@ -320,6 +355,12 @@ public class ValidateCertificateCommand extends AbstractCommand {
                     }
                 }
 
+                if (cmd.hasOption(OPTION_CERT) && cmd.hasOption(OPTION_CERTLIST)) {
+                    err.println("Error, only one of -" + OPTION_CERT + " and -" + OPTION_CERTLIST + " options can be specified.");
+                    printUsage();
+                    return RETURN_BADARGUMENT;
+                }
+
                 if (cmd.hasOption(OPTION_CERT) && cmd.getOptionValue(OPTION_CERT) != null) {
                     certPath = new File(cmd.getOptionValue(OPTION_CERT));
                     if (!certPath.exists() || !certPath.canRead() || certPath.isDirectory()) {
@@ -327,14 +368,21 @@ public class ValidateCertificateCommand extends AbstractCommand {
                         printUsage();
                         return RETURN_BADARGUMENT;
                     }
+                } else if (cmd.hasOption(OPTION_CERTLIST) && cmd.getOptionValue(OPTION_CERTLIST) != null) {
+                    certListPath = new File(cmd.getOptionValue(OPTION_CERTLIST));
+                    if (!certListPath.exists() || !certListPath.canRead() || certListPath.isDirectory()) {
+                        err.println("Error, the certificate list file must exist and be readable by the user.");
+                        printUsage();
+                        return RETURN_BADARGUMENT;
+                    }
                 } else {
-                    err.println("Error, the certificate to validate must be specified with the -" + OPTION_CERT + " option.");
+                    err.println("Error, the certificate to validate must be specified with the -" + OPTION_CERT + " or -" + OPTION_CERTLIST + " option.");
                     printUsage();
                     return RETURN_BADARGUMENT;
                 }
                 
                 // set the default servlet URL value
-                servlet = SignServerWSClientFactory.DEFAULT_WSDL_URL;
+                servlet = DEFAULT_WS_SERVLET;
                 
                 if (cmd.hasOption(OPTION_SERVLET) &&
                 		cmd.getOptionValue(OPTION_SERVLET) != null) {
@@ -379,33 +427,26 @@ public class ValidateCertificateCommand extends AbstractCommand {
 
     private int run() throws Exception {
 
-        
-        // read certificate
-        X509Certificate cert = null;
-        try (FileInputStream fis = new FileInputStream(certPath)) {
-            if (pemFlag) {
-                Collection<?> certs = CertTools.getCertsFromPEM(fis);
-                if (certs.iterator().hasNext()) {
-                    cert = (X509Certificate) certs.iterator().next();
-                }
-            } else {
-                byte[] data = new byte[fis.available()];
-                fis.read(data, 0, fis.available());
-                cert = (X509Certificate) CertTools.getCertfromByteArray(data);
-            }
-        }
+        final List<File> certFiles = certListPath == null ? Collections.singletonList(certPath) : readCertList(certListPath);
 
-        if (cert == null) {
-            println("Error, Certificate in file " + certPath + " not read succesfully.");
-        }
+        // read certificates
+        final List<X509Certificate> certs = new ArrayList<>(certFiles.size());
+        for (File certFile : certFiles) {
+            X509Certificate cert = readCertificate(certFile);
 
-        println("\n\nValidating certificate with: ");
-        println("  Subject    : " + cert.getSubjectDN().toString());
-        println("  Issuer     : " + cert.getIssuerDN().toString());
-        println("  Valid From : " + cert.getNotBefore());
-        println("  Valid To   : " + cert.getNotAfter());
+            if (cert == null) {
+                println("Error, Certificate in file " + certFile + " not read succesfully.");
+            }
 
-        println("\n");
+            println("\n\nValidating certificate with: ");
+            println("  Subject    : " + cert.getSubjectDN().toString());
+            println("  Issuer     : " + cert.getIssuerDN().toString());
+            println("  Valid From : " + cert.getNotBefore());
+            println("  Valid To   : " + cert.getNotAfter());
+
+            println("\n");
+            certs.add(cert);
+        }
         
         // set up trust
         SSLSocketFactory sslf = null;
@@ -414,18 +455,21 @@ public class ValidateCertificateCommand extends AbstractCommand {
         }
 
         // validate
-        final ValidateResponse vresp;
+        final List<ValidateResponse> vresps;
         switch (protocol) {
         case WEBSERVICES:
-            vresp = runWS(sslf, cert);
+            vresps = runWS(sslf, certs);
             break;
         case HTTP:
-            try {
-                vresp = runHTTP(sslf, cert);
-            } catch (HTTPException ex) {
-                println("Failure: HTTP error: " + ex.getResponseCode() + ": " +
-                        ex.getResponseMessage());
-                return RETURN_ERROR;
+            vresps = new ArrayList<>(certs.size());
+            for (int i = 0; i < certs.size(); i++) {
+                try {
+                    vresps.add(runHTTP(sslf, certs.get(i), certFiles.get(i)));
+                } catch (HTTPException ex) {
+                    println("Failure: HTTP error: " + ex.getResponseCode() + ": " +
+                            ex.getResponseMessage());
+                    return RETURN_ERROR;
+                }
             }
             break;
         default:
@@ -434,47 +478,145 @@ public class ValidateCertificateCommand extends AbstractCommand {
         
         
         // output result
-        String certificatePurposes = vresp.getValidCertificatePurposes();
-        println("Valid Certificate Purposes:\n  " + (certificatePurposes == null ? "" : certificatePurposes));
-        Validation validation = vresp.getValidation();
-        println("Certificate Status:\n  " + validation.getStatus());
+        int result = RETURN_VALID;
+        for (int i = 0; i < vresps.size(); i++) {
+            final ValidateResponse vresp = vresps.get(i);
+            if (certFiles.size() > 1) {
+                println("Certificate file:\n  " + certFiles.get(i));
+            }
+            String certificatePurposes = vresp.getValidCertificatePurposes();
+            println("Valid Certificate Purposes:\n  " + (certificatePurposes == null ? "" : certificatePurposes));
+            Validation validation = vresp.getValidation();
+            println("Certificate Status:\n  " + validation.getStatus());
+
+            if (result == RETURN_VALID) {
+                result = getReturnValue(validation.getStatus());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the list of certificate files, ignoring empty lines and lines
+     * starting with '#'.
+     */
+    private static List<File> readCertList(final File listFile) throws IOException {
+        final List<File> result = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(listFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    final File file = new File(line);
+                    if (!file.exists() || !file.canRead() || file.isDirectory()) {
+                        throw new IOException("The certificate file " + file + " must exist and be readable by the user");
+                    }
+                    result.add(file);
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IOException("No certificate files listed in " + listFile);
+        }
+        return result;
+    }
 
-        return getReturnValue(validation.getStatus());
+    private X509Certificate readCertificate(final File certFile) throws Exception {
+        X509Certificate cert = null;
+        try (FileInputStream fis = new FileInputStream(certFile)) {
+            if (pemFlag) {
+                Collection<?> certs = CertTools.getCertsFromPEM(fis);
+                if (certs.iterator().hasNext()) {
+                    cert = (X509Certificate) certs.iterator().next();
+                }
+            } else {
+                byte[] data = new byte[fis.available()];
+                fis.read(data, 0, fis.available());
+                cert = (X509Certificate) CertTools.getCertfromByteArray(data);
+            }
+        }
+        return cert;
     }
     
     /**
-     * Run validation using the webservice interface.
+     * Run validation using the validation webservice. All certificates are
+     * sent in one batch request, to the first host that answers.
      * 
      * @param sslf SSL socket factory
-     * @param cert Certificate to validate
-     * @return The validation response
+     * @param certs Certificates to validate
+     * @return The validation responses in the same order
      * @throws CertificateEncodingException
      * @throws IOException
      */
-    private ValidateResponse runWS(final SSLSocketFactory sslf, final X509Certificate cert)
+    private List<ValidateResponse> runWS(final SSLSocketFactory sslf, final List<X509Certificate> certs)
             throws CertificateEncodingException, IOException {
-        SignServerWSClientFactory fact = new SignServerWSClientFactory();
-        ISignServerWSClient client = fact.generateSignServerWSClient(SignServerWSClientFactory.CLIENTTYPE_CALLFIRSTNODEWITHSTATUSOK,
-                hosts, useSSL,
-                new LogErrorCallback(),
-                port, SignServerWSClientFactory.DEFAULT_TIMEOUT,
-                servlet,
-                sslf);
-
-        ValidateRequest vr = new ValidateRequest(cert, usages);
-
-        ArrayList<ProcessRequestWS> requests = new ArrayList<>();
-        requests.add(new ProcessRequestWS(vr));
-        List<ProcessResponseWS> response = client.process(service, requests);
-        if (response == null) {
-            throw new IOException("Error communicating with valdation servers, no server in the cluster seem available.");
+        final List<String> base64Certs = new ArrayList<>(certs.size());
+        for (X509Certificate cert : certs) {
+            base64Certs.add(Base64.toBase64String(cert.getEncoded()));
+        }
+
+        for (String host : hosts) {
+            final ValidationWS ws = createValidationWS(host, sslf);
+            final List<ValidationResponse> response;
+            try {
+                if (certs.size() == 1) {
+                    // Single certificates also work with servers without batch support
+                    response = Collections.singletonList(ws.isValid(service, base64Certs.get(0), usages));
+                } else {
+                    response = ws.isValidBatch(service, base64Certs,
+                            usages == null ? null : Collections.singletonList(usages));
+                }
+            } catch (WebServiceException e) {
+                out.println("Error communication with host : " + host + ", " + e.getMessage());
+                continue;
+            } catch (IllegalRequestException_Exception | SignServerException_Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            if (response.size() != certs.size()) {
+                throw new IOException("Unexpected number of responses: " + response.size());
+            }
+            final List<ValidateResponse> vresps = new ArrayList<>(response.size());
+            for (int i = 0; i < response.size(); i++) {
+                vresps.add(toValidateResponse(certs.get(i), response.get(i)));
+            }
+            return vresps;
+        }
+        throw new IOException("Error communicating with valdation servers, no server in the cluster seem available.");
+    }
+
+    private ValidationWS createValidationWS(final String host, final SSLSocketFactory sslf) throws MalformedURLException {
+        final URL url = new URL(useSSL ? "https" : "http", host, port, servlet);
+        final QName qname = new QName("gen.ws.validationservice.protocol.signserver.org", "ValidationWSService");
+        final URL resource = getClass().getResource("/org/signserver/client/cli/validationservice/ValidationWS.wsdl");
+
+        final ValidationWS ws = new ValidationWSService(resource, qname).getValidationWSPort();
+        final BindingProvider bp = (BindingProvider) ws;
+        bp.getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, url.toString());
+
+        if (sslf != null) {
+            final Client client = ClientProxy.getClient(bp);
+            final HTTPConduit http = (HTTPConduit) client.getConduit();
+            final TLSClientParameters params = new TLSClientParameters();
+
+            params.setSSLSocketFactory(sslf);
+            http.setTlsClientParameters(params);
         }
-        ValidateResponse vresp = (ValidateResponse) RequestAndResponseManager.parseProcessResponse(response.get(0).getResponseData());
+        return ws;
+    }
 
-        return vresp;
+    private static ValidateResponse toValidateResponse(final X509Certificate cert, final ValidationResponse response) {
+        final Date revocationDate = response.getRevocationDate() == null ? null
+                : response.getRevocationDate().toGregorianCalendar().getTime();
+        final Validation validation =
+                new Validation(cert, null, Validation.Status.valueOf(response.getStatus().value()), response.getStatusMessage(),
+                        revocationDate, response.getRevocationReason());
+        final String purposes = response.getValidCertificatePurposes();
+        return new ValidateResponse(validation, purposes == null || purposes.isEmpty() ? null : purposes.split(","));
     }
     
-    private ValidateResponse runHTTP(final SSLSocketFactory sslf, final X509Certificate cert) throws Exception {
+    private ValidateResponse runHTTP(final SSLSocketFactory sslf, final X509Certificate cert, final File certFile) throws Exception {
         
         final URL processServlet = new URL(useSSL ? "https" : "http", hosts[0], port, servlet);
         
@@ -523,7 +665,7 @@ public class ValidateCertificateCommand extends AbstractCommand {
             sb.append(CRLF);
             sb.append("Content-Disposition: form-data; name=\"datafile\"");
             sb.append("; filename=\"");
-            sb.append(certPath.getAbsolutePath());
+            sb.append(certFile.getAbsolutePath());
             sb.append("\"");
             sb.append(CRLF);
             
@@ -645,21 +787,6 @@ public class ValidateCertificateCommand extends AbstractCommand {
         return RETURN_ERROR;
     }
 
-    class LogErrorCallback implements IFaultCallback {
-
-        @SuppressWarnings("synthetic-access")
-        @Override
-        public void addCommunicationError(ICommunicationFault error) {
-            final String s = "Error communication with host : " + error.getHostName() + ", " + error.getDescription();
-            if (error.getThrowed() != null) {
-                out.println(s);
-                error.getThrowed().printStackTrace();
-            } else {
-                out.println(s);
-            }
-        }
-    }
-
     private void printUsage() {
         out.println(getUsages());
     }
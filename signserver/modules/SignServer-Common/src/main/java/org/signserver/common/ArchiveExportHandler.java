@@ -0,0 +1,45 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Receiver of archive entries being exported.
+ *
+ * For each entry the archive data is decoded and written to the stream
+ * returned by beginEntry so that the data of an entry never has to be held
+ * in memory as a whole.
+ *
+ * @version $Id$
+ */
+public interface ArchiveExportHandler {
+
+    /**
+     * Called when an entry is about to be exported.
+     *
+     * @param entry meta data of the entry (without archive data)
+     * @return stream to write the archive data of the entry to
+     * @throws IOException in case of failure writing
+     */
+    OutputStream beginEntry(ArchiveMetadata entry) throws IOException;
+
+    /**
+     * Called after all archive data of the entry has been written.
+     *
+     * @param entry meta data of the entry (without archive data)
+     * @throws IOException in case of failure writing
+     */
+    void endEntry(ArchiveMetadata entry) throws IOException;
+}
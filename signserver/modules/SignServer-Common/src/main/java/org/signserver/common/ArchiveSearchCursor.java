@@ -0,0 +1,84 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common;
+
+/**
+ * Position in archive search results ordered by time and unique ID, newest
+ * first.
+ *
+ * A cursor is created from the last entry of a page and the next page is
+ * requested with the string form of it. As the position is given by the
+ * values of the ordering columns instead of by an index, the database can
+ * seek directly to it and the cost of fetching a page does not grow with the
+ * number of pages before it.
+ *
+ * The string form is the time in milliseconds and the unique ID separated by
+ * a semicolon.
+ *
+ * @version $Id$
+ */
+public final class ArchiveSearchCursor {
+
+    private static final char SEPARATOR = ';';
+
+    private final long time;
+    private final String uniqueId;
+
+    public ArchiveSearchCursor(final long time, final String uniqueId) {
+        if (uniqueId == null) {
+            throw new IllegalArgumentException("Missing unique ID");
+        }
+        this.time = time;
+        this.uniqueId = uniqueId;
+    }
+
+    /**
+     * @param last Last entry of a page
+     * @return Cursor for the page after the entry
+     */
+    public static ArchiveSearchCursor after(final ArchiveMetadata last) {
+        return new ArchiveSearchCursor(last.getTime().getTime(), last.getUniqueId());
+    }
+
+    /**
+     * Parses the string form of a cursor.
+     *
+     * @param cursor to parse
+     * @return The cursor
+     * @throws IllegalArgumentException in case the cursor is malformed
+     */
+    public static ArchiveSearchCursor parse(final String cursor) {
+        final int index = cursor.indexOf(SEPARATOR);
+        if (index < 1 || index == cursor.length() - 1) {
+            throw new IllegalArgumentException("Malformed archive cursor: " + cursor);
+        }
+        try {
+            return new ArchiveSearchCursor(Long.parseLong(cursor.substring(0, index)), cursor.substring(index + 1));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Malformed archive cursor: " + cursor);
+        }
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getUniqueId() {
+        return uniqueId;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(time) + SEPARATOR + uniqueId;
+    }
+}
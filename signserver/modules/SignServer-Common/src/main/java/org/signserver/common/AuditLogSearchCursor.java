@@ -0,0 +1,132 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.cesecore.audit.AuditLogEntry;
+
+/**
+ * Position in audit log search results ordered by time stamp, newest first.
+ *
+ * The audit log can only be ordered by a single column so entries with the
+ * same time stamp have no defined order. The cursor therefore holds the time
+ * stamp of the last entry of a page together with the node ID and sequence
+ * number of the entries with that time stamp which have already been
+ * returned. The next page consists of the remaining entries with that time
+ * stamp followed by the entries with an earlier time stamp, both of which
+ * the database can seek to using the time stamp index.
+ *
+ * The string form is the time stamp followed by a semicolon and a comma
+ * separated list of sequence number and node ID pairs separated by @.
+ *
+ * @version $Id$
+ */
+public final class AuditLogSearchCursor {
+
+    private final long timeStamp;
+    private final Set<String> seen;
+
+    private AuditLogSearchCursor(final long timeStamp, final Set<String> seen) {
+        this.timeStamp = timeStamp;
+        this.seen = Collections.unmodifiableSet(seen);
+    }
+
+    /**
+     * Creates the cursor for the page after the given page.
+     *
+     * @param previous Cursor used to get the page or null if it was the first
+     * @param page Entries returned, not empty
+     * @return Cursor for the next page
+     */
+    public static AuditLogSearchCursor after(final AuditLogSearchCursor previous, final List<? extends AuditLogEntry> page) {
+        final long last = page.get(page.size() - 1).getTimeStamp();
+        final Set<String> seen = new LinkedHashSet<>();
+        if (previous != null && previous.timeStamp == last) {
+            // The whole page had the same time stamp as the previous one
+            seen.addAll(previous.seen);
+        }
+        for (final AuditLogEntry entry : page) {
+            if (entry.getTimeStamp() == last) {
+                seen.add(toKey(entry));
+            }
+        }
+        return new AuditLogSearchCursor(last, seen);
+    }
+
+    /**
+     * Parses the string form of a cursor.
+     *
+     * @param cursor to parse
+     * @return The cursor
+     * @throws IllegalArgumentException in case the cursor is malformed
+     */
+    public static AuditLogSearchCursor parse(final String cursor) {
+        final int index = cursor.indexOf(';');
+        if (index < 1) {
+            throw new IllegalArgumentException("Malformed audit log cursor: " + cursor);
+        }
+        final Set<String> seen = new LinkedHashSet<>();
+        for (final String key : cursor.substring(index + 1).split(",")) {
+            if (key.indexOf('@') < 1) {
+                throw new IllegalArgumentException("Malformed audit log cursor: " + cursor);
+            }
+            seen.add(key);
+        }
+        try {
+            return new AuditLogSearchCursor(Long.parseLong(cursor.substring(0, index)), seen);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Malformed audit log cursor: " + cursor);
+        }
+    }
+
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    /**
+     * @return Number of entries with the time stamp already returned
+     */
+    public int getSeenCount() {
+        return seen.size();
+    }
+
+    /**
+     * @param entry with the time stamp of the cursor
+     * @return True if the entry has already been returned
+     */
+    public boolean isSeen(final AuditLogEntry entry) {
+        return seen.contains(toKey(entry));
+    }
+
+    private static String toKey(final AuditLogEntry entry) {
+        return entry.getSequenceNumber() + "@" + entry.getNodeId();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(timeStamp).append(';');
+        boolean first = true;
+        for (final String key : seen) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append(key);
+            first = false;
+        }
+        return sb.toString();
+    }
+}
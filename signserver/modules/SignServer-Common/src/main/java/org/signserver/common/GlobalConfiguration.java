@@ -13,8 +13,13 @@
 package org.signserver.common;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 
@@ -24,6 +29,10 @@ import org.apache.log4j.Logger;
  *
  * Contains a merge of static and dynamically defined global properties
  *
+ * Instances are immutable snapshots of the configuration and can be shared
+ * between threads. Each snapshot loaded by the server has a higher version
+ * than the previous one.
+ *
  * @author Philip Vendil
  * @version $Id: GlobalConfiguration.java 7565 2016-06-28 08:01:12Z malu9369 $
  */
@@ -41,9 +50,19 @@ public class GlobalConfiguration implements Serializable {
     public static final String WORKERPROPERTY_BASE = "WORKER";
     public static final String WORKERPROPERTY_CLASSPATH = ".CLASSPATH";
 
+    /** Marker for a missing or unparsable value in the parsed values. */
+    private static final Object NO_VALUE = new Object();
+
     private final Properties config;
     private final String state;
     private final String appVersion;
+    private final long version;
+
+    /** Read-only view of the configuration not requiring synchronization. */
+    private transient volatile Map<String, String> values;
+
+    /** Typed values parsed so far. */
+    private transient volatile ConcurrentMap<String, Object> parsed;
 
     /**
      * Constructor that should only be called within
@@ -54,9 +73,23 @@ public class GlobalConfiguration implements Serializable {
      * @param appVersion
      */
     public GlobalConfiguration(Properties config, String state, String appVersion) {
+        this(config, state, appVersion, 0);
+    }
+
+    /**
+     * Constructor that should only be called within
+     * the GlobalConfigurationSessionBean.
+     *
+     * @param config properties, not to be modified after this call
+     * @param state one of the STATE_ constants
+     * @param appVersion version of the server
+     * @param version of this snapshot of the configuration
+     */
+    public GlobalConfiguration(Properties config, String state, String appVersion, long version) {
         this.config = config;
         this.state = state;
         this.appVersion = appVersion;
+        this.version = version;
     }
 
     /**
@@ -66,7 +99,7 @@ public class GlobalConfiguration implements Serializable {
      * @return the currently set global property or null if it doesn't exist.
      */
     public String getProperty(String scope, String property) {
-        return (String) config.getProperty((scope + property).toUpperCase());
+        return getValues().get((scope + property).toUpperCase());
     }
 
     /**
@@ -78,7 +111,75 @@ public class GlobalConfiguration implements Serializable {
      * @return the currently set global property or null if it doesn't exist.
      */
     public String getProperty(String propertyWithScope) {
-        return (String) config.getProperty(propertyWithScope);
+        return getValues().get(propertyWithScope);
+    }
+
+    /**
+     * Returns the currently set global property parsed as a long. The parsed
+     * value is remembered for the lifetime of this snapshot.
+     *
+     * @param scope one of the SCOPE_ constants
+     * @param property the actual property (with no glob. or node. prefixes)
+     * @param defaultValue value to return if the property is not set or
+     * could not be parsed
+     * @return the value or the default value
+     */
+    public long getLongProperty(String scope, String property, long defaultValue) {
+        final String key = (scope + property).toUpperCase();
+        Object result = getParsed().get("L" + key);
+        if (result == null) {
+            final String value = getValues().get(key);
+            result = NO_VALUE;
+            if (value != null) {
+                try {
+                    result = Long.parseLong(value.trim());
+                } catch (NumberFormatException ex) {
+                    LOG.error("Incorrect value for global configuration property " + property + ": " + ex.getLocalizedMessage());
+                }
+            }
+            getParsed().put("L" + key, result);
+        }
+        return result == NO_VALUE ? defaultValue : (Long) result;
+    }
+
+    /**
+     * Returns the currently set global property parsed as an int. The parsed
+     * value is remembered for the lifetime of this snapshot.
+     *
+     * @param scope one of the SCOPE_ constants
+     * @param property the actual property (with no glob. or node. prefixes)
+     * @param defaultValue value to return if the property is not set or
+     * could not be parsed
+     * @return the value or the default value
+     */
+    public int getIntProperty(String scope, String property, int defaultValue) {
+        final long result = getLongProperty(scope, property, defaultValue);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            LOG.error("Incorrect value for global configuration property " + property + ": " + result);
+            return defaultValue;
+        }
+        return (int) result;
+    }
+
+    /**
+     * Returns the currently set global property parsed as a boolean. The
+     * parsed value is remembered for the lifetime of this snapshot.
+     *
+     * @param scope one of the SCOPE_ constants
+     * @param property the actual property (with no glob. or node. prefixes)
+     * @param defaultValue value to return if the property is not set
+     * @return true if the value is "true" (ignoring case), false if it is
+     * set to something else and otherwise the default value
+     */
+    public boolean getBooleanProperty(String scope, String property, boolean defaultValue) {
+        final String key = (scope + property).toUpperCase();
+        Object result = getParsed().get("B" + key);
+        if (result == null) {
+            final String value = getValues().get(key);
+            result = value == null ? NO_VALUE : Boolean.valueOf(value.trim());
+            getParsed().put("B" + key, result);
+        }
+        return result == NO_VALUE ? defaultValue : (Boolean) result;
     }
 
     /**
@@ -104,6 +205,13 @@ public class GlobalConfiguration implements Serializable {
         return appVersion;
     }
 
+    /**
+     * @return the version of this snapshot of the configuration
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * @return A new Properties object with the current configuration
      */
@@ -112,5 +220,32 @@ public class GlobalConfiguration implements Serializable {
         properties.putAll(config);
         return properties;
     }
+
+    private Map<String, String> getValues() {
+        Map<String, String> result = values;
+        if (result == null) {
+            final Map<String, String> map = new HashMap<>();
+            for (String key : config.stringPropertyNames()) {
+                map.put(key, config.getProperty(key));
+            }
+            result = Collections.unmodifiableMap(map);
+            values = result;
+        }
+        return result;
+    }
+
+    private ConcurrentMap<String, Object> getParsed() {
+        ConcurrentMap<String, Object> result = parsed;
+        if (result == null) {
+            synchronized (this) {
+                result = parsed;
+                if (result == null) {
+                    result = new ConcurrentHashMap<>();
+                    parsed = result;
+                }
+            }
+        }
+        return result;
+    }
     
 }
@@ -140,6 +140,12 @@ public class RequestContext implements Serializable {
      * workers to suggest an other filename.
      */
     public static String RESPONSE_FILENAME = "RESPONSE_FILENAME";
+
+    /**
+     * Configuration of the worker for compressing the response when returned
+     * over HTTP. Set when processing the request.
+     */
+    public static final String RESPONSE_COMPRESSION = "RESPONSE_COMPRESSION";
     
     /**
      * A dispatcher such as the TSADispatcherServlet can set this value to
@@ -0,0 +1,35 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common;
+
+/**
+ * Listener notified when the cached status of a worker changes.
+ *
+ * A change is when the set of fatal errors for the worker is different from
+ * the previously known status, for instance when a worker goes from active to
+ * offline. Listeners are called from the thread refreshing the status and
+ * should return quickly.
+ *
+ * @version $Id$
+ */
+public interface WorkerStatusListener {
+
+    /**
+     * Called when the status of a worker has changed.
+     *
+     * @param workerId of the worker
+     * @param oldStatus previously known status or null if none
+     * @param newStatus the new status
+     */
+    void statusChanged(int workerId, WorkerStatus oldStatus, WorkerStatus newStatus);
+}
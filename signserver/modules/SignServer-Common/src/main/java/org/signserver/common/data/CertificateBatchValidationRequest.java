@@ -0,0 +1,42 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Data holder for a request to validate multiple certificates at once.
+ *
+ * @version $Id$
+ */
+public class CertificateBatchValidationRequest extends Request {
+
+    private final List<CertificateValidationRequest> requests;
+
+    /**
+     * @param requests to validate, each with its own certificate purposes
+     */
+    public CertificateBatchValidationRequest(List<CertificateValidationRequest> requests) {
+        this.requests = Collections.unmodifiableList(requests);
+    }
+
+    /**
+     * @return the certificates to validate in the order the responses should
+     * be returned
+     */
+    public List<CertificateValidationRequest> getRequests() {
+        return requests;
+    }
+
+}
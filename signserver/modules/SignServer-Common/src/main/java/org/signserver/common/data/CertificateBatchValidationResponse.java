@@ -0,0 +1,43 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Data holder for the response to a certificate batch validation request.
+ *
+ * @version $Id$
+ */
+public class CertificateBatchValidationResponse extends Response {
+
+    private final List<CertificateValidationResponse> responses;
+
+    /**
+     * @param responses one for each certificate in the same order as in the
+     * request
+     */
+    public CertificateBatchValidationResponse(List<CertificateValidationResponse> responses) {
+        this.responses = Collections.unmodifiableList(responses);
+    }
+
+    /**
+     * @return one response for each certificate in the same order as in the
+     * request
+     */
+    public List<CertificateValidationResponse> getResponses() {
+        return responses;
+    }
+
+}
@@ -79,4 +79,12 @@ public class SignatureResponse extends Response implements IArchivableProcessRes
         return archivables;
     }
 
+    /**
+     * @return number of signatures created with the signer's key for this
+     * response, as counted by the key usage counter
+     */
+    public int getSignatureCount() {
+        return 1;
+    }
+
 }
@@ -58,6 +58,41 @@ public class ValidationServiceConstants {
      */
     public static final String VALIDATIONSERVICE_TIMEINCACHE = "TIMEINCACHE";
     public static final String DEFAULT_TIMEINCACHE = "10";
+
+    /**
+     * Setting defining the maximum number of validations to cache
+     *
+     * Default: 10000
+     */
+    public static final String VALIDATIONSERVICE_CACHEMAXSIZE = "CACHEMAXSIZE";
+    public static final String DEFAULT_CACHEMAXSIZE = "10000";
+
+    /**
+     * Setting defining the number of seconds a successful verification of a
+     * certificate and its CA chain should be remembered, 0 to disable
+     *
+     * Default: 60
+     */
+    public static final String VALIDATIONSERVICE_CHAINCACHETIME = "CHAINCACHETIME";
+    public static final String DEFAULT_CHAINCACHETIME = "60";
+
+    /**
+     * Setting defining the maximum number of certificates in a batch
+     * validation request
+     *
+     * Default: 1000
+     */
+    public static final String VALIDATIONSERVICE_BATCHMAXSIZE = "BATCHMAXSIZE";
+    public static final String DEFAULT_BATCHMAXSIZE = "1000";
+
+    /**
+     * Setting defining the number of threads validating the certificates of
+     * a batch validation request in parallel
+     *
+     * Default: 4
+     */
+    public static final String VALIDATIONSERVICE_BATCHTHREADS = "BATCHTHREADS";
+    public static final String DEFAULT_BATCHTHREADS = "4";
     
     public static final int NUM_OF_SUPPORTED_ISSUERS = 255;
     
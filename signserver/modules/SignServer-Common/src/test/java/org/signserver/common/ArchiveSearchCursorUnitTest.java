@@ -0,0 +1,51 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common;
+
+import java.util.Date;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the ArchiveSearchCursor class.
+ *
+ * @version $Id$
+ */
+public class ArchiveSearchCursorUnitTest extends TestCase {
+
+    /**
+     * Tests that the cursor after an entry can be parsed back from its string
+     * form even though the unique ID contains the separator.
+     */
+    public void testAfterAndParse() {
+        final ArchiveMetadata last = new ArchiveMetadata(ArchiveDataVO.TYPE_RESPONSE, 3, "016686303c00;1;3;abc", "abc", new Date(1539849600000L), null, null, null);
+
+        final ArchiveSearchCursor cursor = ArchiveSearchCursor.parse(ArchiveSearchCursor.after(last).toString());
+
+        assertEquals(1539849600000L, cursor.getTime());
+        assertEquals("016686303c00;1;3;abc", cursor.getUniqueId());
+    }
+
+    /**
+     * Tests that malformed cursors are rejected.
+     */
+    public void testParseMalformed() {
+        for (String malformed : new String[] {"", "1539849600000", ";abc", "abc;def", "1539849600000;"}) {
+            try {
+                ArchiveSearchCursor.parse(malformed);
+                fail("Should have failed: \"" + malformed + "\"");
+            } catch (IllegalArgumentException expected) {
+                // OK
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+import org.cesecore.audit.impl.integrityprotected.AuditRecordData;
+
+/**
+ * Unit tests for the AuditLogSearchCursor class.
+ *
+ * @version $Id$
+ */
+public class AuditLogSearchCursorUnitTest extends TestCase {
+
+    private static AuditRecordData createEntry(final long timeStamp, final long sequenceNumber, final String nodeId) {
+        final AuditRecordData entry = new AuditRecordData();
+        entry.setTimeStamp(timeStamp);
+        entry.setSequenceNumber(sequenceNumber);
+        entry.setNodeId(nodeId);
+        return entry;
+    }
+
+    /**
+     * Tests that only the entries with the time stamp of the last entry are
+     * remembered and that the string form can be parsed back.
+     */
+    public void testAfterAndParse() {
+        final List<AuditRecordData> page = Arrays.asList(
+                createEntry(3000, 1, "node1"),
+                createEntry(2000, 7, "node1"),
+                createEntry(2000, 4, "node2"));
+
+        final AuditLogSearchCursor cursor = AuditLogSearchCursor.parse(AuditLogSearchCursor.after(null, page).toString());
+
+        assertEquals(2000, cursor.getTimeStamp());
+        assertEquals(2, cursor.getSeenCount());
+        assertTrue(cursor.isSeen(createEntry(2000, 7, "node1")));
+        assertTrue(cursor.isSeen(createEntry(2000, 4, "node2")));
+        assertFalse(cursor.isSeen(createEntry(2000, 7, "node2")));
+    }
+
+    /**
+     * Tests that the entries already seen are kept when a whole page has the
+     * same time stamp as the previous cursor but not otherwise.
+     */
+    public void testAfterMergesSameTimeStamp() {
+        final AuditLogSearchCursor previous = AuditLogSearchCursor.parse("2000;1@node1");
+
+        final AuditLogSearchCursor same = AuditLogSearchCursor.after(previous, Collections.singletonList(createEntry(2000, 2, "node1")));
+        assertEquals(2, same.getSeenCount());
+        assertTrue(same.isSeen(createEntry(2000, 1, "node1")));
+
+        final AuditLogSearchCursor earlier = AuditLogSearchCursor.after(previous, Collections.singletonList(createEntry(1000, 2, "node1")));
+        assertEquals(1000, earlier.getTimeStamp());
+        assertEquals(1, earlier.getSeenCount());
+        assertFalse(earlier.isSeen(createEntry(1000, 1, "node1")));
+    }
+
+    /**
+     * Tests that malformed cursors are rejected.
+     */
+    public void testParseMalformed() {
+        for (String malformed : new String[] {"", "2000", ";1@node1", "abc;1@node1", "2000;1", "2000;@node1"}) {
+            try {
+                AuditLogSearchCursor.parse(malformed);
+                fail("Should have failed: \"" + malformed + "\"");
+            } catch (IllegalArgumentException expected) {
+                // OK
+            }
+        }
+    }
+}
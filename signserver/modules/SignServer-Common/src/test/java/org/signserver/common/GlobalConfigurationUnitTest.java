@@ -0,0 +1,62 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common;
+
+import java.util.Properties;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the GlobalConfiguration class.
+ *
+ * @version $Id$
+ */
+public class GlobalConfigurationUnitTest extends TestCase {
+
+    private GlobalConfiguration createConfiguration() {
+        final Properties properties = new Properties();
+        properties.setProperty("GLOB.LONGVALUE", " 4711 ");
+        properties.setProperty("GLOB.BADVALUE", "abc");
+        properties.setProperty("GLOB.HUGEVALUE", "10000000000");
+        properties.setProperty("GLOB.BOOLVALUE", "TRUE");
+        return new GlobalConfiguration(properties, GlobalConfiguration.STATE_INSYNC, "1.0", 3);
+    }
+
+    /**
+     * Tests the typed accessors.
+     */
+    public void testTypedProperties() {
+        final GlobalConfiguration instance = createConfiguration();
+
+        assertEquals(4711L, instance.getLongProperty(GlobalConfiguration.SCOPE_GLOBAL, "longvalue", 1));
+        assertEquals(4711, instance.getIntProperty(GlobalConfiguration.SCOPE_GLOBAL, "LONGVALUE", 1));
+        assertEquals(1L, instance.getLongProperty(GlobalConfiguration.SCOPE_GLOBAL, "BADVALUE", 1));
+        assertEquals(1L, instance.getLongProperty(GlobalConfiguration.SCOPE_GLOBAL, "MISSING", 1));
+        assertEquals(2L, instance.getLongProperty(GlobalConfiguration.SCOPE_GLOBAL, "MISSING", 2));
+        assertEquals(1, instance.getIntProperty(GlobalConfiguration.SCOPE_GLOBAL, "HUGEVALUE", 1));
+        assertTrue(instance.getBooleanProperty(GlobalConfiguration.SCOPE_GLOBAL, "BOOLVALUE", false));
+        assertFalse(instance.getBooleanProperty(GlobalConfiguration.SCOPE_GLOBAL, "LONGVALUE", true));
+        assertTrue(instance.getBooleanProperty(GlobalConfiguration.SCOPE_GLOBAL, "MISSING", true));
+    }
+
+    /**
+     * Tests that the snapshot is not affected by changes to the properties
+     * returned by getConfig.
+     */
+    public void testSnapshot() {
+        final GlobalConfiguration instance = createConfiguration();
+
+        instance.getConfig().setProperty("GLOB.LONGVALUE", "1");
+        assertEquals(" 4711 ", instance.getProperty("GLOB.LONGVALUE"));
+        assertEquals(3L, instance.getVersion());
+    }
+}
@@ -14,6 +14,8 @@ package org.signserver.server.archive.olddbarchiver.entities;
 
 import java.beans.XMLEncoder;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
@@ -48,7 +50,13 @@ import org.signserver.common.ArchiveDataVO;
  *
  */
 @Entity
-@Table(name = "ArchiveData")
+@Table(name = "ArchiveData", indexes = {
+    @Index(name = "archivedata_idx3", columnList = "time,uniqueId"),
+    @Index(name = "archivedata_idx4", columnList = "signerid,requestIP,type"),
+    @Index(name = "archivedata_idx5", columnList = "signerid,requestIssuerDN,requestCertSerialnumber,type")
+}, uniqueConstraints = {
+    @UniqueConstraint(name = "archivedata_uniq1", columnNames = {"signerid", "archiveid", "type"})
+})
 @NamedQueries({
     @NamedQuery(name = "ArchiveDataBean.findByArchiveId", query = "SELECT a from ArchiveDataBean a WHERE a.type=?1 AND a.signerid=?2 AND a.archiveid=?3"),
     @NamedQuery(name = "ArchiveDataBean.findAllByArchiveId", query = "SELECT a from ArchiveDataBean a WHERE a.signerid=?1 AND a.archiveid=?2"),
@@ -59,7 +67,9 @@ import org.signserver.common.ArchiveDataVO;
     @NamedQuery(name = "ArchiveDataBean.findByRequestIP", query = "SELECT  a from ArchiveDataBean a WHERE a.type=?1 AND a.signerid=?2 AND a.requestIP=?3"),
     @NamedQuery(name = "ArchiveDataBean.findAllByRequestIP", query = "SELECT  a from ArchiveDataBean a WHERE a.signerid=?1 AND a.requestIP=?2"),
     @NamedQuery(name = "ArchiveDataBean.findByRequestIPAndTime", query = "SELECT a from ArchiveDataBean a WHERE a.type=?1 AND a.signerid=?2 AND a.requestIP=?3 AND a.time>=?4 AND a.time<=?5"),
-    @NamedQuery(name = "ArchiveDataBean.findAllWithUniqueIds", query = "SELECT a from ArchiveDataBean a WHERE a.uniqueId in (:ids)")
+    @NamedQuery(name = "ArchiveDataBean.findAllWithUniqueIds", query = "SELECT a from ArchiveDataBean a WHERE a.uniqueId in (:ids)"),
+    @NamedQuery(name = "ArchiveDataBean.findUniqueIdsBefore", query = "SELECT a.uniqueId from ArchiveDataBean a WHERE a.time<?1 ORDER BY a.time"),
+    @NamedQuery(name = "ArchiveDataBean.removeWithUniqueIds", query = "DELETE from ArchiveDataBean a WHERE a.uniqueId in (:ids)")
 })
 public class ArchiveDataBean implements Serializable {
     
@@ -94,7 +104,8 @@ public class ArchiveDataBean implements Serializable {
 
     /**
      * Unique Id of the archieved data
-     * Is a compination of type, archiveId and signerId
+     * Is a compination of the creation time (as a fixed length hex string so
+     * that the IDs are ordered by time), type, signerId and archiveId
      *
      * @return uniqueId
      */
@@ -277,6 +288,22 @@ public class ArchiveDataBean implements Serializable {
         }
     }
 
+    /**
+     * Write the archived bytes to the stream.
+     * Base64 encoded data is decoded while being written instead of first
+     * being decoded into a separate byte array.
+     *
+     * @param out to write the archived bytes to
+     * @throws IOException in case of failure writing
+     */
+    public void writeArchivedBytes(final OutputStream out) throws IOException {
+        if (getDataEncoding() != null && getDataEncoding() == DATA_ENCODING_BASE64) {
+            Base64.decode(getArchiveData(), out);
+        } else {
+            out.write(getArchiveDataObject().getData());
+        }
+    }
+
     /**
      * Method used to get the ArchiveDataVO representation of the data row.
      * 
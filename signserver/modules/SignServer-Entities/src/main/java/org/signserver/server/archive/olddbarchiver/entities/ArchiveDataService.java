@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.signserver.server.archive.olddbarchiver.entities;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -26,10 +28,14 @@ import javax.persistence.Query;
 
 import org.apache.log4j.Logger;
 import org.cesecore.util.CertTools;
+import org.cesecore.util.query.Elem;
 import org.cesecore.util.query.QueryCriteria;
 import org.cesecore.util.query.QueryGenerator;
+import org.cesecore.util.query.clauses.Order;
 import org.signserver.common.ArchiveData;
+import org.signserver.common.ArchiveExportHandler;
 import org.signserver.common.ArchiveMetadata;
+import org.signserver.common.ArchiveSearchCursor;
 
 /**
  * Entity Service class that acts as migration layer for
@@ -43,6 +49,9 @@ public class ArchiveDataService {
 
     /** Logger for this class. */
     private static final Logger LOG = Logger.getLogger(ArchiveDataService.class);
+
+    /** Maximum number of unique IDs given in one IN list (the limit in Oracle). */
+    private static final int MAX_IN_PARAMETERS = 1000;
     
     private final EntityManager em;
 
@@ -50,6 +59,24 @@ public class ArchiveDataService {
         this.em = em;
     }
 
+    /**
+     * Create the unique ID for a new archive entry.
+     *
+     * The ID starts with the creation time as a fixed length hex string so
+     * that new entries are appended at the end of the primary key index
+     * instead of at random positions in it, followed by the type, signer ID
+     * and archive ID which used to make up the whole ID.
+     *
+     * @param time Creation time in milliseconds
+     * @param type Archive type
+     * @param signerId Signer ID
+     * @param archiveid Archive ID
+     * @return Unique ID
+     */
+    static String createUniqueId(final long time, final int type, final int signerId, final String archiveid) {
+        return String.format("%012x", time) + ";" + type + ";" + signerId + ";" + archiveid;
+    }
+
     /**
      * Entity Bean holding info about a archive data.
      * 
@@ -64,7 +91,8 @@ public class ArchiveDataService {
      */
     public String create(int type, int signerId, String archiveid, X509Certificate clientCert,
             String requestIP, ArchiveData archiveData) {
-        String uniqueId = type + ";" + signerId + ";" + archiveid;
+        final long time = System.currentTimeMillis();
+        String uniqueId = createUniqueId(time, type, signerId, archiveid);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Creating archive data, uniqueId=" + uniqueId);
         }
@@ -72,7 +100,7 @@ public class ArchiveDataService {
         adb.setUniqueId(uniqueId);
         adb.setType(type);
         adb.setSignerid(signerId);
-        adb.setTime(new Date().getTime());
+        adb.setTime(time);
         adb.setArchiveid(archiveid);
         if (clientCert != null) {
             adb.setRequestIssuerDN(CertTools.getIssuerDN(clientCert));
@@ -88,7 +116,8 @@ public class ArchiveDataService {
     
     public String create(int type, int signerId, String archiveid, X509Certificate clientCert,
             String requestIP, String archiveData) {
-        String uniqueId = type + ";" + signerId + ";" + archiveid;
+        final long time = System.currentTimeMillis();
+        String uniqueId = createUniqueId(time, type, signerId, archiveid);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Creating archive data, uniqueId=" + uniqueId);
         }
@@ -96,7 +125,7 @@ public class ArchiveDataService {
         adb.setUniqueId(uniqueId);
         adb.setType(type);
         adb.setSignerid(signerId);
-        adb.setTime(new Date().getTime());
+        adb.setTime(time);
         adb.setArchiveid(archiveid);
         if (clientCert != null) {
             adb.setRequestIssuerDN(CertTools.getIssuerDN(clientCert));
@@ -235,6 +264,130 @@ public class ArchiveDataService {
         return Collections.emptyList();
     }
 
+    /**
+     * Export archive entries with matching uniqueId.
+     * The archive data of each entry is decoded directly into the stream
+     * provided by the handler and each entry is detached from the
+     * persistence context as soon as it has been written.
+     *
+     * @param uniqueIds Collection of uniqueIds to export
+     * @param handler to write the entries to
+     * @return Number of exported entries
+     * @throws IOException in case of failure writing to the handler
+     */
+    @SuppressWarnings("unchecked")
+    public int exportWithUniqueIdInList(final Collection<String> uniqueIds,
+            final ArchiveExportHandler handler) throws IOException {
+        int count = 0;
+        if (!uniqueIds.isEmpty()) {
+            final List<ArchiveDataBean> archiveDatas =
+                    em.createNamedQuery("ArchiveDataBean.findAllWithUniqueIds").
+                    setParameter("ids", uniqueIds).getResultList();
+
+            for (final ArchiveDataBean archiveData : archiveDatas) {
+                final ArchiveMetadata entry = new ArchiveMetadata(archiveData.getType(),
+                                                   archiveData.getSignerid(),
+                                                   archiveData.getUniqueId(),
+                                                   archiveData.getArchiveid(),
+                                                   new Date(archiveData.getTime()),
+                                                   archiveData.getRequestIssuerDN(),
+                                                   archiveData.getRequestCertSerialnumber(),
+                                                   archiveData.getRequestIP());
+                final OutputStream out = handler.beginEntry(entry);
+                archiveData.writeArchivedBytes(out);
+                handler.endEntry(entry);
+                em.detach(archiveData);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove the oldest archive entries created before the given time.
+     *
+     * At most max entries are removed by each call so that a large number of
+     * expired entries can be removed using a number of short transactions
+     * instead of one long transaction locking large parts of the table.
+     * The entries are deleted at most 1000 at a time as some databases do not
+     * allow more values in an IN list.
+     *
+     * @param time Remove entries with a time before this (in milliseconds)
+     * @param max Maximum number of entries to remove
+     * @return Number of removed entries, if less than max there are no more
+     * entries to remove
+     */
+    @SuppressWarnings("unchecked")
+    public int removeBefore(final long time, final int max) {
+        final List<String> uniqueIds = em.createNamedQuery("ArchiveDataBean.findUniqueIdsBefore")
+                .setParameter(1, time).setMaxResults(max).getResultList();
+        int removed = 0;
+        for (int i = 0; i < uniqueIds.size(); i += MAX_IN_PARAMETERS) {
+            final int end = Math.min(i + MAX_IN_PARAMETERS, uniqueIds.size());
+            removed += em.createNamedQuery("ArchiveDataBean.removeWithUniqueIds")
+                    .setParameter("ids", uniqueIds.subList(i, end)).executeUpdate();
+        }
+        return removed;
+    }
+
+    /**
+     * Find archive entries based on search query criterias, one page at a
+     * time ordered by time and uniqueId with the newest entries first.
+     *
+     * The position is given as a cursor created from the last entry of the
+     * previous page. The query matches the order of the index on time and
+     * uniqueId so the database can seek directly to the position instead of
+     * reading and discarding all entries before it as with a start index.
+     *
+     * @param after Only return entries after this position or null to start from the newest entry
+     * @param max Maximum number of entries returned (0 means no limit)
+     * @param criteria Query criteria, any orderings in it are ignored
+     * @param includeData If true, include archive data
+     * @return List of archive meta data entries
+     */
+    public List<ArchiveMetadata> findMatchingCriteriaAfter(final ArchiveSearchCursor after,
+            final int max, final QueryCriteria criteria, final boolean includeData) {
+        final QueryCriteria qc = QueryCriteria.create();
+        for (final Elem elem : criteria.getElements()) {
+            if (!(elem instanceof Order)) {
+                qc.add(elem);
+            }
+        }
+
+        try {
+            final QueryGenerator generator = QueryGenerator.generator(ArchiveDataBean.class, qc, "a");
+            final String generated = generator.generate().trim();
+            final StringBuilder conditions = new StringBuilder();
+            if (!generated.isEmpty()) {
+                conditions.append(" WHERE (").append(generated.substring("WHERE".length()).trim()).append(")");
+            }
+            if (after != null) {
+                // The conditions can not be expressed as criterias as
+                // nested ORs are not supported by the QueryGenerator
+                conditions.append(conditions.length() == 0 ? " WHERE " : " AND ")
+                        .append("(a.time < :afterTime OR (a.time = :afterTime AND a.uniqueId < :afterUniqueId))");
+            }
+            conditions.append(" ORDER BY a.time DESC, a.uniqueId DESC");
+
+            final Query query = createQuery(conditions.toString(), includeData);
+            for (final String key : generator.getParameterKeys()) {
+                query.setParameter(key, generator.getParameterValue(key));
+            }
+            if (after != null) {
+                query.setParameter("afterTime", after.getTime());
+                query.setParameter("afterUniqueId", after.getUniqueId());
+            }
+            if (max > 0) {
+                query.setMaxResults(max);
+            }
+            return toMetadata(query, includeData);
+        } catch (NoResultException ignored) { // NOPMD
+            // ignored
+        }
+
+        return Collections.emptyList();
+    }
+
     /**
      * Find archive entries based on search query criterias.
      * 
@@ -244,7 +397,6 @@ public class ArchiveDataService {
      * @param includeData If true, include archive data (could result in large result sets)
      * @return Collection of archive meta data entries
      */
-    @SuppressWarnings("unchecked")
     public List<ArchiveMetadata> findMatchingCriteria(int startIndex, int max,
             QueryCriteria criteria, boolean includeData) {
         
@@ -252,12 +404,7 @@ public class ArchiveDataService {
             final QueryGenerator generator = QueryGenerator.generator(ArchiveDataBean.class, criteria, "a");
             final String conditions = generator.generate();
             
-            // TODO: couldn't get lazy fetching working for archiveData
-            // so for now using a hand-written query and assemble ArchiveMetadataS
-            // picking out the columns "by hand" in the includeData == false case
-            final Query query = includeData ?
-                    em.createQuery("SELECT a FROM ArchiveDataBean a " + conditions) :
-                    em.createQuery("SELECT a.type, a.signerid, a.uniqueId, a.archiveid, a.time, a.requestIssuerDN, a.requestCertSerialnumber, a.requestIP FROM ArchiveDataBean a " + conditions);
+            final Query query = createQuery(conditions, includeData);
             
             for (final String key : generator.getParameterKeys()) {
                 final Object param = generator.getParameterValue(key);
@@ -272,36 +419,7 @@ public class ArchiveDataService {
                 query.setMaxResults(max);
             }
             
-            final List<ArchiveMetadata> result = new LinkedList<>();
-            
-            if (includeData) {
-                final List<ArchiveDataBean> queryResults = query.getResultList();
-
-                for (final ArchiveDataBean bean : queryResults) {
-                    final ArchiveMetadata metadata =
-                        new ArchiveMetadata(bean.getType(), bean.getSignerid(),
-                                            bean.getUniqueId(), bean.getArchiveid(),
-                                            new Date(bean.getTime()), bean.getRequestIssuerDN(),
-                                            bean.getRequestCertSerialnumber(),
-                                            bean.getRequestIP(),
-                                            bean.getArchiveDataVO().getArchivedBytes());
-                    result.add(metadata);
-                }
-            } else {
-                final List<Object[]> queryResults = query.getResultList();
-                
-                for (final Object[] o : queryResults) {
-                    final ArchiveMetadata metadata =
-                            new ArchiveMetadata((Integer) o[0], (Integer) o[1],
-                                                (String) o[2], (String) o[3],
-                                                new Date((Long) o[4]),
-                                                (String) o[5], (String) o[6],
-                                                (String) o[7]);
-                    result.add(metadata);
-                }
-            }
-            
-            return result;
+            return toMetadata(query, includeData);
             
         } catch (NoResultException ignored) { // NOPMD
             // ignored
@@ -310,4 +428,47 @@ public class ArchiveDataService {
         return Collections.emptyList();
     }
 
+    private Query createQuery(final String conditions, final boolean includeData) {
+        // TODO: couldn't get lazy fetching working for archiveData
+        // so for now using a hand-written query and assemble ArchiveMetadataS
+        // picking out the columns "by hand" in the includeData == false case
+        return includeData ?
+                em.createQuery("SELECT a FROM ArchiveDataBean a " + conditions) :
+                em.createQuery("SELECT a.type, a.signerid, a.uniqueId, a.archiveid, a.time, a.requestIssuerDN, a.requestCertSerialnumber, a.requestIP FROM ArchiveDataBean a " + conditions);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ArchiveMetadata> toMetadata(final Query query, final boolean includeData) {
+        final List<ArchiveMetadata> result = new LinkedList<>();
+        
+        if (includeData) {
+            final List<ArchiveDataBean> queryResults = query.getResultList();
+
+            for (final ArchiveDataBean bean : queryResults) {
+                final ArchiveMetadata metadata =
+                    new ArchiveMetadata(bean.getType(), bean.getSignerid(),
+                                        bean.getUniqueId(), bean.getArchiveid(),
+                                        new Date(bean.getTime()), bean.getRequestIssuerDN(),
+                                        bean.getRequestCertSerialnumber(),
+                                        bean.getRequestIP(),
+                                        bean.getArchiveDataVO().getArchivedBytes());
+                result.add(metadata);
+            }
+        } else {
+            final List<Object[]> queryResults = query.getResultList();
+            
+            for (final Object[] o : queryResults) {
+                final ArchiveMetadata metadata =
+                        new ArchiveMetadata((Integer) o[0], (Integer) o[1],
+                                            (String) o[2], (String) o[3],
+                                            new Date((Long) o[4]),
+                                            (String) o[5], (String) o[6],
+                                            (String) o[7]);
+                result.add(metadata);
+            }
+        }
+        
+        return result;
+    }
+
 }
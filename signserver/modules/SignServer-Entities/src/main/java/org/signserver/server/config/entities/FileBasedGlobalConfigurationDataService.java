@@ -93,6 +93,7 @@ public class FileBasedGlobalConfigurationDataService implements IGlobalConfigura
             synchronized (manager) {
                 dataStore = loadData();
             }
+            dataStore.remove(GlobalConfigurationDataService.CHANGEID_KEY);
             return new LinkedList<>(dataStore.values());
         } catch (IOException ex) {
             LOG.error("Could not load data from file based database: " + ex.getMessage());
@@ -100,6 +101,30 @@ public class FileBasedGlobalConfigurationDataService implements IGlobalConfigura
         }
     }
     
+    @Override
+    public String getGlobalProperty(String completekey) {
+        try {
+            final GlobalConfigurationDataBean data;
+            synchronized (manager) {
+                data = loadData().get(completekey);
+            }
+            return data == null ? null : data.getPropertyValue();
+        } catch (IOException ex) {
+            LOG.error("Could not load data from file based database: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String getChangeId() {
+        return getGlobalProperty(GlobalConfigurationDataService.CHANGEID_KEY);
+    }
+
+    @Override
+    public void updateChangeId() {
+        setGlobalProperty(GlobalConfigurationDataService.CHANGEID_KEY, UUID.randomUUID().toString());
+    }
+
     private Map<String, GlobalConfigurationDataBean> loadData() throws IOException {
         assert Thread.holdsLock(manager);
         checkSchemaVersion();
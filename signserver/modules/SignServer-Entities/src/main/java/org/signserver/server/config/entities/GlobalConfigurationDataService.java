@@ -13,6 +13,7 @@
 package org.signserver.server.config.entities;
 
 import java.util.List;
+import java.util.UUID;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 
@@ -26,6 +27,12 @@ import javax.persistence.Query;
  */
 public class GlobalConfigurationDataService implements IGlobalConfigurationDataService {
 
+    /**
+     * Key of the row holding the change ID. The scope is reserved so the row
+     * is never taken for a global or node property.
+     */
+    static final String CHANGEID_KEY = "INTERNAL.CHANGEID";
+
     private EntityManager em;
 
     public GlobalConfigurationDataService(EntityManager em) {
@@ -45,6 +52,12 @@ public class GlobalConfigurationDataService implements IGlobalConfigurationDataS
         }
     }
 
+    @Override
+    public String getGlobalProperty(String completekey) {
+        final GlobalConfigurationDataBean data = em.find(GlobalConfigurationDataBean.class, completekey);
+        return data == null ? null : data.getPropertyValue();
+    }
+
     @Override
     public boolean removeGlobalProperty(String completekey) {
         boolean retval = false;
@@ -59,8 +72,19 @@ public class GlobalConfigurationDataService implements IGlobalConfigurationDataS
     @SuppressWarnings("unchecked")
     @Override
     public List<GlobalConfigurationDataBean> findAll() {
-        Query query = em.createQuery("SELECT e from GlobalConfigurationDataBean e");
+        Query query = em.createQuery("SELECT e from GlobalConfigurationDataBean e WHERE e.propertyKey <> :changeIdKey");
+        query.setParameter("changeIdKey", CHANGEID_KEY);
 
         return (List<GlobalConfigurationDataBean>) query.getResultList();
     }
+
+    @Override
+    public String getChangeId() {
+        return getGlobalProperty(CHANGEID_KEY);
+    }
+
+    @Override
+    public void updateChangeId() {
+        setGlobalProperty(CHANGEID_KEY, UUID.randomUUID().toString());
+    }
 }
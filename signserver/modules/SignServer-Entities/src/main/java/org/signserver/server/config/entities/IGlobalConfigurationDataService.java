@@ -22,10 +22,17 @@ import java.util.List;
 public interface IGlobalConfigurationDataService {
 
     /**
-     * @return All global configuration beans
+     * @return All global configuration beans, not including the change ID
      */
     List<GlobalConfigurationDataBean> findAll();
 
+    /**
+     * Gets the value of the given global configuration property.
+     * @param completekey property to get
+     * @return The value or null if the property does not exist
+     */
+    String getGlobalProperty(String completekey);
+
     /**
      * Tries to remove the given global configuration property.
      * @param completekey property to remove
@@ -39,5 +46,16 @@ public interface IGlobalConfigurationDataService {
      * @param value the value to set
      */
     void setGlobalProperty(String completekey, String value);
+
+    /**
+     * Gets the ID updated on every change of the configuration.
+     * @return The change ID or null if none has been stored
+     */
+    String getChangeId();
+
+    /**
+     * Stores a new change ID.
+     */
+    void updateChangeId();
     
 }
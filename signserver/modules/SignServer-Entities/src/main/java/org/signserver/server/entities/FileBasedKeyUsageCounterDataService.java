@@ -84,16 +84,21 @@ public class FileBasedKeyUsageCounterDataService implements IKeyUsageCounterData
 
     @Override
     public boolean incrementIfWithinLimit(String keyHash, long limit) throws FileBasedDatabaseException {
+        return incrementIfWithinLimit(keyHash, limit, 1);
+    }
+
+    @Override
+    public boolean incrementIfWithinLimit(String keyHash, long limit, int count) throws FileBasedDatabaseException {
         final boolean result;
         try {
             synchronized (manager) {
                 final Long value = loadData(keyHash);
                 if (value == null) {
                     result = false;
-                } else if (limit >= 0 && value >= limit) {
+                } else if (limit >= 0 && value + count > limit) {
                     result = false;
                 } else {
-                    writeData(keyHash, value + 1);
+                    writeData(keyHash, value + count);
                     result = true;
                 }
             }
@@ -0,0 +1,123 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.entities;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import org.signserver.common.FileBasedDatabaseException;
+import org.signserver.server.nodb.FileBasedDatabaseManager;
+
+/**
+ * Lease data service storing each lease in a file in the file based
+ * database.
+ *
+ * @version $Id$
+ */
+public class FileBasedServiceLeaseDataService implements IServiceLeaseDataService {
+
+    private final FileBasedDatabaseManager manager;
+    private final File folder;
+    private static final String PREFIX = "lease-";
+    private static final String SUFFIX = ".dat";
+
+    private static final int SCHEMA_VERSION = 1;
+
+    public FileBasedServiceLeaseDataService(FileBasedDatabaseManager manager) {
+        this.manager = manager;
+        this.folder = manager.getDataFolder();
+    }
+
+    @Override
+    public boolean acquire(int serviceId, String owner, long expiredBefore, long expireTime) throws FileBasedDatabaseException {
+        try {
+            synchronized (manager) {
+                final ServiceLease lease = loadData(serviceId);
+                if (lease == null || owner.equals(lease.getOwner()) || lease.getExpireTime() < expiredBefore) {
+                    writeData(new ServiceLease(serviceId, owner, expireTime));
+                    return true;
+                }
+                return false;
+            }
+        } catch (IOException ex) {
+            throw new FileBasedDatabaseException("Could not load from or write data to file based database", ex);
+        }
+    }
+
+    @Override
+    public boolean renew(int serviceId, String owner, long expireTime) throws FileBasedDatabaseException {
+        try {
+            synchronized (manager) {
+                final ServiceLease lease = loadData(serviceId);
+                if (lease != null && owner.equals(lease.getOwner())) {
+                    writeData(new ServiceLease(serviceId, owner, expireTime));
+                    return true;
+                }
+                return false;
+            }
+        } catch (IOException ex) {
+            throw new FileBasedDatabaseException("Could not load from or write data to file based database", ex);
+        }
+    }
+
+    @Override
+    public ServiceLease getLease(int serviceId) throws FileBasedDatabaseException {
+        try {
+            synchronized (manager) {
+                return loadData(serviceId);
+            }
+        } catch (IOException ex) {
+            throw new FileBasedDatabaseException("Could not load from or write data to file based database", ex);
+        }
+    }
+
+    private ServiceLease loadData(int serviceId) throws IOException {
+        assert Thread.holdsLock(manager);
+        checkSchemaVersion();
+
+        ServiceLease result = null;
+        final File file = new File(folder, PREFIX + serviceId + SUFFIX);
+        if (file.length() > 0) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                final String owner = in.readLine();
+                final String expireTime = in.readLine();
+                if (owner != null && expireTime != null) {
+                    result = new ServiceLease(serviceId, owner, Long.parseLong(expireTime));
+                }
+            } catch (FileNotFoundException ignored) { // NOPMD
+            }
+        }
+        return result;
+    }
+
+    private void writeData(ServiceLease lease) throws IOException {
+        assert Thread.holdsLock(manager);
+        checkSchemaVersion();
+
+        final File file = new File(folder, PREFIX + lease.getServiceId() + SUFFIX);
+        try (FileOutputStream fout = new FileOutputStream(file)) {
+            final Writer out = new BufferedWriter(new OutputStreamWriter(fout, StandardCharsets.UTF_8));
+            out.write(lease.getOwner());
+            out.write('\n');
+            out.write(String.valueOf(lease.getExpireTime()));
+            out.flush();
+            fout.getFD().sync();
+        }
+    }
+
+    private void checkSchemaVersion() {
+        if (manager.getSchemaVersion() != SCHEMA_VERSION) {
+            throw new FileBasedDatabaseException("Unsupported schema version: " + manager.getSchemaVersion());
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.entities;
+
+/**
+ * DataService managing the persistence of the leases for singleton timed
+ * services.
+ *
+ * @version $Id$
+ */
+public interface IServiceLeaseDataService {
+
+    /**
+     * Atomically takes or extends the lease for the given service if it is
+     * not held by any other owner or if it expired before the given time.
+     * @param serviceId ID of the service
+     * @param owner Identity of the node taking the lease
+     * @param expiredBefore Leases of other owners expiring before this time
+     * can be taken over
+     * @param expireTime New expiration time of the lease
+     * @return True if the lease is now held by the owner
+     */
+    boolean acquire(int serviceId, String owner, long expiredBefore, long expireTime);
+
+    /**
+     * Extends the lease for the given service but only if it is still held
+     * by the owner.
+     * @param serviceId ID of the service
+     * @param owner Identity of the node holding the lease
+     * @param expireTime New expiration time of the lease
+     * @return True if the lease was extended
+     */
+    boolean renew(int serviceId, String owner, long expireTime);
+
+    /**
+     * Get the current lease for the given service.
+     * @param serviceId ID of the service
+     * @return The lease or null if the service has never been leased
+     */
+    ServiceLease getLease(int serviceId);
+
+}
@@ -63,6 +63,21 @@ public class KeyUsageCounterDataService implements IKeyUsageCounterDataService {
         return updateQuery.executeUpdate() > 0;
     }
 
+    @Override
+    public boolean incrementIfWithinLimit(String keyHash, long limit, int count) {
+        final Query updateQuery;
+        if (limit < 0) {
+            updateQuery = em.createQuery("UPDATE KeyUsageCounter w SET w.counter = w.counter + :count WHERE w.keyHash = :keyhash");
+        } else {
+            updateQuery = em.createQuery("UPDATE KeyUsageCounter w SET w.counter = w.counter + :count WHERE w.keyHash = :keyhash AND w.counter <= :maxcounter");
+            updateQuery.setParameter("maxcounter", limit - count);
+        }
+        updateQuery.setParameter("count", (long) count);
+        updateQuery.setParameter("keyhash", keyHash);
+
+        return updateQuery.executeUpdate() > 0;
+    }
+
     @Override
     public boolean isWithinLimit(String keyHash, long keyUsageLimit) {
         final Query selectQuery;
@@ -0,0 +1,65 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.entities;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Lease in database giving a node the right to run a singleton timed service
+ * until the lease expires.
+ *
+ * @version $Id$
+ */
+@Entity
+@Table(name = "ServiceLease")
+public class ServiceLease implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private int serviceId;
+
+    private String owner;
+
+    private long expireTime;
+
+    public ServiceLease() {
+    }
+
+    public ServiceLease(final int serviceId, final String owner, final long expireTime) {
+        this.serviceId = serviceId;
+        this.owner = owner;
+        this.expireTime = expireTime;
+    }
+
+    public int getServiceId() {
+        return serviceId;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public long getExpireTime() {
+        return expireTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceLease(" + serviceId + ", " + owner + ", " + expireTime + ")";
+    }
+
+}
@@ -0,0 +1,78 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.entities;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.apache.log4j.Logger;
+
+/**
+ * Lease data service using the ServiceLease table.
+ *
+ * Leases are taken with a single conditional update so that at most one
+ * node holds the lease at a time. The first lease for a service is inserted
+ * and if another node inserts it at the same time the transaction fails on
+ * the primary key.
+ *
+ * @version $Id$
+ */
+public class ServiceLeaseDataService implements IServiceLeaseDataService {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ServiceLeaseDataService.class);
+
+    private final EntityManager em;
+
+    public ServiceLeaseDataService(EntityManager em) {
+        this.em = em;
+    }
+
+    @Override
+    public boolean acquire(int serviceId, String owner, long expiredBefore, long expireTime) {
+        final Query updateQuery = em.createQuery("UPDATE ServiceLease l SET l.owner = :owner, l.expireTime = :expiretime WHERE l.serviceId = :serviceid AND (l.owner = :owner OR l.expireTime < :expiredbefore)");
+        updateQuery.setParameter("owner", owner);
+        updateQuery.setParameter("expiretime", expireTime);
+        updateQuery.setParameter("serviceid", serviceId);
+        updateQuery.setParameter("expiredbefore", expiredBefore);
+
+        final boolean result;
+        if (updateQuery.executeUpdate() > 0) {
+            result = true;
+        } else if (em.find(ServiceLease.class, serviceId) == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Creating lease for service " + serviceId);
+            }
+            em.persist(new ServiceLease(serviceId, owner, expireTime));
+            em.flush();
+            result = true;
+        } else {
+            result = false;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean renew(int serviceId, String owner, long expireTime) {
+        final Query updateQuery = em.createQuery("UPDATE ServiceLease l SET l.expireTime = :expiretime WHERE l.serviceId = :serviceid AND l.owner = :owner");
+        updateQuery.setParameter("expiretime", expireTime);
+        updateQuery.setParameter("serviceid", serviceId);
+        updateQuery.setParameter("owner", owner);
+        return updateQuery.executeUpdate() > 0;
+    }
+
+    @Override
+    public ServiceLease getLease(int serviceId) {
+        return em.find(ServiceLease.class, serviceId);
+    }
+
+}
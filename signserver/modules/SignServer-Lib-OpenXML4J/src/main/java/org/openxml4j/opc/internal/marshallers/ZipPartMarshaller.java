@@ -68,6 +68,7 @@ import org.openxml4j.opc.PackageRelationshipCollection;
 import org.openxml4j.opc.PackagingURIHelper;
 import org.openxml4j.opc.StreamHelper;
 import org.openxml4j.opc.TargetMode;
+import org.openxml4j.opc.ZipPackagePart;
 import org.openxml4j.opc.internal.PartMarshaller;
 import org.openxml4j.opc.internal.ZipHelper;
 
@@ -99,21 +100,35 @@ public class ZipPartMarshaller implements PartMarshaller {
 		ZipEntry partEntry = new ZipEntry(ZipHelper
 				.getZipItemNameFromOPCName(part.getPartName().getURI()
 						.getPath()));
+		if (part instanceof ZipPackagePart) {
+			// Keep entries stored without compression in the original archive
+			// stored, their content (typically already compressed media) is
+			// then copied as is instead of being deflated again
+			ZipEntry originalEntry = ((ZipPackagePart) part).getZipArchive();
+			if (originalEntry != null
+					&& originalEntry.getMethod() == ZipEntry.STORED
+					&& originalEntry.getSize() >= 0
+					&& originalEntry.getCrc() != -1) {
+				partEntry.setMethod(ZipEntry.STORED);
+				partEntry.setSize(originalEntry.getSize());
+				partEntry.setCompressedSize(originalEntry.getSize());
+				partEntry.setCrc(originalEntry.getCrc());
+			}
+		}
 		try {
 			// Create next zip entry
 			zos.putNextEntry(partEntry);
 
 			// Saving data in the ZIP file
 			InputStream ins = part.getInputStream();
-			byte[] buff = new byte[ZipHelper.READ_WRITE_FILE_BUFFER_SIZE];
-			while (ins.available() > 0) {
-				int resultRead = ins.read(buff);
-				if (resultRead == -1) {
-					// End of file reached
-					break;
-				} else {
+			try {
+				byte[] buff = new byte[ZipHelper.READ_WRITE_FILE_BUFFER_SIZE];
+				int resultRead;
+				while ((resultRead = ins.read(buff)) != -1) {
 					zos.write(buff, 0, resultRead);
 				}
+			} finally {
+				ins.close();
 			}
 			zos.closeEntry();
 		} catch (IOException ioe) {
@@ -43,8 +43,8 @@
 
 package org.openxml4j.opc.signature;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.security.InvalidAlgorithmParameterException;
@@ -134,6 +134,12 @@ public final class PackageDigitalSignatureManager {
 
 	private Package _container;
 
+	/**
+	 * Temporary file holding the normalized copy of the package while
+	 * signing, or null.
+	 */
+	private File _normalizedFile;
+
 	/**
 	 * Flag that indicates if the search for the origin has already be done for
 	 * speed up matter.
@@ -205,6 +211,21 @@ public final class PackageDigitalSignatureManager {
 		this._container = pContainer;
 	}
 
+	/**
+	 * Releases the normalized copy of the package created when signing. The
+	 * container returned by {@link #getContainer()} after signing can not be
+	 * used after this. The package passed to the constructor is not affected.
+	 */
+	public void close() {
+		if (this._normalizedFile != null) {
+			this._container.revert();
+			if (!this._normalizedFile.delete()) {
+				this._normalizedFile.deleteOnExit();
+			}
+			this._normalizedFile = null;
+		}
+	}
+
 	/**
 	 * Gets a value that indicates whether the package contains any signatures
 	 * 
@@ -901,28 +922,35 @@ public final class PackageDigitalSignatureManager {
 		// First "normalize" document by opening and saving, then reopen the
 		// saved document to sign.
 
-		// save output to package
-		ByteArrayOutputStream boutTemp = new ByteArrayOutputStream();
+		// save output to a temporary file so that the parts of the saved
+		// package are read from disk when needed instead of the whole package
+		// being held in memory
+		File normalizedFile;
+		try {
+			normalizedFile = File.createTempFile("openxml4j", ".tmp");
+		} catch (IOException e) {
+			throw new OpenXML4JException(
+					"Error creating file for pre-formatted data", e);
+		}
 		try {
-			_container.save(boutTemp);
+			_container.save(normalizedFile);
 		} catch (IOException e) {
+			normalizedFile.delete();
 			throw new OpenXML4JException(
 					"Error saving pre-formatted data to output", e);
 		}
 
-		ByteArrayInputStream binTemp = new ByteArrayInputStream(boutTemp
-				.toByteArray());
-
 		// open saved docxpackage and sign
 		try {
-			_container = Package.open(binTemp, PackageAccess.READ_WRITE);
-		} catch (InvalidFormatException e) {
+			_container = Package.open(normalizedFile.getAbsolutePath(),
+					PackageAccess.READ_WRITE);
+		} catch (InvalidFormatException | InvalidOperationException e) {
+			normalizedFile.delete();
 			throw new OpenXML4JException(
 					"Pre-formatted data is not in valid openxml package format",
 					e);
-		} catch (IOException e) {
-			throw new OpenXML4JException("Error opening pre-formatted data", e);
 		}
+		this._normalizedFile = normalizedFile;
 
 		// ensure origin part exists
 		ensureOriginPart();
@@ -13,6 +13,7 @@
 package org.signserver.module.cmssigner;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -62,6 +63,8 @@ import org.signserver.server.archive.Archivable;
 import org.signserver.server.archive.DefaultArchivable;
 import org.signserver.server.cryptotokens.ICryptoInstance;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
+import org.signserver.server.data.impl.DigestTeeInputStream;
+import org.signserver.server.data.impl.DigestTeeOutputStream;
 import org.signserver.server.data.impl.UploadUtil;
 import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
@@ -605,57 +608,53 @@ public class CMSSigner extends BaseSigner {
             // Log anything interesting from the request to the worker logger
             final LogMap logMap = LogMap.getInstance(requestContext);
 
-            final byte[] requestDigest;
-            if (doLogRequestDigest) {
+            // Digests for the log are computed while the data is read and
+            // written by the signer
+            final DigestingReadableData digestingRequestData;
+            final DigestingWritableData digestingResponseData;
+            try {
+                digestingRequestData = doLogRequestDigest
+                        ? new DigestingReadableData(requestData, MessageDigest.getInstance(logRequestDigestAlgorithm))
+                        : null;
+                digestingResponseData = doLogResponseDigest
+                        ? new DigestingWritableData(responseData, MessageDigest.getInstance(logResponseDigestAlgorithm))
+                        : null;
+            } catch (NoSuchAlgorithmException ex) {
+                LOG.error("Log digest algorithm not supported", ex);
+                throw new SignServerException("Log digest algorithm not supported", ex);
+            }
+
+            sign(crypto, cert, certs, sigAlg, requestContext,
+                    digestingRequestData == null ? requestData : digestingRequestData,
+                    digestingResponseData == null ? responseData : digestingResponseData,
+                    contentOIDToUse);
+
+            if (digestingRequestData != null) {
                 logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST_ALGORITHM, logRequestDigestAlgorithm);
 
-                try (InputStream input = requestData.getAsInputStream()) {
-                    final MessageDigest md = MessageDigest.getInstance(logRequestDigestAlgorithm);
-
-                    // Digest all data
-                    // TODO: Future optimization: could be done while the file is read instead
-                    requestDigest = UploadUtil.digest(input, md);
-
-                    logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
-                        @Override
-                        public String toString() {
-                            return Hex.toHexString(requestDigest);
-                        }
-                    });
-                } catch (NoSuchAlgorithmException ex) {
-                    LOG.error("Log digest algorithm not supported", ex);
-                    throw new SignServerException("Log digest algorithm not supported", ex);
-                } catch (IOException ex) {
-                    LOG.error("Log request digest failed", ex);
-                    throw new SignServerException("Log request digest failed", ex);
-                }
+                final byte[] requestDigest = digestingRequestData.digest();
+                logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
+                    @Override
+                    public String toString() {
+                        return Hex.toHexString(requestDigest);
+                    }
+                });
             }
 
-            sign(crypto, cert, certs, sigAlg, requestContext, requestData,
-                         responseData, contentOIDToUse);
-
             final String archiveId = createArchiveId(new byte[0], (String) requestContext.get(RequestContext.TRANSACTION_ID));
             final Collection<? extends Archivable> archivables = Arrays.asList(new DefaultArchivable(Archivable.TYPE_RESPONSE, CONTENT_TYPE, responseData.toReadableData(), archiveId));
 
-            final byte[] responseDigest;
-            if (doLogResponseDigest) {
+            if (digestingResponseData != null) {
                 logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST_ALGORITHM, logResponseDigestAlgorithm);
 
-                try (InputStream in = responseData.toReadableData().getAsInputStream()) {
-                    final MessageDigest md = MessageDigest.getInstance(logResponseDigestAlgorithm);
-                    responseDigest = UploadUtil.digest(in, md);
-
-                    logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST,
-                               new Loggable() {
-                                   @Override
-                                   public String toString() {
-                                        return Hex.toHexString(responseDigest);
-                                   }
-                               });
-                } catch (NoSuchAlgorithmException ex) {
-                    LOG.error("Log digest algorithm not supported", ex);
-                    throw new SignServerException("Log digest algorithm not supported", ex);
-                }
+                final byte[] responseDigest = digestingResponseData.digest();
+                logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST,
+                           new Loggable() {
+                               @Override
+                               public String toString() {
+                                    return Hex.toHexString(responseDigest);
+                               }
+                           });
             }
 
             // Suggest new file name
@@ -758,4 +757,119 @@ public class CMSSigner extends BaseSigner {
                      responseData, contentOIDToUse);
         }
     } 
-   }
+    /**
+     * Request data updating a digest with the data as it is read. If the data
+     * was not read exactly once as a whole the digest is computed separately.
+     */
+    private static class DigestingReadableData implements ReadableData {
+
+        private final ReadableData data;
+        private final MessageDigest digest;
+        private int reads;
+        private DigestTeeInputStream stream;
+
+        DigestingReadableData(final ReadableData data, final MessageDigest digest) {
+            this.data = data;
+            this.digest = digest;
+        }
+
+        @Override
+        public byte[] getAsByteArray() throws IOException {
+            final byte[] result = data.getAsByteArray();
+            reads++;
+            digest.update(result);
+            return result;
+        }
+
+        @Override
+        public InputStream getAsInputStream() throws IOException {
+            reads++;
+            stream = new DigestTeeInputStream(data.getAsInputStream(), digest);
+            return stream;
+        }
+
+        @Override
+        public File getAsFile() throws IOException {
+            // Not digested
+            reads += 2;
+            return data.getAsFile();
+        }
+
+        @Override
+        public long getLength() {
+            return data.getLength();
+        }
+
+        @Override
+        public boolean isFile() {
+            return data.isFile();
+        }
+
+        byte[] digest() throws IOException {
+            if (reads == 1 && (stream == null || stream.isEndOfStream())) {
+                return digest.digest();
+            }
+            digest.reset();
+            try (InputStream in = data.getAsInputStream()) {
+                return UploadUtil.digest(in, digest);
+            }
+        }
+    }
+
+    /**
+     * Response data updating a digest with the data as it is written. If the
+     * data was not written using exactly one stream the digest is computed
+     * separately.
+     */
+    private static class DigestingWritableData implements WritableData {
+
+        private final WritableData data;
+        private final MessageDigest digest;
+        private int writes;
+
+        DigestingWritableData(final WritableData data, final MessageDigest digest) {
+            this.data = data;
+            this.digest = digest;
+        }
+
+        @Override
+        public File getAsFile() throws IOException {
+            // Not digested
+            writes += 2;
+            return data.getAsFile();
+        }
+
+        @Override
+        public OutputStream getAsOutputStream() throws IOException {
+            writes++;
+            return new DigestTeeOutputStream(data.getAsOutputStream(), digest);
+        }
+
+        @Override
+        public OutputStream getAsFileOutputStream() throws IOException {
+            writes++;
+            return new DigestTeeOutputStream(data.getAsFileOutputStream(), digest);
+        }
+
+        @Override
+        public OutputStream getAsInMemoryOutputStream() {
+            writes++;
+            return new DigestTeeOutputStream(data.getAsInMemoryOutputStream(), digest);
+        }
+
+        @Override
+        public ReadableData toReadableData() {
+            return data.toReadableData();
+        }
+
+        byte[] digest() throws IOException {
+            if (writes == 1) {
+                return digest.digest();
+            }
+            digest.reset();
+            try (InputStream in = data.toReadableData().getAsInputStream()) {
+                return UploadUtil.digest(in, digest);
+            }
+        }
+    }
+}
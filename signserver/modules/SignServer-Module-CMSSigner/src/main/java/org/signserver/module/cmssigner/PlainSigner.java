@@ -47,7 +47,7 @@ import org.signserver.server.archive.Archivable;
 import org.signserver.server.archive.DefaultArchivable;
 import org.signserver.server.cryptotokens.ICryptoInstance;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
-import org.signserver.server.data.impl.UploadUtil;
+import org.signserver.server.data.impl.DigestTeeInputStream;
 import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
 import org.signserver.server.log.Loggable;
@@ -151,33 +151,22 @@ public class PlainSigner extends BaseSigner {
                 return logRequestDigestAlgorithm;
             }
         });
+        final MessageDigest requestDigest;
         if (doLogRequestDigest) {
-            try (InputStream input = requestData.getAsInputStream()) {
-                final MessageDigest md = MessageDigest.getInstance(logRequestDigestAlgorithm);
-
-                // Digest all data
-                // TODO: Future optimization: could be done while the file is read instead
-                final byte[] requestDigest = UploadUtil.digest(input, md);
-
-                logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
-                    @Override
-                    public String toString() {
-                        return Hex.toHexString(requestDigest);
-                    }
-                });
+            try {
+                requestDigest = MessageDigest.getInstance(logRequestDigestAlgorithm);
             } catch (NoSuchAlgorithmException ex) {
                 LOG.error("Log digest algorithm not supported", ex);
                 throw new SignServerException("Log digest algorithm not supported", ex);
-            } catch (IOException ex) {
-                LOG.error("Log request digest failed", ex);
-                throw new SignServerException("Log request digest failed", ex);
             }
+        } else {
+            requestDigest = null;
         }
         final String archiveId = createArchiveId(new byte[0], (String) requestContext.get(RequestContext.TRANSACTION_ID));
 
         ICryptoInstance crypto = null;
         try (
-                InputStream in = requestData.getAsInputStream();
+                InputStream in = requestDigest == null ? requestData.getAsInputStream() : new DigestTeeInputStream(requestData.getAsInputStream(), requestDigest);
                 OutputStream out = responseData.getAsInMemoryOutputStream()
             ) {
             crypto = acquireCryptoInstance(ICryptoTokenV4.PURPOSE_SIGN, signRequest, requestContext);
@@ -208,6 +197,17 @@ public class PlainSigner extends BaseSigner {
             
             final byte[] signedbytes = signature.sign();
             out.write(signedbytes);
+
+            // Digest of the request, computed while it was read for signing
+            if (requestDigest != null) {
+                final byte[] requestDigestBytes = requestDigest.digest();
+                logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
+                    @Override
+                    public String toString() {
+                        return Hex.toHexString(requestDigestBytes);
+                    }
+                });
+            }
             
             logMap.put(IWorkerLogger.LOG_RESPONSE_ENCODED, new Loggable() {
                 @Override
@@ -13,7 +13,6 @@
 package org.signserver.module.ooxmlsigner;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.Security;
 import java.security.cert.X509Certificate;
@@ -24,6 +23,7 @@ import java.util.List;
 
 import javax.persistence.EntityManager;
 import org.openxml4j.exceptions.InvalidFormatException;
+import org.openxml4j.exceptions.InvalidOperationException;
 import org.openxml4j.exceptions.OpenXML4JException;
 import org.openxml4j.opc.Package;
 import org.openxml4j.opc.PackageAccess;
@@ -39,6 +39,7 @@ import org.signserver.server.archive.DefaultArchivable;
 import org.signserver.server.cryptotokens.ICryptoInstance;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
 import org.signserver.common.data.SignatureRequest;
+import org.signserver.common.data.ReadableData;
 import org.signserver.common.data.SignatureResponse;
 import org.signserver.common.data.WritableData;
 import org.signserver.server.signers.BaseSigner;
@@ -108,25 +109,25 @@ public class OOXMLSigner extends BaseSigner {
         final String archiveId = createArchiveId(new byte[0], (String) requestContext.get(RequestContext.TRANSACTION_ID));
 
         X509Certificate cert = null;
+        final ReadableData requestData = sReq.getRequestData();
         final WritableData responseData = sReq.getResponseData();
-        try (
-                InputStream in = sReq.getRequestData().getAsInputStream();
-                OutputStream out = responseData.getAsOutputStream()
-            ) {
-            Package docxPackage;
-            try {
-                docxPackage = Package.open(in, PackageAccess.READ_WRITE);
-            } catch (InvalidFormatException e) {
-                throw new SignServerException(
-                        "Data received is not in valid openxml package format", e);
-            } catch (IOException e) {
-                throw new SignServerException("Error opening received data", e);
-            }
 
-            // create digital signature manager object
-            PackageDigitalSignatureManager dsm = new PackageDigitalSignatureManager(
-                    docxPackage);
+        // Open the package from file so that the parts are read from disk
+        // when needed instead of the whole archive being loaded into memory
+        Package docxPackage;
+        try {
+            docxPackage = Package.open(requestData.getAsFile().getAbsolutePath(), PackageAccess.READ_WRITE);
+        } catch (InvalidFormatException | InvalidOperationException e) {
+            throw new SignServerException(
+                    "Data received is not in valid openxml package format", e);
+        } catch (IOException e) {
+            throw new SignServerException("Error opening received data", e);
+        }
 
+        // create digital signature manager object
+        PackageDigitalSignatureManager dsm = new PackageDigitalSignatureManager(
+                docxPackage);
+        try {
             ICryptoInstance crypto = null;
             try {
                 crypto = acquireCryptoInstance(ICryptoTokenV4.PURPOSE_SIGN, signRequest, requestContext);
@@ -140,15 +141,19 @@ public class OOXMLSigner extends BaseSigner {
                 releaseCryptoInstance(crypto, requestContext);
             }
 
-            // save output to package
-            try {
+            // save output to package, unchanged parts are streamed from disk
+            try (OutputStream out = responseData.getAsOutputStream()) {
                 dsm.getContainer().save(out);
             } catch (IOException e) {
                 throw new SignServerException(
                         "Error saving final output data to output", e);
             }
-        } catch (IOException ex) {
-            throw new SignServerException("Error reading data", ex);
+        } finally {
+            dsm.close();
+
+            // Close the request file without saving, close() would write the
+            // signed package back to it
+            docxPackage.revert();
         }
 
         final Collection<? extends Archivable> archivables = Arrays.asList(new DefaultArchivable(Archivable.TYPE_RESPONSE, CONTENT_TYPE, responseData.toReadableData(), archiveId));
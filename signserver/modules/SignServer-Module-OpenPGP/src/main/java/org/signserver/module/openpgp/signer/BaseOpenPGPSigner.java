@@ -12,14 +12,12 @@
  ************************************************************************ */
 package org.signserver.module.openpgp.signer;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
-import java.security.SignatureException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Date;
@@ -43,7 +41,6 @@ import org.bouncycastle.openpgp.PGPSignatureGenerator;
 import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
 import org.bouncycastle.openpgp.PGPUtil;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
-import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPPrivateKey;
 import org.bouncycastle.util.encoders.Hex;
 import org.signserver.common.CompileTimeSettings;
@@ -59,8 +56,8 @@ import org.signserver.common.SignServerException;
 import org.signserver.common.UnsupportedCryptoTokenParameter;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerStatusInfo;
-import org.signserver.openpgp.utils.ClearSignedFileProcessorUtils;
 import org.signserver.server.IServices;
+import org.signserver.server.LRUCache;
 import org.signserver.server.ServicesImpl;
 import org.signserver.server.WorkerContext;
 import static org.signserver.server.cryptotokens.CryptoTokenHelper.PROPERTY_SELFSIGNED_VALIDITY;
@@ -98,10 +95,17 @@ public abstract class BaseOpenPGPSigner extends BaseSigner {
            
     // Configuration errors
     protected final LinkedList<String> configErrors = new LinkedList<>();         
+
+    /** Maximum number of keys to cache OpenPGP key material for. */
+    private static final int MAX_CACHED_KEY_MATERIALS = 16;
+
+    /** OpenPGP key material per signer certificate. */
+    private final LRUCache<X509Certificate, PGPKeyMaterial> keyMaterials = new LRUCache<>(MAX_CACHED_KEY_MATERIALS);
         
     @Override
     public void init(int workerId, WorkerConfig config, WorkerContext workerContext, EntityManager workerEM) {
         super.init(workerId, config, workerContext, workerEM);
+        keyMaterials.clear();
         
         // Optional property DIGEST_ALGORITHM
         final String digestAlgorithmValue = config.getProperty(PROPERTY_DIGEST_ALGORITHM);
@@ -200,15 +204,12 @@ public abstract class BaseOpenPGPSigner extends BaseSigner {
 
             PKCS10CertReqInfo reqInfo = (PKCS10CertReqInfo) info;
             
-            final JcaPGPKeyConverter conv = new JcaPGPKeyConverter();
             final X509Certificate x509Cert = (X509Certificate) getSigningCertificate(crypto);
             final boolean generateForDefaultKey = keyAlias.equals(config.getProperty("DEFAULTKEY"));
             final PGPPublicKey pgpPublicKey =
                     pgpCertificate != null && generateForDefaultKey ?
                     pgpCertificate :
-                    conv.getPGPPublicKey(OpenPGPUtils.getKeyAlgorithm(x509Cert),
-                                         x509Cert.getPublicKey(),
-                                         x509Cert.getNotBefore());
+                    getKeyMaterial(x509Cert).getPublicKey();
 
             PGPSignatureGenerator generator = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(pgpPublicKey.getAlgorithm(), OpenPGPUtils.getHashAlgorithm(reqInfo.getSignatureAlgorithm())).setProvider(crypto.getProvider()).setDigestProvider("BC"));
 
@@ -318,8 +319,7 @@ public abstract class BaseOpenPGPSigner extends BaseSigner {
         if (pgpCertificate != null) {
             try {
                 final X509Certificate signerCert = (X509Certificate) getSigningCertificate(services);
-                final JcaPGPKeyConverter conv = new JcaPGPKeyConverter();
-                final PGPPublicKey pgpPublicKey = conv.getPGPPublicKey(OpenPGPUtils.getKeyAlgorithm(signerCert), signerCert.getPublicKey(), signerCert.getNotBefore());
+                final PGPPublicKey pgpPublicKey = getKeyMaterial(signerCert).getPublicKey();
 
                 if (!Arrays.equals(pgpPublicKey.getPublicKeyPacket().getKey().getEncoded(), pgpCertificate.getPublicKeyPacket().getKey().getEncoded())) {
                     result.add("Configured " + PROPERTY_PGPPUBLICKEY + " not matching the key");
@@ -357,13 +357,12 @@ public abstract class BaseOpenPGPSigner extends BaseSigner {
             X509Certificate signerCertificate = (X509Certificate) crypto.getCertificate();
             if (signerCertificate != null) {
 
-                final JcaPGPKeyConverter conv = new JcaPGPKeyConverter();
                 X509Certificate x509Cert = (X509Certificate) getSigningCertificate(crypto);
 
-                PGPPublicKey pgpPublicKey = conv.getPGPPublicKey(OpenPGPUtils.getKeyAlgorithm(x509Cert), x509Cert.getPublicKey(), x509Cert.getNotBefore());
+                final PGPKeyMaterial keyMaterial = getKeyMaterial(x509Cert);
 
-                status.getCompleteEntries().add(new WorkerStatusInfo.Entry("Key ID", OpenPGPUtils.formatKeyID(pgpPublicKey.getKeyID())));
-                status.getCompleteEntries().add(new WorkerStatusInfo.Entry("Primary key fingerprint", Hex.toHexString(pgpPublicKey.getFingerprint()).toUpperCase(Locale.ENGLISH)));
+                status.getCompleteEntries().add(new WorkerStatusInfo.Entry("Key ID", OpenPGPUtils.formatKeyID(keyMaterial.getKeyID())));
+                status.getCompleteEntries().add(new WorkerStatusInfo.Entry("Primary key fingerprint", keyMaterial.getFingerprint()));
 
                 // Empty public key
                 if (pgpCertificate != null) {
@@ -447,11 +446,30 @@ public abstract class BaseOpenPGPSigner extends BaseSigner {
         return super.acquireDefaultCryptoInstance(newParams, alias, context);
     }
     
+    /**
+     * Get the OpenPGP key material for the signer certificate, converting the
+     * key only the first time it is used.
+     *
+     * @param signerCert signer certificate
+     * @return the key material
+     * @throws SignServerException in case the key algorithm is not supported
+     * @throws PGPException in case the key could not be converted
+     */
+    protected PGPKeyMaterial getKeyMaterial(final X509Certificate signerCert) throws SignServerException, PGPException {
+        final Date creationTime = signerCert.getNotBefore();
+        PGPKeyMaterial result = keyMaterials.get(signerCert);
+        if (result == null || !result.matches(signerCert, creationTime)) {
+            result = PGPKeyMaterial.create(signerCert, creationTime);
+            keyMaterials.put(signerCert, result);
+        }
+        return result;
+    }
+
     /**
      * Sign the given data and produce output in clear text format.
      *
      * @param pgpPrivateKey PGP  private key
-     * @param pgpPublicKey PGP public key
+     * @param keyMaterial PGP key material of the signer
      * @param generator signature generator
      * @param in InputStream containing data to be signed
      * @param out OutputStream holder for signature output 
@@ -459,40 +477,24 @@ public abstract class BaseOpenPGPSigner extends BaseSigner {
      * @throws org.signserver.common.SignServerException
      *
      */
-    protected void signClearText(final PGPPrivateKey pgpPrivateKey, final PGPPublicKey pgpPublicKey, final PGPSignatureGenerator generator, final InputStream in, final OutputStream out, int digestAlgorithm) throws SignServerException {
+    protected void signClearText(final PGPPrivateKey pgpPrivateKey, final PGPKeyMaterial keyMaterial, final PGPSignatureGenerator generator, final InputStream in, final OutputStream out, int digestAlgorithm) throws SignServerException {
         try {
             generator.init(PGPSignature.CANONICAL_TEXT_DOCUMENT, pgpPrivateKey);
 
-            PGPSignatureSubpacketGenerator spGen = new PGPSignatureSubpacketGenerator();
-
-            Iterator it = pgpPublicKey.getUserIDs();
-            if (it.hasNext()) {
-                spGen.setSignerUserID(false, (String) it.next());
-                generator.setHashedSubpackets(spGen.generate());
+            if (keyMaterial.getClearTextHashedSubpackets() != null) {
+                generator.setHashedSubpackets(keyMaterial.getClearTextHashedSubpackets());
             }
 
-            try (InputStream fIn = new BufferedInputStream(in);
-                    ArmoredOutputStream aOut = new ArmoredOutputStream(out)) {
+            try (ArmoredOutputStream aOut = new ArmoredOutputStream(out)) {
                 aOut.setHeader(ArmoredOutputStream.VERSION_HDR, CompileTimeSettings.getInstance().getProperty(CompileTimeSettings.SIGNSERVER_VERSION));
                 aOut.beginClearText(digestAlgorithm);
-                ByteArrayOutputStream lineOut = new ByteArrayOutputStream();
-                int lookAhead = ClearSignedFileProcessorUtils.readInputLine(lineOut, fIn);
-                ClearSignedFileProcessorUtils.processLine(aOut, generator, lineOut.toByteArray());
-                if (lookAhead != -1) {
-                    do {
-                        lookAhead = ClearSignedFileProcessorUtils.readInputLine(lineOut, lookAhead, fIn);
-
-                        generator.update((byte) '\r');
-                        generator.update((byte) '\n');
-
-                        ClearSignedFileProcessorUtils.processLine(aOut, generator, lineOut.toByteArray());
-                    } while (lookAhead != -1);
-                }
 
-                // Add new line before signature if needed
-                byte[] lastBytes = lineOut.toByteArray();
-                if (lastBytes.length > 0 && (lastBytes[lastBytes.length - 1] != '\r' && lastBytes[lastBytes.length - 1] != '\n')) {
-                    aOut.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                try (ClearTextSignatureOutputStream textOut = new ClearTextSignatureOutputStream(aOut, generator)) {
+                    final byte[] buffer = new byte[4096];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        textOut.write(buffer, 0, n);
+                    }
                 }
 
                 aOut.endClearText();
@@ -500,8 +502,6 @@ public abstract class BaseOpenPGPSigner extends BaseSigner {
                 generator.generate().encode(bOut);
             } catch (IOException ex) {
                 throw new SignServerException("Encoding error", ex);
-            } catch (SignatureException ex) {
-                throw new SignServerException("SignatureException", ex);
             }
         } catch (PGPException ex) {
             throw new SignServerException("PGP exception", ex);
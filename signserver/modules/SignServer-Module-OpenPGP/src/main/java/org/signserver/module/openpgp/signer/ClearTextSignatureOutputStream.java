@@ -0,0 +1,182 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.openpgp.signer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+
+/**
+ * Output stream writing the text to be clear signed as is to the underlying
+ * stream while updating the signature generator with the canonical form of
+ * the text.
+ *
+ * The canonical form is the text with trailing white space removed from each
+ * line and the lines separated by CRLF (RFC 4880 Section 7.1). The text is
+ * processed as it is written without buffering lines, only white space
+ * that might be trailing is held back until the rest of the line is known.
+ *
+ * The underlying stream is typically an ArmoredOutputStream in clear text
+ * mode and it is not closed by this stream as the signature should be
+ * written to it afterwards.
+ *
+ * @version $Id$
+ */
+public class ClearTextSignatureOutputStream extends OutputStream {
+
+    private static final byte[] CRLF = new byte[] {'\r', '\n'};
+
+    private final OutputStream out;
+    private final PGPSignatureGenerator generator;
+
+    /** White space not yet known to be trailing or not. */
+    private byte[] whiteSpace = new byte[64];
+    private int whiteSpaceLength;
+
+    /** If the last byte written was an end of line. */
+    private boolean lineEnded;
+
+    /** If the last byte written was a CR which could be followed by LF. */
+    private boolean afterCR;
+
+    /** If anything has been written. */
+    private boolean written;
+
+    private boolean finished;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param out stream to write the text to
+     * @param generator initialized signature generator to update
+     */
+    public ClearTextSignatureOutputStream(final OutputStream out, final PGPSignatureGenerator generator) {
+        this.out = out;
+        this.generator = generator;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        written = true;
+        if (isText((byte) b)) {
+            beginText();
+            generator.update((byte) b);
+        } else {
+            processSpecial((byte) b);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        if (len > 0) {
+            written = true;
+        }
+
+        final int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (isText(b[i])) {
+                // Update with the whole run of ordinary characters at once
+                int j = i + 1;
+                while (j < end && isText(b[j])) {
+                    j++;
+                }
+                beginText();
+                generator.update(b, i, j - i);
+                i = j;
+            } else {
+                processSpecial(b[i]);
+                i++;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Ends the text. A line ending is written to the underlying stream if the
+     * text did not end with one so that the armor header starts on a new
+     * line. Does not close the underlying stream.
+     *
+     * @throws IOException in case of error writing to the underlying stream
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            if (written && !lineEnded) {
+                out.write(CRLF);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private static boolean isText(final byte b) {
+        return b != '\r' && b != '\n' && b != ' ' && b != '\t';
+    }
+
+    /**
+     * Called before a character other than white space or line ending. Starts
+     * a new line if needed and includes any held back white space as it
+     * turned out not to be trailing.
+     */
+    private void beginText() {
+        afterCR = false;
+        if (lineEnded) {
+            generator.update(CRLF);
+            lineEnded = false;
+        }
+        if (whiteSpaceLength > 0) {
+            generator.update(whiteSpace, 0, whiteSpaceLength);
+            whiteSpaceLength = 0;
+        }
+    }
+
+    private void processSpecial(final byte b) {
+        if (b == '\n' && afterCR) {
+            // Second half of a CRLF line ending
+            afterCR = false;
+            return;
+        }
+        afterCR = false;
+
+        if (b == '\r' || b == '\n') {
+            if (lineEnded) {
+                // Empty line
+                generator.update(CRLF);
+            }
+            // Trailing white space is not included in the signature
+            whiteSpaceLength = 0;
+            lineEnded = true;
+            afterCR = b == '\r';
+        } else {
+            if (lineEnded) {
+                generator.update(CRLF);
+                lineEnded = false;
+            }
+            if (whiteSpaceLength == whiteSpace.length) {
+                whiteSpace = Arrays.copyOf(whiteSpace, whiteSpace.length * 2);
+            }
+            whiteSpace[whiteSpaceLength++] = b;
+        }
+    }
+}
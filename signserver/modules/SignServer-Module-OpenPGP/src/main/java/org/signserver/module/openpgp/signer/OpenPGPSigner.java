@@ -39,7 +39,6 @@ import org.signserver.server.cryptotokens.ICryptoInstance;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
 import org.bouncycastle.openpgp.*;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
-import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
 import org.signserver.common.CompileTimeSettings;
 import org.signserver.common.UnsupportedCryptoTokenParameter;
 import org.signserver.common.data.ReadableData;
@@ -150,9 +149,9 @@ public class OpenPGPSigner extends BaseOpenPGPSigner {
                 cryptoInstance = acquireCryptoInstance(ICryptoTokenV4.PURPOSE_SIGN, signRequest, params, requestContext);
 
                 // signature value
-                final JcaPGPKeyConverter conv = new JcaPGPKeyConverter();
                 signerCert = (X509Certificate) getSigningCertificate(cryptoInstance);
-                final PGPPublicKey pgpPublicKey = conv.getPGPPublicKey(OpenPGPUtils.getKeyAlgorithm(signerCert), signerCert.getPublicKey(), signerCert.getNotBefore());
+                final PGPKeyMaterial keyMaterial = getKeyMaterial(signerCert);
+                final PGPPublicKey pgpPublicKey = keyMaterial.getPublicKey();
                 PGPPrivateKey pgpPrivateKey = new org.bouncycastle.openpgp.operator.jcajce.JcaPGPPrivateKey(pgpPublicKey, cryptoInstance.getPrivateKey());
 
                 final PGPSignatureGenerator generator = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(pgpPublicKey.getAlgorithm(), digestAlgorithm).setProvider(cryptoInstance.getProvider()).setDigestProvider("BC"));
@@ -172,7 +171,7 @@ public class OpenPGPSigner extends BaseOpenPGPSigner {
                 } else {
                     try (InputStream in = requestData.getAsInputStream();
                             OutputStream out = responseData.getAsOutputStream()) {
-                        signClearText(pgpPrivateKey, pgpPublicKey, generator, in, out, digestAlgorithm);
+                        signClearText(pgpPrivateKey, keyMaterial, generator, in, out, digestAlgorithm);
                     }
                 }
 
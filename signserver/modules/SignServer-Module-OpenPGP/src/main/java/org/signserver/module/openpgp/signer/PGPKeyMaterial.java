@@ -0,0 +1,106 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.openpgp.signer;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketVector;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
+import org.bouncycastle.util.encoders.Hex;
+import org.signserver.common.SignServerException;
+
+/**
+ * OpenPGP key material derived from a signer certificate.
+ *
+ * Instances are immutable so they can be cached and shared between requests
+ * using the same key.
+ *
+ * @version $Id$
+ */
+public class PGPKeyMaterial {
+
+    private final X509Certificate certificate;
+    private final Date creationTime;
+    private final PGPPublicKey publicKey;
+    private final String fingerprint;
+    private final PGPSignatureSubpacketVector clearTextHashedSubpackets;
+
+    private PGPKeyMaterial(final X509Certificate certificate, final Date creationTime, final PGPPublicKey publicKey, final PGPSignatureSubpacketVector clearTextHashedSubpackets) {
+        this.certificate = certificate;
+        this.creationTime = creationTime;
+        this.publicKey = publicKey;
+        this.fingerprint = Hex.toHexString(publicKey.getFingerprint()).toUpperCase(Locale.ENGLISH);
+        this.clearTextHashedSubpackets = clearTextHashedSubpackets;
+    }
+
+    /**
+     * Converts the public key of the certificate to an OpenPGP public key.
+     *
+     * @param certificate signer certificate
+     * @param creationTime of the OpenPGP key
+     * @return the new key material
+     * @throws SignServerException in case the key algorithm is not supported
+     * @throws PGPException in case the key could not be converted
+     */
+    public static PGPKeyMaterial create(final X509Certificate certificate, final Date creationTime) throws SignServerException, PGPException {
+        final PGPPublicKey publicKey = new JcaPGPKeyConverter().getPGPPublicKey(OpenPGPUtils.getKeyAlgorithm(certificate), certificate.getPublicKey(), creationTime);
+
+        PGPSignatureSubpacketVector clearTextHashedSubpackets = null;
+        final Iterator<String> it = publicKey.getUserIDs();
+        if (it.hasNext()) {
+            final PGPSignatureSubpacketGenerator spGen = new PGPSignatureSubpacketGenerator();
+            spGen.setSignerUserID(false, it.next());
+            clearTextHashedSubpackets = spGen.generate();
+        }
+
+        return new PGPKeyMaterial(certificate, creationTime, publicKey, clearTextHashedSubpackets);
+    }
+
+    /**
+     * @param certificate signer certificate
+     * @param creationTime of the OpenPGP key
+     * @return True if this key material was created from the certificate
+     * with the same key creation time
+     */
+    public boolean matches(final X509Certificate certificate, final Date creationTime) {
+        return this.certificate.equals(certificate) && this.creationTime.equals(creationTime);
+    }
+
+    public PGPPublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public long getKeyID() {
+        return publicKey.getKeyID();
+    }
+
+    /**
+     * @return The fingerprint in upper case hex
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return The hashed subpackets to use for clear text signatures or null
+     * if none
+     */
+    public PGPSignatureSubpacketVector getClearTextHashedSubpackets() {
+        return clearTextHashedSubpackets;
+    }
+}
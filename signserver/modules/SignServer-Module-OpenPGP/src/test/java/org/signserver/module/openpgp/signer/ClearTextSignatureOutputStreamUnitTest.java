@@ -0,0 +1,162 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.openpgp.signer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.Date;
+import org.apache.log4j.Logger;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPPrivateKey;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.signserver.openpgp.utils.ClearSignedFileProcessorUtils;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ClearTextSignatureOutputStream class comparing it with
+ * the line based processing in ClearSignedFileProcessorUtils.
+ *
+ * @version $Id$
+ */
+public class ClearTextSignatureOutputStreamUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ClearTextSignatureOutputStreamUnitTest.class);
+
+    private static final String[] TEXTS = new String[] {
+        "",
+        "my-data",
+        "my-data\r\n",
+        "line 1\nline 2\n",
+        "trailing white space \t \r\nnext\t\t\n  \n",
+        "mixed\r\r\n\n\rendings\r",
+        "\n\n\nempty lines first",
+        "   ",
+        "- dash escaped\n-- also\n",
+        "inner  white\tspace kept  \r\n"
+    };
+
+    private static PGPPrivateKey privateKey;
+    private static PGPPublicKey publicKey;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(1024);
+        final KeyPair keyPair = kpg.generateKeyPair();
+        publicKey = new JcaPGPKeyConverter().getPGPPublicKey(PublicKeyAlgorithmTags.RSA_SIGN, keyPair.getPublic(), new Date());
+        privateKey = new JcaPGPPrivateKey(publicKey, keyPair.getPrivate());
+    }
+
+    /**
+     * Tests that the text written and the signature are the same as with the
+     * line based processing when writing the text at once.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testSameAsLineBased() throws Exception {
+        LOG.info("testSameAsLineBased");
+        for (String text : TEXTS) {
+            assertSameAsLineBased(text, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Tests that the text written and the signature are the same as with the
+     * line based processing when writing the text in small chunks.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testSameAsLineBased_chunked() throws Exception {
+        LOG.info("testSameAsLineBased_chunked");
+        for (String text : TEXTS) {
+            assertSameAsLineBased(text, 1);
+            assertSameAsLineBased(text, 3);
+        }
+    }
+
+    private void assertSameAsLineBased(final String text, final int chunkSize) throws Exception {
+        final byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+        final Date signingTime = new Date();
+
+        final ByteArrayOutputStream expectedOut = new ByteArrayOutputStream();
+        final PGPSignatureGenerator expectedGenerator = createGenerator(signingTime);
+        signLineBased(new ByteArrayInputStream(data), expectedOut, expectedGenerator);
+
+        final ByteArrayOutputStream actualOut = new ByteArrayOutputStream();
+        final PGPSignatureGenerator actualGenerator = createGenerator(signingTime);
+        try (ClearTextSignatureOutputStream out = new ClearTextSignatureOutputStream(actualOut, actualGenerator)) {
+            for (int i = 0; i < data.length; i += chunkSize) {
+                final int len = Math.min(chunkSize, data.length - i);
+                if (len == 1) {
+                    out.write(data[i]);
+                } else {
+                    out.write(data, i, len);
+                }
+            }
+        }
+
+        final String message = "text \"" + text + "\" in chunks of " + chunkSize;
+        assertArrayEquals("output for " + message, expectedOut.toByteArray(), actualOut.toByteArray());
+        assertArrayEquals("signature for " + message, expectedGenerator.generate().getEncoded(), actualGenerator.generate().getEncoded());
+    }
+
+    private static PGPSignatureGenerator createGenerator(final Date signingTime) throws Exception {
+        final PGPSignatureGenerator generator = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(publicKey.getAlgorithm(), PGPUtil.SHA256).setProvider("BC"));
+        generator.init(PGPSignature.CANONICAL_TEXT_DOCUMENT, privateKey);
+        final PGPSignatureSubpacketGenerator spGen = new PGPSignatureSubpacketGenerator();
+        spGen.setSignatureCreationTime(false, signingTime);
+        generator.setHashedSubpackets(spGen.generate());
+        return generator;
+    }
+
+    /**
+     * Line based clear text processing as previously done by the signer.
+     */
+    private static void signLineBased(final InputStream fIn, final ByteArrayOutputStream aOut, final PGPSignatureGenerator generator) throws Exception {
+        final ByteArrayOutputStream lineOut = new ByteArrayOutputStream();
+        int lookAhead = ClearSignedFileProcessorUtils.readInputLine(lineOut, fIn);
+        ClearSignedFileProcessorUtils.processLine(aOut, generator, lineOut.toByteArray());
+        if (lookAhead != -1) {
+            do {
+                lookAhead = ClearSignedFileProcessorUtils.readInputLine(lineOut, lookAhead, fIn);
+
+                generator.update((byte) '\r');
+                generator.update((byte) '\n');
+
+                ClearSignedFileProcessorUtils.processLine(aOut, generator, lineOut.toByteArray());
+            } while (lookAhead != -1);
+        }
+
+        final byte[] lastBytes = lineOut.toByteArray();
+        if (lastBytes.length > 0 && (lastBytes[lastBytes.length - 1] != '\r' && lastBytes[lastBytes.length - 1] != '\n')) {
+            aOut.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertTrue;
 import org.apache.commons.io.FileUtils;
@@ -47,7 +48,10 @@ import org.bouncycastle.openpgp.PGPUtil;
 import org.bouncycastle.openpgp.jcajce.JcaPGPObjectFactory;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentVerifierBuilderProvider;
 import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
+import org.bouncycastle.util.encoders.Hex;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -664,6 +668,49 @@ public class OpenPGPSignerUnitTest {
         signWithAlgorithm(tokenECDSA, "SHA-512", PGPUtil.SHA512, false);
     }
 
+    /**
+     * Tests clear text signing of text with trailing white space, empty lines
+     * and mixed line endings.
+     * @throws Exception
+     */
+    @Test
+    public void testClearTextSign_whiteSpaceAndLineEndings() throws Exception {
+        LOG.info("testClearTextSign_whiteSpaceAndLineEndings");
+        WorkerConfig config = new WorkerConfig();
+        config.setProperty("TYPE", "PROCESSABLE");
+        config.setProperty("DETACHEDSIGNATURE", "FALSE");
+
+        final byte[] data = "first line \t\r\n\n- dashed\r\rlast line  ".getBytes("ASCII");
+        signAndVerify(data, tokenRSA, config, null, false, true);
+    }
+
+    /**
+     * Tests that the OpenPGP key material is only created once per
+     * certificate.
+     * @throws Exception
+     */
+    @Test
+    public void testKeyMaterialCached() throws Exception {
+        LOG.info("testKeyMaterialCached");
+        final OpenPGPSigner instance = createMockSigner(tokenRSA);
+        WorkerConfig config = new WorkerConfig();
+        config.setProperty("TYPE", "PROCESSABLE");
+        config.setProperty("DETACHEDSIGNATURE", "TRUE");
+        instance.init(1, config, new SignServerContext(), null);
+
+        final X509Certificate certRSA = (X509Certificate) tokenRSA.getCertificate(0);
+        final PGPKeyMaterial keyMaterial = instance.getKeyMaterial(certRSA);
+        assertSame("cached", keyMaterial, instance.getKeyMaterial(certRSA));
+
+        final JcaPGPKeyConverter conv = new JcaPGPKeyConverter();
+        final PGPPublicKey expected = conv.getPGPPublicKey(getKeyAlg(certRSA), certRSA.getPublicKey(), certRSA.getNotBefore());
+        assertEquals("key ID", expected.getKeyID(), keyMaterial.getKeyID());
+        assertEquals("fingerprint", Hex.toHexString(expected.getFingerprint()).toUpperCase(Locale.ENGLISH), keyMaterial.getFingerprint());
+
+        final X509Certificate certDSA = (X509Certificate) tokenDSA.getCertificate(0);
+        assertNotEquals("other key", keyMaterial.getKeyID(), instance.getKeyMaterial(certDSA).getKeyID());
+    }
+
     /**
      * Tests that worker status is active with the default configuration.
      * @throws Exception 
@@ -0,0 +1,56 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.pdfsigner;
+
+import com.lowagie.text.pdf.PdfPKCS7;
+import com.lowagie.text.pdf.TSAClient;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.signserver.server.tsa.ExternalTimeStampTokenFetcher;
+
+/**
+ * TSA Client fetching the token from one or more external TSAs using the
+ * shared fetcher.
+ *
+ * @version $Id$
+ */
+public class ExternalTSAClient implements TSAClient {
+
+    private final ExternalTimeStampTokenFetcher fetcher;
+    private final ASN1ObjectIdentifier digestAlgorithm;
+
+    private int tokenSizeEstimated = 7168;
+
+    public ExternalTSAClient(final ExternalTimeStampTokenFetcher fetcher,
+            final ASN1ObjectIdentifier digestAlgorithm) {
+        this.fetcher = fetcher;
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    @Override
+    public int getTokenSizeEstimate() {
+        return tokenSizeEstimated;
+    }
+
+    @Override
+    public byte[] getTimeStampToken(PdfPKCS7 caller, byte[] imprint)
+            throws Exception {
+        final TimeStampToken token = fetcher.fetchToken(imprint, digestAlgorithm, null);
+        final byte[] encoded = token.getEncoded();
+
+        // Padded to be safe as the TSAs might return tokens of different sizes
+        tokenSizeEstimated = encoded.length + 32;
+        return encoded;
+    }
+
+}
@@ -17,6 +17,7 @@ import com.lowagie.text.exceptions.BadPasswordException;
 import com.lowagie.text.pdf.*;
 
 import java.io.*;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.*;
 import java.security.cert.*;
@@ -55,6 +56,7 @@ import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
 import org.signserver.server.log.Loggable;
 import org.signserver.server.signers.BaseSigner;
+import org.signserver.server.tsa.ExternalTimeStampTokenFetcher;
 import org.signserver.validationservice.server.ValidationUtils;
 import static org.signserver.common.SignServerConstants.DEFAULT_NULL;
 
@@ -65,7 +67,8 @@ import static org.signserver.common.SignServerConstants.DEFAULT_NULL;
  * shown in the PDF signature LOCATION = The location shown in the PDF signature
  * RECTANGLE = The location of the visible signature field (llx, lly, urx, ury)
  *
- * TSA_URL = The URL of the timestamp authority TSA_USERNAME = Account
+ * TSA_URL = The URL of the timestamp authority, or comma separated URLs of
+ * timestamp authorities tried in order TSA_USERNAME = Account
  * (username) of the TSA TSA_PASSWORD = Password for TSA
  *
  * CERTIFICATION_LEVEL = The level of certification for the document.
@@ -175,6 +178,7 @@ public class PDFSigner extends BaseSigner {
      */
     private ASN1ObjectIdentifier tsaDigestAlgorithm;
     private String tsaDigestAlgorithmName; // passed to PdfPkcs7
+    private ExternalTimeStampTokenFetcher.Settings tsaSettings = ExternalTimeStampTokenFetcher.Settings.DEFAULT;
     PDFSignerParameters params;
     
     @Override
@@ -237,6 +241,17 @@ public class PDFSigner extends BaseSigner {
         // retrieve and preprocess configuration parameter values
         params = new PDFSignerParameters(workerId, config, configErrors);
 
+        // connection settings for external TSAs, any previous fetcher is replaced
+        ExternalTimeStampTokenFetcher.removeInstance(workerId);
+        tsaSettings = ExternalTimeStampTokenFetcher.Settings.fromConfig(config, configErrors);
+        if (params.getTsa_url() != null) {
+            try {
+                ExternalTimeStampTokenFetcher.parseURLs(params.getTsa_url());
+            } catch (MalformedURLException ex) {
+                configErrors.add("Illegal value for property " + TSA_URL + ": " + ex.getMessage());
+            }
+        }
+
     }
 
     
@@ -1115,8 +1130,12 @@ public class PDFSigner extends BaseSigner {
 
     protected TSAClient getTimeStampClient(String url, String username,
                                              String password,
-                                             ASN1ObjectIdentifier digestAlgo) {
-        return new TSAClientBouncyCastle(url, username, password, digestAlgo);
+                                             ASN1ObjectIdentifier digestAlgo) throws SignServerException {
+        try {
+            return new ExternalTSAClient(ExternalTimeStampTokenFetcher.getInstance(workerId, url, username, password, tsaSettings), digestAlgo);
+        } catch (MalformedURLException ex) {
+            throw new SignServerException("Illegal TSA URL: " + ex.getMessage(), ex);
+        }
     }
 
     @Override
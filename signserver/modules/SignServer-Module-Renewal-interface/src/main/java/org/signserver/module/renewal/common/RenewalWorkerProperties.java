@@ -21,7 +21,7 @@ package org.signserver.module.renewal.common;
 public interface RenewalWorkerProperties {
 
 
-    /** The worker to renew. **/
+    /** The worker to renew or a comma-separated list of workers. **/
     String REQUEST_WORKER = "WORKER";
 
     /** True if the key should be renewed. **/
@@ -36,6 +36,12 @@ public interface RenewalWorkerProperties {
     String RESPONSE_RESULT_FAILURE = "FAILURE";
     String RESPONSE_MESSAGE = "MESSAGE";
 
+    /** Prefix for the result of each worker when multiple were requested. **/
+    String RESPONSE_RESULT_PREFIX = "RESULT.";
+
+    /** Prefix for the message of each worker when multiple were requested. **/
+    String RESPONSE_MESSAGE_PREFIX = "MESSAGE.";
+
     String WORKERPROPERTY_RENEWWORKER = "RENEWWORKER";
 
     String LOG_RENEWEE = "RENEWEE";
@@ -19,6 +19,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
@@ -33,14 +35,29 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import javax.net.ssl.*;
 import javax.persistence.EntityManager;
 import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.x509.BasicConstraints;
 import org.bouncycastle.asn1.x509.Extension;
@@ -68,12 +85,15 @@ import org.signserver.module.renewal.ejbcaws.gen.EjbcaWSService;
 import org.signserver.module.renewal.ejbcaws.gen.UserDataVOWS;
 import org.signserver.module.renewal.ejbcaws.gen.UserMatch;
 import org.signserver.server.IServices;
+import org.signserver.server.ManagedExecutors;
 import org.signserver.server.WorkerContext;
+import org.signserver.server.cryptotokens.CryptoTokenHelper;
 import org.signserver.server.cryptotokens.KeystoreCryptoToken;
 import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
 import org.signserver.server.signers.BaseSigner;
 import org.signserver.server.log.Loggable;
+import static org.signserver.common.SignServerConstants.DEFAULT_NULL;
 
 /**
  * Worker renewing certificate (and optionally keys) for a signer by sending
@@ -93,6 +113,13 @@ public class RenewalWorker extends BaseSigner {
             = "SIGNATUREALGORITHM";
     public static final String PROPERTY_KEYALG = "KEYALG";
     public static final String PROPERTY_KEYSPEC = "KEYSPEC";
+    public static final String PROPERTY_MAXCONCURRENTRENEWALS
+            = "MAXCONCURRENTRENEWALS";
+    public static final String PROPERTY_MAXCONCURRENTKEYGENERATIONS
+            = "MAXCONCURRENTKEYGENERATIONS";
+
+    private static final int DEFAULT_MAXCONCURRENTRENEWALS = 4;
+    private static final int DEFAULT_MAXCONCURRENTKEYGENERATIONS = 1;
 
     private static final String NEXTCERTSIGNKEY = "NEXTCERTSIGNKEY";
 
@@ -122,6 +149,12 @@ public class RenewalWorker extends BaseSigner {
      */
     private static final String RESPONSETYPE_PKCS7WITHCHAIN = "PKCS7WITHCHAIN";
 
+    /** Request context properties used by JAX-WS implementations for the SSL socket factory. */
+    private static final String[] SSL_SOCKET_FACTORY_PROPERTIES = {
+        "com.sun.xml.ws.transport.https.client.SSLSocketFactory",
+        "com.sun.xml.internal.ws.transport.https.client.SSLSocketFactory"
+    };
+
     private List<String> fatalErrors;
     
     /** Configuration parameters. */
@@ -131,6 +164,17 @@ public class RenewalWorker extends BaseSigner {
     private String truststorePath;
     private String truststorePass;
     private String ejbcaWsUrl;
+    private int maxConcurrentRenewals;
+    private int maxConcurrentKeyGenerations;
+
+    /**
+     * Web service created on first use. Fetching and parsing the WSDL is
+     * expensive so the service is reused for all requests until the
+     * configuration is reloaded or a connection fails. Each renewal gets its
+     * own port as the ports are not thread-safe.
+     */
+    private volatile EjbcaWSConnection ejbcaWSConnection;
+    private final Object ejbcaWSConnectionLock = new Object();
 
 
     @Override
@@ -183,6 +227,29 @@ public class RenewalWorker extends BaseSigner {
         if (ejbcaWsUrl == null) {
             fatalErrors.add("Missing EJBCAWSURL property");
         }
+
+        maxConcurrentRenewals = getPositiveInt(PROPERTY_MAXCONCURRENTRENEWALS,
+                DEFAULT_MAXCONCURRENTRENEWALS);
+        maxConcurrentKeyGenerations = getPositiveInt(PROPERTY_MAXCONCURRENTKEYGENERATIONS,
+                DEFAULT_MAXCONCURRENTKEYGENERATIONS);
+    }
+
+    private int getPositiveInt(final String property, final int defaultValue) {
+        final String value = config.getProperty(property, DEFAULT_NULL);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final int result = Integer.parseInt(value.trim());
+            if (result < 1) {
+                fatalErrors.add("Illegal value for property " + property + ". Only numbers >= 1 supported.");
+                return defaultValue;
+            }
+            return result;
+        } catch (NumberFormatException ex) {
+            fatalErrors.add("Illegal value for property " + property + ": " + value);
+            return defaultValue;
+        }
     }
 
     @Override
@@ -254,6 +321,11 @@ public class RenewalWorker extends BaseSigner {
 
     /**
      * Processes the request.
+     *
+     * The request can contain a comma-separated list of workers to renew in
+     * which case they are renewed concurrently and the result for each worker
+     * is included in the response.
+     *
      * @param requestData
      * @return
      * @throws IllegalRequestException
@@ -264,27 +336,240 @@ public class RenewalWorker extends BaseSigner {
                 final LogMap logMap, final RequestContext requestContext)
             throws IllegalRequestException, CryptoTokenOfflineException,
             SignServerException {
-        final String workerName = requestData.getProperty(
+        final String workerValue = requestData.getProperty(
                 RenewalWorkerProperties.REQUEST_WORKER);
 
-        final Properties responseData;
-
-        if (workerName == null) {
+        if (workerValue == null) {
             throw new IllegalRequestException("No worker name in request.");
         }
 
-        responseData = new Properties();
+        final List<String> workerNames = new ArrayList<>();
+        for (String workerName : workerValue.split(",")) {
+            workerName = workerName.trim();
+            if (!workerName.isEmpty() && !workerNames.contains(workerName)) {
+                workerNames.add(workerName);
+            }
+        }
+        if (workerNames.isEmpty()) {
+            throw new IllegalRequestException("No worker name in request.");
+        }
 
         // Log renewee
         logMap.put(RenewalWorkerProperties.LOG_RENEWEE,
                    new Loggable() {
                        @Override
                        public String toString() {
-                           return workerName;
+                           return join(workerNames);
                        }
                    });
 
         final WorkerSessionLocal workerSession = getWorkerSession(requestContext.getServices());
+
+        final Properties responseData;
+        if (workerNames.size() == 1) {
+            responseData = renew(workerNames.get(0), requestData, logMap,
+                    null, workerSession, requestContext.getServices());
+        } else {
+            responseData = renewAll(workerNames, requestData, logMap,
+                    workerSession, requestContext.getServices());
+        }
+
+        // The client can be charged for the request if any worker was renewed
+        for (final String name : responseData.stringPropertyNames()) {
+            if ((name.equals(RenewalWorkerProperties.RESPONSE_RESULT)
+                    || name.startsWith(RenewalWorkerProperties.RESPONSE_RESULT_PREFIX))
+                    && RenewalWorkerProperties.RESPONSE_RESULT_OK.equals(responseData.getProperty(name))) {
+                requestContext.setRequestFulfilledByWorker(true);
+                break;
+            }
+        }
+
+        return responseData;
+    }
+
+    /**
+     * Renews the workers concurrently using at most MAXCONCURRENTRENEWALS
+     * threads of the container's managed executor and at most
+     * MAXCONCURRENTKEYGENERATIONS key generations in each crypto token. If no
+     * managed executor is available the workers are renewed one at a time in
+     * the calling thread.
+     *
+     * @return response with the overall result and the result of each worker
+     */
+    private Properties renewAll(final List<String> workerNames,
+            final Properties requestData, final LogMap logMap,
+            final WorkerSessionLocal workerSession, final IServices services) {
+        final ConcurrentMap<String, Semaphore> keyGenerationPermits
+                = new ConcurrentHashMap<>();
+        final List<LogMap> workerLogMaps = new ArrayList<>(workerNames.size());
+        final List<Callable<Properties>> tasks = new ArrayList<>(workerNames.size());
+        for (final String workerName : workerNames) {
+            final LogMap workerLogMap = new LogMap();
+            workerLogMap.put(IWorkerLogger.LOG_ID, logMap.get(IWorkerLogger.LOG_ID));
+            workerLogMaps.add(workerLogMap);
+
+            tasks.add(new Callable<Properties>() {
+                @Override
+                public Properties call() {
+                    return renew(workerName, requestData, workerLogMap,
+                            keyGenerationPermits, workerSession, services);
+                }
+            });
+        }
+
+        final Properties[] results = new Properties[workerNames.size()];
+        final ExecutorService executor = maxConcurrentRenewals < 2 ? null : ManagedExecutors.getDefault();
+        if (executor == null) {
+            for (int i = 0; i < tasks.size(); i++) {
+                results[i] = call(tasks.get(i));
+            }
+        } else {
+            renewConcurrently(executor, tasks, results);
+        }
+
+        final Properties responseData = new Properties();
+        final StringBuilder failures = new StringBuilder();
+        for (int i = 0; i < workerNames.size(); i++) {
+            final String workerName = workerNames.get(i);
+            Properties result = results[i];
+            if (result == null) {
+                result = new Properties();
+                renewalFailure(result, "Interrupted while renewing " + workerName);
+            }
+
+            final String workerResult = result.getProperty(
+                    RenewalWorkerProperties.RESPONSE_RESULT);
+            final String workerMessage = result.getProperty(
+                    RenewalWorkerProperties.RESPONSE_MESSAGE);
+            responseData.setProperty(RenewalWorkerProperties.RESPONSE_RESULT_PREFIX + workerName,
+                    workerResult);
+            if (workerMessage != null) {
+                responseData.setProperty(RenewalWorkerProperties.RESPONSE_MESSAGE_PREFIX + workerName,
+                        workerMessage);
+            }
+            if (!RenewalWorkerProperties.RESPONSE_RESULT_OK.equals(workerResult)) {
+                if (failures.length() > 0) {
+                    failures.append("; ");
+                }
+                failures.append(workerName).append(": ").append(workerMessage);
+            }
+        }
+
+        if (failures.length() == 0) {
+            responseData.setProperty(RenewalWorkerProperties.RESPONSE_RESULT,
+                    RenewalWorkerProperties.RESPONSE_RESULT_OK);
+        } else {
+            responseData.setProperty(RenewalWorkerProperties.RESPONSE_RESULT,
+                    RenewalWorkerProperties.RESPONSE_RESULT_FAILURE);
+            responseData.setProperty(RenewalWorkerProperties.RESPONSE_MESSAGE,
+                    failures.toString());
+        }
+
+        mergeLogMaps(workerNames, workerLogMaps, logMap);
+
+        return responseData;
+    }
+
+    /**
+     * Runs the renewals in the executor with at most MAXCONCURRENTRENEWALS of
+     * them submitted at the same time. A renewal not accepted by the executor
+     * is run in the calling thread.
+     *
+     * @param results to store the result of each renewal in, left null for
+     * renewals not run because of an interrupt
+     */
+    private void renewConcurrently(final ExecutorService executor,
+            final List<Callable<Properties>> tasks, final Properties[] results) {
+        final CompletionService<Properties> completion
+                = new ExecutorCompletionService<>(executor);
+        final Map<Future<Properties>, Integer> running = new HashMap<>();
+        int next = 0;
+        try {
+            while (next < tasks.size() || !running.isEmpty()) {
+                while (next < tasks.size() && running.size() < maxConcurrentRenewals) {
+                    try {
+                        running.put(completion.submit(tasks.get(next)), next);
+                    } catch (RejectedExecutionException ex) {
+                        results[next] = call(tasks.get(next));
+                    }
+                    next++;
+                }
+                if (!running.isEmpty()) {
+                    final Future<Properties> done = completion.take();
+                    final int index = running.remove(done);
+                    try {
+                        results[index] = done.get();
+                    } catch (ExecutionException ex) {
+                        results[index] = new Properties();
+                        renewalFailure(results[index], ex.getCause().getMessage(), ex.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            for (final Future<Properties> future : running.keySet()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Properties call(final Callable<Properties> task) {
+        try {
+            return task.call();
+        } catch (Exception ex) {
+            final Properties result = new Properties();
+            renewalFailure(result, ex.getMessage(), ex);
+            return result;
+        }
+    }
+
+    /**
+     * Adds the log fields of each renewal to the log map of the request, with
+     * the values prefixed by the worker name.
+     */
+    private static void mergeLogMaps(final List<String> workerNames,
+            final List<LogMap> workerLogMaps, final LogMap logMap) {
+        final List<String> keys = Arrays.asList(
+                RenewalWorkerProperties.LOG_GENERATEDKEYALIAS,
+                RenewalWorkerProperties.LOG_GENERATEDKEYHASH,
+                RenewalWorkerProperties.LOG_NEWCERTISSUERDN,
+                RenewalWorkerProperties.LOG_NEWCERTSERIALNO,
+                RenewalWorkerProperties.LOG_NEWCERTSUBJECTDN);
+        for (final String key : keys) {
+            final StringBuilder buff = new StringBuilder();
+            for (int i = 0; i < workerNames.size(); i++) {
+                final Object value = workerLogMaps.get(i).get(key);
+                if (value != null) {
+                    if (buff.length() > 0) {
+                        buff.append("; ");
+                    }
+                    buff.append(workerNames.get(i)).append(": ").append(value);
+                }
+            }
+            if (buff.length() > 0) {
+                final String value = buff.toString();
+                logMap.put(key, new Loggable() {
+                    @Override
+                    public String toString() {
+                        return value;
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Renews one worker.
+     *
+     * @param keyGenerationPermits permits limiting the concurrent key
+     * generations in each crypto token or null if not limited
+     * @return response with the result of the renewal
+     */
+    private Properties renew(final String workerName,
+            final Properties requestData, final LogMap logMap,
+            final ConcurrentMap<String, Semaphore> keyGenerationPermits,
+            final WorkerSessionLocal workerSession, final IServices services) {
+        final Properties responseData = new Properties();
         
         try {
             int reneweeId;
@@ -394,10 +679,22 @@ public class RenewalWorker extends BaseSigner {
                     defaultKey = false;
                     LOG.debug("Will renew key");
 
-                    // Renew the key
-                    nextCertSignKey = renewKey(reneweeId, keyAlg, keySpec,
-                            authCode == null ? null : authCode.toCharArray(),
-                            logMap, workerSession);
+                    // Renew the key, limiting the concurrent key generations
+                    // in the same crypto token
+                    final Semaphore permit = getKeyGenerationPermit(
+                            keyGenerationPermits, workerConfig, reneweeId);
+                    if (permit != null) {
+                        permit.acquire();
+                    }
+                    try {
+                        nextCertSignKey = renewKey(reneweeId, keyAlg, keySpec,
+                                authCode == null ? null : authCode.toCharArray(),
+                                logMap, workerSession);
+                    } finally {
+                        if (permit != null) {
+                            permit.release();
+                        }
+                    }
                 } else {
                     // Request might say that we should use the default key
                     defaultKey = requestForDefaultKey;
@@ -408,16 +705,17 @@ public class RenewalWorker extends BaseSigner {
                 renewWorker(reneweeId, sigAlg, subjectDN, endEntity,
                         Boolean.valueOf(explicitEccParameters),
                         defaultKey, nextCertSignKey,
-                        logMap, workerSession, requestContext.getServices());
+                        logMap, workerSession, services);
 
                 responseData.setProperty(
                         RenewalWorkerProperties.RESPONSE_RESULT,
                         RenewalWorkerProperties.RESPONSE_RESULT_OK);
-                
-                // The client can be charged for the request
-                requestContext.setRequestFulfilledByWorker(true);
             }
 
+        } catch (WebServiceException ex) {
+            // Connect again in case the CA or its address has changed
+            ejbcaWSConnection = null;
+            renewalFailure(responseData, ex.getMessage(), ex);
         } catch (Exception ex) {
             renewalFailure(responseData, ex.getMessage(), ex);
         }
@@ -425,6 +723,46 @@ public class RenewalWorker extends BaseSigner {
         return responseData;
     }
 
+    /**
+     * Get the permit limiting concurrent key generations in the crypto token
+     * of the renewee. Workers referring to the same crypto worker or to the
+     * same PKCS#11 slot share the permits.
+     *
+     * @param permits to get the permit from or null if not limited
+     * @return the permit or null if not limited
+     */
+    private Semaphore getKeyGenerationPermit(
+            final ConcurrentMap<String, Semaphore> permits,
+            final WorkerConfig workerConfig, final int reneweeId) {
+        if (permits == null) {
+            return null;
+        }
+        final String cryptoToken = workerConfig.getProperty(
+                CryptoTokenHelper.PROPERTY_CRYPTOTOKEN, DEFAULT_NULL);
+        final String sharedLibrary = workerConfig.getProperty(
+                CryptoTokenHelper.PROPERTY_SHAREDLIBRARYNAME, DEFAULT_NULL);
+        final String token;
+        if (cryptoToken != null) {
+            token = CryptoTokenHelper.PROPERTY_CRYPTOTOKEN + "=" + cryptoToken.trim();
+        } else if (sharedLibrary != null) {
+            token = CryptoTokenHelper.PROPERTY_SHAREDLIBRARYNAME + "=" + sharedLibrary.trim()
+                    + ", " + CryptoTokenHelper.PROPERTY_SLOTLABELVALUE + "="
+                    + workerConfig.getProperty(CryptoTokenHelper.PROPERTY_SLOTLABELVALUE);
+        } else {
+            token = "WORKER=" + reneweeId;
+        }
+
+        Semaphore result = permits.get(token);
+        if (result == null) {
+            final Semaphore permit = new Semaphore(maxConcurrentKeyGenerations);
+            result = permits.putIfAbsent(token, permit);
+            if (result == null) {
+                result = permit;
+            }
+        }
+        return result;
+    }
+
     private String renewKey(final int workerId, final String keyAlg,
            final String keySpec, final char[] authcode,
            final LogMap logMap, final WorkerSessionLocal workerSession) throws Exception {
@@ -513,8 +851,7 @@ public class RenewalWorker extends BaseSigner {
         }
 
         // Connect to EjbcaWS
-        final EjbcaWS ejbcaws = getEjbcaWS(ejbcaWsUrl,
-                alias, truststoreType, truststorePath, truststoreValue, truststorePass, services);
+        final EjbcaWS ejbcaws = getEjbcaWS(services);
 
         if (ejbcaws == null) {
             LOG.debug("Could not get EjbcaWS");
@@ -650,7 +987,31 @@ public class RenewalWorker extends BaseSigner {
         return reqData.toArmoredForm();
     }
 
-    private EjbcaWS getEjbcaWS(final String ejbcaUrl, final String alias,
+    /**
+     * Get a new web service port for this renewal, connecting to EJBCA the
+     * first time.
+     */
+    private EjbcaWS getEjbcaWS(final IServices services)
+            throws CryptoTokenOfflineException, NoSuchAlgorithmException,
+            KeyStoreException, UnrecoverableKeyException, IOException,
+            CertificateException, NoSuchProviderException,
+            KeyManagementException, SignServerException {
+        EjbcaWSConnection result = ejbcaWSConnection;
+        if (result == null) {
+            synchronized (ejbcaWSConnectionLock) {
+                result = ejbcaWSConnection;
+                if (result == null) {
+                    result = createEjbcaWS(ejbcaWsUrl, alias, truststoreType,
+                            truststorePath, truststoreValue, truststorePass,
+                            services);
+                    ejbcaWSConnection = result;
+                }
+            }
+        }
+        return result.createPort();
+    }
+
+    private EjbcaWSConnection createEjbcaWS(final String ejbcaUrl, final String alias,
             final String truststoreType, final String truststorePath,
             final String truststoreValue, final String truststorePass,
             final IServices services) throws CryptoTokenOfflineException,
@@ -658,8 +1019,6 @@ public class RenewalWorker extends BaseSigner {
             UnrecoverableKeyException, IOException, CertificateException,
             NoSuchProviderException, KeyManagementException, SignServerException {
 
-        EjbcaWS result;
-
         final String urlstr = ejbcaUrl + WS_PATH;
 
         final KeyStore keystore = getCryptoToken(services).getKeyStore();
@@ -760,16 +1119,53 @@ public class RenewalWorker extends BaseSigner {
         final SSLContext context = SSLContext.getInstance("TLS");
         context.init(keyManagers, tTrustManagerFactory.getTrustManagers(),
                 new SecureRandom());
-        // Finally, we get a SocketFactory, and pass it to SimpleSSLClient.
-        SSLSocketFactory factory = context.getSocketFactory();
-        HttpsURLConnection.setDefaultSSLSocketFactory(factory); // TODO: This could if multiple renewal workers are used
+        // Finally, we get a SocketFactory used for this connection only
+        // instead of changing the default of the whole JVM
+        final SSLSocketFactory factory = context.getSocketFactory();
         LOG.info("Getting WS");
-        EjbcaWSService service = new EjbcaWSService(new URL(urlstr), 
+        final URL wsdlUrl = new URL(null, urlstr, new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(final URL u) throws IOException {
+                final URLConnection connection = new URL(u.toExternalForm()).openConnection();
+                if (connection instanceof HttpsURLConnection) {
+                    ((HttpsURLConnection) connection).setSSLSocketFactory(factory);
+                }
+                return connection;
+            }
+        });
+        final EjbcaWSService service = new EjbcaWSService(wsdlUrl,
                 new QName("http://ws.protocol.core.ejbca.org/",
                 "EjbcaWSService"));
-        result = service.getEjbcaWSPort();
 
-        return result;
+        return new EjbcaWSConnection(service, factory);
+    }
+
+    /**
+     * Web service together with the socket factory to use for its ports.
+     */
+    private static class EjbcaWSConnection {
+        private final EjbcaWSService service;
+        private final SSLSocketFactory socketFactory;
+
+        EjbcaWSConnection(final EjbcaWSService service, final SSLSocketFactory socketFactory) {
+            this.service = service;
+            this.socketFactory = socketFactory;
+        }
+
+        /**
+         * @return a new port, not to be shared between threads, using the
+         * socket factory for its requests
+         */
+        public EjbcaWS createPort() {
+            final EjbcaWS result;
+            synchronized (service) {
+                result = service.getEjbcaWSPort();
+            }
+            for (String property : SSL_SOCKET_FACTORY_PROPERTIES) {
+                BindingProvider.class.cast(result).getRequestContext().put(property, socketFactory);
+            }
+            return result;
+        }
     }
 
     // TODO: We are assuming here that a CA certificate is not used for signing
@@ -814,6 +1210,17 @@ public class RenewalWorker extends BaseSigner {
         return result;
     }
 
+    private static String join(final List<String> values) {
+        final StringBuilder buff = new StringBuilder();
+        for (String value : values) {
+            if (buff.length() > 0) {
+                buff.append(", ");
+            }
+            buff.append(value);
+        }
+        return buff.toString();
+    }
+
     private void renewalFailure(final Properties responseData,
             final String message) {
         renewalFailure(responseData, message, null);
@@ -114,9 +114,49 @@ public class RenewalWorkerUnitTest extends TestCase {
                 fatalErrors.contains("Missing DEFAULTKEY property"));
     }
     
+    /**
+     * Test that illegal values for the concurrency limits results in errors.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void test08IllegalConcurrencyLimits() throws Exception {
+        final WorkerConfig config = createConfig("JKS", "dummypath", "foo123", null, "defaultKey", "http://ejbca/ws");
+        config.setProperty("MAXCONCURRENTRENEWALS", "0");
+        config.setProperty("MAXCONCURRENTKEYGENERATIONS", "_not_a_number_");
+
+        final List<String> fatalErrors = getFatalErrors(config);
+
+        assertTrue("Should contain error: " + fatalErrors,
+                fatalErrors.contains("Illegal value for property MAXCONCURRENTRENEWALS. Only numbers >= 1 supported."));
+        assertTrue("Should contain error: " + fatalErrors,
+                fatalErrors.contains("Illegal value for property MAXCONCURRENTKEYGENERATIONS: _not_a_number_"));
+    }
+
+    /**
+     * Test that legal values for the concurrency limits are accepted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void test09ConcurrencyLimits() throws Exception {
+        final WorkerConfig config = createConfig("JKS", "dummypath", "foo123", null, "defaultKey", "http://ejbca/ws");
+        config.setProperty("MAXCONCURRENTRENEWALS", "16");
+        config.setProperty("MAXCONCURRENTKEYGENERATIONS", " 2 ");
+
+        assertEquals("No errors", "[]", getFatalErrors(config).toString());
+    }
+
     private List<String> getFatalErrors(final String truststoreType,
             final String truststorePath, final String truststorePassword,
             final String truststoreValue, final String defaultKey, final String ejbcawsUrl) {
+        return getFatalErrors(createConfig(truststoreType, truststorePath,
+                truststorePassword, truststoreValue, defaultKey, ejbcawsUrl));
+    }
+
+    private WorkerConfig createConfig(final String truststoreType,
+            final String truststorePath, final String truststorePassword,
+            final String truststoreValue, final String defaultKey, final String ejbcawsUrl) {
         final WorkerConfig config = new WorkerConfig();
         
         if (truststoreType != null) {
@@ -142,7 +182,11 @@ public class RenewalWorkerUnitTest extends TestCase {
         if (ejbcawsUrl != null) {
             config.setProperty("EJBCAWSURL", ejbcawsUrl);
         }
-        
+
+        return config;
+    }
+
+    private List<String> getFatalErrors(final WorkerConfig config) {
         final RenewalWorker worker = new RenewalWorker();
         
         worker.initInternal(4711, config, null, null);
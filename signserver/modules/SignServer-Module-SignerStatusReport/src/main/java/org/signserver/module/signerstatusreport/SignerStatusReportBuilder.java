@@ -13,6 +13,7 @@
 package org.signserver.module.signerstatusreport;
 
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import org.apache.commons.lang.time.FastDateFormat;
@@ -59,7 +60,15 @@ public class SignerStatusReportBuilder implements ReportBuilder {
     public CharSequence buildReport() {
         final StringBuilder sb = new StringBuilder();
 
+        // Query the status of all the workers in one call
+        final List<WorkerIdentifier> wis = new ArrayList<>(workers.size());
         for (String worker : workers) {
+            wis.add(new WorkerIdentifier(worker));
+        }
+        final List<WorkerStatus> statuses = workerSession.getStatuses(wis);
+
+        for (int i = 0; i < workers.size(); i++) {
+            final String worker = workers.get(i);
             try {
                 LOG.debug("Worker: " + worker);
                 int workerId = workerSession.getWorkerId(worker);
@@ -70,12 +79,7 @@ public class SignerStatusReportBuilder implements ReportBuilder {
                     statusString = STATUS_OFFLINE;
                 } else {
 
-                    WorkerStatus status = null;
-                    try {
-                        status = workerSession.getStatus(new WorkerIdentifier(workerId));
-                    } catch (InvalidWorkerIdException ex) {
-                        LOG.error("Invalid worker id: " + workerId, ex);
-                    }
+                    final WorkerStatus status = statuses.get(i);
                     if (status == null || !status.getFatalErrors().isEmpty()) {
                         statusString = STATUS_OFFLINE;
                     }
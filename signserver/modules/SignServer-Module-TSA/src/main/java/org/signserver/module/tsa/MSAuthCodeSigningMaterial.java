@@ -0,0 +1,173 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.tsa;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.cms.Time;
+import org.bouncycastle.asn1.ess.ESSCertID;
+import org.bouncycastle.asn1.ess.SigningCertificate;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Attribute;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuerSerial;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.DefaultSignedAttributeTableGenerator;
+import org.bouncycastle.cms.SignerInfoGenerator;
+import org.bouncycastle.cms.SignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.signserver.common.SignServerException;
+import org.signserver.module.tsa.bc.MSAuthCodeCMSUtils;
+
+/**
+ * Signing material derived from a signer certificate chain used for creating
+ * Authenticode time-stamps.
+ *
+ * The certificates to include, the signer certificate and the signing
+ * certificate attribute only depend on the certificate chain so they are
+ * prepared once instead of for each request. Instances are immutable so
+ * they can be cached and shared between requests using the same chain.
+ *
+ * @version $Id$
+ */
+public class MSAuthCodeSigningMaterial {
+
+    private final List<Certificate> certificateChain;
+    private final boolean includeSigningCertificateAttribute;
+    private final X509CertificateHolder signerCertificate;
+    private final List<ASN1Encodable> certificates;
+    private final Attribute signingCertificateAttribute;
+    private final DigestCalculatorProvider digestCalculatorProvider;
+
+    private MSAuthCodeSigningMaterial(final List<Certificate> certificateChain, final boolean includeSigningCertificateAttribute,
+            final X509CertificateHolder signerCertificate, final List<ASN1Encodable> certificates,
+            final Attribute signingCertificateAttribute, final DigestCalculatorProvider digestCalculatorProvider) {
+        this.certificateChain = certificateChain;
+        this.includeSigningCertificateAttribute = includeSigningCertificateAttribute;
+        this.signerCertificate = signerCertificate;
+        this.certificates = certificates;
+        this.signingCertificateAttribute = signingCertificateAttribute;
+        this.digestCalculatorProvider = digestCalculatorProvider;
+    }
+
+    /**
+     * Prepares the signing material for a certificate chain.
+     *
+     * @param certificateChain with the signer certificate first
+     * @param includeSigningCertificateAttribute if the signing certificate
+     * attribute should be included in the signed attributes
+     * @return the new signing material
+     * @throws SignServerException in case SHA-1 is not available
+     * @throws CertificateEncodingException in case a certificate could not be
+     * encoded
+     * @throws CMSException in case the certificates could not be converted
+     * @throws OperatorCreationException in case the digest calculators could
+     * not be created
+     */
+    public static MSAuthCodeSigningMaterial create(final List<Certificate> certificateChain, final boolean includeSigningCertificateAttribute)
+            throws SignServerException, CertificateEncodingException, CMSException, OperatorCreationException {
+        final List<Certificate> chain = Collections.unmodifiableList(new ArrayList<>(certificateChain));
+        final X509Certificate x509cert = (X509Certificate) chain.get(0);
+        final X509CertificateHolder certHolder = new JcaX509CertificateHolder(x509cert);
+
+        Attribute signingCertificateAttribute = null;
+        if (includeSigningCertificateAttribute) {
+            try {
+                final GeneralNames names = new GeneralNames(new GeneralName(certHolder.getIssuer()));
+                final IssuerSerial is = new IssuerSerial(names, new ASN1Integer(x509cert.getSerialNumber()));
+                final ESSCertID essCertid =
+                        new ESSCertID(MessageDigest.getInstance("SHA-1").digest(x509cert.getEncoded()), is);
+                signingCertificateAttribute = new Attribute(PKCSObjectIdentifiers.id_aa_signingCertificate,
+                        new DERSet(new SigningCertificate(essCertid)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new SignServerException("Can't find SHA-1 implementation", e);
+            }
+        }
+
+        // The copied BC utility returns a raw list of certificate structures
+        @SuppressWarnings("unchecked")
+        final List<ASN1Encodable> certificates = Collections.unmodifiableList(MSAuthCodeCMSUtils.getCertificatesFromStore(new JcaCertStore(chain)));
+
+        return new MSAuthCodeSigningMaterial(chain, includeSigningCertificateAttribute, certHolder, certificates,
+                signingCertificateAttribute, new JcaDigestCalculatorProviderBuilder().setProvider("BC").build());
+    }
+
+    /**
+     * @param certificateChain with the signer certificate first
+     * @param includeSigningCertificateAttribute if the signing certificate
+     * attribute should be included
+     * @return True if this signing material was created for the same
+     * certificate chain and settings
+     */
+    public boolean matches(final List<Certificate> certificateChain, final boolean includeSigningCertificateAttribute) {
+        return this.includeSigningCertificateAttribute == includeSigningCertificateAttribute
+                && this.certificateChain.equals(certificateChain);
+    }
+
+    /**
+     * @return The signer certificate
+     */
+    public X509Certificate getSignerCertificate() {
+        return (X509Certificate) certificateChain.get(0);
+    }
+
+    /**
+     * @return The certificates to include in the signed data
+     */
+    public List<ASN1Encodable> getCertificates() {
+        return certificates;
+    }
+
+    /**
+     * Creates a signer info generator for one request. The content signer
+     * can not be shared between requests as it holds the state of the
+     * signature being created.
+     *
+     * @param contentSigner using the private key of the signer certificate
+     * @param signingTime to include as signed attribute
+     * @return the new signer info generator
+     * @throws OperatorCreationException in case of error creating the
+     * generator
+     */
+    public SignerInfoGenerator createSignerInfoGenerator(final ContentSigner contentSigner, final Date signingTime) throws OperatorCreationException {
+        final ASN1EncodableVector signedAttributes = new ASN1EncodableVector();
+        signedAttributes.add(new Attribute(CMSAttributes.signingTime, new DERSet(new Time(signingTime))));
+        if (signingCertificateAttribute != null) {
+            signedAttributes.add(signingCertificateAttribute);
+        }
+
+        final SignerInfoGeneratorBuilder signerInfoBuilder = new SignerInfoGeneratorBuilder(digestCalculatorProvider);
+        signerInfoBuilder.setSignedAttributeGenerator(new DefaultSignedAttributeTableGenerator(new AttributeTable(signedAttributes)));
+        return signerInfoBuilder.build(contentSigner, signerCertificate);
+    }
+}
@@ -13,59 +13,43 @@
 package org.signserver.module.tsa;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.*;
 import java.security.cert.*;
 import java.security.cert.Certificate;
 import java.util.*;
+import java.util.Base64;
 
 import javax.persistence.EntityManager;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.log4j.Logger;
-import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1TaggedObject;
-import org.bouncycastle.asn1.DERInteger;
-import org.bouncycastle.asn1.DERSet;
-import org.bouncycastle.asn1.cms.AttributeTable;
-import org.bouncycastle.asn1.cms.CMSAttributes;
 import org.bouncycastle.asn1.cms.ContentInfo;
-import org.bouncycastle.asn1.cms.Time;
-import org.bouncycastle.asn1.ess.ESSCertID;
-import org.bouncycastle.asn1.ess.SigningCertificate;
-import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
-import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.asn1.x509.Attribute;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
-import org.bouncycastle.asn1.x509.IssuerSerial;
 import org.bouncycastle.asn1.x509.KeyPurposeId;
-import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaCertStore;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.CMSTypedData;
-import org.bouncycastle.cms.DefaultSignedAttributeTableGenerator;
 import org.bouncycastle.cms.SignerInfoGenerator;
-import org.bouncycastle.cms.SignerInfoGeneratorBuilder;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
-import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import org.bouncycastle.tsp.TimeStampRequest;
 import org.bouncycastle.tsp.TimeStampResponseGenerator;
-import org.cesecore.util.Base64;
 import org.signserver.common.*;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
 import org.signserver.module.tsa.bc.MSAuthCodeCMSUtils;
 import org.signserver.server.IServices;
 import org.signserver.server.ITimeSource;
+import org.signserver.server.LRUCache;
 import org.signserver.server.WorkerContext;
 import org.signserver.server.archive.Archivable;
 import org.signserver.server.archive.DefaultArchivable;
@@ -73,7 +57,10 @@ import org.signserver.server.cryptotokens.ICryptoInstance;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
 import org.signserver.common.data.SignatureRequest;
 import org.signserver.common.data.SignatureResponse;
+import org.signserver.common.data.ReadableData;
 import org.signserver.common.data.WritableData;
+import org.signserver.server.data.impl.Base64DecodingInputStream;
+import org.signserver.server.data.impl.DigestTeeInputStream;
 import org.signserver.server.log.ExceptionLoggable;
 import org.signserver.server.log.LogMap;
 import org.signserver.server.log.Loggable;
@@ -167,11 +154,18 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
 
     private List<String> configErrors;
 
+    /** Maximum number of certificate chains to cache signing material for. */
+    private static final int MAX_CACHED_SIGNING_MATERIALS = 16;
+
+    /** Signing material per signer certificate. */
+    private final LRUCache<X509Certificate, MSAuthCodeSigningMaterial> signingMaterials = new LRUCache<>(MAX_CACHED_SIGNING_MATERIALS);
+
     @Override
     public void init(final int signerId, final WorkerConfig config,
             final WorkerContext workerContext,
             final EntityManager workerEntityManager) {
         super.init(signerId, config, workerContext, workerEntityManager);
+        signingMaterials.clear();
 
         // Overrides the default worker logger to be this worker
         //  implementation's default instead of the WorkerSessionBean's
@@ -252,9 +246,9 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
         final LogMap logMap = LogMap.getInstance(requestContext);
 
         try {
-            final byte[] requestbytes = sReq.getRequestData().getAsByteArray();
+            final ReadableData requestData = sReq.getRequestData();
 
-            if (requestbytes == null || requestbytes.length == 0) {
+            if (requestData.getLength() == 0) {
                 LOG.error("Request must contain data");
                 throw new IllegalRequestException("Request must contain data");
             }
@@ -264,22 +258,37 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
                 throw new CryptoTokenOfflineException("Certificate chain not correctly configured");
             }
 
-            final byte[] inputBytes;
+            long encodedLength = requestData.getLength();
             /* In some versions of Windows, timestamp requests made by the
              * MS SDK's signtool command contains an additional NULL byte,
              * filter this out when present before trying to Base64 decode the
              * data
              */
-            if (requestbytes[requestbytes.length - 1] == 0x00) {
+            if (endsWithNull(requestData)) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Skipping trailing NULL byte in request");
                 }
-                inputBytes = Arrays.copyOf(requestbytes, requestbytes.length - 1);
-            } else {
-                inputBytes = requestbytes;
+                encodedLength--;
             }
 
-            ASN1Primitive asn1obj = ASN1Primitive.fromByteArray(Base64.decode(inputBytes));
+            // Decode the request while reading it, digesting all of it for
+            // the archive ID in the same pass
+            final MessageDigest archiveIdDigest = createArchiveIdDigest();
+            final ASN1Primitive asn1obj;
+            try (DigestTeeInputStream requestIn = new DigestTeeInputStream(requestData.getAsInputStream(), archiveIdDigest)) {
+                final InputStream decodedIn = new Base64DecodingInputStream(new BoundedInputStream(requestIn, encodedLength));
+                // The decoded request can not be larger than this so do not
+                // let ASN.1 length fields make the parser allocate more
+                final int decodedLimit = (int) Math.min(Integer.MAX_VALUE, encodedLength * 3 / 4 + 3);
+                asn1obj = new ASN1InputStream(decodedIn, decodedLimit).readObject();
+                if (asn1obj == null) {
+                    throw new IOException("No ASN.1 object in request");
+                }
+                if (decodedIn.read() != -1) {
+                    throw new IOException("Extra data detected in stream");
+                }
+                requestIn.readRemaining();
+            }
             ASN1Sequence asn1seq = ASN1Sequence.getInstance(asn1obj);
 
             if (asn1seq.size() != 2) {
@@ -317,7 +326,6 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
             ASN1OctetString octets = ASN1OctetString.getInstance(tag.getObject());
             byte[] content = octets.getOctets();
 
-            final byte[] signedbytes;
             final WritableData responseData = sReq.getResponseData();
             X509Certificate x509cert = null;
             final ITimeSource timeSrc;
@@ -335,10 +343,10 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
                             "Null certificate chain. This signer needs a certificate.");
                 }
 
-                Certificate[] certs = (Certificate[]) certList.toArray(new Certificate[certList.size()]);
+                final MSAuthCodeSigningMaterial signingMaterial = getSigningMaterial(certList);
 
                 // Sign
-                x509cert = (X509Certificate) certs[0];
+                x509cert = signingMaterial.getSignerCertificate();
 
                 timeSrc = getTimeSource();
                 if (LOG.isDebugEnabled()) {
@@ -350,53 +358,24 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
                     throw new ServiceUnavailableException("Time source is not available");
                 }
 
-                ASN1EncodableVector signedAttributes = new ASN1EncodableVector();
-                signedAttributes.add(new Attribute(CMSAttributes.signingTime, new DERSet(new Time(date))));
-
-                if (includeSigningCertificateAttribute) {
-                    try {
-                        final DERInteger serial = new DERInteger(x509cert.getSerialNumber());
-                        final X509CertificateHolder certHolder =
-                                new X509CertificateHolder(x509cert.getEncoded());
-                        final X500Name issuer = certHolder.getIssuer();
-                        final GeneralName name = new GeneralName(issuer);
-                        final GeneralNames names = new GeneralNames(name);
-                        final IssuerSerial is = new IssuerSerial(names, ASN1Integer.getInstance(serial));
-
-                        final ESSCertID essCertid =
-                                new ESSCertID(MessageDigest.getInstance("SHA-1").digest(x509cert.getEncoded()), is);
-                        signedAttributes.add(new Attribute(PKCSObjectIdentifiers.id_aa_signingCertificate,
-                                new DERSet(new SigningCertificate(essCertid))));
-                    } catch (NoSuchAlgorithmException e) {
-                        LOG.error("Can't find SHA-1 implementation: " + e.getMessage());
-                        throw new SignServerException("Can't find SHA-1 implementation", e);
-                    }
-                }
-
-                AttributeTable signedAttributesTable = new AttributeTable(signedAttributes);
-                DefaultSignedAttributeTableGenerator signedAttributeGenerator = new DefaultSignedAttributeTableGenerator(signedAttributesTable);
-
-                SignerInfoGeneratorBuilder signerInfoBuilder =
-                        new SignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider("BC").build());
-                signerInfoBuilder.setSignedAttributeGenerator(signedAttributeGenerator);
-
                 JcaContentSignerBuilder contentSigner = new JcaContentSignerBuilder(signatureAlgo);
                 contentSigner.setProvider(crypto.getProvider());
 
-                final SignerInfoGenerator sig = signerInfoBuilder.build(contentSigner.build(crypto.getPrivateKey()), new X509CertificateHolder(x509cert.getEncoded()));
-
-                JcaCertStore cs = new JcaCertStore(certList);
+                final SignerInfoGenerator sig = signingMaterial.createSignerInfoGenerator(contentSigner.build(crypto.getPrivateKey()), date);
 
                 CMSTypedData cmspba = new CMSProcessableByteArray(content);
                 CMSSignedData cmssd = MSAuthCodeCMSUtils.generate(cmspba, true, Arrays.asList(sig),
-                        MSAuthCodeCMSUtils.getCertificatesFromStore(cs), Collections.emptyList(), ci);
+                        signingMaterial.getCertificates(), Collections.emptyList(), ci);
+
+                der = ASN1Primitive.fromByteArray(cmssd.getEncoded()).getEncoded();
 
-                der = ASN1Primitive.fromByteArray(cmssd.getEncoded()).getEncoded();
-                signedbytes = Base64.encode(der, false);
-                out.write(signedbytes);
-            } finally {
-                releaseCryptoInstance(crypto, requestContext);
-            }
+                // Base64 encode while writing instead of to another array
+                final OutputStream encodedOut = Base64.getEncoder().wrap(out);
+                encodedOut.write(der);
+                encodedOut.close();
+            } finally {
+                releaseCryptoInstance(crypto, requestContext);
+            }
 
             // Log values
             logMap.put(ITimeStampLogger.LOG_TSA_TIME,
@@ -414,7 +393,7 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
                 }
             });
 
-            final String archiveId = createArchiveId(requestbytes, (String) requestContext.get(RequestContext.TRANSACTION_ID));
+            final String archiveId = createArchiveId(archiveIdDigest, (String) requestContext.get(RequestContext.TRANSACTION_ID));
 
             final GenericSignResponse signResponse;
 
@@ -422,7 +401,7 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
                     new Loggable() {
                 @Override
                 public String toString() {
-                    return new String(signedbytes);
+                    return Base64.getEncoder().encodeToString(der);
                 }
             });
 
@@ -469,15 +448,44 @@ public class MSAuthCodeTimeStampSigner extends BaseSigner {
             logMap.put(ITimeStampLogger.LOG_TSA_EXCEPTION,
                     new ExceptionLoggable(exception));
             throw exception;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            // the BC base64 decoder doesn't check the the base64 input length...
-            final IllegalRequestException exception =
-                    new IllegalRequestException(
-                            "ArrayIndexOutOfBoundsException: " + e.getMessage(), e);
-            LOG.error("ArrayIndexOutOfBoundsException: ", e);
-            logMap.put(ITimeStampLogger.LOG_TSA_EXCEPTION,
-                    new ExceptionLoggable(exception));
-            throw exception;
+        }
+    }
+
+    /**
+     * Get the signing material for the certificate chain, preparing it only
+     * the first time the chain is used.
+     *
+     * @param certificateChain with the signer certificate first
+     * @return the signing material
+     */
+    private MSAuthCodeSigningMaterial getSigningMaterial(final List<Certificate> certificateChain)
+            throws SignServerException, CertificateEncodingException, CMSException, OperatorCreationException {
+        final X509Certificate signerCert = (X509Certificate) certificateChain.get(0);
+        MSAuthCodeSigningMaterial result = signingMaterials.get(signerCert);
+        if (result == null || !result.matches(certificateChain, includeSigningCertificateAttribute)) {
+            result = MSAuthCodeSigningMaterial.create(certificateChain, includeSigningCertificateAttribute);
+            signingMaterials.put(signerCert, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return True if the last byte of the data is a NULL byte
+     */
+    private static boolean endsWithNull(final ReadableData data) throws IOException {
+        try (InputStream in = data.getAsInputStream()) {
+            long remaining = data.getLength() - 1;
+            while (remaining > 0) {
+                final long skipped = in.skip(remaining);
+                if (skipped > 0) {
+                    remaining -= skipped;
+                } else if (in.read() == -1) {
+                    return false;
+                } else {
+                    remaining--;
+                }
+            }
+            return in.read() == 0x00;
         }
     }
 
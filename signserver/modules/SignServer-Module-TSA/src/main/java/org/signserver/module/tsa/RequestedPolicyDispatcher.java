@@ -15,18 +15,24 @@ package org.signserver.module.tsa;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import javax.persistence.EntityManager;
 import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.cmp.PKIFailureInfo;
 import org.bouncycastle.asn1.cmp.PKIStatus;
 import org.bouncycastle.tsp.TSPException;
 import org.bouncycastle.tsp.TimeStampRequest;
 import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampToken;
 import org.signserver.common.*;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
@@ -34,6 +40,7 @@ import org.signserver.common.data.SignatureRequest;
 import org.signserver.common.data.SignatureResponse;
 import org.signserver.common.data.WritableData;
 import org.signserver.ejb.interfaces.DispatcherProcessSessionLocal;
+import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
 import org.signserver.server.IServices;
 import org.signserver.server.WorkerContext;
 import org.signserver.server.dispatchers.BaseDispatcher;
@@ -41,6 +48,10 @@ import org.signserver.server.log.AdminInfo;
 import org.signserver.server.log.ExceptionLoggable;
 import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
+import org.signserver.server.tsa.ITimeStampTokenIssuer;
+import org.signserver.server.tsa.InternalTimeStampTokenFetcher;
+import org.signserver.server.tsa.TimeStampTokenRequest;
+import org.signserver.server.tsa.TimeStampTokenResponse;
 
 /**
  * Dispatching requests to a Time Stamp Unit based on the requested profile.
@@ -55,7 +66,7 @@ import org.signserver.server.log.LogMap;
  * @author Markus Kilås
  * @version $Id: RequestedPolicyDispatcher.java 7764 2016-10-05 11:52:27Z netmackan $
  */
-public class RequestedPolicyDispatcher extends BaseDispatcher {
+public class RequestedPolicyDispatcher extends BaseDispatcher implements ITimeStampTokenIssuer {
 
     /** Log4j instance for this class. */
     private static final Logger LOG = Logger.getLogger(
@@ -111,6 +122,11 @@ public class RequestedPolicyDispatcher extends BaseDispatcher {
             final RequestContext context) throws IllegalRequestException,
             CryptoTokenOfflineException, SignServerException {
         final Response result;
+
+        // Time-stamp requests from other workers in the same server
+        if (signRequest instanceof TimeStampTokenRequest) {
+            return issueTimeStampTokens((TimeStampTokenRequest) signRequest, context);
+        }
         
         // Log values
         final LogMap logMap = LogMap.getInstance(context);
@@ -178,6 +194,82 @@ public class RequestedPolicyDispatcher extends BaseDispatcher {
         return result;
     }
 
+    /**
+     * Dispatches the time-stamp requests from a worker in the same server to
+     * the workers for their requested policies, with one request to each
+     * worker for all time-stamp requests with the same policy.
+     */
+    @Override
+    public TimeStampTokenResponse issueTimeStampTokens(final TimeStampTokenRequest request,
+            final RequestContext context)
+            throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        // Check context
+        if (context.get(this.getClass().getName()) != null) {
+            throw new SignServerException("Dispatcher called more then one time for the same request. Aborting.");
+        } else {
+            context.put(this.getClass().getName(), "called");
+        }
+
+        final List<TimeStampRequest> timeStampRequests = request.getTimeStampRequests();
+        if (timeStampRequests.isEmpty()) {
+            throw new IllegalRequestException("Request must contain data");
+        }
+
+        // Group the requests by policy keeping their positions
+        final Map<ASN1ObjectIdentifier, List<Integer>> policies = new LinkedHashMap<>();
+        for (int i = 0; i < timeStampRequests.size(); i++) {
+            final ASN1ObjectIdentifier policy = timeStampRequests.get(i).getReqPolicy();
+            List<Integer> indexes = policies.get(policy);
+            if (indexes == null) {
+                indexes = new ArrayList<>();
+                policies.put(policy, indexes);
+            }
+            indexes.add(i);
+        }
+
+        final TimeStampToken[] tokens = new TimeStampToken[timeStampRequests.size()];
+        for (Map.Entry<ASN1ObjectIdentifier, List<Integer>> entry : policies.entrySet()) {
+            final List<TimeStampRequest> policyRequests = new ArrayList<>(entry.getValue().size());
+            for (Integer index : entry.getValue()) {
+                policyRequests.add(timeStampRequests.get(index));
+            }
+
+            // Find to which worker the requests should be dispatched
+            final WorkerIdentifier toWorker = lookupWorkerToDispatchTo(policyRequests.get(0), context);
+            if (toWorker == null) {
+                // Auditlog
+                final LogMap logMap = LogMap.getInstance(context);
+                logMap.put(IWorkerLogger.LOG_CLIENT_AUTHORIZED, false);
+                logMap.put(IWorkerLogger.LOG_EXCEPTION, "requested policy not supported");
+                throw new IllegalRequestException("Request contains unknown policy");
+            }
+
+            final RequestContext nextContext = context.copyWithNewLogMap();
+
+            // Add to context
+            if (entry.getKey() != null) {
+                nextContext.put(TSA_REQUESTEDPOLICYOID, entry.getKey().getId());
+            }
+
+            // Mark request comming from a dispatcher so the DispatchedAuthorizer can be used
+            nextContext.put(RequestContext.DISPATCHER_AUTHORIZED_CLIENT, true);
+
+            final List<TimeStampToken> policyTokens;
+            try {
+                policyTokens = InternalTimeStampTokenFetcher.fetchTokens(
+                        context.getServices().get(InternalProcessSessionLocal.class),
+                        toWorker, policyRequests, nextContext);
+            } catch (TSPException | IOException e) {
+                throw new SignServerException("Time-stamp tokens from " + toWorker + " could not be used: " + e.getMessage(), e);
+            }
+            for (int i = 0; i < policyTokens.size(); i++) {
+                tokens[entry.getValue().get(i)] = policyTokens.get(i);
+            }
+        }
+
+        return new TimeStampTokenResponse(request.getRequestID(), Arrays.asList(tokens), null, null, null);
+    }
+
     private DispatcherProcessSessionLocal getProcessSession(IServices services) {
         return services.get(DispatcherProcessSessionLocal.class);
     }
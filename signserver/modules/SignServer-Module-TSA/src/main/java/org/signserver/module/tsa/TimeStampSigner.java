@@ -30,19 +30,24 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.persistence.EntityManager;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1Encoding;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.cmp.PKIFailureInfo;
+import org.bouncycastle.asn1.cmp.PKIFreeText;
 import org.bouncycastle.asn1.cmp.PKIStatus;
+import org.bouncycastle.asn1.cmp.PKIStatusInfo;
 import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.tsp.TimeStampResp;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.asn1.x509.Extensions;
@@ -87,6 +92,9 @@ import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
 import org.signserver.server.log.Loggable;
 import org.signserver.server.signers.BaseSigner;
+import org.signserver.server.tsa.ITimeStampTokenIssuer;
+import org.signserver.server.tsa.TimeStampTokenRequest;
+import org.signserver.server.tsa.TimeStampTokenResponse;
 import static org.signserver.common.SignServerConstants.DEFAULT_NULL;
 
 /**
@@ -192,7 +200,7 @@ import static org.signserver.common.SignServerConstants.DEFAULT_NULL;
  * @author philip
  * @version $Id: TimeStampSigner.java 10448 2019-03-01 13:06:21Z netmackan $
  */
-public class TimeStampSigner extends BaseSigner {
+public class TimeStampSigner extends BaseSigner implements ITimeStampTokenIssuer {
 
         /** Log4j instance for actual implementation class. */
     private static final Logger LOG = Logger.getLogger(TimeStampSigner.class);
@@ -524,6 +532,11 @@ public class TimeStampSigner extends BaseSigner {
             CryptoTokenOfflineException,
             SignServerException {
 
+        // Time-stamp requests from other workers in the same server
+        if (signRequest instanceof TimeStampTokenRequest) {
+            return issueTimeStampTokens((TimeStampTokenRequest) signRequest, requestContext);
+        }
+
         // Check that the request contains a valid TimeStampRequest object.
         if (!(signRequest instanceof SignatureRequest)) {
             final IllegalRequestException exception =
@@ -594,20 +607,7 @@ public class TimeStampSigner extends BaseSigner {
                     new TimeStampRequest(requestbytes);
 
             // Log values for timestamp request
-            logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_CERTREQ,
-                    new Loggable() {
-                @Override
-                public String toString() {
-                    return String.valueOf(timeStampRequest.getCertReq());
-                }
-            });
-            logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_CRITEXTOIDS,
-                    new Loggable() {
-                @Override
-                public String toString() {
-                    return String.valueOf(timeStampRequest.getCriticalExtensionOIDs());
-                }
-            });
+            putTimeStampRequestLogValues(logMap, Collections.singletonList(timeStampRequest));
             logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_ENCODED,
                     new Loggable() {
                 @Override
@@ -615,45 +615,6 @@ public class TimeStampSigner extends BaseSigner {
                     return new String(Base64.encode(requestbytes, false));
                 }
             });
-            logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_NONCRITEXTOIDS,
-                    new Loggable() {
-                @Override
-                public String toString() {
-                    return String.valueOf(timeStampRequest.getNonCriticalExtensionOIDs());
-                }
-            });
-            logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_NONCE,
-                    new Loggable() {
-                @Override
-                public String toString() {
-                    return String.valueOf(timeStampRequest.getNonce());
-                }
-            });
-            logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_VERSION,
-                    new Loggable() {
-                @Override
-                public String toString() {
-                    return String.valueOf(timeStampRequest.getVersion());
-                }
-            });
-            logMap.put(ITimeStampLogger
-                        .LOG_TSA_TIMESTAMPREQUEST_MESSAGEIMPRINTALGOID,
-                    new Loggable() {
-                @Override
-                public String toString() {
-                    return timeStampRequest.getMessageImprintAlgOID().getId();
-                }
-            });
-            logMap.put(ITimeStampLogger
-                        .LOG_TSA_TIMESTAMPREQUEST_MESSAGEIMPRINTDIGEST,
-                    new Loggable() {
-                @Override
-                public String toString() {
-                    return new String(Base64.encode(
-                            timeStampRequest.getMessageImprintDigest(),
-                            false));
-                }
-            });
             
             // Create the response
             TimeStampResponse timeStampResponse;            
@@ -830,6 +791,258 @@ public class TimeStampSigner extends BaseSigner {
         }
     }
     
+    /**
+     * Issues a time-stamp token for each of the time-stamp requests from a
+     * worker in the same server.
+     *
+     * The requests are validated and the tokens generated as for an encoded
+     * request but no TimeStampResponse is created or encoded. The request
+     * and response are only encoded if they are archived or logged. A
+     * request that is not granted results in an exception as the caller
+     * would not be able to use the response anyway.
+     *
+     * @param tokenRequest with the time-stamp requests
+     * @param requestContext of the request
+     * @return response with one token for each time-stamp request
+     * @throws IllegalRequestException if one of the requests is not accepted
+     * @throws CryptoTokenOfflineException if the crypto token is not available
+     * @throws SignServerException if the time source is not available or
+     * the tokens could not be created
+     */
+    @Override
+    public TimeStampTokenResponse issueTimeStampTokens(final TimeStampTokenRequest tokenRequest,
+            final RequestContext requestContext) throws
+            IllegalRequestException,
+            CryptoTokenOfflineException,
+            SignServerException {
+
+        // Log values
+        final LogMap logMap = LogMap.getInstance(requestContext);
+
+        if (!configErrors.isEmpty()) {
+            throw new SignServerException("Worker is misconfigured");
+        }
+
+        if (!validChain) {
+            LOG.error("Certificate chain not correctly configured");
+            throw new CryptoTokenOfflineException("Certificate chain not correctly configured");
+        }
+
+        final List<TimeStampRequest> timeStampRequests = tokenRequest.getTimeStampRequests();
+        if (timeStampRequests.isEmpty()) {
+            LOG.error("Request must contain data");
+            throw new IllegalRequestException("Request must contain data");
+        }
+
+        final ITimeSource timeSrc = getTimeSource();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("TimeSource: " + timeSrc.getClass().getName());
+        }
+        logMap.put(ITimeStampLogger.LOG_TSA_TIMESOURCE,
+                new Loggable() {
+            @Override
+            public String toString() {
+                return timeSrc.getClass().getSimpleName();
+            }
+        });
+
+        final List<TimeStampToken> tokens = new ArrayList<>(timeStampRequests.size());
+        final List<Archivable> archivables = new ArrayList<>(timeStampRequests.size() * 2);
+        ICryptoInstance crypto = null;
+        try {
+            crypto = acquireCryptoInstance(ICryptoTokenV4.PURPOSE_SIGN, tokenRequest, requestContext);
+            final Certificate cert = getSigningCertificate(crypto);
+            final Extensions additionalExtensions = getAdditionalExtensions(tokenRequest, requestContext);
+
+            // The generator depends on the requested policy only
+            final Map<ASN1ObjectIdentifier, TimeStampTokenGenerator> generators = new HashMap<>();
+
+            for (final TimeStampRequest timeStampRequest : timeStampRequests) {
+                final Date date = timeSrc.getGenTime(requestContext);
+                if (date == null) {
+                    logMap.put(ITimeStampLogger.LOG_TSA_EXCEPTION, "timeSourceNotAvailable");
+                    throw new SignServerException("The time source is not available.");
+                }
+
+                // Validate according to policy
+                timeStampRequest.validate(getAcceptedAlgorithms(), acceptAnyPolicy ? null : this.getAcceptedPolicies(), getAcceptedExtensions());
+
+                TimeStampTokenGenerator timeStampTokenGen = generators.get(timeStampRequest.getReqPolicy());
+                if (timeStampTokenGen == null) {
+                    timeStampTokenGen = getTimeStampTokenGenerator(crypto, timeStampRequest, logMap);
+                    generators.put(timeStampRequest.getReqPolicy(), timeStampTokenGen);
+                }
+
+                final TimeStampToken token = timeStampTokenGen.generate(timeStampRequest,
+                        getSerialNumber(), date, additionalExtensions);
+                if (verifyTokenSignature) {
+                    verifySignature(token, cert);
+                }
+                tokens.add(token);
+
+                final String archiveId = token.getTimeStampInfo().getSerialNumber().toString(16);
+                archivables.add(new EncodingArchivable(Archivable.TYPE_REQUEST, REQUEST_CONTENT_TYPE, archiveId) {
+                    @Override
+                    protected byte[] encode() throws IOException {
+                        return timeStampRequest.getEncoded();
+                    }
+                });
+                archivables.add(new EncodingArchivable(Archivable.TYPE_RESPONSE, RESPONSE_CONTENT_TYPE, archiveId) {
+                    @Override
+                    protected byte[] encode() throws IOException {
+                        return encodeGrantedResponse(token);
+                    }
+                });
+            }
+
+            // Log values for the time-stamp requests and tokens
+            logMap.put(ITimeStampLogger.LOG_TSA_TIME,
+                    new ListLoggable<TimeStampToken>(tokens) {
+                @Override
+                protected String toString(TimeStampToken token) {
+                    return String.valueOf(token.getTimeStampInfo().getGenTime().getTime());
+                }
+            });
+            logMap.put(ITimeStampLogger.LOG_TSA_SERIALNUMBER,
+                    new ListLoggable<TimeStampToken>(tokens) {
+                @Override
+                protected String toString(TimeStampToken token) {
+                    return token.getTimeStampInfo().getSerialNumber().toString(16);
+                }
+            });
+            putTimeStampRequestLogValues(logMap, timeStampRequests);
+            logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_ENCODED,
+                    new ListLoggable<TimeStampRequest>(timeStampRequests) {
+                @Override
+                protected String toString(TimeStampRequest timeStampRequest) throws IOException {
+                    return new String(Base64.encode(timeStampRequest.getEncoded(), false));
+                }
+            });
+            logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPRESPONSE_ENCODED,
+                    new ListLoggable<TimeStampToken>(tokens) {
+                @Override
+                protected String toString(TimeStampToken token) throws IOException {
+                    return new String(Base64.encode(encodeGrantedResponse(token), false));
+                }
+            });
+            logMap.put(ITimeStampLogger.LOG_TSA_PKISTATUS, String.valueOf(PKIStatus.GRANTED));
+
+            // All tokens were issued so the client can be charged
+            requestContext.setRequestFulfilledByWorker(true);
+
+            return new TimeStampTokenResponse(tokenRequest.getRequestID(),
+                    tokens,
+                    cert,
+                    archivables.get(0).getArchiveId(),
+                    archivables);
+
+        } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException
+                | NoSuchProviderException | CertStoreException | IOException e) {
+            final IllegalRequestException exception =
+                    new IllegalRequestException(
+                            e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+            LOG.error(e.getClass().getSimpleName() + ": ", e);
+            logMap.put(ITimeStampLogger.LOG_TSA_EXCEPTION,
+                    new ExceptionLoggable(exception));
+            throw exception;
+        } catch (TSPException e) {
+            final IllegalRequestException exception =
+                    new IllegalRequestException(e.getMessage(), e);
+            LOG.error("TSPException: ", e);
+            logMap.put(ITimeStampLogger.LOG_TSA_EXCEPTION,
+                    new ExceptionLoggable(exception));
+            throw exception;
+        } catch (OperatorCreationException e) {
+            final SignServerException exception =
+                    new SignServerException(e.getMessage(), e);
+            LOG.error("OperatorCreationException: ", e);
+            logMap.put(ITimeStampLogger.LOG_TSA_EXCEPTION,
+                    new ExceptionLoggable(exception));
+            throw exception;
+        } finally {
+            releaseCryptoInstance(crypto, requestContext);
+        }
+    }
+
+    /**
+     * Encodes a granted time-stamp response with the token in the same way
+     * as it would have been returned for an encoded request.
+     *
+     * @param token to include
+     * @return the encoded response
+     * @throws IOException in case of encoding failure
+     */
+    private byte[] encodeGrantedResponse(final TimeStampToken token) throws IOException {
+        final PKIStatusInfo statusInfo = includeStatusString
+                ? new PKIStatusInfo(PKIStatus.granted, new PKIFreeText("Operation Okay"))
+                : new PKIStatusInfo(PKIStatus.granted);
+        final TimeStampResp resp = new TimeStampResp(statusInfo, token.toCMSSignedData().toASN1Structure());
+        return legacyEncoding ? resp.getEncoded(ASN1Encoding.DL) : resp.getEncoded();
+    }
+
+    /**
+     * Puts the log values for the time-stamp requests, except for the
+     * encoded request, with the values of the requests separated by a comma.
+     *
+     * @param logMap to put the values in
+     * @param timeStampRequests to log
+     */
+    private static void putTimeStampRequestLogValues(final LogMap logMap, final List<TimeStampRequest> timeStampRequests) {
+        logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_CERTREQ,
+                new ListLoggable<TimeStampRequest>(timeStampRequests) {
+            @Override
+            protected String toString(TimeStampRequest timeStampRequest) {
+                return String.valueOf(timeStampRequest.getCertReq());
+            }
+        });
+        logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_CRITEXTOIDS,
+                new ListLoggable<TimeStampRequest>(timeStampRequests) {
+            @Override
+            protected String toString(TimeStampRequest timeStampRequest) {
+                return String.valueOf(timeStampRequest.getCriticalExtensionOIDs());
+            }
+        });
+        logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_NONCRITEXTOIDS,
+                new ListLoggable<TimeStampRequest>(timeStampRequests) {
+            @Override
+            protected String toString(TimeStampRequest timeStampRequest) {
+                return String.valueOf(timeStampRequest.getNonCriticalExtensionOIDs());
+            }
+        });
+        logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_NONCE,
+                new ListLoggable<TimeStampRequest>(timeStampRequests) {
+            @Override
+            protected String toString(TimeStampRequest timeStampRequest) {
+                return String.valueOf(timeStampRequest.getNonce());
+            }
+        });
+        logMap.put(ITimeStampLogger.LOG_TSA_TIMESTAMPREQUEST_VERSION,
+                new ListLoggable<TimeStampRequest>(timeStampRequests) {
+            @Override
+            protected String toString(TimeStampRequest timeStampRequest) {
+                return String.valueOf(timeStampRequest.getVersion());
+            }
+        });
+        logMap.put(ITimeStampLogger
+                    .LOG_TSA_TIMESTAMPREQUEST_MESSAGEIMPRINTALGOID,
+                new ListLoggable<TimeStampRequest>(timeStampRequests) {
+            @Override
+            protected String toString(TimeStampRequest timeStampRequest) {
+                return timeStampRequest.getMessageImprintAlgOID().getId();
+            }
+        });
+        logMap.put(ITimeStampLogger
+                    .LOG_TSA_TIMESTAMPREQUEST_MESSAGEIMPRINTDIGEST,
+                new ListLoggable<TimeStampRequest>(timeStampRequests) {
+            @Override
+            protected String toString(TimeStampRequest timeStampRequest) {
+                return new String(Base64.encode(
+                        timeStampRequest.getMessageImprintDigest(),
+                        false));
+            }
+        });
+    }
+
     private void verifySignature(TimeStampToken token, Certificate signerCert) throws SignServerException {
         final SignerInformationVerifier infoVerifier;
         try {
@@ -1260,4 +1473,77 @@ public class TimeStampSigner extends BaseSigner {
         return result;
     }
 
+    /**
+     * Archivable encoding its content only when it is archived.
+     */
+    private abstract static class EncodingArchivable implements Archivable {
+
+        private final String type;
+        private final String contentType;
+        private final String archiveId;
+
+        EncodingArchivable(final String type, final String contentType, final String archiveId) {
+            this.type = type;
+            this.contentType = contentType;
+            this.archiveId = archiveId;
+        }
+
+        protected abstract byte[] encode() throws IOException;
+
+        @Override
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public byte[] getContentEncoded() {
+            try {
+                return encode();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Unable to encode archivable: " + ex.getMessage(), ex);
+            }
+        }
+
+        @Override
+        public String getArchiveId() {
+            return archiveId;
+        }
+    }
+
+    /**
+     * Loggable with the value for each item separated by a comma.
+     * @param <T> type of item
+     */
+    private abstract static class ListLoggable<T> implements Loggable {
+
+        private final List<T> items;
+
+        ListLoggable(final List<T> items) {
+            this.items = items;
+        }
+
+        protected abstract String toString(T item) throws IOException;
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            for (T item : items) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                try {
+                    sb.append(toString(item));
+                } catch (IOException ex) {
+                    sb.append("(").append(ex.getMessage()).append(")");
+                }
+            }
+            return sb.toString();
+        }
+    }
+
 }
@@ -0,0 +1,121 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.tsa;
+
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import junit.framework.TestCase;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.cms.Time;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.signserver.common.SignServerUtil;
+import org.signserver.test.utils.builders.CertBuilder;
+import org.signserver.test.utils.builders.CryptoUtils;
+
+/**
+ * Unit tests for the MSAuthCodeSigningMaterial class.
+ *
+ * @version $Id$
+ */
+public class MSAuthCodeSigningMaterialUnitTest extends TestCase {
+
+    private final BouncyCastleProvider provider = new BouncyCastleProvider();
+
+    private KeyPair keyPair;
+    private List<Certificate> chain;
+
+    @Override
+    protected void setUp() throws Exception {
+        SignServerUtil.installBCProvider();
+        keyPair = CryptoUtils.generateRSA(1024, provider);
+        chain = createChain(keyPair);
+    }
+
+    private List<Certificate> createChain(final KeyPair keyPair) throws Exception {
+        return Collections.<Certificate>singletonList(new JcaX509CertificateConverter().getCertificate(new CertBuilder()
+                .setSelfSignKeyPair(keyPair)
+                .setSignatureAlgorithm("SHA256withRSA")
+                .setProvider(provider)
+                .build()));
+    }
+
+    /**
+     * Tests that the material matches the same chain and settings only.
+     * @throws Exception in case of error
+     */
+    public void testMatches() throws Exception {
+        final MSAuthCodeSigningMaterial instance = MSAuthCodeSigningMaterial.create(chain, true);
+
+        assertTrue("same chain", instance.matches(Arrays.asList(chain.get(0)), true));
+        assertFalse("other setting", instance.matches(chain, false));
+        assertFalse("other chain", instance.matches(createChain(keyPair), true));
+        assertSame("signer certificate", chain.get(0), instance.getSignerCertificate());
+        assertEquals("certificates", 1, instance.getCertificates().size());
+    }
+
+    /**
+     * Tests that signer info generators created from the same material give
+     * signatures with the signing time of each request.
+     * @throws Exception in case of error
+     */
+    public void testCreateSignerInfoGenerator() throws Exception {
+        final MSAuthCodeSigningMaterial instance = MSAuthCodeSigningMaterial.create(chain, true);
+
+        final long now = System.currentTimeMillis() / 1000 * 1000;
+        for (long time : new long[] {now, now + 1000}) {
+            final CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+            generator.addSignerInfoGenerator(instance.createSignerInfoGenerator(
+                    new JcaContentSignerBuilder("SHA256withRSA").setProvider(provider).build(keyPair.getPrivate()), new Date(time)));
+            final CMSSignedData signedData = generator.generate(new CMSProcessableByteArray("content".getBytes()), true);
+
+            final SignerInformation signer = signedData.getSignerInfos().getSigners().iterator().next();
+            assertTrue("verifies", signer.verify(new JcaSimpleSignerInfoVerifierBuilder().setProvider(provider)
+                    .build(new JcaX509CertificateHolder(instance.getSignerCertificate()))));
+
+            final AttributeTable signedAttributes = signer.getSignedAttributes();
+            assertEquals("signing time", new Date(time), Time.getInstance(
+                    signedAttributes.get(CMSAttributes.signingTime).getAttrValues().getObjectAt(0)).getDate());
+            assertNotNull("signing certificate attribute", signedAttributes.get(PKCSObjectIdentifiers.id_aa_signingCertificate));
+        }
+    }
+
+    /**
+     * Tests that the signing certificate attribute is not included unless
+     * configured.
+     * @throws Exception in case of error
+     */
+    public void testWithoutSigningCertificateAttribute() throws Exception {
+        final MSAuthCodeSigningMaterial instance = MSAuthCodeSigningMaterial.create(chain, false);
+        final CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+        generator.addSignerInfoGenerator(instance.createSignerInfoGenerator(
+                new JcaContentSignerBuilder("SHA256withRSA").setProvider(provider).build(keyPair.getPrivate()), new Date()));
+        final CMSSignedData signedData = generator.generate(new CMSProcessableByteArray("content".getBytes()), true);
+
+        final SignerInformation signer = signedData.getSignerInfos().getSigners().iterator().next();
+        assertNull("no signing certificate attribute", signer.getSignedAttributes().get(PKCSObjectIdentifiers.id_aa_signingCertificate));
+    }
+}
@@ -48,13 +48,17 @@ import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampTokenInfo;
 import org.junit.Before;
 import org.junit.Test;
+import org.signserver.common.IllegalRequestException;
 import org.signserver.common.RequestContext;
 import org.signserver.common.SignServerException;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerIdentifier;
 import org.signserver.common.data.Request;
 import org.signserver.server.LocalComputerTimeSource;
+import org.signserver.server.archive.Archivable;
 import org.signserver.server.log.LogMap;
+import org.signserver.server.tsa.TimeStampTokenRequest;
+import org.signserver.server.tsa.TimeStampTokenResponse;
 import org.signserver.test.utils.mock.GlobalConfigurationSessionMock;
 import org.signserver.test.utils.mock.WorkerSessionMock;
 import org.signserver.testutils.ModulesTestCase;
@@ -163,6 +167,73 @@ public class TimeStampSignerUnitTest extends ModulesTestCase {
                 requestLoggable.toString().lastIndexOf('\n'));
     }
 
+    /**
+     * Tests that a time-stamp token request from another worker gets one
+     * token for each time-stamp request, counted as one signature each, and
+     * that the archived response is the same as for an encoded request.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTimeStampTokenRequest() throws Exception {
+        LOG.info("testTimeStampTokenRequest");
+        TimeStampRequestGenerator timeStampRequestGenerator =
+                new TimeStampRequestGenerator();
+        timeStampRequestGenerator.setCertReq(true);
+        final List<TimeStampRequest> timeStampRequests = Arrays.asList(
+                timeStampRequestGenerator.generate(TSPAlgorithms.SHA1, new byte[20], BigInteger.valueOf(100)),
+                timeStampRequestGenerator.generate(TSPAlgorithms.SHA256, new byte[32], BigInteger.valueOf(101)));
+
+        final TimeStampTokenResponse response = (TimeStampTokenResponse) processSession.process(
+                new AdminInfo("Client user", null, null), new WorkerIdentifier(WORKER1),
+                new TimeStampTokenRequest(100, timeStampRequests), new MockedRequestContext(services));
+
+        assertEquals("tokens", 2, response.getTimeStampTokens().size());
+        assertEquals("signature count", 2, response.getSignatureCount());
+        assertEquals("archivables", 4, response.getArchivables().size());
+        assertNotNull("signer certificate", response.getSignerCertificate());
+
+        final TimeStampTokenInfo first = response.getTimeStampTokens().get(0).getTimeStampInfo();
+        final TimeStampTokenInfo second = response.getTimeStampTokens().get(1).getTimeStampInfo();
+        assertEquals("nonce", BigInteger.valueOf(100), first.getNonce());
+        assertEquals("nonce", BigInteger.valueOf(101), second.getNonce());
+        assertEquals("imprint algorithm", TSPAlgorithms.SHA256, second.getMessageImprintAlgOID());
+        assertFalse("unique serial numbers", first.getSerialNumber().equals(second.getSerialNumber()));
+
+        for (Archivable archivable : response.getArchivables()) {
+            if (Archivable.TYPE_RESPONSE.equals(archivable.getType())) {
+                final TimeStampResponse timeStampResponse = new TimeStampResponse(archivable.getContentEncoded());
+                assertEquals("granted", PKIStatus.GRANTED, timeStampResponse.getStatus());
+                assertEquals("archive id", timeStampResponse.getTimeStampToken().getTimeStampInfo().getSerialNumber().toString(16),
+                        archivable.getArchiveId());
+            }
+        }
+    }
+
+    /**
+     * Tests that a time-stamp token request with a policy not accepted is
+     * not granted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTimeStampTokenRequestNonAcceptedPolicy() throws Exception {
+        LOG.info("testTimeStampTokenRequestNonAcceptedPolicy");
+        TimeStampRequestGenerator timeStampRequestGenerator =
+                new TimeStampRequestGenerator();
+        timeStampRequestGenerator.setReqPolicy(new ASN1ObjectIdentifier("1.3.6.1.4.1.22408.1.2.1.2"));
+        final TimeStampRequest timeStampRequest = timeStampRequestGenerator.generate(
+                TSPAlgorithms.SHA1, new byte[20], BigInteger.valueOf(100));
+        try {
+            processSession.process(new AdminInfo("Client user", null, null), new WorkerIdentifier(WORKER7),
+                    new TimeStampTokenRequest(100, Collections.singletonList(timeStampRequest)),
+                    new MockedRequestContext(services));
+            fail("Should have thrown IllegalRequestException");
+        } catch (IllegalRequestException expected) { // NOPMD
+            // OK
+        }
+    }
+
     private void setupWorkers() throws Exception {
 
         final GlobalConfigurationSessionMock globalMock
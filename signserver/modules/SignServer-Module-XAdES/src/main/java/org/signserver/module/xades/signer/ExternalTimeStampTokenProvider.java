@@ -0,0 +1,67 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.xades.signer;
+
+import com.google.inject.Inject;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.security.MessageDigest;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.signserver.common.SignServerException;
+import org.signserver.server.tsa.ExternalTimeStampTokenFetcher;
+import xades4j.UnsupportedAlgorithmException;
+import xades4j.providers.MessageDigestEngineProvider;
+import xades4j.providers.TimeStampTokenGenerationException;
+import xades4j.providers.TimeStampTokenProvider;
+
+/**
+ * Time-stamp token provider fetching the token from one or more external
+ * TSAs using the fetcher of the worker.
+ *
+ * @version $Id$
+ */
+public class ExternalTimeStampTokenProvider implements TimeStampTokenProvider {
+
+    private final MessageDigestEngineProvider messageDigestProvider;
+
+    private final TSAParameters tsaParameters;
+
+    @Inject
+    public ExternalTimeStampTokenProvider(final MessageDigestEngineProvider messageDigestProvider,
+            final TSAParameters tsaParameters) {
+        this.messageDigestProvider = messageDigestProvider;
+        this.tsaParameters = tsaParameters;
+    }
+
+    @Override
+    public TimeStampTokenRes getTimeStampToken(final byte[] tsDigestInput, final String digestAlgUri) throws TimeStampTokenGenerationException {
+        try {
+            final ExternalTimeStampTokenFetcher fetcher = ExternalTimeStampTokenFetcher.getInstance(
+                    tsaParameters.getWorkerId(), tsaParameters.getUrl(), tsaParameters.getUsername(), tsaParameters.getPassword(),
+                    tsaParameters.getSettings());
+            MessageDigest md = messageDigestProvider.getEngine(digestAlgUri);
+            byte[] imprint = md.digest(tsDigestInput);
+            TimeStampToken token = fetcher.fetchToken(imprint, InternalTimeStampTokenProvider.getDigestOID(digestAlgUri), null);
+            return new TimeStampTokenRes(token.getEncoded(), token.getTimeStampInfo().getGenTime());
+        } catch (UnsupportedAlgorithmException ex) {
+            throw new TimeStampTokenGenerationException("Digest algorithm not supported", ex);
+        } catch (MalformedURLException ex) {
+            throw new TimeStampTokenGenerationException("Illegal TSA URL", ex);
+        } catch (SignServerException ex) {
+            throw new TimeStampTokenGenerationException("The time-stamp request failed", ex);
+        } catch (IOException ex) {
+            throw new TimeStampTokenGenerationException("Encoding error", ex);
+        }
+    }
+
+}
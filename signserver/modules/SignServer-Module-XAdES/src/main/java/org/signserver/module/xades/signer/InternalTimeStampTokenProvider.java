@@ -62,12 +62,20 @@ public class InternalTimeStampTokenProvider implements TimeStampTokenProvider {
         this.fetcher = new InternalTimeStampTokenFetcher(session, wi, username, password);
     }
 
+    /**
+     * @param digestAlgUri xml-sec URI of the digest algorithm
+     * @return the OID of the digest algorithm or null if not known
+     */
+    static ASN1ObjectIdentifier getDigestOID(final String digestAlgUri) {
+        return digestUriToOidMap.get(digestAlgUri);
+    }
+
     @Override
     public TimeStampTokenRes getTimeStampToken(final byte[] tsDigestInput, final String digestAlgUri) throws TimeStampTokenGenerationException {
         try {
             MessageDigest md = messageDigestProvider.getEngine(digestAlgUri);
             byte[] imprint = md.digest(tsDigestInput);
-            TimeStampToken token = fetcher.fetchToken(imprint, digestUriToOidMap.get(digestAlgUri), null);
+            TimeStampToken token = fetcher.fetchToken(imprint, getDigestOID(digestAlgUri), null);
             return new TimeStampTokenRes(token.getEncoded(), token.getTimeStampInfo().getGenTime());
         } catch (UnsupportedAlgorithmException ex) {
             throw new TimeStampTokenGenerationException("Digest algorithm not supported", ex);
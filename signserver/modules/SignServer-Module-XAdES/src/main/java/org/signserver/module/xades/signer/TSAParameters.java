@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.signserver.module.xades.signer;
 
+import org.signserver.server.tsa.ExternalTimeStampTokenFetcher;
+
 /**
  * Class containing TSA Properties.
  * 
@@ -21,9 +23,11 @@ package org.signserver.module.xades.signer;
  * @version $Id: TSAParameters.java 3748 2013-08-22 20:20:54Z netmackan $
  */
 public class TSAParameters {
+    private final int workerId;
     private final String url;
     private final String username;
     private final String password;
+    private final ExternalTimeStampTokenFetcher.Settings settings;
 
     /**
      * Constructs an new instance of TSA Parameters.
@@ -32,9 +36,25 @@ public class TSAParameters {
      * @param password Password
      */
     public TSAParameters(final String url, final String username, final String password) {
+        this(0, url, username, password, ExternalTimeStampTokenFetcher.Settings.DEFAULT);
+    }
+
+    /**
+     * Constructs an new instance of TSA Parameters.
+     * @param workerId ID of the worker fetching the time-stamp tokens
+     * @param url URL of time-stamp service or comma separated URLs of
+     * time-stamp services tried in order
+     * @param username Username
+     * @param password Password
+     * @param settings Connection settings
+     */
+    public TSAParameters(final int workerId, final String url, final String username, final String password,
+            final ExternalTimeStampTokenFetcher.Settings settings) {
+        this.workerId = workerId;
         this.url = url;
         this.username = username;
         this.password = password;
+        this.settings = settings;
     }
 
     /**
@@ -45,6 +65,13 @@ public class TSAParameters {
         this(url, null, null);
     }
 
+    /**
+     * @return ID of the worker fetching the time-stamp tokens
+     */
+    public int getWorkerId() {
+        return workerId;
+    }
+
     /**
      * @return URL of time-stamp service
      */
@@ -66,9 +93,16 @@ public class TSAParameters {
         return password;
     }
 
+    /**
+     * @return Connection settings
+     */
+    public ExternalTimeStampTokenFetcher.Settings getSettings() {
+        return settings;
+    }
+
     @Override
     public String toString() {
-        return "TSAParameters{" + "url=" + url + ", username=" + username + ", password=<" + (password == null ? "null" : "masked") + ">}";
+        return "TSAParameters{" + "url=" + url + ", username=" + username + ", password=<" + (password == null ? "null" : "masked") + ">, settings=" + settings + "}";
     }
     
 }
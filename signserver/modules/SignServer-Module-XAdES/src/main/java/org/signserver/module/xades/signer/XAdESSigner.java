@@ -15,6 +15,7 @@ package org.signserver.module.xades.signer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.MalformedURLException;
 import java.security.NoSuchProviderException;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
@@ -49,6 +50,7 @@ import org.signserver.server.archive.Archivable;
 import org.signserver.server.archive.DefaultArchivable;
 import org.signserver.server.cryptotokens.ICryptoInstance;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
+import org.signserver.server.tsa.ExternalTimeStampTokenFetcher;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
 import org.signserver.common.data.SignatureRequest;
@@ -79,7 +81,6 @@ import xades4j.utils.XadesProfileResolutionException;
 import xades4j.providers.impl.DefaultAlgorithmsProviderEx;
 import xades4j.providers.impl.DefaultMessageDigestProvider;
 import xades4j.providers.impl.DefaultSignaturePropertiesProvider;
-import xades4j.providers.impl.ExtendedTimeStampTokenProvider;
 import xades4j.verification.UnexpectedJCAException;
 import static org.signserver.common.SignServerConstants.DEFAULT_NULL;
 
@@ -168,7 +169,7 @@ public class XAdESSigner extends BaseSigner {
      * The default time stamp token implementation, can be overridden by the unit tests.
      */
     private Class<? extends TimeStampTokenProvider> timeStampTokenProviderImplementation =
-            ExtendedTimeStampTokenProvider.class;
+            ExternalTimeStampTokenProvider.class;
     
     private TimeStampTokenProvider internalTimeStampTokenProvider;
     private InternalProcessSessionLocal workerSession;
@@ -233,6 +234,7 @@ public class XAdESSigner extends BaseSigner {
         
         // PROPERTY_TSA_URL, PROPERTY_TSA_USERNAME, PROPERTY_TSA_PASSWORD, PROPERTY_TSA_WORKER
         TSAParameters tsa = null;
+        ExternalTimeStampTokenFetcher.removeInstance(signerId); // Replaced by any new configuration
         if (form == Profiles.T) {
             tsaUrl = config.getProperty(PROPERTY_TSA_URL, DEFAULT_NULL);
             tsaUsername = config.getProperty(PROPERTY_TSA_USERNAME, DEFAULT_NULL);
@@ -244,7 +246,13 @@ public class XAdESSigner extends BaseSigner {
             } else {
                 if (tsaUrl != null) {
                     // Use URL to external TSA
-                    tsa = new TSAParameters(tsaUrl, tsaUsername, tsaPassword);
+                    tsa = new TSAParameters(signerId, tsaUrl, tsaUsername, tsaPassword,
+                            ExternalTimeStampTokenFetcher.Settings.fromConfig(config, configErrors));
+                    try {
+                        ExternalTimeStampTokenFetcher.parseURLs(tsaUrl);
+                    } catch (MalformedURLException ex) {
+                        configErrors.add("Illegal value for property " + PROPERTY_TSA_URL + ": " + ex.getMessage());
+                    }
                 } else {
                     // Use worker name/ID of internal TSA
                     this.tsaWorker = WorkerIdentifier.createFromIdOrName(tsaWorkerName.trim());
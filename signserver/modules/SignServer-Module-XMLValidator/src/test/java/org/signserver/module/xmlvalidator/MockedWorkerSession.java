@@ -49,5 +49,10 @@ public class MockedWorkerSession implements ProcessSessionLocal, InternalProcess
 
         return new CertificateValidationResponse(new Validation(icert, chain, Validation.Status.VALID, "Certificate is valid"), validPurposes);
     }
+
+    @Override
+    public Response processDirect(AdminInfo admin, WorkerIdentifier workerId, Request request, RequestContext requestContext) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        throw new UnsupportedOperationException("Not implemented");
+    }
     
 }
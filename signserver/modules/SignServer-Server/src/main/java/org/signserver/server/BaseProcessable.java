@@ -719,10 +719,31 @@ public abstract class BaseProcessable extends BaseWorker implements IProcessable
      * @throws SignServerException in case of error
      */
     protected String createArchiveId(final byte[] data, final String transactionId) throws SignServerException {
+        final MessageDigest md = createArchiveIdDigest();
+        md.update(data);
+        return createArchiveId(md, transactionId);
+    }
+
+    /**
+     * Computes an archive id based on a digest of the data and the request id.
+     * @param dataDigest Digest from createArchiveIdDigest() updated with the
+     * document to archive
+     * @param transactionId The transaction id
+     * @return An ArchiveId (hex encoded hash of document+requestid)
+     * @see #createArchiveIdDigest()
+     */
+    protected String createArchiveId(final MessageDigest dataDigest, final String transactionId) {
+        return new String(Hex.encode(dataDigest.digest(transactionId.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return A new digest to update with the document while it is read
+     * instead of having it in memory
+     * @throws SignServerException in case of error
+     */
+    protected MessageDigest createArchiveIdDigest() throws SignServerException {
         try {
-            final MessageDigest md = MessageDigest.getInstance("SHA1");
-            md.update(data);
-            return new String(Hex.encode(md.digest(transactionId.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8);
+            return MessageDigest.getInstance("SHA1");
         } catch (NoSuchAlgorithmException ex) {
             throw new SignServerException("Unable to compute archive ID", ex);
         }
@@ -0,0 +1,82 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe cache holding at most a fixed number of entries.
+ *
+ * When the cache is full the least recently used entry is evicted to make
+ * room for a new one.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the cached values
+ * @version $Id$
+ */
+public class LRUCache<K, V> {
+
+    private final Map<K, V> entries;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxEntries maximum number of entries to keep
+     */
+    public LRUCache(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum number of entries must be at least 1");
+        }
+        entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key to look up
+     * @return the cached value or null if not cached
+     */
+    public synchronized V get(final K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Cache a value, evicting the least recently used entry if full.
+     *
+     * @param key to cache the value for
+     * @param value to cache
+     */
+    public synchronized void put(final K key, final V value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
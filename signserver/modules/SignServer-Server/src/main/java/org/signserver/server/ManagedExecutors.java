@@ -0,0 +1,60 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server;
+
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import org.apache.log4j.Logger;
+
+/**
+ * Access to the container's default managed executor for running worker and
+ * crypto token tasks concurrently.
+ *
+ * Threads submitted to the managed executor are created, propagated a
+ * component context and shut down by the application server. When no such
+ * executor is available (i.e. when running outside of a Java EE 7 container
+ * or in unit tests) callers are expected to perform the work sequentially in
+ * the calling thread.
+ *
+ * @version $Id$
+ */
+public class ManagedExecutors {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ManagedExecutors.class);
+
+    /** JNDI name of the default managed executor (Java EE 7). */
+    public static final String DEFAULT_MANAGED_EXECUTOR_SERVICE = "java:comp/DefaultManagedExecutorService";
+
+    private ManagedExecutors() {
+        // No instances
+    }
+
+    /**
+     * Looks up the container's default managed executor.
+     *
+     * @return the managed executor or null if none is available in which
+     * case the caller should run its tasks in the calling thread
+     */
+    public static ManagedExecutorService getDefault() {
+        try {
+            return (ManagedExecutorService) new InitialContext().lookup(DEFAULT_MANAGED_EXECUTOR_SERVICE);
+        } catch (NamingException | RuntimeException ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No managed executor available: " + ex.getMessage());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.signserver.statusrepo.StatusListener;
+import org.signserver.statusrepo.StatusRepositorySessionLocal;
+import org.signserver.statusrepo.common.NoSuchPropertyException;
+import org.signserver.statusrepo.common.StatusEntry;
+import org.signserver.statusrepo.common.StatusName;
+
+/**
+ * Caches status entries read from the status repository until they expire or
+ * are updated.
+ *
+ * The cache registers itself as a listener with the status repository the
+ * first time it is used so updates are received without polling. As the
+ * repository only keeps a weak reference to the listener, the owner of the
+ * cache must keep a reference to it.
+ *
+ * @version $Id$
+ */
+public class StatusEntryCache implements StatusListener {
+
+    private final ConcurrentMap<StatusName, Cached> cache = new ConcurrentHashMap<>();
+
+    private volatile boolean registered;
+
+    /**
+     * Get a status entry, from the cache if available.
+     *
+     * @param session status repository to read from and register with
+     * @param name of the property
+     * @return The entry if existing and not expired, otherwise null
+     * @throws NoSuchPropertyException If the property doesn't exist
+     */
+    public StatusEntry getValidEntry(final StatusRepositorySessionLocal session, final StatusName name) throws NoSuchPropertyException {
+        register(session);
+
+        Cached cached = cache.get(name);
+        if (cached == null) {
+            cached = put(name, new Cached(session.getValidEntry(name.name())));
+        }
+        return cached.getValidEntry(System.currentTimeMillis());
+    }
+
+    @Override
+    public void statusUpdated(final StatusName name, final StatusEntry entry) {
+        put(name, new Cached(entry));
+    }
+
+    /**
+     * Registers with the status repository the first time. Any session
+     * instance refers to the same repository.
+     */
+    private void register(final StatusRepositorySessionLocal session) {
+        if (!registered) {
+            synchronized (this) {
+                if (!registered) {
+                    session.addListener(this);
+                    registered = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the entry unless a more recently updated one is already cached,
+     * as notifications and reads can arrive in any order.
+     */
+    private Cached put(final StatusName name, final Cached value) {
+        while (true) {
+            final Cached existing = cache.putIfAbsent(name, value);
+            if (existing == null) {
+                return value;
+            }
+            if (existing.updateTime > value.updateTime) {
+                return existing;
+            }
+            if (cache.replace(name, existing, value)) {
+                return value;
+            }
+        }
+    }
+
+    private static class Cached {
+        private final StatusEntry entry;
+        private final long updateTime;
+
+        Cached(final StatusEntry entry) {
+            this.entry = entry;
+            this.updateTime = entry == null ? Long.MIN_VALUE : entry.getUpdateTime();
+        }
+
+        StatusEntry getValidEntry(final long time) {
+            if (entry != null && (entry.getExpirationTime() == 0 || entry.getExpirationTime() > time)) {
+                return entry;
+            }
+            return null;
+        }
+    }
+}
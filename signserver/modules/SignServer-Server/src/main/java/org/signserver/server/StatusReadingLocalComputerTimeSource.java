@@ -49,6 +49,9 @@ public class StatusReadingLocalComputerTimeSource implements ITimeSource {
     private final StatusName insyncPropertyName = StatusName.TIMESOURCE0_INSYNC;
     private final StatusName leapsecondPropertyName = StatusName.LEAPSECOND;
 
+    /** Status entries cached until they expire or are updated. */
+    private final StatusEntryCache statusCache = new StatusEntryCache();
+
     // property constants
     private static final String LEAPSECOND_HANDLING = "LEAPSECOND_HANDLING";
     
@@ -119,7 +122,7 @@ public class StatusReadingLocalComputerTimeSource implements ITimeSource {
         try {
             final Date result;
             final StatusRepositorySessionLocal statusSession = context.getServices().get(StatusRepositorySessionLocal.class);
-            final StatusEntry entry = statusSession.getValidEntry(insyncPropertyName.name());
+            final StatusEntry entry = statusCache.getValidEntry(statusSession, insyncPropertyName);
             
             final LogMap logMap = LogMap.getInstance(context);
 
@@ -132,7 +135,7 @@ public class StatusReadingLocalComputerTimeSource implements ITimeSource {
             if (entry != null && Boolean.valueOf(entry.getValue())) {
                 Date date = getCurrentDate();                    
                 // check if a leapsecond is near
-                final StatusEntry leapsecond = statusSession.getValidEntry(leapsecondPropertyName.name());
+                final StatusEntry leapsecond = statusCache.getValidEntry(statusSession, leapsecondPropertyName);
 
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Check for leapsecond");
@@ -43,6 +43,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.security.auth.x500.X500Principal;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.PredicateUtils;
@@ -78,6 +82,7 @@ import org.signserver.common.SignServerConstants;
 import org.signserver.common.SignServerException;
 import org.signserver.server.IServices;
 import org.signserver.server.KeyUsageCounterHash;
+import org.signserver.server.ManagedExecutors;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
 import org.signserver.server.entities.KeyUsageCounter;
 import static org.signserver.common.SignServerConstants.TOKEN_ENTRY_FIELDS_ALIAS;
@@ -546,48 +551,95 @@ public class CryptoTokenHelper {
         return new JcaX509CertificateConverter().getCertificate(cg.build(contentSigner));
     }
 
-    public static TokenSearchResults searchTokenEntries(final KeyStoreDelegator keyStore, final int startIndex, final int max, final QueryCriteria qc, final boolean includeData, IServices services, char[] authCode) throws CryptoTokenOfflineException, QueryException {
+    public static TokenSearchResults searchTokenEntries(final KeyStoreDelegator keyStore, final int startIndex, final int max, final QueryCriteria qc, final boolean includeData, final IServices services, final char[] authCode) throws CryptoTokenOfflineException, QueryException {
         final TokenSearchResults result;
         try {
-            final ArrayList<TokenEntry> tokenEntries = new ArrayList<>();
-
             final List<TokenEntry> entries = keyStore.getEntries();
-            final List<TokenEntry> filteredEntries = new LinkedList<>();
-            
+            final TokenEntry[] filteredEntries = new TokenEntry[entries.size()];
+            int filteredCount = 0;
+
             for (final TokenEntry entry : entries) {
                 if (shouldBeIncluded(entry, qc)) {
-                    filteredEntries.add(entry);
+                    filteredEntries[filteredCount++] = entry;
                 }
             }
-            
+
             // apply ordering if applicable
-            handleOrdering(filteredEntries, qc);
-            
+            handleOrdering(filteredEntries, filteredCount, qc);
+
             final long maxIndex = (long) startIndex + max;
-            
-            for (int i = startIndex; i < maxIndex && i < filteredEntries.size(); i++) {
-                final TokenEntry entry = filteredEntries.get(i);
-                final String keyAlias = entry.getAlias();
-             
+            final int endIndex = (int) Math.min(maxIndex, filteredCount);
+            final List<TokenEntry> tokenEntries = new ArrayList<>(Math.max(0, endIndex - startIndex));
+
+            for (int i = startIndex; i < endIndex; i++) {
                 if (LOG.isDebugEnabled()) {
-                    LOG.debug("checking keyAlias: " + keyAlias);
+                    LOG.debug("checking keyAlias: " + filteredEntries[i].getAlias());
                 }
+                tokenEntries.add(filteredEntries[i]);
+            }
 
-                // Add additional data
-
-                if (includeData) {
-                    keyStore.addAdditionalDataToEntry(entry, authCode, services);
-                }
-                tokenEntries.add(entry);
+            // Add additional data
+            if (includeData) {
+                addAdditionalData(keyStore, tokenEntries, authCode, services);
             }
 
-            result = new TokenSearchResults(tokenEntries, filteredEntries.size() > maxIndex);
+            result = new TokenSearchResults(tokenEntries, filteredCount > maxIndex);
         } catch (KeyStoreException ex) {
             throw new CryptoTokenOfflineException(ex);
         }
         return result;
     }
-    
+
+    /**
+     * Populate additional data for the token entries. As this could involve
+     * one or more round-trips to the HSM for each entry the entries are
+     * processed concurrently using the container's managed executor when
+     * one is available.
+     */
+    private static void addAdditionalData(final KeyStoreDelegator keyStore, final List<TokenEntry> entries, final char[] authCode, final IServices services) throws KeyStoreException, CryptoTokenOfflineException {
+        final ExecutorService executor = entries.size() < 2 ? null : ManagedExecutors.getDefault();
+        if (executor == null) {
+            for (TokenEntry entry : entries) {
+                keyStore.addAdditionalDataToEntry(entry, authCode, services);
+            }
+            return;
+        }
+
+        final List<Future<Void>> futures = new ArrayList<>(entries.size());
+        for (final TokenEntry entry : entries) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws KeyStoreException, CryptoTokenOfflineException {
+                    keyStore.addAdditionalDataToEntry(entry, authCode, services);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CryptoTokenOfflineException("Interrupted while querying token entries");
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof KeyStoreException) {
+                throw (KeyStoreException) cause;
+            } else if (cause instanceof CryptoTokenOfflineException) {
+                throw (CryptoTokenOfflineException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new CryptoTokenOfflineException(cause.getMessage(), cause);
+            }
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
     private static boolean shouldBeIncluded(TokenEntry tokenEntry, QueryCriteria qc) throws QueryException {
         final List<Elem> terms = new ArrayList<>();
             
@@ -936,7 +988,7 @@ public class CryptoTokenHelper {
         return result;
     }
     
-    private static void handleOrdering(List<TokenEntry> filteredEntries, QueryCriteria qc) {
+    private static void handleOrdering(TokenEntry[] filteredEntries, int count, QueryCriteria qc) {
         final List<Elem> elements = qc.getElements();
         final List<Elem> clauses = new ArrayList<>();
         
@@ -951,10 +1003,10 @@ public class CryptoTokenHelper {
                     Order.Value orderValue = order.getOrder();
                     if (orderValue.equals(Order.Value.ASC)) {
                         TokenEntryKeyAliasOrderByASC ascComparison = new TokenEntryKeyAliasOrderByASC();
-                        Collections.sort(filteredEntries, ascComparison);
+                        Arrays.sort(filteredEntries, 0, count, ascComparison);
                     } else { // DESC ordering
                         TokenEntryKeyAliasOrderByDESC descComparison = new TokenEntryKeyAliasOrderByDESC();
-                        Collections.sort(filteredEntries, descComparison);
+                        Arrays.sort(filteredEntries, 0, count, descComparison);
                     }
                 } else { // TODO: support for ordering by other column names
                     LOG.warn("Ordering only supported by column name: " + TOKEN_ENTRY_FIELDS_KEY_ALIAS + "/" + TOKEN_ENTRY_FIELDS_ALIAS);
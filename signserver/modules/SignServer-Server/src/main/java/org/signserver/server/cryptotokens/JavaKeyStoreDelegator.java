@@ -25,9 +25,7 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import javax.crypto.SecretKey;
@@ -55,9 +53,11 @@ public class JavaKeyStoreDelegator implements KeyStoreDelegator {
     private static final Logger LOG = Logger.getLogger(JavaKeyStoreDelegator.class);
     
     private final KeyStore keystore;
+    private final TokenEntryIndex entryIndex;
 
     public JavaKeyStoreDelegator(final KeyStore keystore) {
         this.keystore = keystore;
+        this.entryIndex = new TokenEntryIndex(keystore);
     }
     
     @Override
@@ -68,6 +68,7 @@ public class JavaKeyStoreDelegator implements KeyStoreDelegator {
     @Override
     public void deleteEntry(String alias) throws KeyStoreException {
         keystore.deleteEntry(alias);
+        entryIndex.invalidate(alias);
     }
 
     @Override
@@ -88,33 +89,9 @@ public class JavaKeyStoreDelegator implements KeyStoreDelegator {
     @Override
     public List<TokenEntry> getEntries()
         throws KeyStoreException {
-        final Enumeration<String> e = keystore.aliases();
-        final List<TokenEntry> result = new LinkedList<>();
-        
-        while (e.hasMoreElements()) {
-            final String keyAlias = e.nextElement();
-            final String type;
-            
-            if (keystore.entryInstanceOf(keyAlias, KeyStore.PrivateKeyEntry.class)) {
-                type = TokenEntry.TYPE_PRIVATEKEY_ENTRY;
-            } else if (keystore.entryInstanceOf(keyAlias, KeyStore.SecretKeyEntry.class)) {
-                type = TokenEntry.TYPE_SECRETKEY_ENTRY;
-            } else if (keystore.entryInstanceOf(keyAlias, KeyStore.TrustedCertificateEntry.class)) {
-                type = TokenEntry.TYPE_TRUSTED_ENTRY;
-            }  else {
-                type = null;
-            }
-
-            TokenEntry entry = new TokenEntry(keyAlias, type);
-
-            result.add(entry);
-        }
-
-        return result;
+        return entryIndex.getEntries();
     }
 
-
-
     @Override
     public void addAdditionalDataToEntry(final TokenEntry entry,
                                          final char[] authCode,
@@ -238,5 +215,6 @@ public class JavaKeyStoreDelegator implements KeyStoreDelegator {
     public void setKeyEntry(String alias, PrivateKey key, char[] authCode,
                             Certificate[] certificate) throws KeyStoreException {
         keystore.setKeyEntry(alias, key, authCode, certificate);
+        entryIndex.invalidate(alias);
     }
 }
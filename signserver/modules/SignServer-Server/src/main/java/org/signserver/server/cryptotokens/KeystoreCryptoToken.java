@@ -20,6 +20,9 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import org.apache.commons.io.IOUtils;
@@ -31,6 +34,7 @@ import org.cesecore.keys.util.KeyTools;
 import org.cesecore.util.query.QueryCriteria;
 import org.signserver.common.*;
 import org.signserver.server.IServices;
+import org.signserver.server.ManagedExecutors;
 import org.signserver.server.log.AdminInfo;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
 import static org.signserver.server.cryptotokens.CryptoTokenHelper.SECRET_KEY_PREFIX;
@@ -48,6 +52,11 @@ import static org.signserver.server.cryptotokens.CryptoTokenHelper.SECRET_KEY_PR
  * KEYSTORETYPE : PKCS12 or JKS. (required)
  * DEFAULTKEY : Alias of keystore entry to use. (optional)
  * NEXTCERTSIGNKEY : Can be used to hold the alias of the next key. (optional)
+ * PRELOADKEYS : Comma separated list of aliases, or ALL, of keys to decrypt
+ *               in the background at activation. (optional)
+ *
+ * The keys for DEFAULTKEY and NEXTCERTSIGNKEY are decrypted at activation
+ * while other keys are decrypted on first use and then kept in memory.
  *
  * @author Philip Vendil, Markus Kilas
  * @version $Id: KeystoreCryptoToken.java 10717 2019-04-30 13:49:46Z netmackan $
@@ -62,6 +71,10 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
     public static final String KEYSTORETYPE = "KEYSTORETYPE";
     public static final String DEFAULTKEY = "DEFAULTKEY";
     public static final String NEXTKEY = "NEXTCERTSIGNKEY";
+    public static final String PRELOADKEYS = "PRELOADKEYS";
+
+    /** Value of PRELOADKEYS for preloading all keys. */
+    public static final String PRELOADKEYS_ALL = "ALL";
 
     public static final String TYPE_PKCS12 = "PKCS12";
     public static final String TYPE_JKS = "JKS";
@@ -79,7 +92,7 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
     private Properties properties;
 
     /** Mapping from alias or key purpose to KeyEntry. */
-    private Map<Object, KeyEntry> entries;
+    private volatile Map<Object, KeyEntry> entries;
 
     private char[] authenticationCode;
 
@@ -88,6 +101,9 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
     
     private KeyStoreDelegator delegator;
 
+    /** Outstanding key preload tasks, cancelled on deactivation. */
+    private final List<KeyPreloader> preloaders = new ArrayList<>();
+
     @Override
     public void init(int workerId, Properties properties, IServices services) throws CryptoTokenInitializationFailureException {
         this.properties = properties;
@@ -174,6 +190,10 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
 
     /**
      * (Re)read from keystore to in-memory representation.
+     *
+     * Only the certificate chains are read for all entries while the private
+     * keys are decrypted on first use, apart from the default and next key
+     * and any keys configured to be preloaded.
      */
     private void readFromKeystore(final String authenticationcode, final IServices services)
             throws KeyStoreException, CertificateException,
@@ -183,31 +203,30 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
         if (authenticationcode != null) {
             this.authenticationCode = authenticationcode.toCharArray();
         }
-        this.ks = getKeystore(keystoretype, keystorepath, authenticationCode, services);
-        this.delegator = new JavaKeyStoreDelegator(this.ks);
-        
-        entries = new HashMap<>();
+        final KeyStore keystore = getKeystore(keystoretype, keystorepath, authenticationCode, services);
+        final Map<Object, KeyEntry> newEntries = new ConcurrentHashMap<>();
+        String firstKeyAlias = null;
 
-        Enumeration<String> e = ks.aliases();
+        final Enumeration<String> e = keystore.aliases();
         while (e.hasMoreElements()) {
             final String alias = e.nextElement();
-            if (ks.isKeyEntry(alias)) {
+            if (keystore.isKeyEntry(alias)) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Alias " + alias + " is KeyEntry.");
                 }
-                final Key key = ks.getKey(alias, authenticationCode);
-                if (key instanceof PrivateKey) {
-                    final Certificate[] chain = KeyTools.getCertChain(ks,
+                if (firstKeyAlias == null) {
+                    firstKeyAlias = alias;
+                }
+                if (keystore.entryInstanceOf(alias, KeyStore.PrivateKeyEntry.class)) {
+                    final Certificate[] chain = KeyTools.getCertChain(keystore,
                             alias);
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("Loaded certificate chain with length "
                                 + chain.length + " from keystore.");
                     }
 
-                    final KeyEntry entry = new KeyEntry((PrivateKey) key,
-                            chain[0], Arrays.asList(chain));
-
-                    entries.put(alias, entry);
+                    newEntries.put(alias, new KeyEntry(keystore, alias,
+                            chain[0], Arrays.asList(chain)));
                 } else {
                     LOG.error("Not a private key for alias " + alias);
                 }
@@ -215,27 +234,20 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
         }
 
         // Use the first entry as default key if none specified
-        if (properties.getProperty(DEFAULTKEY) == null) {
-            e = ks.aliases();
-
-            while (e.hasMoreElements()) {
-                final String alias = e.nextElement();
-                if (ks.isKeyEntry(alias)) {
-                    if (ks.getKey(alias, authenticationCode) != null) {
-                        LOG.debug("Aliases " + alias + " is KeyEntry.");
-                        properties.setProperty(DEFAULTKEY, alias);
-                        break;
-                    }
-                }
-            }
+        if (properties.getProperty(DEFAULTKEY) == null && firstKeyAlias != null) {
+            LOG.debug("Aliases " + firstKeyAlias + " is KeyEntry.");
+            properties.setProperty(DEFAULTKEY, firstKeyAlias);
         }
 
         final String defaultKey = properties.getProperty(DEFAULTKEY);
         if (defaultKey != null) {
-            final KeyEntry entry = entries.get(defaultKey);
+            final KeyEntry entry = newEntries.get(defaultKey);
             if (entry != null) {
-                entries.put(ICryptoTokenV4.PURPOSE_SIGN, entry);
-                entries.put(ICryptoTokenV4.PURPOSE_DECRYPT, entry);
+                // Decrypt the default key now so that a wrong key password
+                // is detected already at activation
+                entry.getPrivateKey(authenticationCode);
+                newEntries.put(ICryptoTokenV4.PURPOSE_SIGN, entry);
+                newEntries.put(ICryptoTokenV4.PURPOSE_DECRYPT, entry);
             } else {
                 LOG.error("Not a private key for alias " + defaultKey);
             }
@@ -243,13 +255,77 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
 
         final String nextKey = properties.getProperty(NEXTKEY);
         if (nextKey != null) {
-            final KeyEntry entry = entries.get(nextKey);
+            final KeyEntry entry = newEntries.get(nextKey);
             if (entry != null) {
-                entries.put(ICryptoTokenV4.PURPOSE_NEXTKEY, entry);
+                entry.getPrivateKey(authenticationCode);
+                newEntries.put(ICryptoTokenV4.PURPOSE_NEXTKEY, entry);
             } else {
                 LOG.error("Not a private key for alias " + defaultKey);
             }
         }
+
+        this.ks = keystore;
+        this.delegator = new JavaKeyStoreDelegator(keystore);
+        this.entries = newEntries;
+
+        preloadKeys(newEntries, authenticationCode);
+    }
+
+    /**
+     * Decrypt the keys configured in PRELOADKEYS, in the background if the
+     * container provides a managed executor.
+     * Each task gets its own copy of the password which is cleared when the
+     * task has finished or has been cancelled.
+     *
+     * @param entries to preload keys from
+     * @param password for the keys
+     */
+    private void preloadKeys(final Map<Object, KeyEntry> entries, final char[] password) {
+        cancelPreloads();
+
+        final String value = properties.getProperty(PRELOADKEYS);
+        if (StringUtils.isBlank(value)) {
+            return;
+        }
+
+        final Collection<KeyEntry> preload = new LinkedHashSet<>();
+        if (PRELOADKEYS_ALL.equalsIgnoreCase(value.trim())) {
+            preload.addAll(entries.values());
+        } else {
+            for (String alias : value.split(",")) {
+                final KeyEntry entry = entries.get(alias.trim());
+                if (entry == null) {
+                    LOG.warn("No key to preload for alias " + alias.trim());
+                } else {
+                    preload.add(entry);
+                }
+            }
+        }
+
+        final ExecutorService executor = ManagedExecutors.getDefault();
+        for (final KeyEntry entry : preload) {
+            final KeyPreloader task = new KeyPreloader(entry, password == null ? null : password.clone());
+            if (executor == null) {
+                task.run();
+            } else {
+                synchronized (preloaders) {
+                    preloaders.add(task);
+                }
+                executor.submit(task);
+            }
+        }
+    }
+
+    /**
+     * Cancel any key preload tasks not yet started.
+     */
+    private void cancelPreloads() {
+        synchronized (preloaders) {
+            for (KeyPreloader task : preloaders) {
+                task.cancel();
+            }
+            preloaders.clear();
+        }
     }
     
     @Override
@@ -290,6 +366,7 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
 
     @Override
     public boolean deactivate(final IServices services) {
+        cancelPreloads();
         entries = null;
         ks = null;
         if (authenticationCode != null) {
@@ -400,7 +477,7 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
                         workerId, baos.toByteArray());
             }
 
-            final KeyEntry entry = new KeyEntry((PrivateKey) keyPair.getPrivate(), 
+            final KeyEntry entry = new KeyEntry(alias, (PrivateKey) keyPair.getPrivate(), 
                                 chain[0], Arrays.asList(chain));
 
             // If this is the first entry
@@ -563,8 +640,8 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
                                                        this.workerId, data);
                 }
                 
-                readFromKeystore(null, services);
-            } catch (IOException | NoSuchAlgorithmException | CertificateException | NoSuchProviderException | UnrecoverableKeyException ex) {
+                removeKeyEntry(alias);
+            } catch (IOException | NoSuchAlgorithmException | CertificateException ex) {
                 LOG.error("Unable to persist new keystore after key removal: " + ex.getMessage(), ex);
                 throw new SignServerException("Unable to persist key removal");
             } finally {
@@ -574,8 +651,31 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
         return result;
     }
 
+    /**
+     * Update the in-memory representation after a key has been removed.
+     *
+     * @param alias of removed key
+     */
+    private void removeKeyEntry(final String alias) {
+        final Map<Object, KeyEntry> currentEntries = entries;
+        if (currentEntries != null) {
+            final KeyEntry removed = currentEntries.remove(alias);
+            if (removed != null) {
+                currentEntries.values().removeAll(Collections.singleton(removed));
+            }
+        }
+    }
+
     private PrivateKey getPrivateKey(String alias, IServices services) throws CryptoTokenOfflineException {
-        return getKeyEntry(alias, services).getPrivateKey();
+        return getPrivateKey(getKeyEntry(alias, services));
+    }
+
+    private PrivateKey getPrivateKey(final KeyEntry entry) throws CryptoTokenOfflineException {
+        try {
+            return entry.getPrivateKey(authenticationCode);
+        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException ex) {
+            throw new CryptoTokenOfflineException("Unable to load key " + entry.getAlias() + ": " + ex.getMessage(), ex);
+        }
     }
 
     private PublicKey getPublicKey(String alias, IServices services) throws CryptoTokenOfflineException {
@@ -638,13 +738,9 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
             }
                 
             // update in-memory representation
-            KeyEntry entry = getKeyEntry(alias, services);
+            final KeyEntry entry = getKeyEntry(alias, services);
             final Certificate signingCert = certChain.get(0);
             
-            if (entry == null) {
-                entry = new KeyEntry();
-            }
-            
             entry.setCertificate(signingCert);
             entry.setCertificateChain(certChain);
         } catch (Exception e) {
@@ -666,9 +762,9 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
         final boolean includeDummyCertificate = params.containsKey(PARAM_INCLUDE_DUMMYCERTIFICATE);
         final KeyEntry entry = getKeyEntry(alias, context.getServices());
         if ((entry.getCertificateChain().size() == 1 && CryptoTokenHelper.isDummyCertificate(entry.getCertificateChain().get(0))) && !includeDummyCertificate) {
-            return new DefaultCryptoInstance(alias, context, ks.getProvider(), entry.getPrivateKey(), entry.getCertificateChain().get(0).getPublicKey());
+            return new DefaultCryptoInstance(alias, context, ks.getProvider(), getPrivateKey(entry), entry.getCertificateChain().get(0).getPublicKey());
         } else {
-            return new DefaultCryptoInstance(alias, context, ks.getProvider(), entry.getPrivateKey(), entry.getCertificateChain());
+            return new DefaultCryptoInstance(alias, context, ks.getProvider(), getPrivateKey(entry), entry.getCertificateChain());
         }
     }
 
@@ -677,22 +773,84 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
         // NOP
     }
 
-    private static class KeyEntry {
-        private PrivateKey privateKey;
-        private Certificate certificate;
-        private List<Certificate> certificateChain;
+    /**
+     * Task decrypting the private key of an entry using its own copy of the
+     * password. The task is either run or cancelled, whichever comes first,
+     * and the password copy is cleared in both cases.
+     */
+    private static class KeyPreloader implements Runnable {
+        private final KeyEntry entry;
+        private final char[] password;
+        private final AtomicBoolean claimed = new AtomicBoolean();
 
-        public KeyEntry() {
+        public KeyPreloader(final KeyEntry entry, final char[] password) {
+            this.entry = entry;
+            this.password = password;
         }
-        
-        public KeyEntry(final PrivateKey privateKey,
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                entry.getPrivateKey(password);
+            } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException ex) {
+                LOG.error("Preloading key " + entry.getAlias() + " failed: " + ex.getMessage());
+            } finally {
+                clear();
+            }
+        }
+
+        public void cancel() {
+            if (claimed.compareAndSet(false, true)) {
+                clear();
+            }
+        }
+
+        private void clear() {
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+        }
+    }
+
+    /**
+     * In-memory representation of a key entry with the private key decrypted
+     * on first use.
+     */
+    private static class KeyEntry {
+        private final KeyStore keystore;
+        private final String alias;
+        private volatile PrivateKey privateKey;
+        private volatile Certificate certificate;
+        private volatile List<Certificate> certificateChain;
+
+        public KeyEntry(final KeyStore keystore,
+                final String alias,
+                final Certificate certificate,
+                final List<Certificate> certificateChain) {
+            this.keystore = keystore;
+            this.alias = alias;
+            this.certificate = certificate;
+            this.certificateChain = certificateChain;
+        }
+
+        public KeyEntry(final String alias,
+                final PrivateKey privateKey,
                 final Certificate certificate,
                 final List<Certificate> certificateChain) {
+            this.keystore = null;
+            this.alias = alias;
             this.privateKey = privateKey;
             this.certificate = certificate;
             this.certificateChain = certificateChain;
         }
 
+        public String getAlias() {
+            return alias;
+        }
+
         public Certificate getCertificate() {
             return certificate;
         }
@@ -701,8 +859,32 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
             return certificateChain;
         }
 
-        public PrivateKey getPrivateKey() {
-            return privateKey;
+        /**
+         * Get the private key, decrypting it from the key store if not
+         * already done.
+         *
+         * @param password to decrypt the key with
+         * @return the private key
+         */
+        public PrivateKey getPrivateKey(final char[] password) throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException {
+            PrivateKey result = privateKey;
+            if (result == null) {
+                synchronized (this) {
+                    result = privateKey;
+                    if (result == null) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Loading key for alias " + alias);
+                        }
+                        final Key key = keystore.getKey(alias, password);
+                        if (!(key instanceof PrivateKey)) {
+                            throw new UnrecoverableKeyException("Not a private key for alias " + alias);
+                        }
+                        result = (PrivateKey) key;
+                        privateKey = result;
+                    }
+                }
+            }
+            return result;
         }
         
         public void setCertificate(final Certificate cert) {
@@ -712,10 +894,6 @@ public class KeystoreCryptoToken extends BaseCryptoToken {
         public void setCertificateChain(final List<Certificate> certChain) {
             certificateChain = certChain;
         }
-        
-        public void setPrivateKey(final PrivateKey privKey) {
-            privateKey = privKey;
-        }
     }
 
 }
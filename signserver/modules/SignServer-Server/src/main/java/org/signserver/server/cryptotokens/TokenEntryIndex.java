@@ -0,0 +1,150 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.cryptotokens;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ * Index of the entries (alias and type) available in a Java KeyStore.
+ *
+ * Looking up the type of an entry can be expensive for HSM backed key stores
+ * so the index remembers the types of already seen aliases and on refresh
+ * only queries the aliases that were added since last time. Whether anything
+ * changed at all is detected by comparing the aliases with the ones from the
+ * last refresh. Entries replaced under an unchanged alias must be reported
+ * using {@link #invalidate(java.lang.String)} so that their type is queried
+ * again. The entries are kept in the enumeration order of the key store.
+ *
+ * @version $Id$
+ */
+public class TokenEntryIndex {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(TokenEntryIndex.class);
+
+    private final KeyStore keystore;
+
+    /** Current immutable snapshot. */
+    private volatile Snapshot snapshot = new Snapshot(Collections.<String, String>emptyMap(), null);
+
+    public TokenEntryIndex(final KeyStore keystore) {
+        this.keystore = keystore;
+    }
+
+    /**
+     * Get token entries for all the aliases in the key store.
+     * The index is first refreshed if the key store has changed.
+     *
+     * @return new list of (fresh) token entries
+     * @throws KeyStoreException in case of failure querying the key store
+     */
+    public List<TokenEntry> getEntries() throws KeyStoreException {
+        final Map<String, String> types = refresh().types;
+        final List<TokenEntry> result = new ArrayList<>(types.size());
+        for (Map.Entry<String, String> entry : types.entrySet()) {
+            result.add(new TokenEntry(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Forget about an alias, for instance after it has been removed or
+     * replaced, so that its type is queried again on next refresh.
+     * The next refresh always re-reads the aliases.
+     *
+     * @param alias to forget about
+     */
+    public synchronized void invalidate(final String alias) {
+        final Snapshot current = snapshot;
+        final Map<String, String> types = new LinkedHashMap<>(current.types);
+        types.remove(alias);
+        snapshot = new Snapshot(types, null);
+    }
+
+    /**
+     * Refresh the index if the key store has changed.
+     *
+     * @return the current snapshot
+     * @throws KeyStoreException in case of failure querying the key store
+     */
+    private synchronized Snapshot refresh() throws KeyStoreException {
+        final Snapshot current = snapshot;
+
+        final List<String> aliases = new ArrayList<>(Math.max(16, current.types.size()));
+        final Enumeration<String> e = keystore.aliases();
+        while (e.hasMoreElements()) {
+            aliases.add(e.nextElement());
+        }
+
+        if (aliases.equals(current.aliases)) {
+            return current;
+        }
+
+        final Map<String, String> types = new LinkedHashMap<>(aliases.size() * 4 / 3 + 1);
+        int queried = 0;
+        for (String alias : aliases) {
+            final String type;
+            if (current.types.containsKey(alias)) {
+                type = current.types.get(alias);
+            } else {
+                type = queryType(alias);
+                queried++;
+            }
+            types.put(alias, type);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Refreshed token entry index with " + aliases.size()
+                    + " entries of which " + queried + " were queried");
+        }
+
+        final Snapshot result = new Snapshot(types, aliases);
+        snapshot = result;
+        return result;
+    }
+
+    private String queryType(final String alias) throws KeyStoreException {
+        final String type;
+        if (keystore.entryInstanceOf(alias, KeyStore.PrivateKeyEntry.class)) {
+            type = TokenEntry.TYPE_PRIVATEKEY_ENTRY;
+        } else if (keystore.entryInstanceOf(alias, KeyStore.SecretKeyEntry.class)) {
+            type = TokenEntry.TYPE_SECRETKEY_ENTRY;
+        } else if (keystore.entryInstanceOf(alias, KeyStore.TrustedCertificateEntry.class)) {
+            type = TokenEntry.TYPE_TRUSTED_ENTRY;
+        } else {
+            type = null;
+        }
+        return type;
+    }
+
+    /**
+     * Immutable view of the index.
+     */
+    private static class Snapshot {
+        private final Map<String, String> types;
+        /** Aliases in enumeration order or null if the index is not fresh. */
+        private final List<String> aliases;
+
+        Snapshot(final Map<String, String> types, final List<String> aliases) {
+            this.types = types;
+            this.aliases = aliases;
+        }
+    }
+}
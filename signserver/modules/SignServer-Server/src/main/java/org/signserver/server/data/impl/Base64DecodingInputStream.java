@@ -0,0 +1,242 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Input stream decoding base64 data while it is read.
+ *
+ * Only the current quantum of decoded data is held in memory so that large
+ * documents can be decoded directly into a temporary file. White space
+ * (including line breaks) is ignored as by the non-streaming decoder used
+ * previously while any other character outside of the base64 alphabet, data
+ * not ending with a complete quantum and data after the padding causes a
+ * {@link MalformedBase64Exception}.
+ *
+ * @version $Id$
+ */
+public class Base64DecodingInputStream extends FilterInputStream {
+
+    private static final int PADDING = '=';
+
+    private static final byte[] DECODING_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODING_TABLE, (byte) -1);
+        final byte[] alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+        for (int i = 0; i < alphabet.length; i++) {
+            DECODING_TABLE[alphabet[i]] = (byte) i;
+        }
+    }
+
+    private final byte[] inBuffer = new byte[4096];
+    private int inPos;
+    private int inLen;
+
+    /** Decoded bytes not yet returned. */
+    private final byte[] outBuffer = new byte[3];
+    private int outPos;
+    private int outLen;
+
+    /** If the padding or the end of the underlying stream has been reached. */
+    private boolean ended;
+
+    /**
+     * Creates an instance.
+     *
+     * @param in stream with the base64 data to decode
+     */
+    public Base64DecodingInputStream(final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (outPos == outLen) {
+            outPos = 0;
+            outLen = decodeQuantum(outBuffer, 0);
+            if (outLen == -1) {
+                outLen = 0;
+                return -1;
+            }
+        }
+        return outBuffer[outPos++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+
+        // First return any bytes left from the last quantum
+        while (outPos < outLen && count < len) {
+            b[off + count++] = outBuffer[outPos++];
+        }
+
+        // Decode directly to the caller's buffer while whole quanta fit
+        while (len - count >= 3) {
+            final int n = decodeQuantum(b, off + count);
+            if (n == -1) {
+                return count == 0 ? -1 : count;
+            }
+            count += n;
+        }
+
+        if (count < len) {
+            final int b2 = read();
+            if (b2 == -1) {
+                return count == 0 ? -1 : count;
+            }
+            b[off + count++] = (byte) b2;
+            while (outPos < outLen && count < len) {
+                b[off + count++] = outBuffer[outPos++];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads and discards the decoded data.
+     */
+    @Override
+    public long skip(final long n) throws IOException {
+        final byte[] buffer = new byte[(int) Math.min(4096, Math.max(n, 0))];
+        long remaining = n;
+        while (remaining > 0) {
+            final int read = read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return outLen - outPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        // Not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Decodes the next quantum of 4 characters.
+     *
+     * @param dest buffer to write the up to 3 decoded bytes to
+     * @param destOff offset in the buffer
+     * @return number of bytes decoded or -1 at the end of the data
+     * @throws IOException in case of error reading or malformed data
+     */
+    private int decodeQuantum(final byte[] dest, final int destOff) throws IOException {
+        if (ended) {
+            if (nextChar() != -1) {
+                throw new MalformedBase64Exception("Unexpected data after base64 padding");
+            }
+            return -1;
+        }
+
+        final int c1 = nextChar();
+        if (c1 == -1) {
+            ended = true;
+            return -1;
+        }
+        final int c2 = nextChar();
+        final int c3 = nextChar();
+        final int c4 = nextChar();
+        if (c4 == -1) {
+            throw new MalformedBase64Exception("Incomplete base64 data");
+        }
+
+        final int b1 = decode(c1);
+        final int b2 = decode(c2);
+        dest[destOff] = (byte) ((b1 << 2) | (b2 >> 4));
+
+        if (c3 == PADDING) {
+            if (c4 != PADDING) {
+                throw new MalformedBase64Exception("Illegal base64 padding");
+            }
+            ended = true;
+            return 1;
+        }
+        final int b3 = decode(c3);
+        dest[destOff + 1] = (byte) ((b2 << 4) | (b3 >> 2));
+
+        if (c4 == PADDING) {
+            ended = true;
+            return 2;
+        }
+        final int b4 = decode(c4);
+        dest[destOff + 2] = (byte) ((b3 << 6) | b4);
+        return 3;
+    }
+
+    private static int decode(final int c) throws MalformedBase64Exception {
+        final int value = c < DECODING_TABLE.length ? DECODING_TABLE[c] : -1;
+        if (value == -1) {
+            throw new MalformedBase64Exception("Illegal base64 character: " + c);
+        }
+        return value;
+    }
+
+    /**
+     * @return The next character that is not white space or -1 at the end
+     * of the stream
+     */
+    private int nextChar() throws IOException {
+        while (true) {
+            if (inPos == inLen) {
+                inLen = in.read(inBuffer, 0, inBuffer.length);
+                inPos = 0;
+                if (inLen == -1) {
+                    inLen = 0;
+                    return -1;
+                }
+            }
+            final int c = inBuffer[inPos++] & 0xff;
+            if (c != '\n' && c != '\r' && c != '\t' && c != ' ') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Thrown when the data read is not valid base64.
+     */
+    public static class MalformedBase64Exception extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public MalformedBase64Exception(final String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Pool of fixed size chunks used for data kept in memory, with a budget
+ * capping the total size of the chunks in use by all requests.
+ *
+ * Released chunks are kept for reuse up to a maximum number so that the
+ * buffers of concurrent requests do not have to be allocated and grown for
+ * every request.
+ *
+ * The chunks of an owner are tracked by an Allocation so that the budget of
+ * chunks never released, for instance by a stream that was not closed, is
+ * given back once the owner has been garbage collected instead of being
+ * lost until the server is restarted.
+ *
+ * @version $Id$
+ */
+public class BufferPool {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(BufferPool.class);
+
+    /** Size of each chunk. */
+    public static final int CHUNK_SIZE = 32 * 1024;
+
+    /** Default maximum total size of chunks in use. */
+    public static final long DEFAULT_BUDGET = 64 * 1024 * 1024; // 64 MB
+
+    /** Default maximum size of data kept in memory for one instance. */
+    public static final long DEFAULT_THRESHOLD = 1 * 1024 * 1024; // 1 MB
+
+    /** Maximum number of released chunks kept for reuse. */
+    private static final int MAX_POOLED = 256;
+
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_THRESHOLD, DEFAULT_BUDGET);
+
+    private final Queue<byte[]> pooled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+    private final AtomicLong used = new AtomicLong();
+
+    private final ReferenceQueue<Object> abandonedQueue = new ReferenceQueue<>();
+    private final Set<Allocation> allocations = Collections.newSetFromMap(new ConcurrentHashMap<Allocation, Boolean>());
+
+    private volatile long threshold;
+    private volatile long budget;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threshold maximum size of data to keep in memory for one
+     * instance before it is written to disk
+     * @param budget maximum total size of chunks in use
+     */
+    public BufferPool(final long threshold, final long budget) {
+        this.threshold = threshold;
+        this.budget = budget;
+    }
+
+    /**
+     * @return The pool shared by all requests
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Updates the limits. Chunks already in use are not affected.
+     *
+     * @param threshold maximum size of data to keep in memory for one
+     * instance before it is written to disk
+     * @param budget maximum total size of chunks in use
+     */
+    public void configure(final long threshold, final long budget) {
+        this.threshold = threshold;
+        this.budget = budget;
+    }
+
+    /**
+     * Starts tracking the chunks of an owner. The allocation should be
+     * closed when all of its chunks have been released.
+     *
+     * @param owner of the chunks, only referenced weakly
+     * @param chunks list the owner keeps its acquired chunks in
+     * @return The new allocation
+     */
+    public Allocation allocate(final Object owner, final List<byte[]> chunks) {
+        expungeAbandoned();
+        final Allocation result = new Allocation(owner, chunks);
+        allocations.add(result);
+        return result;
+    }
+
+    /**
+     * Gets a chunk if it fits in the budget.
+     *
+     * @return A chunk of CHUNK_SIZE bytes or null if the budget is used up
+     */
+    public byte[] acquire() {
+        expungeAbandoned();
+        long current;
+        do {
+            current = used.get();
+            if (current + CHUNK_SIZE > budget) {
+                return null;
+            }
+        } while (!used.compareAndSet(current, current + CHUNK_SIZE));
+
+        final byte[] chunk = pooled.poll();
+        if (chunk == null) {
+            return new byte[CHUNK_SIZE];
+        }
+        pooledCount.decrementAndGet();
+        return chunk;
+    }
+
+    /**
+     * Returns a chunk obtained from acquire. The chunk must not be used
+     * after this.
+     *
+     * @param chunk to return
+     */
+    public void release(final byte[] chunk) {
+        used.addAndGet(-CHUNK_SIZE);
+        if (pooledCount.incrementAndGet() <= MAX_POOLED) {
+            pooled.offer(chunk);
+        } else {
+            pooledCount.decrementAndGet();
+        }
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return The total size of the chunks currently in use
+     */
+    public long getUsed() {
+        expungeAbandoned();
+        return used.get();
+    }
+
+    /**
+     * Gives back the budget of the chunks of owners that have been garbage
+     * collected without closing their allocation. The chunks themselves
+     * are not reused.
+     */
+    private void expungeAbandoned() {
+        Reference<?> reference;
+        while ((reference = abandonedQueue.poll()) != null) {
+            final Allocation allocation = (Allocation) reference;
+            if (allocations.remove(allocation)) {
+                final int count = allocation.chunks.size();
+                if (count > 0) {
+                    used.addAndGet(-(long) count * CHUNK_SIZE);
+                    LOG.warn("Reclaimed " + count + " buffer chunks that were never released");
+                }
+            }
+        }
+    }
+
+    /**
+     * Chunks acquired for one owner. The owner keeps the chunks in the list
+     * given to allocate.
+     */
+    public final class Allocation extends PhantomReference<Object> {
+
+        private final List<byte[]> chunks;
+
+        private Allocation(final Object owner, final List<byte[]> chunks) {
+            super(owner, abandonedQueue);
+            this.chunks = chunks;
+        }
+
+        /**
+         * Stops tracking the chunks, to be called after all of them have been
+         * released.
+         */
+        public void close() {
+            allocations.remove(this);
+            clear();
+        }
+    }
+}
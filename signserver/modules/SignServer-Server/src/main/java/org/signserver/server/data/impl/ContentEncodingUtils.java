@@ -0,0 +1,258 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Utility methods for HTTP content encodings (compression) of request and
+ * response bodies.
+ *
+ * The streams are processed as they are read or written so the content is
+ * never held in memory as a whole.
+ *
+ * @version $Id$
+ */
+public final class ContentEncodingUtils {
+
+    /** The gzip content encoding. */
+    public static final String GZIP = "gzip";
+
+    /** The deflate (zlib) content encoding. */
+    public static final String DEFLATE = "deflate";
+
+    /** No content encoding. */
+    public static final String IDENTITY = "identity";
+
+    /**
+     * Number of decompressed bytes that are always accepted before the
+     * decompression ratio is checked, so that small but highly compressible
+     * content is not rejected.
+     */
+    private static final long MIN_RATIO_CHECK_SIZE = 1024 * 1024;
+
+    private ContentEncodingUtils() {}
+
+    /**
+     * @param contentEncoding value of the Content-Encoding header or null
+     * @return True if the content needs to be decoded, i.e. it has a content
+     * encoding other than identity
+     */
+    public static boolean isEncoded(final String contentEncoding) {
+        return contentEncoding != null && !contentEncoding.trim().isEmpty()
+                && !IDENTITY.equalsIgnoreCase(contentEncoding.trim());
+    }
+
+    /**
+     * @param contentEncoding value of the Content-Encoding header
+     * @return True if the content encoding can be decoded
+     */
+    public static boolean isSupported(final String contentEncoding) {
+        if (!isEncoded(contentEncoding)) {
+            return true;
+        }
+        final String encoding = normalize(contentEncoding);
+        return GZIP.equals(encoding) || DEFLATE.equals(encoding);
+    }
+
+    /**
+     * Creates a stream decoding the content as it is read.
+     *
+     * To protect against decompression bombs, reading fails with a
+     * FileUploadIOException caused by a SizeLimitExceededException if the
+     * decompressed content is more than the given ratio larger than the
+     * compressed content.
+     *
+     * @param in stream with the encoded content
+     * @param contentEncoding value of the Content-Encoding header or null
+     * @param maxRatio maximum ratio between the decompressed and the
+     * compressed size
+     * @return stream with the decoded content or the input stream if not
+     * encoded
+     * @throws IOException in case the encoding is not supported or the
+     * content could not be read
+     */
+    public static InputStream createDecodingStream(final InputStream in, final String contentEncoding, final int maxRatio) throws IOException {
+        if (!isEncoded(contentEncoding)) {
+            return in;
+        }
+        final CountingInputStream compressed = new CountingInputStream(in);
+        final InputStream decompressed;
+        switch (normalize(contentEncoding)) {
+            case GZIP:
+                decompressed = new GZIPInputStream(compressed);
+                break;
+            case DEFLATE:
+                decompressed = new InflaterInputStream(compressed);
+                break;
+            default:
+                throw new IOException("Unsupported content encoding: " + contentEncoding);
+        }
+        return new RatioLimitedInputStream(decompressed, compressed, maxRatio);
+    }
+
+    /**
+     * Chooses the content encoding to use for a response.
+     *
+     * @param acceptEncoding value of the Accept-Encoding header or null
+     * @return gzip or deflate if accepted by the client (gzip preferred) or
+     * null if the response should not be encoded
+     */
+    public static String selectEncoding(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (final String part : acceptEncoding.split(",")) {
+            final String[] params = part.split(";");
+            final String coding = params[0].trim().toLowerCase(Locale.ENGLISH);
+            float quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                final String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(param.substring(2).trim());
+                    } catch (NumberFormatException ex) {
+                        quality = 0;
+                    }
+                }
+            }
+            switch (coding) {
+                case GZIP:
+                case "x-gzip":
+                    gzip = quality;
+                    break;
+                case DEFLATE:
+                    deflate = quality;
+                    break;
+                case "*":
+                    any = quality;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        } else if (deflate > 0) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a stream encoding the content as it is written. Closing the
+     * stream closes the underlying stream.
+     *
+     * @param out to write the encoded content to
+     * @param contentEncoding gzip or deflate
+     * @param level compression level, 1 (fastest) to 9 (best compression)
+     * @return the stream to write the content to
+     * @throws IOException in case the encoding is not supported or the
+     * stream could not be created
+     */
+    public static OutputStream createEncodingStream(final OutputStream out, final String contentEncoding, final int level) throws IOException {
+        switch (normalize(contentEncoding)) {
+            case GZIP:
+                return new GZIPOutputStream(out) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            case DEFLATE:
+                return new DeflaterOutputStream(out) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            default:
+                throw new IOException("Unsupported content encoding: " + contentEncoding);
+        }
+    }
+
+    private static String normalize(final String contentEncoding) {
+        final String result = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+        return "x-gzip".equals(result) ? GZIP : result;
+    }
+
+    /**
+     * Stream failing when too many bytes are decompressed compared to the
+     * number of compressed bytes read.
+     */
+    private static class RatioLimitedInputStream extends InputStream {
+
+        private final InputStream decompressed;
+        private final CountingInputStream compressed;
+        private final int maxRatio;
+        private long count;
+
+        RatioLimitedInputStream(final InputStream decompressed, final CountingInputStream compressed, final int maxRatio) {
+            this.decompressed = decompressed;
+            this.compressed = compressed;
+            this.maxRatio = maxRatio;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = decompressed.read();
+            if (result != -1) {
+                check(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int result = decompressed.read(b, off, len);
+            if (result > 0) {
+                check(result);
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            decompressed.close();
+        }
+
+        private void check(final int read) throws IOException {
+            count += read;
+            if (count > MIN_RATIO_CHECK_SIZE) {
+                final long permitted = compressed.getByteCount() * maxRatio;
+                if (count > permitted) {
+                    throw new FileUploadBase.FileUploadIOException(new FileUploadBase.SizeLimitExceededException(
+                            String.format("the request was rejected because its decompressed size (%s) exceeds %s times the compressed size",
+                                    count, maxRatio),
+                            count, permitted));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import org.signserver.common.data.ReadableData;
+
+/**
+ * Utility methods for writing request/response data to a stream, for
+ * instance as the body of an HTTP response.
+ *
+ * The data is copied through a buffer of up to 64 KiB. Data backed by a file
+ * is read through a FileChannel directly into the array written to the
+ * stream and data held in memory is streamed from its input stream, so
+ * neither is first copied to a new array of its full size.
+ *
+ * @version $Id$
+ */
+public final class DataTransferUtils {
+
+    /** Maximum size of the buffer used for copying. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private DataTransferUtils() {}
+
+    /**
+     * Writes all of the data to the stream. The stream is neither flushed
+     * nor closed.
+     *
+     * @param data to write
+     * @param out stream to write to
+     * @return The number of bytes written
+     * @throws IOException in case of error reading the data or writing to
+     * the stream
+     */
+    public static long transfer(final ReadableData data, final OutputStream out) throws IOException {
+        if (!data.isFile()) {
+            try (InputStream in = data.getAsInputStream()) {
+                return copy(in, data.getLength(), out);
+            }
+        }
+
+        try (FileChannel in = FileChannel.open(data.getAsFile().toPath(), StandardOpenOption.READ)) {
+            return copy(in, out);
+        }
+    }
+
+    private static long copy(final InputStream in, final long size, final OutputStream out) throws IOException {
+        final byte[] buffer = new byte[size < 0 ? BUFFER_SIZE : (int) Math.min(BUFFER_SIZE, Math.max(1, size))];
+        long total = 0;
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+            total += count;
+        }
+        return total;
+    }
+
+    private static long copy(final FileChannel in, final OutputStream out) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(1, in.size())));
+        long total = 0;
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer.array(), 0, count);
+            buffer.clear();
+            total += count;
+        }
+        return total;
+    }
+}
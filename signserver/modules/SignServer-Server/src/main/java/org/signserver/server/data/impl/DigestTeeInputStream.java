@@ -0,0 +1,125 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Input stream updating any number of message digests with the data as it is
+ * read.
+ *
+ * This allows digests of the request to be computed (i.e. for logging) in the
+ * same pass as the data is consumed by the signer instead of reading the data
+ * once more. Only data actually read is digested so the consumer should read
+ * until the end of the stream or call {@link #readRemaining()}.
+ *
+ * @version $Id$
+ * @see DigestTeeOutputStream
+ */
+public class DigestTeeInputStream extends FilterInputStream {
+
+    private final MessageDigest[] digests;
+    private boolean endOfStream;
+
+    /**
+     * Creates an instance.
+     *
+     * @param in stream to read from
+     * @param digests to update with the data read
+     */
+    public DigestTeeInputStream(final InputStream in, final MessageDigest... digests) {
+        super(in);
+        this.digests = digests;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b == -1) {
+            endOfStream = true;
+        } else {
+            for (MessageDigest digest : digests) {
+                digest.update((byte) b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = super.read(b, off, len);
+        if (n == -1) {
+            endOfStream = true;
+        } else if (n > 0) {
+            for (MessageDigest digest : digests) {
+                digest.update(b, off, n);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Reads the skipped data so that it is included in the digests.
+     */
+    @Override
+    public long skip(final long n) throws IOException {
+        final byte[] buffer = new byte[(int) Math.min(4096, Math.max(n, 0))];
+        long remaining = n;
+        while (remaining > 0) {
+            final int read = read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        // Not supported as data read again would be digested twice
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * @return true if the end of the stream has been reached and thus all data
+     * has been digested
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * Reads any remaining data so that all of it is included in the digests.
+     *
+     * @throws IOException in case of error reading the data
+     */
+    public void readRemaining() throws IOException {
+        final byte[] buffer = new byte[4096];
+        while (read(buffer, 0, buffer.length) != -1) { // NOPMD
+            // Digested by read
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Output stream updating any number of message digests with the data as it
+ * is written.
+ *
+ * This allows digests of the response to be computed (i.e. for logging)
+ * while the response is written instead of reading it back afterwards.
+ *
+ * @version $Id$
+ * @see DigestTeeInputStream
+ */
+public class DigestTeeOutputStream extends FilterOutputStream {
+
+    private final MessageDigest[] digests;
+
+    /**
+     * Creates an instance.
+     *
+     * @param out stream to write to
+     * @param digests to update with the data written
+     */
+    public DigestTeeOutputStream(final OutputStream out, final MessageDigest... digests) {
+        super(out);
+        this.digests = digests;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        for (MessageDigest digest : digests) {
+            digest.update((byte) b);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        for (MessageDigest digest : digests) {
+            digest.update(b, off, len);
+        }
+    }
+}
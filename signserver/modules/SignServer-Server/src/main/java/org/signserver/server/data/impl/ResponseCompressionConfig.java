@@ -0,0 +1,161 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.signserver.common.WorkerConfig;
+
+/**
+ * Worker configuration for compressing responses sent over HTTP to clients
+ * accepting a compressed content encoding.
+ *
+ * @version $Id$
+ */
+public class ResponseCompressionConfig {
+
+    /**
+     * Worker property for the compression level, 1 (fastest) to 9 (best
+     * compression) or 0 to not compress responses.
+     */
+    public static final String HTTP_RESPONSE_COMPRESSION_LEVEL = "HTTP_RESPONSE_COMPRESSION_LEVEL";
+    private static final int DEFAULT_LEVEL = 6;
+
+    /** Worker property for the minimum response size in bytes to compress. */
+    public static final String HTTP_RESPONSE_COMPRESSION_THRESHOLD = "HTTP_RESPONSE_COMPRESSION_THRESHOLD";
+    private static final long DEFAULT_THRESHOLD = 1024;
+
+    /**
+     * Worker property with comma separated content types to compress. A
+     * type can contain one * matching any characters.
+     */
+    public static final String HTTP_RESPONSE_COMPRESSIBLE_TYPES = "HTTP_RESPONSE_COMPRESSIBLE_TYPES";
+    private static final String DEFAULT_COMPRESSIBLE_TYPES = "text/*, application/xml, application/*+xml, application/json";
+
+    /** Configuration used when none is available. */
+    public static final ResponseCompressionConfig DEFAULT = new ResponseCompressionConfig(DEFAULT_LEVEL, DEFAULT_THRESHOLD, parseTypes(DEFAULT_COMPRESSIBLE_TYPES));
+
+    private final int level;
+    private final long threshold;
+    private final List<String> compressibleTypes;
+
+    private ResponseCompressionConfig(final int level, final long threshold, final List<String> compressibleTypes) {
+        this.level = level;
+        this.threshold = threshold;
+        this.compressibleTypes = compressibleTypes;
+    }
+
+    /**
+     * Parses the configuration from the worker properties.
+     *
+     * @param config worker configuration
+     * @param errors list to add configuration errors to
+     * @return the parsed configuration
+     */
+    public static ResponseCompressionConfig create(final WorkerConfig config, final List<String> errors) {
+        int level = DEFAULT_LEVEL;
+        final String levelValue = config.getProperty(HTTP_RESPONSE_COMPRESSION_LEVEL);
+        if (levelValue != null && !levelValue.trim().isEmpty()) {
+            try {
+                level = Integer.parseInt(levelValue.trim());
+                if (level < 0 || level > 9) {
+                    errors.add("Illegal value for property " + HTTP_RESPONSE_COMPRESSION_LEVEL + ": " + levelValue);
+                    level = 0;
+                }
+            } catch (NumberFormatException ex) {
+                errors.add("Illegal value for property " + HTTP_RESPONSE_COMPRESSION_LEVEL + ": " + levelValue);
+                level = 0;
+            }
+        }
+
+        long threshold = DEFAULT_THRESHOLD;
+        final String thresholdValue = config.getProperty(HTTP_RESPONSE_COMPRESSION_THRESHOLD);
+        if (thresholdValue != null && !thresholdValue.trim().isEmpty()) {
+            try {
+                threshold = Long.parseLong(thresholdValue.trim());
+                if (threshold < 0) {
+                    errors.add("Illegal value for property " + HTTP_RESPONSE_COMPRESSION_THRESHOLD + ": " + thresholdValue);
+                }
+            } catch (NumberFormatException ex) {
+                errors.add("Illegal value for property " + HTTP_RESPONSE_COMPRESSION_THRESHOLD + ": " + thresholdValue);
+            }
+        }
+
+        final String typesValue = config.getProperty(HTTP_RESPONSE_COMPRESSIBLE_TYPES);
+        final List<String> types = typesValue == null || typesValue.trim().isEmpty()
+                ? DEFAULT.compressibleTypes : parseTypes(typesValue);
+
+        return new ResponseCompressionConfig(level, threshold, types);
+    }
+
+    private static List<String> parseTypes(final String value) {
+        final List<String> result = new ArrayList<>();
+        for (final String type : value.split(",")) {
+            if (!type.trim().isEmpty()) {
+                result.add(type.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return True if responses should be compressed at all
+     */
+    public boolean isEnabled() {
+        return level > 0;
+    }
+
+    /**
+     * @return The compression level, 1 to 9
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return The minimum response size in bytes to compress
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param contentType of the response, with or without parameters
+     * @return True if responses of the content type should be compressed
+     */
+    public boolean isCompressible(final String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        final int paramsIndex = contentType.indexOf(';');
+        final String type = (paramsIndex == -1 ? contentType : contentType.substring(0, paramsIndex)).trim().toLowerCase(Locale.ENGLISH);
+        for (final String pattern : compressibleTypes) {
+            final int wildcard = pattern.indexOf('*');
+            if (wildcard == -1) {
+                if (pattern.equals(type)) {
+                    return true;
+                }
+            } else {
+                final String prefix = pattern.substring(0, wildcard);
+                final String suffix = pattern.substring(wildcard + 1);
+                if (type.length() >= prefix.length() + suffix.length()
+                        && type.startsWith(prefix) && type.endsWith(suffix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,285 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output stream keeping the data in chunks from a BufferPool until it grows
+ * larger than the threshold of the pool or the budget of the pool is used
+ * up, after which the data is moved to a temporary file and the rest is
+ * written to the file.
+ *
+ * Closing the stream only closes the file (if any) so that the data can be
+ * read afterwards. The chunks are returned to the pool by release() and the
+ * owner is responsible for removing the file. Streams reading the data in
+ * memory fail after release() as the chunks might already be used by
+ * someone else, and release() must not be called while such a stream is
+ * being read from another thread.
+ *
+ * @version $Id$
+ */
+public class SpillOverOutputStream extends OutputStream {
+
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    private final BufferPool pool;
+    private final long threshold;
+    private final File repository;
+    private final String filePrefix;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private BufferPool.Allocation allocation;
+    private volatile boolean released;
+    private long size;
+
+    private File file;
+    private OutputStream fileOut;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pool to get the chunks from
+     * @param repository to create the file in
+     * @param filePrefix prefix for the name of the file
+     */
+    public SpillOverOutputStream(final BufferPool pool, final File repository, final String filePrefix) {
+        this.pool = pool;
+        this.threshold = pool.getThreshold();
+        this.repository = repository;
+        this.filePrefix = filePrefix;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (fileOut == null && !reserve(1)) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b);
+        } else {
+            chunks.get((int) (size / BufferPool.CHUNK_SIZE))[(int) (size % BufferPool.CHUNK_SIZE)] = (byte) b;
+        }
+        size++;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        if (fileOut == null && !reserve(len)) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+            size += len;
+        } else {
+            while (len > 0) {
+                final int offset = (int) (size % BufferPool.CHUNK_SIZE);
+                final int count = Math.min(len, BufferPool.CHUNK_SIZE - offset);
+                System.arraycopy(b, off, chunks.get((int) (size / BufferPool.CHUNK_SIZE)), offset, count);
+                off += count;
+                len -= count;
+                size += count;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileOut != null) {
+            fileOut.close();
+        }
+    }
+
+    /**
+     * Makes sure there are chunks for len more bytes.
+     *
+     * @return False if the data would become larger than the threshold or
+     * the budget of the pool is used up
+     */
+    private boolean reserve(final int len) {
+        if (size + len > threshold) {
+            return false;
+        }
+        while ((long) chunks.size() * BufferPool.CHUNK_SIZE < size + len) {
+            if (allocation == null) {
+                allocation = pool.allocate(this, chunks);
+            }
+            final byte[] chunk = pool.acquire();
+            if (chunk == null) {
+                return false;
+            }
+            chunks.add(chunk);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the data written so far to a new temporary file.
+     */
+    private void spill() throws IOException {
+        file = File.createTempFile(filePrefix, ".tmp", repository);
+        fileOut = new BufferedOutputStream(new FileOutputStream(file), FILE_BUFFER_SIZE);
+        long remaining = size;
+        for (byte[] chunk : chunks) {
+            final int count = (int) Math.min(remaining, BufferPool.CHUNK_SIZE);
+            fileOut.write(chunk, 0, count);
+            remaining -= count;
+        }
+        release();
+    }
+
+    /**
+     * Returns the chunks to the pool. The data in memory can not be read
+     * after this, also not by streams obtained before.
+     */
+    public void release() {
+        released = true;
+        for (byte[] chunk : chunks) {
+            pool.release(chunk);
+        }
+        chunks.clear();
+        if (allocation != null) {
+            allocation.close();
+            allocation = null;
+        }
+    }
+
+    /**
+     * @return The number of bytes written
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The file the data has been moved to or null if it is kept in
+     * memory
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the data kept in memory without copying it.
+     *
+     * @return A stream for the data in memory
+     * @throws IllegalStateException if the data has been moved to the file
+     * or released
+     */
+    public InputStream toInputStream() {
+        ensureInMemory();
+        return new ChunksInputStream(new ArrayList<>(chunks), size);
+    }
+
+    /**
+     * @return A copy of the data kept in memory
+     * @throws IllegalStateException if the data has been moved to the file
+     * or released
+     */
+    public byte[] toByteArray() {
+        ensureInMemory();
+        final byte[] result = new byte[(int) size];
+        int position = 0;
+        for (byte[] chunk : chunks) {
+            final int count = Math.min(result.length - position, BufferPool.CHUNK_SIZE);
+            System.arraycopy(chunk, 0, result, position, count);
+            position += count;
+        }
+        return result;
+    }
+
+    private void ensureInMemory() {
+        if (file != null) {
+            throw new IllegalStateException("Data has been moved to file");
+        }
+        if (released) {
+            throw new IllegalStateException("Data has been released");
+        }
+    }
+
+    /**
+     * Input stream reading from the chunks as long as they have not been
+     * released.
+     */
+    private class ChunksInputStream extends InputStream {
+        private final List<byte[]> chunks;
+        private final long size;
+        private long position;
+
+        ChunksInputStream(final List<byte[]> chunks, final long size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ensureNotReleased();
+            if (position >= size) {
+                return -1;
+            }
+            final int b = chunks.get((int) (position / BufferPool.CHUNK_SIZE))[(int) (position % BufferPool.CHUNK_SIZE)] & 0xff;
+            position++;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            ensureNotReleased();
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            final int offset = (int) (position % BufferPool.CHUNK_SIZE);
+            final int count = (int) Math.min(Math.min(len, BufferPool.CHUNK_SIZE - offset), size - position);
+            System.arraycopy(chunks.get((int) (position / BufferPool.CHUNK_SIZE)), offset, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            ensureNotReleased();
+            final long count = Math.max(0, Math.min(n, size - position));
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureNotReleased();
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+
+        private void ensureNotReleased() throws IOException {
+            if (released) {
+                throw new IOException("Data has been released");
+            }
+        }
+    }
+}
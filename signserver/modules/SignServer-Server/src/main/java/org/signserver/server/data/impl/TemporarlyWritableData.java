@@ -13,8 +13,6 @@
 package org.signserver.server.data.impl;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -23,13 +21,18 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.NullInputStream;
 import org.apache.log4j.Logger;
 import org.signserver.common.data.ReadableData;
 
 /**
  * WritableData implementation backed by a file, byte array or
- * ByteArrayOutputStream and where the file is removed on close.
+ * SpillOverOutputStream and where the file is removed on close.
+ *
+ * Data written in memory is kept in chunks from a BufferPool and moved to a
+ * temporary file when it grows larger than the threshold of the pool or
+ * when the budget of the pool is used up.
  * 
  * Create the instance in try-with-resource or manually call close().
  * The backing temporary file (if one) is removed when the instance is closed.
@@ -47,13 +50,14 @@ public class TemporarlyWritableData extends CloseableWritableData {
     
     private final boolean defaultToDisk;
     private final File repository;
+    private final BufferPool pool;
     
     // Write
     private OutputStream outputStream;
     
     // Storage
     private File responseFile;
-    private ByteArrayOutputStream inMemoryOutputStream;
+    private SpillOverOutputStream inMemoryOutputStream;
     private byte[] data;
 
     // State
@@ -66,8 +70,20 @@ public class TemporarlyWritableData extends CloseableWritableData {
      * @param repository to create the file in (if requested)
      */
     public TemporarlyWritableData(boolean defaultToDisk, File repository) {
+        this(defaultToDisk, repository, BufferPool.getDefault());
+    }
+
+    /**
+     * Create an new instance of this WritableData.
+     * @param defaultToDisk if the getAsOutputStream method should be backed
+     * by a file or otherwise be in memory
+     * @param repository to create the file in (if requested)
+     * @param pool to get the chunks for data in memory from
+     */
+    public TemporarlyWritableData(boolean defaultToDisk, File repository, BufferPool pool) {
         this.defaultToDisk = defaultToDisk;
         this.repository = repository;
+        this.pool = pool;
     }
     
     @Override
@@ -97,7 +113,7 @@ public class TemporarlyWritableData extends CloseableWritableData {
             throw new IllegalStateException("Can not write response data after starting reading it");
         }
         if (outputStream == null) {
-            inMemoryOutputStream = new ByteArrayOutputStream();
+            inMemoryOutputStream = register(new SpillOverOutputStream(pool, repository, FILE_PREFIX));
             outputStream = inMemoryOutputStream;
         }
         return outputStream;
@@ -126,9 +142,10 @@ public class TemporarlyWritableData extends CloseableWritableData {
             @Override
             public byte[] getAsByteArray() throws IOException {
                 noMoreWrite = true;
+                syncSpilledFile();
                 if (data != null) {
                     return data;
-                } else if (inMemoryOutputStream != null) {
+                } else if (responseFile == null && inMemoryOutputStream != null) {
                     data = inMemoryOutputStream.toByteArray();
                 } else if (responseFile != null) {
                     data = FileUtils.readFileToByteArray(responseFile);
@@ -141,13 +158,14 @@ public class TemporarlyWritableData extends CloseableWritableData {
             @Override
             public InputStream getAsInputStream() throws IOException {
                 noMoreWrite = true;
+                syncSpilledFile();
                 final InputStream result;
                 if (responseFile != null) {
                     // XXX was the file all written out, ie. we need to out.close and fd.sync() ?
                     result = register(new BufferedInputStream(new FileInputStream(responseFile)));
                 } else if (inMemoryOutputStream != null) {
-                    data = inMemoryOutputStream.toByteArray();
-                    result = new ByteArrayInputStream(data);
+                    // Read the chunks directly instead of copying them
+                    result = inMemoryOutputStream.toInputStream();
                 } else {
                     return new NullInputStream(0);
                 }
@@ -156,11 +174,18 @@ public class TemporarlyWritableData extends CloseableWritableData {
 
             @Override
             public File getAsFile() throws IOException {
+                syncSpilledFile();
                 if (responseFile != null) {
                     return responseFile;
                 } else {
                     responseFile = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, repository);
-                    FileUtils.writeByteArrayToFile(responseFile, inMemoryOutputStream == null ? new byte[0] : inMemoryOutputStream.toByteArray());
+                    if (inMemoryOutputStream == null) {
+                        FileUtils.writeByteArrayToFile(responseFile, new byte[0]);
+                    } else {
+                        try (InputStream in = inMemoryOutputStream.toInputStream(); OutputStream out = new FileOutputStream(responseFile)) {
+                            IOUtils.copyLarge(in, out);
+                        }
+                    }
                 }
                 return responseFile;
             }
@@ -168,10 +193,11 @@ public class TemporarlyWritableData extends CloseableWritableData {
             @Override
             public long getLength() {
                 noMoreWrite = true;
-                if (responseFile != null) {
-                    return responseFile.length();
-                } else if (inMemoryOutputStream != null) {
+                if (inMemoryOutputStream != null) {
+                    // Also counts any data not yet written out to the file
                     return inMemoryOutputStream.size();
+                } else if (responseFile != null) {
+                    return responseFile.length();
                 } else {
                     return 0;
                 }
@@ -179,16 +205,34 @@ public class TemporarlyWritableData extends CloseableWritableData {
 
             @Override
             public boolean isFile() {
-                return responseFile != null;
+                return responseFile != null || (inMemoryOutputStream != null && inMemoryOutputStream.getFile() != null);
             }
             
         };
     }
 
+    /**
+     * Uses the file the in memory data has been moved to (if any) as the
+     * response file, after writing out any buffered data to it.
+     */
+    private void syncSpilledFile() throws IOException {
+        if (inMemoryOutputStream != null && inMemoryOutputStream.getFile() != null) {
+            inMemoryOutputStream.flush();
+            responseFile = inMemoryOutputStream.getFile();
+        }
+    }
+
     @Override
     public void close() throws IOException {
         // Close resources
         super.close();
+        if (inMemoryOutputStream != null) {
+            // Return the chunks to the pool and remove any file it was moved to
+            inMemoryOutputStream.release();
+            if (responseFile == null) {
+                responseFile = inMemoryOutputStream.getFile();
+            }
+        }
         inMemoryOutputStream = null;
         data = null;
         
@@ -13,7 +13,6 @@
 package org.signserver.server.data.impl;
 
 import java.io.File;
-import org.apache.log4j.Logger;
 import org.signserver.common.GlobalConfiguration;
 import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
 
@@ -26,9 +25,6 @@ import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
  */
 public class UploadConfig {
     
-    /** Logger for this class. */
-    private static final Logger LOG = Logger.getLogger(UploadConfig.class);
-  
     /** Global configuration property for the maximum upload size. */
     public static final String HTTP_MAX_UPLOAD_SIZE = "HTTP_MAX_UPLOAD_SIZE";
     private static final long DEFAULT_MAX_UPLOAD_SIZE = 100 * 1024 * 1024; // 100MB (100*1024*1024);
@@ -36,10 +32,25 @@ public class UploadConfig {
     /** Global configuration property for the file size threshold. */
     public static final String FILE_SIZE_THRESHOLD = "FILE_SIZE_THRESHOLD";
     private static final int DEFAULT_FILE_SIZE_THRESHOLD = 1 * 1024 * 1024; // 1 MB
+
+    /**
+     * Global configuration property for the maximum ratio between the
+     * decompressed and the compressed size of a request with a content
+     * encoding.
+     */
+    public static final String HTTP_MAX_DECOMPRESSION_RATIO = "HTTP_MAX_DECOMPRESSION_RATIO";
+    private static final int DEFAULT_MAX_DECOMPRESSION_RATIO = 100;
+
+    /**
+     * Global configuration property for the maximum total size of response
+     * data kept in memory by all concurrent requests.
+     */
+    public static final String RESPONSE_MEMORY_BUDGET = "RESPONSE_MEMORY_BUDGET";
     
     private long maxUploadSize;
     private int sizeThreshold;
     private File repository;
+    private int maxDecompressionRatio = DEFAULT_MAX_DECOMPRESSION_RATIO;
 
     /**
      * Creates an instance of UploadConfig with the default configuration.
@@ -62,6 +73,8 @@ public class UploadConfig {
     
     /**
      * Creates an UploadConfig instance by querying the global configuration.
+     * The size threshold and the response memory budget are also applied to
+     * the buffer pool shared by all requests.
      * @param globalSession to query for configuration
      * @return the instance
      */
@@ -71,42 +84,21 @@ public class UploadConfig {
         final GlobalConfiguration globalConfiguration = globalSession.getGlobalConfiguration();
         
         // Max upload size
-        String confValue = globalConfiguration.getProperty(GlobalConfiguration.SCOPE_GLOBAL, HTTP_MAX_UPLOAD_SIZE);
-        long maxUploadSize = DEFAULT_MAX_UPLOAD_SIZE;
-        if (confValue != null) {
-            try {
-                maxUploadSize = Long.parseLong(confValue);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Using " + HTTP_MAX_UPLOAD_SIZE + ": " + maxUploadSize);
-                }
-            } catch (NumberFormatException ex) {
-                LOG.error("Incorrect value for global configuration property " + HTTP_MAX_UPLOAD_SIZE + ": " + ex.getLocalizedMessage());
-            }
-        } else {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Using default max upload size as no " + HTTP_MAX_UPLOAD_SIZE + " configured");
-            }
-        }
+        final long maxUploadSize = globalConfiguration.getLongProperty(GlobalConfiguration.SCOPE_GLOBAL, HTTP_MAX_UPLOAD_SIZE, DEFAULT_MAX_UPLOAD_SIZE);
 
-        // Max upload size
-        confValue = globalConfiguration.getProperty(GlobalConfiguration.SCOPE_GLOBAL, FILE_SIZE_THRESHOLD);
-        int sizeThreshold = DEFAULT_FILE_SIZE_THRESHOLD;
-        if (confValue != null) {
-            try {
-                sizeThreshold = Integer.parseInt(confValue);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Using " + FILE_SIZE_THRESHOLD + ": " + sizeThreshold);
-                }
-            } catch (NumberFormatException ex) {
-                LOG.error("Incorrect value for global configuration property " + FILE_SIZE_THRESHOLD + ": " + ex.getLocalizedMessage());
-            }
-        } else {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Using default file size threshold as no " + FILE_SIZE_THRESHOLD + " configured");
-            }
-        }
-
-        return new UploadConfig(maxUploadSize, sizeThreshold, repository);
+        // Size threshold
+        final int sizeThreshold = globalConfiguration.getIntProperty(GlobalConfiguration.SCOPE_GLOBAL, FILE_SIZE_THRESHOLD, DEFAULT_FILE_SIZE_THRESHOLD);
+
+        final UploadConfig result = new UploadConfig(maxUploadSize, sizeThreshold, repository);
+
+        // Max decompression ratio
+        result.setMaxDecompressionRatio(globalConfiguration.getIntProperty(GlobalConfiguration.SCOPE_GLOBAL, HTTP_MAX_DECOMPRESSION_RATIO, DEFAULT_MAX_DECOMPRESSION_RATIO));
+
+        // Response data in memory
+        BufferPool.getDefault().configure(sizeThreshold,
+                globalConfiguration.getLongProperty(GlobalConfiguration.SCOPE_GLOBAL, RESPONSE_MEMORY_BUDGET, BufferPool.DEFAULT_BUDGET));
+
+        return result;
     }
 
     public long getMaxUploadSize() {
@@ -133,4 +125,12 @@ public class UploadConfig {
         this.repository = repository;
     }
 
+    public int getMaxDecompressionRatio() {
+        return maxDecompressionRatio;
+    }
+
+    public void setMaxDecompressionRatio(int maxDecompressionRatio) {
+        this.maxDecompressionRatio = maxDecompressionRatio;
+    }
+
 }
@@ -0,0 +1,154 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.timedservices.archiveretention;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import org.apache.log4j.Logger;
+import org.signserver.common.ServiceContext;
+import org.signserver.common.WorkerConfig;
+import org.signserver.ejb.interfaces.WorkerSessionLocal;
+import org.signserver.server.IServices;
+import org.signserver.server.ServiceExecutionFailedException;
+import org.signserver.server.WorkerContext;
+import org.signserver.server.timedservices.BaseTimedService;
+import static org.signserver.common.SignServerConstants.DEFAULT_NULL;
+
+/**
+ * Timed service removing archive entries older than the configured retention
+ * period.
+ *
+ * The entries are removed oldest first in batches of a limited size, each in
+ * a transaction of its own and with a pause in between, so that the archive
+ * table can be purged while signers are archiving to it. The number of
+ * batches in each run is limited and any remaining entries are removed the
+ * next time the service runs.
+ *
+ * @version $Id$
+ */
+public class ArchiveRetentionTimedService extends BaseTimedService {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ArchiveRetentionTimedService.class);
+
+    /** Number of days to keep archive entries. */
+    public static final String RETENTION_DAYS = "RETENTION_DAYS";
+
+    /** Maximum number of entries to remove in each transaction. */
+    public static final String BATCH_SIZE = "BATCH_SIZE";
+
+    /** Maximum number of batches to remove each time the service runs. */
+    public static final String MAX_BATCHES = "MAX_BATCHES";
+
+    /** Milliseconds to wait between the batches. */
+    public static final String BATCH_PAUSE = "BATCH_PAUSE";
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_MAX_BATCHES = 100;
+    private static final long DEFAULT_BATCH_PAUSE = 100;
+
+    private final List<String> configErrors = new LinkedList<>();
+
+    private long retentionDays;
+    private int batchSize;
+    private int maxBatches;
+    private long batchPause;
+
+    @Override
+    public void init(int workerId, WorkerConfig config, WorkerContext workerContext, EntityManager workerEM) {
+        super.init(workerId, config, workerContext, workerEM);
+        configErrors.clear();
+
+        final String retentionDaysValue = config.getProperty(RETENTION_DAYS, DEFAULT_NULL);
+        if (retentionDaysValue == null) {
+            configErrors.add("Must specify " + RETENTION_DAYS);
+        } else {
+            retentionDays = parsePositive(RETENTION_DAYS, retentionDaysValue);
+        }
+        batchSize = (int) parsePositive(BATCH_SIZE, config.getProperty(BATCH_SIZE, String.valueOf(DEFAULT_BATCH_SIZE)));
+        maxBatches = (int) parsePositive(MAX_BATCHES, config.getProperty(MAX_BATCHES, String.valueOf(DEFAULT_MAX_BATCHES)));
+
+        final String batchPauseValue = config.getProperty(BATCH_PAUSE, String.valueOf(DEFAULT_BATCH_PAUSE));
+        try {
+            batchPause = Long.parseLong(batchPauseValue.trim());
+            if (batchPause < 0) {
+                configErrors.add("Illegal value for property " + BATCH_PAUSE + ": " + batchPauseValue);
+            }
+        } catch (NumberFormatException e) {
+            configErrors.add("Illegal value for property " + BATCH_PAUSE + ": " + batchPauseValue);
+        }
+    }
+
+    private long parsePositive(final String property, final String value) {
+        long result = 0;
+        try {
+            result = Long.parseLong(value.trim());
+            if (result < 1 || result > Integer.MAX_VALUE) {
+                configErrors.add("Illegal value for property " + property + ": " + value);
+            }
+        } catch (NumberFormatException e) {
+            configErrors.add("Illegal value for property " + property + ": " + value);
+        }
+        return result;
+    }
+
+    @Override
+    public void work(final ServiceContext context) throws ServiceExecutionFailedException {
+        if (!configErrors.isEmpty()) {
+            throw new ServiceExecutionFailedException("Service is misconfigured: " + configErrors);
+        }
+
+        final long before = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        int total = 0;
+        try {
+            for (int batch = 0; batch < maxBatches; batch++) {
+                if (batch > 0 && batchPause > 0) {
+                    Thread.sleep(batchPause);
+                }
+                final int removed = removeBatch(context, before, batchSize);
+                total += removed;
+                if (removed < batchSize) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.info("Interrupted while removing archive entries");
+        } finally {
+            if (total > 0 || LOG.isDebugEnabled()) {
+                LOG.info("Removed " + total + " archive entries from before " + before);
+            }
+        }
+    }
+
+    /**
+     * Removes one batch of archive entries in a transaction of its own.
+     *
+     * @param context service context
+     * @param before Remove entries archived before this time
+     * @param max Maximum number of entries to remove
+     * @return Number of removed entries
+     */
+    protected int removeBatch(final ServiceContext context, final long before, final int max) {
+        return context.getServices().get(WorkerSessionLocal.class).removeArchiveEntriesBefore(before, max);
+    }
+
+    @Override
+    protected List<String> getFatalErrors(IServices services) {
+        final List<String> errors = new LinkedList<>(super.getFatalErrors(services));
+        errors.addAll(configErrors);
+        return errors;
+    }
+}
@@ -13,6 +13,7 @@
 package org.signserver.server.timedservices.hsmkeepalive;
 
 import java.security.KeyStoreException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -23,6 +24,7 @@ import org.signserver.common.InvalidWorkerIdException;
 import org.signserver.common.ServiceContext;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.WorkerStatus;
 import org.signserver.server.ServiceExecutionFailedException;
 import org.signserver.server.WorkerContext;
 import org.signserver.server.timedservices.BaseTimedService;
@@ -54,7 +56,7 @@ public class HSMKeepAliveTimedService extends BaseTimedService {
         final String cryptoTokensValue = config.getPropertyThatCouldBeEmpty(CRYPTOTOKENS);
 
         if (cryptoTokensValue != null) {
-            cryptoTokens = new LinkedList<>();
+            cryptoTokens = new ArrayList<>();
             for (String token : Arrays.asList(cryptoTokensValue.split(","))) {
                 cryptoTokens.add(WorkerIdentifier.createFromIdOrName(token.trim()));
             }
@@ -98,11 +100,10 @@ public class HSMKeepAliveTimedService extends BaseTimedService {
         final WorkerSessionLocal session = services.get(WorkerSessionLocal.class);
         
         if (session != null && cryptoTokens != null) {
-            for (final WorkerIdentifier wi : cryptoTokens) {
-                try {
-                    session.getStatus(wi);
-                } catch (InvalidWorkerIdException e) {
-                    errors.add("Invalid worker: " + wi);
+            final List<WorkerStatus> statuses = session.getStatuses(cryptoTokens);
+            for (int i = 0; i < cryptoTokens.size(); i++) {
+                if (statuses.get(i) == null) {
+                    errors.add("Invalid worker: " + cryptoTokens.get(i));
                 }
             }
         }   
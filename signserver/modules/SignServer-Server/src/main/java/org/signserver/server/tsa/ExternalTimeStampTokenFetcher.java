@@ -0,0 +1,647 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.tsa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cmp.PKIStatus;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.util.encoders.Base64;
+import org.bouncycastle.util.encoders.Hex;
+import org.signserver.common.SignServerException;
+import org.signserver.common.WorkerConfig;
+import org.signserver.server.ManagedExecutors;
+
+import static org.signserver.common.SignServerConstants.DEFAULT_NULL;
+
+/**
+ * Fetching time-stamp tokens from one or more external TSAs using RFC 3161
+ * over HTTP.
+ *
+ * The TSAs are tried in the configured order. A request is sent to the
+ * first available TSA and a TSA that fails is skipped and the next one tried.
+ * After a number of consecutive connection failures a TSA is not used
+ * again until the retry interval has passed, unless no other TSA is
+ * available.
+ *
+ * If hedging is enabled and the TSA has not answered within the configured
+ * percentile of its recent response times, a hedged request is sent to the
+ * next TSA (or the same if only one is configured) and the first token
+ * received is used. The requests are then sent from the container's managed
+ * executor. Without hedging, or when no managed executor is available, the
+ * requests are sent from the calling thread.
+ *
+ * Instances are kept per worker so that the response times and failures are
+ * tracked across requests, and are replaced when the worker is reloaded or
+ * its TSA configuration changes. The responses are always read completely
+ * so that the connections are kept alive and reused by the HTTP client. The
+ * number of idle connections kept per TSA is controlled by the
+ * http.maxConnections system property.
+ *
+ * @version $Id$
+ */
+public class ExternalTimeStampTokenFetcher {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ExternalTimeStampTokenFetcher.class);
+
+    /** Worker property: time in milliseconds to wait for a connection. */
+    public static final String TSA_CONNECTTIMEOUT = "TSA_CONNECTTIMEOUT";
+
+    /** Worker property: time in milliseconds to wait for the response. */
+    public static final String TSA_READTIMEOUT = "TSA_READTIMEOUT";
+
+    /**
+     * Worker property: percentile of the response times of a TSA after
+     * which a hedged request is sent or 0 to not send hedged requests.
+     */
+    public static final String TSA_HEDGEPERCENTILE = "TSA_HEDGEPERCENTILE";
+
+    /**
+     * Worker property: number of consecutive failures after which a TSA is
+     * not used until the retry interval has passed.
+     */
+    public static final String TSA_FAILURETHRESHOLD = "TSA_FAILURETHRESHOLD";
+
+    /**
+     * Worker property: time in milliseconds before a TSA that has failed
+     * is used again.
+     */
+    public static final String TSA_RETRYINTERVAL = "TSA_RETRYINTERVAL";
+
+    private static final int DEFAULT_CONNECTTIMEOUT = 10000;
+    private static final int DEFAULT_READTIMEOUT = 30000;
+    private static final int DEFAULT_HEDGEPERCENTILE = 0;
+    private static final int DEFAULT_FAILURETHRESHOLD = 3;
+    private static final int DEFAULT_RETRYINTERVAL = 30000;
+
+    /** Number of response times kept for each TSA. */
+    private static final int LATENCY_SAMPLES = 100;
+
+    /** Number of response times needed before hedged requests are sent. */
+    private static final int MIN_LATENCY_SAMPLES = 10;
+
+    private static final String REQUEST_CONTENT_TYPE = "application/timestamp-query";
+
+    /** Instances by worker ID. */
+    private static final ConcurrentMap<Integer, ExternalTimeStampTokenFetcher> INSTANCES = new ConcurrentHashMap<>();
+
+    /** Source of nonces, unique also for requests in the same millisecond. */
+    private static final AtomicLong NONCES = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Connection settings read from the worker configuration.
+     */
+    public static class Settings {
+
+        /** Settings with all default values. */
+        public static final Settings DEFAULT = new Settings(DEFAULT_CONNECTTIMEOUT, DEFAULT_READTIMEOUT,
+                DEFAULT_HEDGEPERCENTILE, DEFAULT_FAILURETHRESHOLD, DEFAULT_RETRYINTERVAL);
+
+        private final int connectTimeout;
+        private final int readTimeout;
+        private final int hedgePercentile;
+        private final int failureThreshold;
+        private final int retryInterval;
+
+        public Settings(final int connectTimeout, final int readTimeout, final int hedgePercentile,
+                final int failureThreshold, final int retryInterval) {
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+            this.hedgePercentile = hedgePercentile;
+            this.failureThreshold = failureThreshold;
+            this.retryInterval = retryInterval;
+        }
+
+        /**
+         * Reads the settings from the worker configuration.
+         *
+         * @param config to read from
+         * @param configErrors to add any errors to
+         * @return the settings
+         */
+        public static Settings fromConfig(final WorkerConfig config, final List<String> configErrors) {
+            return new Settings(
+                    getInt(config, TSA_CONNECTTIMEOUT, DEFAULT_CONNECTTIMEOUT, 0, Integer.MAX_VALUE, configErrors),
+                    getInt(config, TSA_READTIMEOUT, DEFAULT_READTIMEOUT, 0, Integer.MAX_VALUE, configErrors),
+                    getInt(config, TSA_HEDGEPERCENTILE, DEFAULT_HEDGEPERCENTILE, 0, 100, configErrors),
+                    getInt(config, TSA_FAILURETHRESHOLD, DEFAULT_FAILURETHRESHOLD, 1, Integer.MAX_VALUE, configErrors),
+                    getInt(config, TSA_RETRYINTERVAL, DEFAULT_RETRYINTERVAL, 0, Integer.MAX_VALUE, configErrors));
+        }
+
+        private static int getInt(final WorkerConfig config, final String property, final int defaultValue,
+                final int min, final int max, final List<String> configErrors) {
+            final String value = config.getProperty(property, DEFAULT_NULL);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                final int result = Integer.parseInt(value.trim());
+                if (result < min || result > max) {
+                    configErrors.add("Illegal value for property " + property + ". Only numbers between " + min + " and " + max + " supported.");
+                    return defaultValue;
+                }
+                return result;
+            } catch (NumberFormatException ex) {
+                configErrors.add("Illegal value for property " + property + ": " + value);
+                return defaultValue;
+            }
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        public int getHedgePercentile() {
+            return hedgePercentile;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public int getRetryInterval() {
+            return retryInterval;
+        }
+
+        @Override
+        public String toString() {
+            return "Settings{" + "connectTimeout=" + connectTimeout + ", readTimeout=" + readTimeout
+                    + ", hedgePercentile=" + hedgePercentile + ", failureThreshold=" + failureThreshold
+                    + ", retryInterval=" + retryInterval + '}';
+        }
+    }
+
+    /**
+     * Response times and failures of one TSA.
+     */
+    static class Endpoint {
+        private final URL url;
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int samples;
+        private int next;
+        private int consecutiveFailures;
+        private long retryAfter;
+
+        Endpoint(final URL url) {
+            this.url = url;
+        }
+
+        URL getUrl() {
+            return url;
+        }
+
+        synchronized void success(final long elapsedMillis) {
+            latencies[next] = elapsedMillis;
+            next = (next + 1) % latencies.length;
+            if (samples < latencies.length) {
+                samples++;
+            }
+            consecutiveFailures = 0;
+            retryAfter = 0;
+        }
+
+        synchronized void failure(final int failureThreshold, final int retryInterval) {
+            consecutiveFailures++;
+            if (consecutiveFailures >= failureThreshold) {
+                retryAfter = System.currentTimeMillis() + retryInterval;
+                LOG.warn("TSA " + url + " failed " + consecutiveFailures + " times in a row, not using it for "
+                        + retryInterval + " ms");
+            }
+        }
+
+        synchronized boolean isAvailable() {
+            return retryAfter == 0 || System.currentTimeMillis() >= retryAfter;
+        }
+
+        /**
+         * @param percentile between 1 and 100
+         * @return the response time in milliseconds or -1 if not enough
+         * response times are known
+         */
+        synchronized long getPercentile(final int percentile) {
+            if (samples < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            final long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+    private final String authorization;
+    private final Settings settings;
+    private final ExecutorService hedgeExecutor;
+    private String fingerprint;
+
+    /**
+     * Creates a fetcher not kept for any worker.
+     *
+     * @param urls of the TSAs in order of preference
+     * @param username for HTTP Basic authentication or null
+     * @param password for HTTP Basic authentication
+     * @param settings connection settings
+     */
+    public ExternalTimeStampTokenFetcher(final List<URL> urls, final String username, final String password,
+            final Settings settings) {
+        this(urls, username, password, settings, null);
+    }
+
+    /**
+     * Creates a fetcher sending the hedged requests from the given executor
+     * instead of the container's managed executor.
+     *
+     * @param urls of the TSAs in order of preference
+     * @param username for HTTP Basic authentication or null
+     * @param password for HTTP Basic authentication
+     * @param settings connection settings
+     * @param hedgeExecutor to send the requests from when hedging or null
+     */
+    ExternalTimeStampTokenFetcher(final List<URL> urls, final String username, final String password,
+            final Settings settings, final ExecutorService hedgeExecutor) {
+        final List<Endpoint> list = new ArrayList<>(urls.size());
+        for (URL url : urls) {
+            list.add(new Endpoint(url));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        if (username == null || username.isEmpty()) {
+            this.authorization = null;
+        } else {
+            this.authorization = "Basic " + Base64.toBase64String((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        }
+        this.settings = settings;
+        this.hedgeExecutor = hedgeExecutor;
+    }
+
+    /**
+     * Gets the fetcher kept for the worker, replacing it if it was created
+     * with a different TSA configuration.
+     *
+     * @param workerId of the worker
+     * @param urls comma separated URLs of the TSAs in order of preference
+     * @param username for HTTP Basic authentication or null
+     * @param password for HTTP Basic authentication
+     * @param settings connection settings
+     * @return the fetcher of the worker
+     * @throws MalformedURLException if one of the URLs is not valid
+     */
+    public static ExternalTimeStampTokenFetcher getInstance(final int workerId, final String urls,
+            final String username, final String password, final Settings settings) throws MalformedURLException {
+        final String fingerprint = createFingerprint(urls, username, password, settings);
+        ExternalTimeStampTokenFetcher result = INSTANCES.get(workerId);
+        if (result == null || !fingerprint.equals(result.fingerprint)) {
+            result = new ExternalTimeStampTokenFetcher(parseURLs(urls), username, password, settings);
+            result.fingerprint = fingerprint;
+            INSTANCES.put(workerId, result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the fetcher kept for the worker, i.e. when the worker is
+     * (re)initialized.
+     *
+     * @param workerId of the worker
+     */
+    public static void removeInstance(final int workerId) {
+        INSTANCES.remove(workerId);
+    }
+
+    /**
+     * @return digest of the TSA configuration so that the password is not
+     * kept in clear text only to compare the configurations
+     */
+    private static String createFingerprint(final String urls, final String username, final String password,
+            final Settings settings) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            final String config = urls + "\n" + username + "\n" + password + "\n" + settings;
+            return Hex.toHexString(md.digest(config.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    /**
+     * Parses a list of TSA URLs.
+     *
+     * @param urls comma separated URLs
+     * @return the URLs
+     * @throws MalformedURLException if one of the URLs is not valid or none
+     * was given
+     */
+    public static List<URL> parseURLs(final String urls) throws MalformedURLException {
+        final List<URL> result = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (!url.trim().isEmpty()) {
+                result.add(new URL(url.trim()));
+            }
+        }
+        if (result.isEmpty()) {
+            throw new MalformedURLException("No TSA URL specified");
+        }
+        return result;
+    }
+
+    /**
+     * Fetches a time-stamp token for the imprint.
+     *
+     * @param imprint to time-stamp
+     * @param digestOID of the algorithm used for the imprint
+     * @param reqPolicy requested policy or null
+     * @return the time-stamp token
+     * @throws SignServerException if no TSA issued a token
+     * @throws IOException in case of encoding failure
+     */
+    public TimeStampToken fetchToken(final byte[] imprint, final ASN1ObjectIdentifier digestOID,
+            final ASN1ObjectIdentifier reqPolicy) throws SignServerException, IOException {
+        // Setup the time stamp request
+        final TimeStampRequestGenerator tsqGenerator = new TimeStampRequestGenerator();
+        tsqGenerator.setCertReq(true);
+
+        if (reqPolicy != null) {
+            tsqGenerator.setReqPolicy(reqPolicy);
+        }
+
+        final BigInteger nonce = BigInteger.valueOf(NONCES.incrementAndGet());
+        final TimeStampRequest request = tsqGenerator.generate(digestOID, imprint, nonce);
+        final byte[] requestBytes = request.getEncoded();
+
+        // Available TSAs first, the others only as a last resort
+        final List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        final List<Endpoint> unavailable = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable()) {
+                candidates.add(endpoint);
+            } else {
+                unavailable.add(endpoint);
+            }
+        }
+        candidates.addAll(unavailable);
+
+        final long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos((long) settings.getConnectTimeout() + settings.getReadTimeout());
+        final long hedgeDelay = settings.getHedgePercentile() > 0 ? candidates.get(0).getPercentile(settings.getHedgePercentile()) : -1;
+        ExecutorService executor = null;
+        if (hedgeDelay >= 0) {
+            executor = hedgeExecutor == null ? ManagedExecutors.getDefault() : hedgeExecutor;
+        }
+        if (executor == null) {
+            return fetchSequentially(candidates, request, requestBytes, deadline);
+        }
+        return fetchHedged(executor, candidates, hedgeDelay, request, requestBytes, deadline);
+    }
+
+    /**
+     * Sends the request from the calling thread to one TSA at a time until
+     * a token is received.
+     */
+    private TimeStampToken fetchSequentially(final List<Endpoint> candidates, final TimeStampRequest request,
+            final byte[] requestBytes, final long deadline) throws SignServerException {
+        Exception lastError = null;
+        for (Endpoint candidate : candidates) {
+            if (lastError != null && deadline - System.nanoTime() <= 0) {
+                break;
+            }
+            try {
+                return createAttempt(candidate, request, requestBytes).call();
+            } catch (Exception ex) {
+                lastError = ex;
+            }
+        }
+        throw createFailure(lastError);
+    }
+
+    /**
+     * Sends the request from the executor and a hedged request if no
+     * response was received within the hedge delay.
+     */
+    private TimeStampToken fetchHedged(final ExecutorService executor, final List<Endpoint> candidates,
+            long hedgeDelay, final TimeStampRequest request, final byte[] requestBytes, final long deadline)
+            throws SignServerException {
+        final CompletionService<TimeStampToken> completion = new ExecutorCompletionService<>(executor);
+        final List<Future<TimeStampToken>> futures = new ArrayList<>(candidates.size() + 1);
+        final Endpoint primary = candidates.get(0);
+        int nextCandidate = 1;
+        int running = 1;
+        Exception lastError = null;
+
+        try {
+            futures.add(completion.submit(createAttempt(primary, request, requestBytes)));
+        } catch (RejectedExecutionException ex) {
+            LOG.debug("Executor busy, not sending hedged requests");
+            return fetchSequentially(candidates, request, requestBytes, deadline);
+        }
+        try {
+            while (running > 0) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                final Future<TimeStampToken> done;
+                if (hedgeDelay >= 0) {
+                    done = completion.poll(Math.min(TimeUnit.MILLISECONDS.toNanos(hedgeDelay), remaining), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        // Slower than usual: send a hedged request
+                        final Endpoint hedge = nextCandidate < candidates.size() ? candidates.get(nextCandidate++) : primary;
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("No response from TSA " + primary.getUrl() + " within " + hedgeDelay
+                                    + " ms, sending hedged request to " + hedge.getUrl());
+                        }
+                        try {
+                            futures.add(completion.submit(createAttempt(hedge, request, requestBytes)));
+                            running++;
+                        } catch (RejectedExecutionException ex) {
+                            LOG.debug("Executor busy, not sending hedged request");
+                        }
+                        hedgeDelay = -1;
+                        continue;
+                    }
+                } else {
+                    done = completion.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        break;
+                    }
+                }
+                running--;
+                hedgeDelay = -1;
+                try {
+                    return done.get();
+                } catch (ExecutionException ex) {
+                    lastError = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                    if (running == 0 && nextCandidate < candidates.size()) {
+                        // Fail over to the next TSA
+                        try {
+                            futures.add(completion.submit(createAttempt(candidates.get(nextCandidate), request, requestBytes)));
+                            nextCandidate++;
+                            running++;
+                        } catch (RejectedExecutionException ree) {
+                            return fetchSequentially(candidates.subList(nextCandidate, candidates.size()),
+                                    request, requestBytes, deadline);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SignServerException("Interrupted while waiting for time-stamp token", ex);
+        } finally {
+            // Any outstanding requests are not needed anymore
+            for (Future<TimeStampToken> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        throw createFailure(lastError);
+    }
+
+    private SignServerException createFailure(final Exception lastError) {
+        if (lastError == null) {
+            return new SignServerException("No response from TSA within " + (settings.getConnectTimeout() + settings.getReadTimeout()) + " ms");
+        }
+        return new SignServerException("Failed to get time-stamp token: " + lastError.getMessage(), lastError);
+    }
+
+    private Callable<TimeStampToken> createAttempt(final Endpoint endpoint, final TimeStampRequest request,
+            final byte[] requestBytes) {
+        return new Callable<TimeStampToken>() {
+            @Override
+            public TimeStampToken call() throws Exception {
+                final long start = System.nanoTime();
+                final byte[] responseBytes;
+                try {
+                    responseBytes = post(endpoint.getUrl(), requestBytes);
+                } catch (IOException ex) {
+                    endpoint.failure(settings.getFailureThreshold(), settings.getRetryInterval());
+                    LOG.info("Time-stamp request to TSA " + endpoint.getUrl() + " failed: " + ex.getMessage());
+                    throw ex;
+                }
+                endpoint.success(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return parseResponse(endpoint.getUrl(), request, responseBytes);
+            }
+        };
+    }
+
+    /**
+     * Sends the request and reads the complete response so that the
+     * connection can be reused.
+     */
+    private byte[] post(final URL url, final byte[] requestBytes) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setDoInput(true);
+        connection.setDoOutput(true);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(settings.getConnectTimeout());
+        connection.setReadTimeout(settings.getReadTimeout());
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", REQUEST_CONTENT_TYPE);
+        connection.setFixedLengthStreamingMode(requestBytes.length);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(requestBytes);
+        }
+
+        final int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            // Consume the error body so the connection can be reused
+            try (InputStream in = connection.getErrorStream()) {
+                if (in != null) {
+                    readFully(in);
+                }
+            }
+            throw new IOException("Unexpected HTTP response " + responseCode + " " + connection.getResponseMessage());
+        }
+        final byte[] result;
+        try (InputStream in = connection.getInputStream()) {
+            result = readFully(in);
+        }
+        final String encoding = connection.getContentEncoding();
+        if (encoding != null && encoding.equalsIgnoreCase("base64")) {
+            return Base64.decode(result);
+        }
+        return result;
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream(8192);
+        final byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            bout.write(buffer, 0, n);
+        }
+        return bout.toByteArray();
+    }
+
+    private static TimeStampToken parseResponse(final URL url, final TimeStampRequest request,
+            final byte[] responseBytes) throws SignServerException, TSPException, IOException {
+        final TimeStampResponse response = new TimeStampResponse(responseBytes);
+
+        // Validate communication level attributes (RFC 3161 PKIStatus)
+        response.validate(request);
+        if (response.getStatus() != PKIStatus.GRANTED && response.getStatus() != PKIStatus.GRANTED_WITH_MODS) {
+            throw new SignServerException("Time stamp token not granted by TSA " + url + ": " + response.getStatusString());
+        }
+        final TimeStampToken token = response.getTimeStampToken();
+        if (token == null) {
+            throw new SignServerException("TSA " + url + " failed to return time stamp token: " + response.getStatusString());
+        }
+        return token;
+    }
+
+    /**
+     * @return the TSAs in order of preference
+     */
+    List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.tsa;
+
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.common.IllegalRequestException;
+import org.signserver.common.RequestContext;
+import org.signserver.common.SignServerException;
+
+/**
+ * Worker able to issue time-stamp tokens for a TimeStampTokenRequest from
+ * another worker in the same server.
+ *
+ * Such workers can be called directly by the internal process session,
+ * without archiving or accounting, when they have no archivers or accounter
+ * configured. Authorization, key usage counting and worker logging are
+ * still applied by the session.
+ *
+ * @version $Id$
+ * @see InternalTimeStampTokenFetcher
+ */
+public interface ITimeStampTokenIssuer {
+
+    /**
+     * Issues a time-stamp token for each of the time-stamp requests.
+     *
+     * @param request with the time-stamp requests
+     * @param requestContext of the request
+     * @return response with one token for each time-stamp request, in the
+     * same order
+     * @throws IllegalRequestException if one of the requests is not accepted
+     * @throws CryptoTokenOfflineException if the crypto token is not available
+     * @throws SignServerException if the tokens could not be issued
+     */
+    TimeStampTokenResponse issueTimeStampTokens(TimeStampTokenRequest request, RequestContext requestContext)
+            throws IllegalRequestException, CryptoTokenOfflineException, SignServerException;
+
+}
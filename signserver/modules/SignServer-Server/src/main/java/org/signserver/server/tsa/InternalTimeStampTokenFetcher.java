@@ -12,31 +12,37 @@
  *************************************************************************/
 package org.signserver.server.tsa;
 
+import java.io.IOException;
 import java.math.BigInteger;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
-import org.signserver.common.RequestContext;
-import org.signserver.common.SignServerException;
-import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
-import org.signserver.server.UsernamePasswordClientCredential;
-
-import java.io.IOException;
-import org.apache.commons.fileupload.FileUploadException;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.cmp.PKIStatus;
-
-import org.bouncycastle.tsp.*;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TSPValidationException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenInfo;
 import org.signserver.common.CryptoTokenOfflineException;
 import org.signserver.common.IllegalRequestException;
+import org.signserver.common.RequestContext;
+import org.signserver.common.SignServerException;
 import org.signserver.common.WorkerIdentifier;
 import org.signserver.common.data.Response;
 import org.signserver.common.data.SignatureRequest;
+import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
+import org.signserver.server.UsernamePasswordClientCredential;
 import org.signserver.server.data.impl.ByteArrayReadableData;
 import org.signserver.server.data.impl.CloseableReadableData;
 import org.signserver.server.data.impl.CloseableWritableData;
 import org.signserver.server.data.impl.TemporarlyWritableData;
 import org.signserver.server.data.impl.UploadConfig;
-import org.signserver.server.data.impl.UploadUtil;
 import org.signserver.server.log.AdminInfo;
 
 /**
@@ -49,6 +55,9 @@ import org.signserver.server.log.AdminInfo;
 public class InternalTimeStampTokenFetcher {
     private static final Logger LOG = Logger.getLogger(InternalTimeStampTokenFetcher.class);
 
+    /** Source of nonces, unique also for requests in the same millisecond. */
+    private static final AtomicLong NONCES = new AtomicLong(System.currentTimeMillis());
+
     private final InternalProcessSessionLocal session;
     private final WorkerIdentifier wi;
     private final String username;
@@ -62,50 +71,170 @@ public class InternalTimeStampTokenFetcher {
         this.password = password;
     }
 
+    /**
+     * Fetches a time-stamp token for the imprint.
+     *
+     * @param imprint to time-stamp
+     * @param digestOID of the algorithm used for the imprint
+     * @param reqPolicy requested policy or null
+     * @return the time-stamp token
+     * @throws IllegalRequestException if the request was not accepted
+     * @throws CryptoTokenOfflineException if the TSA's crypto token is offline
+     * @throws SignServerException if no token was issued
+     * @throws TSPException if the token does not match the request
+     * @throws IOException in case of encoding failure
+     */
     public TimeStampToken fetchToken(byte[] imprint, ASN1ObjectIdentifier digestOID, ASN1ObjectIdentifier reqPolicy) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException, TSPException, IOException {
-        // Setup the time stamp request
+        return fetchTokens(Collections.singletonList(imprint), digestOID, reqPolicy).get(0);
+    }
+
+    /**
+     * Fetches one time-stamp token for each of the imprints in one request
+     * to the TSA.
+     *
+     * @param imprints to time-stamp
+     * @param digestOID of the algorithm used for the imprints
+     * @param reqPolicy requested policy or null
+     * @return the time-stamp tokens in the same order as the imprints
+     * @throws IllegalRequestException if the request was not accepted
+     * @throws CryptoTokenOfflineException if the TSA's crypto token is offline
+     * @throws SignServerException if no tokens were issued
+     * @throws TSPException if a token does not match its request
+     * @throws IOException in case of encoding failure
+     * @see #fetchTokens(org.signserver.ejb.interfaces.InternalProcessSessionLocal, org.signserver.common.WorkerIdentifier, java.util.List, org.signserver.common.RequestContext)
+     */
+    public List<TimeStampToken> fetchTokens(List<byte[]> imprints, ASN1ObjectIdentifier digestOID, ASN1ObjectIdentifier reqPolicy) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException, TSPException, IOException {
+        // Setup the time stamp requests
         TimeStampRequestGenerator tsqGenerator = new TimeStampRequestGenerator();
         tsqGenerator.setCertReq(true);
-        
+
         if (reqPolicy != null) {
             tsqGenerator.setReqPolicy(reqPolicy);
         }
 
-        BigInteger nonce = BigInteger.valueOf(System.currentTimeMillis());
-        TimeStampRequest request = tsqGenerator.generate(digestOID, imprint, nonce);
-        byte[] requestBytes = request.getEncoded();
-        final UploadConfig uploadConfig = new UploadConfig();
-        try (
-                CloseableReadableData requestData = new ByteArrayReadableData(requestBytes, uploadConfig.getRepository());
-                CloseableWritableData responseData = new TemporarlyWritableData(false, uploadConfig.getRepository());
-            ) {
-        
-            final RequestContext context = new RequestContext();
-
-            if (username != null && password != null) {
-                UsernamePasswordClientCredential cred
-                        = new UsernamePasswordClientCredential(username, password);
-                context.put(RequestContext.CLIENT_CREDENTIAL, cred);
-                context.put(RequestContext.CLIENT_CREDENTIAL_PASSWORD, cred);
-            }
+        final List<TimeStampRequest> requests = new ArrayList<>(imprints.size());
+        for (byte[] imprint : imprints) {
+            BigInteger nonce = BigInteger.valueOf(NONCES.incrementAndGet());
+            requests.add(tsqGenerator.generate(digestOID, imprint, nonce));
+        }
 
-            session.process(new AdminInfo("Client user", null, null), 
-                    wi, new SignatureRequest(hashCode(), requestData, responseData), context);
+        final RequestContext context = new RequestContext();
 
-            final byte[] respBytes = responseData.toReadableData().getAsByteArray();
-            TimeStampResponse response = new TimeStampResponse(respBytes);
+        if (username != null && password != null) {
+            UsernamePasswordClientCredential cred
+                    = new UsernamePasswordClientCredential(username, password);
+            context.put(RequestContext.CLIENT_CREDENTIAL, cred);
+            context.put(RequestContext.CLIENT_CREDENTIAL_PASSWORD, cred);
+        }
 
-            TimeStampToken  tsToken = response.getTimeStampToken();
-            if (tsToken == null) {
-                throw new SignServerException("TSA '" + wi + "' failed to return time stamp token: " + response.getStatusString());
-            }
+        return fetchTokens(session, wi, requests, context);
+    }
+
+    /**
+     * Fetches one time-stamp token for each of the time-stamp requests from
+     * a worker in the same server.
+     *
+     * If the worker issues time-stamp tokens directly (i.e. a TimeStampSigner
+     * or a RequestedPolicyDispatcher), the time-stamp requests and tokens are
+     * passed as objects in one request, which is not archived or charged
+     * unless the worker has archivers or an accounter configured.
+     * Authorization, worker logging and the key usage counter, which is
+     * increased with the number of tokens, are still applied.
+     * For other workers each time-stamp request is encoded and processed
+     * as a separate request.
+     *
+     * @param session to process the requests with
+     * @param wi of the worker to fetch the tokens from
+     * @param requests to fetch tokens for
+     * @param context of the request, copied for each encoded request
+     * @return the time-stamp tokens in the same order as the requests
+     * @throws IllegalRequestException if the request was not accepted
+     * @throws CryptoTokenOfflineException if the TSA's crypto token is offline
+     * @throws SignServerException if no tokens were issued
+     * @throws TSPException if a token does not match its request
+     * @throws IOException in case of encoding failure
+     */
+    public static List<TimeStampToken> fetchTokens(final InternalProcessSessionLocal session, final WorkerIdentifier wi,
+            final List<TimeStampRequest> requests, final RequestContext context) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException, TSPException, IOException {
+        final AdminInfo adminInfo = new AdminInfo("Client user", null, null);
+        final Response response = session.processDirect(adminInfo,
+                wi, new TimeStampTokenRequest(System.identityHashCode(requests), requests), context);
+
+        final List<TimeStampToken> tokens;
+        if (response == null) {
+            tokens = fetchEncodedTokens(session, adminInfo, wi, requests, context);
+        } else if (response instanceof TimeStampTokenResponse) {
+            tokens = ((TimeStampTokenResponse) response).getTimeStampTokens();
+        } else {
+            throw new SignServerException("TSA '" + wi + "' failed to return time stamp tokens");
+        }
 
-            if(response.getStatus() != PKIStatus.GRANTED && response.getStatus() != PKIStatus.GRANTED_WITH_MODS) {
-                throw new SignServerException("Time stamp token not granted: " + response.getStatusString());
+        if (tokens.size() != requests.size()) {
+            throw new SignServerException("TSA '" + wi + "' returned " + tokens.size()
+                    + " time stamp tokens for " + requests.size() + " requests");
+        }
+
+        for (int i = 0; i < tokens.size(); i++) {
+            validate(requests.get(i), tokens.get(i));
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Fetched " + tokens.size() + " time stamp tokens from TSA '" + wi + "'");
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Fetches the time-stamp tokens using one encoded time-stamp request for
+     * each token.
+     */
+    private static List<TimeStampToken> fetchEncodedTokens(final InternalProcessSessionLocal session, final AdminInfo adminInfo,
+            final WorkerIdentifier wi, final List<TimeStampRequest> requests, final RequestContext context) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException, TSPException, IOException {
+        final UploadConfig uploadConfig = new UploadConfig();
+        final List<TimeStampToken> tokens = new ArrayList<>(requests.size());
+        for (TimeStampRequest request : requests) {
+            try (
+                    CloseableReadableData requestData = new ByteArrayReadableData(request.getEncoded(), uploadConfig.getRepository());
+                    CloseableWritableData responseData = new TemporarlyWritableData(false, uploadConfig.getRepository());
+                ) {
+                session.process(adminInfo, wi, new SignatureRequest(System.identityHashCode(request), requestData, responseData),
+                        context.copyWithNewLogMap());
+
+                final TimeStampResponse response = new TimeStampResponse(responseData.toReadableData().getAsByteArray());
+
+                final TimeStampToken token = response.getTimeStampToken();
+                if (token == null) {
+                    throw new SignServerException("TSA '" + wi + "' failed to return time stamp token: " + response.getStatusString());
+                }
+
+                if (response.getStatus() != PKIStatus.GRANTED && response.getStatus() != PKIStatus.GRANTED_WITH_MODS) {
+                    throw new SignServerException("Time stamp token not granted: " + response.getStatusString());
+                }
+                response.validate(request);
+
+                tokens.add(token);
             }
-            response.validate(request);
+        }
+        return tokens;
+    }
 
-            return tsToken;
+    /**
+     * Checks that the token was issued for the request.
+     */
+    private static void validate(final TimeStampRequest request, final TimeStampToken token) throws TSPException {
+        final TimeStampTokenInfo info = token.getTimeStampInfo();
+        if (!Arrays.equals(request.getMessageImprintDigest(), info.getMessageImprintDigest())) {
+            throw new TSPValidationException("response for different message imprint digest.");
+        }
+        if (!info.getMessageImprintAlgOID().equals(request.getMessageImprintAlgOID())) {
+            throw new TSPValidationException("response for different message imprint algorithm.");
+        }
+        if (request.getNonce() != null && !request.getNonce().equals(info.getNonce())) {
+            throw new TSPValidationException("response contains wrong nonce value.");
+        }
+        if (request.getReqPolicy() != null && !request.getReqPolicy().equals(info.getPolicy())) {
+            throw new TSPValidationException("TSA policy wrong for request.");
         }
     }
 
@@ -0,0 +1,53 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.tsa;
+
+import java.util.Collections;
+import java.util.List;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.signserver.common.data.Request;
+
+/**
+ * Request for one or more time-stamp tokens passed as objects from a worker
+ * in the same server, avoiding the encoding and parsing of the
+ * TimeStampRequest and TimeStampResponse structures.
+ *
+ * @version $Id$
+ * @see TimeStampTokenResponse
+ */
+public class TimeStampTokenRequest extends Request {
+
+    private final int requestID;
+    private final List<TimeStampRequest> timeStampRequests;
+
+    /**
+     * Creates a request for a time-stamp token for each of the given
+     * time-stamp requests.
+     *
+     * @param requestID of the request
+     * @param timeStampRequests to issue tokens for
+     */
+    public TimeStampTokenRequest(final int requestID, final List<TimeStampRequest> timeStampRequests) {
+        this.requestID = requestID;
+        this.timeStampRequests = Collections.unmodifiableList(timeStampRequests);
+    }
+
+    public int getRequestID() {
+        return requestID;
+    }
+
+    public List<TimeStampRequest> getTimeStampRequests() {
+        return timeStampRequests;
+    }
+
+}
@@ -0,0 +1,53 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.tsa;
+
+import java.security.cert.Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.signserver.common.data.SignatureResponse;
+import org.signserver.server.archive.Archivable;
+
+/**
+ * Response to a TimeStampTokenRequest containing one time-stamp token for
+ * each of the time-stamp requests, in the same order.
+ *
+ * The response carries no response data. Each token counts as one use of the
+ * signer's key.
+ *
+ * @version $Id$
+ * @see TimeStampTokenRequest
+ */
+public class TimeStampTokenResponse extends SignatureResponse {
+
+    private final List<TimeStampToken> timeStampTokens;
+
+    public TimeStampTokenResponse(final int requestID, final List<TimeStampToken> timeStampTokens,
+            final Certificate signerCertificate, final String archiveId,
+            final Collection<? extends Archivable> archivables) {
+        super(requestID, null, signerCertificate, archiveId, archivables, null);
+        this.timeStampTokens = Collections.unmodifiableList(timeStampTokens);
+    }
+
+    public List<TimeStampToken> getTimeStampTokens() {
+        return timeStampTokens;
+    }
+
+    @Override
+    public int getSignatureCount() {
+        return timeStampTokens.size();
+    }
+
+}
@@ -12,20 +12,35 @@
  *************************************************************************/
 package org.signserver.validationservice.server;
 
+import java.security.cert.Certificate;
 import java.util.*;
 
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import javax.persistence.EntityManager;
 import org.apache.log4j.Logger;
+import org.bouncycastle.util.encoders.Hex;
 import org.cesecore.util.CertTools;
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.common.IllegalRequestException;
 import org.signserver.common.SignServerException;
 import org.signserver.common.StaticWorkerStatus;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerStatus;
 import org.signserver.common.WorkerStatusInfo;
+import org.signserver.common.data.CertificateBatchValidationRequest;
+import org.signserver.common.data.CertificateBatchValidationResponse;
+import org.signserver.common.data.CertificateValidationRequest;
+import org.signserver.common.data.CertificateValidationResponse;
 import org.signserver.server.IServices;
+import org.signserver.server.ManagedExecutors;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
 import org.signserver.validationservice.common.ValidationServiceConstants;
+import org.signserver.validationservice.server.validcache.ChainVerificationCache;
 import org.signserver.validationservice.server.validcache.ValidationCache;
 
 /**
@@ -45,9 +60,13 @@ public abstract class BaseValidationService implements IValidationService {
     protected EntityManager em;
     protected HashMap<Integer, IValidator> validators;
     protected ValidationCache validationCache;
+    protected ChainVerificationCache chainVerificationCache;
 
     private ICertPurposeChecker certTypeChecker;
 
+    private int batchMaxSize;
+    private int batchThreads;
+
     /**
      * @see org.signserver.server.IWorker#init(int, org.signserver.common.WorkerConfig, org.signserver.server.WorkerContext, javax.persistence.EntityManager)
      */
@@ -71,7 +90,187 @@ public abstract class BaseValidationService implements IValidationService {
             log.error("Error in Validation Service " + workerId + " setting " + ValidationServiceConstants.VALIDATIONSERVICE_TIMEINCACHE + " should only contain numbers, using default value");
         }
 
-        validationCache = new ValidationCache(getCachedIssuers(config.getProperties()), cacheTime * 1000);
+        int cacheMaxSize = Integer.parseInt(ValidationServiceConstants.DEFAULT_CACHEMAXSIZE);
+        try {
+            cacheMaxSize = Integer.parseInt(config.getProperties().getProperty(ValidationServiceConstants.VALIDATIONSERVICE_CACHEMAXSIZE, ValidationServiceConstants.DEFAULT_CACHEMAXSIZE));
+        } catch (NumberFormatException e) {
+            log.error("Error in Validation Service " + workerId + " setting " + ValidationServiceConstants.VALIDATIONSERVICE_CACHEMAXSIZE + " should only contain numbers, using default value");
+        }
+
+        long chainCacheTime = Long.parseLong(ValidationServiceConstants.DEFAULT_CHAINCACHETIME);
+        try {
+            chainCacheTime = Long.parseLong(config.getProperties().getProperty(ValidationServiceConstants.VALIDATIONSERVICE_CHAINCACHETIME, ValidationServiceConstants.DEFAULT_CHAINCACHETIME));
+        } catch (NumberFormatException e) {
+            log.error("Error in Validation Service " + workerId + " setting " + ValidationServiceConstants.VALIDATIONSERVICE_CHAINCACHETIME + " should only contain numbers, using default value");
+        }
+
+        validationCache = new ValidationCache(getCachedIssuers(config.getProperties()), cacheTime * 1000, cacheMaxSize);
+        chainVerificationCache = new ChainVerificationCache(chainCacheTime * 1000, cacheMaxSize);
+
+        batchMaxSize = Integer.parseInt(ValidationServiceConstants.DEFAULT_BATCHMAXSIZE);
+        try {
+            batchMaxSize = Integer.parseInt(config.getProperties().getProperty(ValidationServiceConstants.VALIDATIONSERVICE_BATCHMAXSIZE, ValidationServiceConstants.DEFAULT_BATCHMAXSIZE));
+        } catch (NumberFormatException e) {
+            log.error("Error in Validation Service " + workerId + " setting " + ValidationServiceConstants.VALIDATIONSERVICE_BATCHMAXSIZE + " should only contain numbers, using default value");
+        }
+
+        batchThreads = Integer.parseInt(ValidationServiceConstants.DEFAULT_BATCHTHREADS);
+        try {
+            batchThreads = Integer.parseInt(config.getProperties().getProperty(ValidationServiceConstants.VALIDATIONSERVICE_BATCHTHREADS, ValidationServiceConstants.DEFAULT_BATCHTHREADS));
+        } catch (NumberFormatException e) {
+            log.error("Error in Validation Service " + workerId + " setting " + ValidationServiceConstants.VALIDATIONSERVICE_BATCHTHREADS + " should only contain numbers, using default value");
+        }
+
+        // let the validators invalidate cached validations on new revocation data
+        if (validators != null) {
+            for (IValidator validator : validators.values()) {
+                if (validator instanceof BaseValidator) {
+                    ((BaseValidator) validator).setRevocationDataListener(validationCache);
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates the certificates grouped by issuer so that each group can
+     * share the certificate chain and revocation lookups. The groups are
+     * validated in parallel by up to BATCHTHREADS tasks using the
+     * container's managed executor, or in the calling thread when none is
+     * available.
+     *
+     * @param batchRequest the certificates to validate
+     * @return a response for each certificate in the same order as requested
+     * @throws IllegalRequestException if the batch is too large or for any
+     * certificate that could not be validated
+     * @throws CryptoTokenOfflineException if the crypto token isn't online.
+     * @throws SignServerException for general failure exception during validation
+     * @see #validateGroup(java.util.List)
+     */
+    @Override
+    public CertificateBatchValidationResponse validate(CertificateBatchValidationRequest batchRequest) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        final List<CertificateValidationRequest> requests = batchRequest.getRequests();
+        if (requests.size() > batchMaxSize) {
+            throw new IllegalRequestException("Too many certificates in batch: " + requests.size() + " > " + batchMaxSize);
+        }
+
+        // Group the requests by issuer, remembering the original positions
+        final Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            final String key = getIssuerKey(requests.get(i).getCertificate());
+            List<Integer> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(i);
+        }
+
+        final CertificateValidationResponse[] responses = new CertificateValidationResponse[requests.size()];
+        final List<List<Integer>> groupIndexes = new ArrayList<>(groups.values());
+        final int threads = Math.min(batchThreads, groupIndexes.size());
+        final ExecutorService executor = threads <= 1 ? null : ManagedExecutors.getDefault();
+        if (executor == null) {
+            validateGroups(requests, groupIndexes, 0, 1, responses);
+        } else {
+            // One task per thread, each validating every threads:th group
+            final List<Future<Void>> futures = new ArrayList<>(threads);
+            try {
+                for (int i = 0; i < threads; i++) {
+                    final int first = i;
+                    try {
+                        futures.add(executor.submit(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                validateGroups(requests, groupIndexes, first, threads, responses);
+                                return null;
+                            }
+                        }));
+                    } catch (RejectedExecutionException e) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Validating in the calling thread as the task was rejected: " + e.getMessage());
+                        }
+                        validateGroups(requests, groupIndexes, first, threads, responses);
+                    }
+                }
+                for (Future<Void> future : futures) {
+                    waitFor(future);
+                }
+            } finally {
+                for (Future<Void> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        return new CertificateBatchValidationResponse(Arrays.asList(responses));
+    }
+
+    /**
+     * Validates certificates from the same issuer. This implementation
+     * validates them one by one.
+     *
+     * @param group requests for certificates with the same issuer
+     * @return a response for each request in the same order
+     * @throws IllegalRequestException if data in the request didn't conform with the specification.
+     * @throws CryptoTokenOfflineException if the crypto token isn't online.
+     * @throws SignServerException for general failure exception during validation
+     */
+    protected List<CertificateValidationResponse> validateGroup(List<CertificateValidationRequest> group) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        final List<CertificateValidationResponse> result = new ArrayList<>(group.size());
+        for (CertificateValidationRequest request : group) {
+            result.add(validate(request));
+        }
+        return result;
+    }
+
+    /**
+     * @return Key identifying the issuer by DN and authority key identifier
+     */
+    private static String getIssuerKey(Certificate cert) {
+        final byte[] aki = CertTools.getAuthorityKeyId(cert);
+        return CertTools.getIssuerDN(cert) + (aki == null ? "" : ";" + Hex.toHexString(aki));
+    }
+
+    private static List<CertificateValidationRequest> select(List<CertificateValidationRequest> requests, List<Integer> indexes) {
+        final List<CertificateValidationRequest> result = new ArrayList<>(indexes.size());
+        for (Integer index : indexes) {
+            result.add(requests.get(index));
+        }
+        return result;
+    }
+
+    private void validateGroups(List<CertificateValidationRequest> requests, List<List<Integer>> groupIndexes, int first, int step, CertificateValidationResponse[] responses) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        for (int i = first; i < groupIndexes.size(); i += step) {
+            final List<Integer> indexes = groupIndexes.get(i);
+            collect(indexes, validateGroup(select(requests, indexes)), responses);
+        }
+    }
+
+    private static void collect(List<Integer> indexes, List<CertificateValidationResponse> groupResponses, CertificateValidationResponse[] responses) {
+        for (int i = 0; i < indexes.size(); i++) {
+            responses[indexes.get(i)] = groupResponses.get(i);
+        }
+    }
+
+    private static void waitFor(Future<Void> future) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SignServerException("Interrupted while validating", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IllegalRequestException) {
+                throw (IllegalRequestException) cause;
+            } else if (cause instanceof CryptoTokenOfflineException) {
+                throw (CryptoTokenOfflineException) cause;
+            } else if (cause instanceof SignServerException) {
+                throw (SignServerException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new SignServerException("Validation failed: " + cause.getMessage(), cause);
+            }
+        }
     }
 
     private List<String> getCachedIssuers(Properties props) {
@@ -101,6 +300,14 @@ public abstract class BaseValidationService implements IValidationService {
             briefEntries.add(new WorkerStatusInfo.Entry("Number of validators", String.valueOf(validators.size())));
         }
 
+        // Caches
+        if (validationCache != null) {
+            briefEntries.add(new WorkerStatusInfo.Entry("Validation cache", validationCache.getSize() + " entries, " + validationCache.getHits() + " hits, " + validationCache.getMisses() + " misses, " + validationCache.getEvictions() + " evictions"));
+        }
+        if (chainVerificationCache != null) {
+            briefEntries.add(new WorkerStatusInfo.Entry("Chain verification cache", chainVerificationCache.getSize() + " entries, " + chainVerificationCache.getHits() + " hits, " + chainVerificationCache.getMisses() + " misses"));
+        }
+
         // Properties
         final StringBuilder configValue = new StringBuilder();
         Properties properties = config.getProperties();
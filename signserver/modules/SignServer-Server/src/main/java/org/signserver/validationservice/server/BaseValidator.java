@@ -17,14 +17,21 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.persistence.EntityManager;
 import org.apache.log4j.Logger;
 import org.cesecore.util.CertTools;
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.common.IllegalRequestException;
 import org.signserver.common.SignServerException;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
+import org.signserver.validationservice.common.Validation;
 import org.signserver.validationservice.common.ValidationServiceConstants;
+import org.signserver.validationservice.server.validcache.RevocationDataListener;
 
 /**
  * Base class implementing the base functionality for a certificate validator.
@@ -43,6 +50,10 @@ public abstract class BaseValidator implements IValidator {
     protected EntityManager em;
     private HashMap<String, List<Certificate>> certChainMap;
     private HashMap<Integer, Properties> issuerProperties;
+    private volatile RevocationDataListener revocationDataListener;
+
+    /** Issue time of the latest CRL seen for each issuer. */
+    private final ConcurrentMap<String, Date> latestCRLs = new ConcurrentHashMap<>();
 
     /*
      * certificate chains for all issuers
@@ -75,6 +86,74 @@ public abstract class BaseValidator implements IValidator {
         this.em = em;
     }
 
+    /**
+     * Validates multiple certificates issued by the same CA. Implementations
+     * can override this to share the revocation lookups between the
+     * certificates. This implementation validates them one by one.
+     *
+     * @param certs certificates to validate
+     * @return the validation results in the same order, with null for the
+     * certificates not supported by this validator
+     * @throws IllegalRequestException if data in the request didn't conform with the specification.
+     * @throws CryptoTokenOfflineException if the crypto token isn't online.
+     * @throws SignServerException for general failure exception during validation.
+     * @see #validate(java.security.cert.Certificate)
+     */
+    public List<Validation> validate(List<Certificate> certs) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        final List<Validation> result = new ArrayList<>(certs.size());
+        for (Certificate cert : certs) {
+            result.add(validate(cert));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the listener to notify when updated revocation data has been seen
+     * for a CA.
+     *
+     * @param listener to notify or null
+     */
+    public void setRevocationDataListener(RevocationDataListener listener) {
+        this.revocationDataListener = listener;
+    }
+
+    /**
+     * Notifies the listener, if any, that the revocation data for the CA has
+     * been updated.
+     *
+     * @param caDN subject DN of the CA
+     */
+    protected void revocationDataUpdated(String caDN) {
+        final RevocationDataListener listener = revocationDataListener;
+        if (listener != null) {
+            listener.revocationDataUpdated(caDN);
+        }
+    }
+
+    /**
+     * Should be called for each CRL retrieved. Notifies the listener if the
+     * CRL was issued after the previous one seen from the same CA.
+     *
+     * @param crl the retrieved CRL
+     */
+    protected void crlFetched(X509CRL crl) {
+        final String issuerDN = CertTools.getIssuerDN(crl);
+        final Date thisUpdate = crl.getThisUpdate();
+        while (true) {
+            final Date previous = latestCRLs.putIfAbsent(issuerDN, thisUpdate);
+            if (previous == null) {
+                return;
+            }
+            if (!thisUpdate.after(previous)) {
+                return;
+            }
+            if (latestCRLs.replace(issuerDN, previous, thisUpdate)) {
+                revocationDataUpdated(issuerDN);
+                return;
+            }
+        }
+    }
+
     /**
      * Retrieves certificate chain for certificate given
      * Certificate chain will be retrieved from configured certchain properties for issuers 
@@ -20,8 +20,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.persistence.EntityManager;
@@ -64,6 +66,21 @@ public class CRLValidator extends BaseValidator {
 
     }
 
+    /**
+     * Fetches the CRL unless it has already been fetched.
+     */
+    private X509CRL fetchCRL(URL url, CertificateFactory certFactory, Map<String, X509CRL> crls) throws SignServerException {
+        // URL.equals would resolve the host names
+        final String key = url.toExternalForm();
+        X509CRL crl = crls.get(key);
+        if (crl == null) {
+            crl = ValidationUtils.fetchCRLFromURL(url, certFactory);
+            crlFetched(crl);
+            crls.put(key, crl);
+        }
+        return crl;
+    }
+
     @Override
     public void testConnection() throws ConnectException, SignServerException {
         // TODO Test Internet connectivity, which is needed to fetch CRLs.
@@ -90,6 +107,34 @@ public class CRLValidator extends BaseValidator {
     public Validation validate(Certificate cert)
             throws IllegalRequestException, CryptoTokenOfflineException,
             SignServerException {
+        return validate(cert, new HashMap<String, X509CRL>());
+    }
+
+    /**
+     * Validates the certificates fetching each CRL only once for all of
+     * them.
+     *
+     * @param certs certificates to validate
+     * @return the validation results in the same order
+     * @throws IllegalRequestException
+     * @throws CryptoTokenOfflineException
+     * @throws SignServerException
+     */
+    @Override
+    public List<Validation> validate(List<Certificate> certs)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+            SignServerException {
+        final Map<String, X509CRL> crls = new HashMap<>();
+        final List<Validation> result = new ArrayList<>(certs.size());
+        for (Certificate cert : certs) {
+            result.add(validate(cert, crls));
+        }
+        return result;
+    }
+
+    private Validation validate(Certificate cert, Map<String, X509CRL> crls)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+            SignServerException {
 
         LOG.debug("CRL Validator's validate called with certificate " + CertTools.getSubjectDN(cert));
 
@@ -217,14 +262,14 @@ public class CRLValidator extends BaseValidator {
 
             //fetch CRLs obtained form the CDP extension of certificates
             for (URL url : cDPURLs) {
-                certsAndCRLS.add(ValidationUtils.fetchCRLFromURL(url, certFactory));
+                certsAndCRLS.add(fetchCRL(url, certFactory, crls));
             }
 
             // retrieve and add the crls from CRLPath property of issuer to certStore
             // in case all certificates have CDP extension, CRLPath is ignored
             if (atLeastOneCDPNotFound && CRLPaths != null) {
                 for (URL url : CRLPaths) {
-                    certsAndCRLS.add(ValidationUtils.fetchCRLFromURL(url, certFactory));
+                    certsAndCRLS.add(fetchCRL(url, certFactory, crls));
                 }
             }
 
@@ -13,6 +13,9 @@
 package org.signserver.validationservice.server;
 
 import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.cesecore.util.CertTools;
 import org.signserver.common.CryptoTokenOfflineException;
@@ -45,88 +48,114 @@ public class DefaultValidationService extends BaseValidationService {
     public CertificateValidationResponse validate(CertificateValidationRequest validationRequest)
             throws IllegalRequestException, CryptoTokenOfflineException,
             SignServerException {
+        return validateGroup(Collections.singletonList(validationRequest)).get(0);
+    }
+
+    /**
+     * Validates certificates from the same issuer. The certificate chain is
+     * looked up once and the certificates needing revocation checking are
+     * passed to each validator together so that it can share the lookups.
+     *
+     * @param group requests for certificates with the same issuer
+     * @return a response for each request in the same order
+     * @throws IllegalRequestException if no validator supports the issuer
+     * @throws CryptoTokenOfflineException
+     * @throws SignServerException
+     */
+    @Override
+    protected List<CertificateValidationResponse> validateGroup(List<CertificateValidationRequest> group)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+            SignServerException {
+        final CertificateValidationResponse[] responses = new CertificateValidationResponse[group.size()];
+        final String[][] validPurposes = new String[group.size()][];
+        List<Integer> pending = new ArrayList<>();
 
         // Get Certificate Chain
-        List<Certificate> cAChain = getCertificateChain(validationRequest.getCertificate());
+        List<Certificate> cAChain = getCertificateChain(group.get(0).getCertificate());
 
-        if (cAChain == null) {
-            Validation valRes = new Validation(validationRequest.getCertificate(), null,
-                    Validation.Status.ISSUERNOTSUPPORTED,
-                    "Issuer of given certificate isn't supported");
-            return new CertificateValidationResponse(valRes, null);
-        }
-        // Verify and check validity
-        Validation validation = ICertificateManager.verifyCertAndChain(
-                validationRequest.getCertificate(), cAChain);
-
-        String[] validPurposes = null;
-        if (validation.getStatus().equals(Status.VALID)) {
-
-            // Check Certificate purposes
-            if (validationRequest.getCertPurposes() != null
-                    && (validPurposes = getCertPurposeChecker().checkCertPurposes(
-                    validationRequest.getCertificate(),
-                    validationRequest.getCertPurposes())) == null) {
-                validation = new Validation(
+        for (int i = 0; i < group.size(); i++) {
+            final CertificateValidationRequest validationRequest = group.get(i);
+
+            if (cAChain == null) {
+                Validation valRes = new Validation(validationRequest.getCertificate(), null,
+                        Validation.Status.ISSUERNOTSUPPORTED,
+                        "Issuer of given certificate isn't supported");
+                responses[i] = new CertificateValidationResponse(valRes, null);
+                continue;
+            }
+
+            // Verify and check validity
+            Validation validation = chainVerificationCache.verifyCertAndChain(
+                    validationRequest.getCertificate(), cAChain);
+
+            if (validation.getStatus().equals(Status.VALID)) {
+
+                // Check Certificate purposes
+                if (validationRequest.getCertPurposes() != null
+                        && (validPurposes[i] = getCertPurposeChecker().checkCertPurposes(
                         validationRequest.getCertificate(),
-                        cAChain,
-                        Validation.Status.BADCERTPURPOSE,
-                        "Error certificate doesn't fulfill any of the specified certificate purposes in the request.");
-            } else {
-                // Check revocation of the certificate and for the entire chain.
-                validation = validationCache.get(validationRequest.getCertificate());
-                if (validation == null) {
-                    for (IValidator validator : validators.values()) {
-                        validation = validator.validate(validationRequest.getCertificate());
-                        if (validation != null) {
-                            validationCache.put(validationRequest.getCertificate(), validation);
-                            break;
-                        }
+                        validationRequest.getCertPurposes())) == null) {
+                    validation = new Validation(
+                            validationRequest.getCertificate(),
+                            cAChain,
+                            Validation.Status.BADCERTPURPOSE,
+                            "Error certificate doesn't fulfill any of the specified certificate purposes in the request.");
+                } else {
+                    // Check revocation of the certificate and for the entire chain.
+                    // Validating the requested certificate validates the whole
+                    // chain so the CA certificates are not validated separately.
+                    validation = validationCache.get(validationRequest.getCertificate());
+                    if (validation == null) {
+                        pending.add(i);
+                        continue;
                     }
                 }
+            }
+            responses[i] = new CertificateValidationResponse(validation, validPurposes[i]);
+        }
+
+        for (IValidator validator : validators.values()) {
+            if (pending.isEmpty()) {
+                break;
+            }
+            final List<Certificate> certs = new ArrayList<>(pending.size());
+            for (Integer index : pending) {
+                certs.add(group.get(index).getCertificate());
+            }
+
+            final List<Validation> validations;
+            if (validator instanceof BaseValidator) {
+                validations = ((BaseValidator) validator).validate(certs);
+            } else {
+                validations = new ArrayList<>(certs.size());
+                for (Certificate cert : certs) {
+                    validations.add(validator.validate(cert));
+                }
+            }
 
+            final List<Integer> remaining = new ArrayList<>();
+            for (int j = 0; j < pending.size(); j++) {
+                final int index = pending.get(j);
+                final Validation validation = validations.get(j);
                 if (validation == null) {
-                    throw new IllegalRequestException(
-                            "Error no validators in validation service "
-                            + workerId
-                            + " supports the issuer of given CA "
-                            + CertTools.getIssuerDN(validationRequest.getCertificate()));
+                    remaining.add(index);
+                } else {
+                    validationCache.put(group.get(index).getCertificate(), validation);
+                    responses[index] = new CertificateValidationResponse(validation, validPurposes[index]);
                 }
-                // code below was used to walk through the certificate chain and
-                // call validate on validator for each cert found in chain
-                // it is not necessary though, since the validate called on the
-                // requested certificate validates whole chain
-                // if(validation.getStatus().equals(Validation.Status.VALID)){
-                // for(ICertificate cacert : cAChain){
-                // Validation cavalidation =
-                // validationCache.get(validationRequest.getCertificate());
-                // if(cavalidation == null){
-                // for(IValidator validator : validators.values()){
-                // cavalidation = validator.validate(cacert);
-                // if(cavalidation != null){
-                // validationCache.put(cacert, cavalidation);
-                // break;
-                // }
-                // }
-                // }
-                // if(cavalidation == null){
-                // throw new
-                // IllegalRequestException("Error no validators in validation service "
-                // + workerId + " supports the issuer of given CA " +
-                // validationRequest.getCertificate().getIssuer());
-                // }
-                // if(cavalidation != null &&
-                // !cavalidation.getStatus().equals(Validation.Status.VALID)){
-                // validation = new
-                // Validation(validationRequest.getCertificate(),cAChain,Validation.Status.CAREVOKED," Error CA issuing the requested certificate was revoked",cavalidation.getRevokedDate(),cavalidation.getRevokationReason());
-                // break;
-                // }
-                // }
-                // }
             }
+            pending = remaining;
+        }
+
+        if (!pending.isEmpty()) {
+            throw new IllegalRequestException(
+                    "Error no validators in validation service "
+                    + workerId
+                    + " supports the issuer of given CA "
+                    + CertTools.getIssuerDN(group.get(pending.get(0)).getCertificate()));
         }
 
-        return new CertificateValidationResponse(validation, validPurposes);
+        return Arrays.asList(responses);
     }
 
     /**
@@ -19,6 +19,8 @@ import org.signserver.common.IllegalRequestException;
 import org.signserver.common.SignServerException;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerStatusInfo;
+import org.signserver.common.data.CertificateBatchValidationRequest;
+import org.signserver.common.data.CertificateBatchValidationResponse;
 import org.signserver.common.data.CertificateValidationRequest;
 import org.signserver.common.data.CertificateValidationResponse;
 import org.signserver.server.IServices;
@@ -30,7 +32,8 @@ import org.signserver.server.IServices;
  * the BaseValidationService.
  * 
  * It have one main method
- *  validate                 : Main method used to validate a certificate.
+ *  validate                 : Main method used to validate a certificate,
+ *                             or a batch of certificates.
  *  
  * @author Philip Vendil 13 nov 2007
  * @version $Id: IValidationService.java 7637 2016-08-15 13:22:44Z malu9369 $
@@ -58,6 +61,17 @@ public interface IValidationService {
      */
     CertificateValidationResponse validate(CertificateValidationRequest validationRequest) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException;
 
+    /**
+     * Method used to check the validation of multiple certificates at once.
+     *
+     * @param batchRequest the certificates to validate
+     * @return a response for each certificate in the same order as requested
+     * @throws IllegalRequestException if data in the request didn't conform with the specification.
+     * @throws CryptoTokenOfflineException if the crypto token isn't online.
+     * @throws SignServerException for general failure exception during validation
+     */
+    CertificateBatchValidationResponse validate(CertificateBatchValidationRequest batchRequest) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException;
+
     /**
      * Should return the actual status of the service, status could be if
      * the signer is activated or not, or equivalent for a service.
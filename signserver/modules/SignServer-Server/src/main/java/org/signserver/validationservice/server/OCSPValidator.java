@@ -190,7 +190,12 @@ public class OCSPValidator extends BaseValidator {
 
         } catch (CertPathValidatorException e) {
             LOG.debug("certificate is not valid.", e);
-            return new Validation(cert, getCertificateChain(cert), Validation.Status.DONTVERIFY, "Exception on validation. certificate causing exception : " + ((X509Certificate) e.getCertPath().getCertificates().get(e.getIndex())).getSubjectDN() + " " + e.toString());
+            final X509Certificate failingCert = (X509Certificate) e.getCertPath().getCertificates().get(e.getIndex());
+            if (!failingCert.equals(cert)) {
+                // Cached validations of other certificates under this CA are no longer trusted
+                revocationDataUpdated(CertTools.getSubjectDN(failingCert));
+            }
+            return new Validation(cert, getCertificateChain(cert), Validation.Status.DONTVERIFY, "Exception on validation. certificate causing exception : " + failingCert.getSubjectDN() + " " + e.toString());
         } catch (InvalidAlgorithmParameterException e) {
             LOG.error("Exception on validation", e);
             throw new SignServerException("Exception on validation.", e);
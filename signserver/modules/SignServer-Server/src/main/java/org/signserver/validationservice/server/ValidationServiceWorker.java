@@ -23,6 +23,7 @@ import org.signserver.common.SignServerException;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerStatus;
 import org.signserver.common.WorkerStatusInfo;
+import org.signserver.common.data.CertificateBatchValidationRequest;
 import org.signserver.common.data.CertificateValidationRequest;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
@@ -111,6 +112,8 @@ public class ValidationServiceWorker extends BaseProcessable {
 
         if (processRequest instanceof CertificateValidationRequest) {
             return validationService.validate((CertificateValidationRequest) processRequest);
+        } else if (processRequest instanceof CertificateBatchValidationRequest) {
+            return validationService.validate((CertificateBatchValidationRequest) processRequest);
         } else {
             throw new IllegalRequestException("The process request sent to validation service with ID " + workerId + " isn't supported");
         }
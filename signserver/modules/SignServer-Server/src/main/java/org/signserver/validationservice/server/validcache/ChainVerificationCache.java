@@ -0,0 +1,124 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.validationservice.server.validcache;
+
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import org.signserver.common.SignServerException;
+import org.signserver.validationservice.common.Validation;
+import org.signserver.validationservice.server.ICertificateManager;
+
+/**
+ * Remembers successful signature and validity verifications of certificates
+ * and their CA chains so that the same chain is not verified again for every
+ * request.
+ *
+ * Only VALID results are cached and they are never cached beyond the
+ * expiration of any of the certificates involved. Revocation status is not
+ * part of this verification and is instead cached by the ValidationCache.
+ *
+ * @version $Id$
+ */
+public class ChainVerificationCache {
+
+    private final long cacheTimeMS;
+    private final ExpiringCache<Validation> cache;
+
+    /**
+     * @param cacheTimeMS time in milliseconds to remember a verification, 0
+     * to disable caching
+     * @param maxSize maximum number of verifications to cache
+     */
+    public ChainVerificationCache(final long cacheTimeMS, final int maxSize) {
+        this.cacheTimeMS = cacheTimeMS;
+        this.cache = new ExpiringCache<>(maxSize);
+    }
+
+    /**
+     * Verifies the certificate and chain, using a cached result if
+     * available.
+     *
+     * @param cert to verify
+     * @param cAChain the CA chain with the issuer of the certificate first
+     * @return the verification result
+     * @throws SignServerException in case of error
+     * @see ICertificateManager#verifyCertAndChain(java.security.cert.Certificate, java.util.List)
+     */
+    public Validation verifyCertAndChain(final Certificate cert, final List<Certificate> cAChain) throws SignServerException {
+        if (cacheTimeMS <= 0) {
+            return ICertificateManager.verifyCertAndChain(cert, cAChain);
+        }
+
+        final String key = getKey(cert, cAChain);
+        final long now = System.currentTimeMillis();
+        Validation result = key == null ? null : cache.get(key, now);
+        if (result == null) {
+            result = ICertificateManager.verifyCertAndChain(cert, cAChain);
+            if (key != null && result.getStatus() == Validation.Status.VALID) {
+                long expireTime = Math.min(now + cacheTimeMS, getNotAfter(cert));
+                for (Certificate cACert : cAChain) {
+                    expireTime = Math.min(expireTime, getNotAfter(cACert));
+                }
+                cache.put(key, result, expireTime, null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of verifications answered from the cache
+     */
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * @return Number of verifications not found in the cache
+     */
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * @return Number of currently cached verifications including expired ones
+     * not yet removed
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    private static String getKey(final Certificate cert, final List<Certificate> cAChain) {
+        final StringBuilder sb = new StringBuilder();
+        final String certKey = ValidationCache.getKey(cert);
+        if (certKey == null) {
+            return null;
+        }
+        sb.append(certKey);
+        for (Certificate cACert : cAChain) {
+            final String cAKey = ValidationCache.getKey(cACert);
+            if (cAKey == null) {
+                return null;
+            }
+            sb.append(';').append(cAKey);
+        }
+        return sb.toString();
+    }
+
+    private static long getNotAfter(final Certificate cert) {
+        if (cert instanceof X509Certificate) {
+            return ((X509Certificate) cert).getNotAfter().getTime();
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,154 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.validationservice.server.validcache;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent cache with a maximum size where each entry expires at a given
+ * time and can be associated with the DNs of the CAs it depends on so that it
+ * can be invalidated when the revocation data for one of them changes.
+ *
+ * When the cache is full, expired entries are removed first and then
+ * arbitrary entries until a tenth of the maximum size is free. Making room
+ * for a batch of entries at once means that the cost of going through the
+ * entries is shared by the following puts instead of paid by each of them.
+ *
+ * @param <V> type of cached values
+ * @version $Id$
+ */
+class ExpiringCache<V> {
+
+    private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final int evictionBatchSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize maximum number of entries to keep
+     */
+    ExpiringCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.evictionBatchSize = Math.max(1, maxSize / 10);
+    }
+
+    /**
+     * @param key to look up
+     * @param now current time in milliseconds
+     * @return The value if cached and not expired, otherwise null
+     */
+    V get(final String key, final long now) {
+        final Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            if (entry.expireTime > now) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            entries.remove(key, entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds or replaces a value.
+     *
+     * @param key to store the value under
+     * @param value to store
+     * @param expireTime time in milliseconds after which the value is no
+     * longer returned
+     * @param dns subject DNs of the CAs the value depends on or null
+     */
+    void put(final String key, final V value, final long expireTime, final Set<String> dns) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            makeRoom(System.currentTimeMillis());
+        }
+        entries.put(key, new Entry<>(value, expireTime, dns == null ? Collections.<String>emptySet() : dns));
+    }
+
+    /**
+     * Removes all entries depending on the CA.
+     *
+     * @param dn subject DN of the CA
+     * @return number of entries removed
+     */
+    int invalidate(final String dn) {
+        int removed = 0;
+        final Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().dns.contains(dn)) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    private void makeRoom(final long now) {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expireTime <= now) {
+                it.remove();
+            }
+        }
+        it = entries.values().iterator();
+        while (entries.size() > maxSize - evictionBatchSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireTime;
+        private final Set<String> dns;
+
+        Entry(final V value, final long expireTime, final Set<String> dns) {
+            this.value = value;
+            this.expireTime = expireTime;
+            this.dns = dns;
+        }
+    }
+}
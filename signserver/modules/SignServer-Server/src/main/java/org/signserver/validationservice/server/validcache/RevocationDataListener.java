@@ -0,0 +1,31 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.validationservice.server.validcache;
+
+/**
+ * Listener notified by the validators when they have seen updated revocation
+ * data for a CA, so that cached validations depending on it are no longer
+ * used.
+ *
+ * @version $Id$
+ */
+public interface RevocationDataListener {
+
+    /**
+     * Called when newer revocation data for certificates issued by the CA has
+     * been retrieved.
+     *
+     * @param caDN subject DN of the CA
+     */
+    void revocationDataUpdated(String caDN);
+}
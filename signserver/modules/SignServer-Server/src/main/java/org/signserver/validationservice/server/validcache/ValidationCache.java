@@ -13,9 +13,11 @@
 package org.signserver.validationservice.server.validcache;
 
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import org.apache.log4j.Logger;
 import org.cesecore.util.CertTools;
 
 import org.signserver.validationservice.common.Validation;
@@ -25,14 +27,25 @@ import org.signserver.validationservice.common.Validation;
  * configured amount of time. It only caches certificate
  * of a given issuers.
  *
+ * Validations are looked up by the certificate fingerprint and the cache can
+ * be accessed concurrently. At most a configured number of validations are
+ * kept. A validation is removed before it expires when the revocation data
+ * for the issuer or any other CA in its chain is updated.
+ *
  * @author Philip Vendil 26 nov 2007
  * @version $Id: ValidationCache.java 7308 2016-05-17 09:46:40Z malu9369 $
  */
-public class ValidationCache {
+public class ValidationCache implements RevocationDataListener {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ValidationCache.class);
+
+    /** Default maximum number of cached validations. */
+    public static final int DEFAULT_MAX_SIZE = 10000;
 
-    private Set<String> cachedIssuersDNSet = new HashSet<>();
-    private ValidationMap validationMap = new ValidationMap();
-    private TimeQueue timeQueue;
+    private final Set<String> cachedIssuersDNSet = new HashSet<>();
+    private final long cacheTimeMS;
+    private final ExpiringCache<Validation> cache;
 
     /**
      * Constructor creating a ValidationCache
@@ -41,8 +54,20 @@ public class ValidationCache {
      * @param cacheTimeMS time in milliseconds of how long it should be cached.
      */
     public ValidationCache(List<String> cachedIssuersDN, long cacheTimeMS) {
+        this(cachedIssuersDN, cacheTimeMS, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor creating a ValidationCache
+     * 
+     * @param cachedIssuersDN a list of issuer DNs that should be cached.
+     * @param cacheTimeMS time in milliseconds of how long it should be cached.
+     * @param maxSize maximum number of validations to cache
+     */
+    public ValidationCache(List<String> cachedIssuersDN, long cacheTimeMS, int maxSize) {
         cachedIssuersDNSet.addAll(cachedIssuersDN);
-        timeQueue = new TimeQueue(validationMap, cacheTimeMS);
+        this.cacheTimeMS = cacheTimeMS;
+        this.cache = new ExpiringCache<>(maxSize);
     }
 
     /**
@@ -53,9 +78,19 @@ public class ValidationCache {
      * @param validation the validation to add.
      */
     public void put(Certificate cert, Validation validation) {
-        if (cachedIssuersDNSet.contains(CertTools.getIssuerDN(cert))) {
-            timeQueue.pushNew(cert);
-            validationMap.put(cert, validation);
+        final String issuerDN = CertTools.getIssuerDN(cert);
+        if (cachedIssuersDNSet.contains(issuerDN)) {
+            final String key = getKey(cert);
+            if (key != null) {
+                final Set<String> dns = new HashSet<>();
+                dns.add(issuerDN);
+                if (validation.getCAChain() != null) {
+                    for (Certificate cACert : validation.getCAChain()) {
+                        dns.add(CertTools.getSubjectDN(cACert));
+                    }
+                }
+                cache.put(key, validation, System.currentTimeMillis() + cacheTimeMS, dns);
+            }
         }
     }
 
@@ -65,7 +100,60 @@ public class ValidationCache {
      * @return the validation if it exists otherwise null.
      */
     public Validation get(Certificate cert) {
-        timeQueue.popOld();
-        return validationMap.get(cert);
+        if (!cachedIssuersDNSet.contains(CertTools.getIssuerDN(cert))) {
+            return null;
+        }
+        final String key = getKey(cert);
+        return key == null ? null : cache.get(key, System.currentTimeMillis());
+    }
+
+    @Override
+    public void revocationDataUpdated(String caDN) {
+        final int removed = cache.invalidate(caDN);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Revocation data updated for " + caDN + ", removed " + removed + " cached validations");
+        }
+    }
+
+    /**
+     * @return Number of lookups for cached issuers answered from the cache
+     */
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * @return Number of lookups for cached issuers not found in the cache
+     */
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * @return Number of validations removed as the cache was full
+     */
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    /**
+     * @return Number of currently cached validations including expired ones
+     * not yet removed
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * @return The hex encoded SHA-256 fingerprint of the certificate or null
+     * if it could not be encoded
+     */
+    static String getKey(Certificate cert) {
+        try {
+            return CertTools.getSHA256FingerprintAsString(cert.getEncoded());
+        } catch (CertificateEncodingException e) {
+            LOG.debug("Unable to encode certificate: " + e.getMessage());
+            return null;
+        }
     }
 }
@@ -0,0 +1,61 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the LRUCache class.
+ *
+ * @version $Id$
+ */
+public class LRUCacheUnitTest {
+
+    /**
+     * Tests that only the least recently used entry is evicted when the cache
+     * is full.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        final LRUCache<String, Integer> instance = new LRUCache<>(2);
+        instance.put("a", 1);
+        instance.put("b", 2);
+
+        // Use "a" so that "b" becomes the least recently used
+        assertEquals(Integer.valueOf(1), instance.get("a"));
+        instance.put("c", 3);
+
+        assertEquals("size", 2, instance.size());
+        assertEquals(Integer.valueOf(1), instance.get("a"));
+        assertNull("evicted", instance.get("b"));
+        assertEquals(Integer.valueOf(3), instance.get("c"));
+    }
+
+    /**
+     * Tests that replacing the value of a cached key does not evict anything.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testReplaceDoesNotEvict() throws Exception {
+        final LRUCache<String, Integer> instance = new LRUCache<>(2);
+        instance.put("a", 1);
+        instance.put("b", 2);
+        instance.put("a", 3);
+
+        assertEquals("size", 2, instance.size());
+        assertEquals(Integer.valueOf(3), instance.get("a"));
+        assertEquals(Integer.valueOf(2), instance.get("b"));
+    }
+}
@@ -0,0 +1,125 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.signserver.statusrepo.StatusListener;
+import org.signserver.statusrepo.StatusRepositorySessionLocal;
+import org.signserver.statusrepo.common.NoSuchPropertyException;
+import org.signserver.statusrepo.common.StatusEntry;
+import org.signserver.statusrepo.common.StatusName;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the StatusEntryCache class.
+ *
+ * @version $Id$
+ */
+public class StatusEntryCacheUnitTest {
+
+    /**
+     * Tests that the entry is only read once from the repository and that the
+     * cache registers as listener.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testReadOnce() throws Exception {
+        final MockStatusRepositorySession session = new MockStatusRepositorySession();
+        final long now = System.currentTimeMillis();
+        session.entry = new StatusEntry(now, "true", now + 60000);
+        final StatusEntryCache instance = new StatusEntryCache();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("value", "true", instance.getValidEntry(session, StatusName.TEST_PROPERTY1).getValue());
+        }
+        assertEquals("reads", 1, session.reads);
+        assertEquals("listeners", 1, session.listeners.size());
+    }
+
+    /**
+     * Tests that an update replaces the cached entry.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testUpdated() throws Exception {
+        final MockStatusRepositorySession session = new MockStatusRepositorySession();
+        final long now = System.currentTimeMillis();
+        session.entry = new StatusEntry(now, "true", 0);
+        final StatusEntryCache instance = new StatusEntryCache();
+        instance.getValidEntry(session, StatusName.TEST_PROPERTY1);
+
+        session.listeners.get(0).statusUpdated(StatusName.TEST_PROPERTY1, new StatusEntry(now + 1, "false", 0));
+        assertEquals("updated value", "false", instance.getValidEntry(session, StatusName.TEST_PROPERTY1).getValue());
+
+        // A late notification of an older update is ignored
+        session.listeners.get(0).statusUpdated(StatusName.TEST_PROPERTY1, new StatusEntry(now, "old", 0));
+        assertEquals("newest value", "false", instance.getValidEntry(session, StatusName.TEST_PROPERTY1).getValue());
+        assertEquals("reads", 1, session.reads);
+    }
+
+    /**
+     * Tests that an expired entry is not returned.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testExpired() throws Exception {
+        final MockStatusRepositorySession session = new MockStatusRepositorySession();
+        final long now = System.currentTimeMillis();
+        session.entry = new StatusEntry(now, "true", now + 60000);
+        final StatusEntryCache instance = new StatusEntryCache();
+        instance.getValidEntry(session, StatusName.TEST_PROPERTY1);
+
+        session.listeners.get(0).statusUpdated(StatusName.TEST_PROPERTY1, new StatusEntry(now + 1, "true", now - 1));
+        assertNull("expired", instance.getValidEntry(session, StatusName.TEST_PROPERTY1));
+    }
+
+    private static class MockStatusRepositorySession implements StatusRepositorySessionLocal {
+        private final List<StatusListener> listeners = new ArrayList<>();
+        private StatusEntry entry;
+        private int reads;
+
+        @Override
+        public StatusEntry getValidEntry(String key) throws NoSuchPropertyException {
+            reads++;
+            return entry;
+        }
+
+        @Override
+        public void update(String key, String value) throws NoSuchPropertyException {
+            throw new UnsupportedOperationException("Not implemented");
+        }
+
+        @Override
+        public void update(String key, String value, long expiration) throws NoSuchPropertyException {
+            throw new UnsupportedOperationException("Not implemented");
+        }
+
+        @Override
+        public Map<String, StatusEntry> getAllEntries() {
+            throw new UnsupportedOperationException("Not implemented");
+        }
+
+        @Override
+        public void addListener(StatusListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeListener(StatusListener listener) {
+            listeners.remove(listener);
+        }
+    }
+}
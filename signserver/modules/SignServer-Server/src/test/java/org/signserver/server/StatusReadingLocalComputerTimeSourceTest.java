@@ -29,6 +29,7 @@ import org.signserver.server.log.LogMap;
 import org.signserver.statusrepo.common.NoSuchPropertyException;
 import org.signserver.statusrepo.common.StatusEntry;
 import org.signserver.statusrepo.common.StatusName;
+import org.signserver.statusrepo.StatusListener;
 import org.signserver.statusrepo.StatusRepositorySessionLocal;
 
 /**
@@ -758,6 +759,16 @@ public class StatusReadingLocalComputerTimeSourceTest extends TestCase {
             throw new UnsupportedOperationException("Not implemented");
         }
 
+        @Override
+        public void addListener(StatusListener listener) {
+            // Values never change
+        }
+
+        @Override
+        public void removeListener(StatusListener listener) {
+            // Values never change
+        }
+
     }
 
     /**
@@ -0,0 +1,152 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.cryptotokens;
+
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.crypto.KeyGenerator;
+import junit.framework.TestCase;
+import org.cesecore.util.query.QueryCriteria;
+import org.cesecore.util.query.clauses.Order;
+import static org.signserver.common.SignServerConstants.TOKEN_ENTRY_FIELDS_KEY_ALIAS;
+
+/**
+ * Unit tests for the TokenEntryIndex and the paged search in
+ * CryptoTokenHelper using it.
+ *
+ * @version $Id$
+ */
+public class TokenEntryIndexTest extends TestCase {
+
+    private static final char[] PASSWORD = "foo123".toCharArray();
+
+    private KeyStore createKeyStore(final int entries) throws Exception {
+        final KeyStore ks = KeyStore.getInstance("JCEKS");
+        ks.load(null, PASSWORD);
+        for (int i = 0; i < entries; i++) {
+            addSecretKey(ks, String.format("key%04d", i));
+        }
+        return ks;
+    }
+
+    private void addSecretKey(final KeyStore ks, final String alias) throws Exception {
+        final KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        ks.setEntry(alias, new KeyStore.SecretKeyEntry(generator.generateKey()), new KeyStore.PasswordProtection(PASSWORD));
+    }
+
+    private static List<String> aliases(final List<TokenEntry> entries) {
+        final List<String> result = new ArrayList<>(entries.size());
+        for (TokenEntry entry : entries) {
+            result.add(entry.getAlias());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Tests that added and removed entries are picked up on refresh.
+     * @throws Exception in case of error
+     */
+    public void testRefreshAfterChanges() throws Exception {
+        final KeyStore ks = createKeyStore(3);
+        final TokenEntryIndex instance = new TokenEntryIndex(ks);
+
+        List<TokenEntry> entries = instance.getEntries();
+        assertEquals("[key0000, key0001, key0002]", aliases(entries).toString());
+        assertEquals(TokenEntry.TYPE_SECRETKEY_ENTRY, entries.get(0).getType());
+
+        addSecretKey(ks, "added");
+        ks.deleteEntry("key0001");
+        entries = instance.getEntries();
+        assertEquals("[added, key0000, key0002]", aliases(entries).toString());
+    }
+
+    /**
+     * Tests that replaced aliases are picked up even if the number of aliases
+     * and the sum of their hash codes are unchanged.
+     * @throws Exception in case of error
+     */
+    public void testRefreshAfterSameSizeChange() throws Exception {
+        final KeyStore ks = createKeyStore(0);
+        addSecretKey(ks, "ab");
+        addSecretKey(ks, "cd");
+        final TokenEntryIndex instance = new TokenEntryIndex(ks);
+        assertEquals("[ab, cd]", aliases(instance.getEntries()).toString());
+
+        ks.deleteEntry("ab");
+        ks.deleteEntry("cd");
+        addSecretKey(ks, "ad");
+        addSecretKey(ks, "cb");
+        assertEquals("ab".hashCode() + "cd".hashCode(), "ad".hashCode() + "cb".hashCode());
+        assertEquals("[ad, cb]", aliases(instance.getEntries()).toString());
+    }
+
+    /**
+     * Tests that the entries are returned in the enumeration order of the
+     * key store.
+     * @throws Exception in case of error
+     */
+    public void testEntriesInKeyStoreOrder() throws Exception {
+        final KeyStore ks = createKeyStore(20);
+        final TokenEntryIndex instance = new TokenEntryIndex(ks);
+        instance.getEntries();
+        ks.deleteEntry("key0007");
+        addSecretKey(ks, "added");
+
+        final List<String> actual = new ArrayList<>();
+        for (TokenEntry entry : instance.getEntries()) {
+            actual.add(entry.getAlias());
+        }
+        assertEquals(Collections.list(ks.aliases()), actual);
+    }
+
+    /**
+     * Tests that the returned entries are fresh instances so that additional
+     * data added to one result is not visible in the next.
+     * @throws Exception in case of error
+     */
+    public void testEntriesAreFreshInstances() throws Exception {
+        final TokenEntryIndex instance = new TokenEntryIndex(createKeyStore(1));
+        final TokenEntry first = instance.getEntries().get(0);
+        first.setInfo(Collections.singletonMap("foo", "bar"));
+        assertNull(instance.getEntries().get(0).getInfo());
+    }
+
+    /**
+     * Tests paging through the entries in descending order with additional
+     * data included.
+     * @throws Exception in case of error
+     */
+    public void testSearchPagedDescending() throws Exception {
+        final JavaKeyStoreDelegator delegator = new JavaKeyStoreDelegator(createKeyStore(25));
+        final QueryCriteria qc = QueryCriteria.create();
+        qc.add(new Order(TOKEN_ENTRY_FIELDS_KEY_ALIAS, Order.Value.DESC));
+
+        final TokenSearchResults page1 = CryptoTokenHelper.searchTokenEntries(delegator, 0, 10, qc, true, null, PASSWORD);
+        assertEquals(10, page1.getEntries().size());
+        assertEquals("key0024", page1.getEntries().get(0).getAlias());
+        assertEquals("key0015", page1.getEntries().get(9).getAlias());
+        assertTrue(page1.isMoreEntriesAvailable());
+        for (TokenEntry entry : page1.getEntries()) {
+            assertEquals("AES", entry.getInfo().get(CryptoTokenHelper.INFO_KEY_ALGORITHM));
+        }
+
+        final TokenSearchResults page3 = CryptoTokenHelper.searchTokenEntries(delegator, 20, 10, qc, false, null, PASSWORD);
+        assertEquals(5, page3.getEntries().size());
+        assertEquals("key0000", page3.getEntries().get(4).getAlias());
+        assertFalse(page3.isMoreEntriesAvailable());
+    }
+}
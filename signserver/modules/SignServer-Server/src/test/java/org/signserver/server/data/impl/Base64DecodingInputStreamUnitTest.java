@@ -0,0 +1,106 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.bouncycastle.util.encoders.Base64;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the Base64DecodingInputStream class.
+ *
+ * @version $Id$
+ */
+public class Base64DecodingInputStreamUnitTest {
+
+    private static byte[] decode(final byte[] encoded, final int chunkSize) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new Base64DecodingInputStream(new ByteArrayInputStream(encoded))) {
+            final byte[] buffer = new byte[chunkSize];
+            int n;
+            while (true) {
+                if (chunkSize == 1) {
+                    n = in.read();
+                    if (n == -1) {
+                        break;
+                    }
+                    out.write(n);
+                } else {
+                    n = in.read(buffer, 0, buffer.length);
+                    if (n == -1) {
+                        break;
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertMalformed(final String encoded) throws Exception {
+        try {
+            decode(encoded.getBytes(StandardCharsets.ISO_8859_1), 100);
+            fail("Should have failed: " + encoded);
+        } catch (Base64DecodingInputStream.MalformedBase64Exception expected) { // NOPMD
+            // OK
+        }
+    }
+
+    /**
+     * Tests decoding data of different lengths reading different sizes at a
+     * time.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testDecode() throws Exception {
+        final Random random = new Random(4711);
+        for (int length : new int[] {0, 1, 2, 3, 4, 5, 100, 10001}) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+            final byte[] encoded = Base64.encode(data);
+            for (int chunkSize : new int[] {1, 2, 3, 4, 7, 8192}) {
+                assertArrayEquals("length " + length + " in chunks of " + chunkSize, data, decode(encoded, chunkSize));
+            }
+        }
+    }
+
+    /**
+     * Tests that white space and line breaks are ignored.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testDecode_whiteSpace() throws Exception {
+        final byte[] data = "Hello, world!".getBytes(StandardCharsets.US_ASCII);
+        final String encoded = Base64.toBase64String(data);
+        final String withWhiteSpace = " " + encoded.substring(0, 5) + "\r\n" + encoded.substring(5, 11) + "\t\n" + encoded.substring(11) + "\r\n";
+        assertArrayEquals(data, decode(withWhiteSpace.getBytes(StandardCharsets.US_ASCII), 3));
+    }
+
+    /**
+     * Tests that malformed data is rejected.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testDecode_malformed() throws Exception {
+        assertMalformed("SGVsbG8$");
+        assertMalformed("SGVsbG8");
+        assertMalformed("SGVsbA=x");
+        assertMalformed("SGVsbA==SGVs");
+        assertMalformed("SGV\u00e9bG8=");
+    }
+}
@@ -0,0 +1,113 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ContentEncodingUtils class.
+ *
+ * @version $Id$
+ */
+public class ContentEncodingUtilsUnitTest {
+
+    private static byte[] encode(final byte[] data, final String encoding) throws Exception {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (OutputStream out = ContentEncodingUtils.createEncodingStream(bout, encoding, 6)) {
+            out.write(data);
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * Tests that data encoded with gzip and deflate is decoded to the same.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testEncodeAndDecode() throws Exception {
+        final byte[] data = new byte[100000];
+        new Random(4711).nextBytes(data);
+
+        for (String encoding : new String[] {"gzip", "deflate", "x-gzip", " GZIP "}) {
+            final byte[] encoded = encode(data, encoding);
+            try (InputStream in = ContentEncodingUtils.createDecodingStream(new ByteArrayInputStream(encoded), encoding, 100)) {
+                assertArrayEquals(encoding, data, IOUtils.toByteArray(in));
+            }
+        }
+    }
+
+    /**
+     * Tests that the stream is returned as is without content encoding.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testNotEncoded() throws Exception {
+        final InputStream in = new ByteArrayInputStream(new byte[1]);
+        assertSame(in, ContentEncodingUtils.createDecodingStream(in, null, 100));
+        assertSame(in, ContentEncodingUtils.createDecodingStream(in, "identity", 100));
+        assertFalse(ContentEncodingUtils.isEncoded(""));
+        assertTrue(ContentEncodingUtils.isSupported("identity"));
+        assertTrue(ContentEncodingUtils.isSupported("deflate"));
+        assertFalse(ContentEncodingUtils.isSupported("br"));
+    }
+
+    /**
+     * Tests that decompressing content with a too high compression ratio
+     * fails with a size limit exception.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRatioExceeded() throws Exception {
+        // 10 MB of zeros compresses more than 100 times
+        final byte[] encoded = encode(new byte[10 * 1024 * 1024], "gzip");
+
+        try (InputStream in = ContentEncodingUtils.createDecodingStream(new ByteArrayInputStream(encoded), "gzip", 100)) {
+            IOUtils.toByteArray(in);
+            fail("Should have failed");
+        } catch (FileUploadBase.FileUploadIOException expected) {
+            assertTrue("cause: " + expected.getCause(), expected.getCause() instanceof FileUploadBase.SizeLimitExceededException);
+        }
+
+        // But is accepted with a higher ratio
+        try (InputStream in = ContentEncodingUtils.createDecodingStream(new ByteArrayInputStream(encoded), "gzip", 10000)) {
+            assertEquals(10 * 1024 * 1024, IOUtils.toByteArray(in).length);
+        }
+    }
+
+    /**
+     * Tests the choice of response encoding from the Accept-Encoding header.
+     */
+    @Test
+    public void testSelectEncoding() {
+        assertNull(ContentEncodingUtils.selectEncoding(null));
+        assertNull(ContentEncodingUtils.selectEncoding(""));
+        assertNull(ContentEncodingUtils.selectEncoding("identity"));
+        assertNull(ContentEncodingUtils.selectEncoding("br"));
+        assertEquals("gzip", ContentEncodingUtils.selectEncoding("gzip, deflate, br"));
+        assertEquals("gzip", ContentEncodingUtils.selectEncoding("deflate, gzip"));
+        assertEquals("deflate", ContentEncodingUtils.selectEncoding("deflate"));
+        assertEquals("deflate", ContentEncodingUtils.selectEncoding("gzip;q=0.5, deflate"));
+        assertEquals("deflate", ContentEncodingUtils.selectEncoding("gzip;q=0, *"));
+        assertEquals("gzip", ContentEncodingUtils.selectEncoding("*"));
+        assertNull(ContentEncodingUtils.selectEncoding("gzip;q=0, deflate;q=0"));
+        assertNull(ContentEncodingUtils.selectEncoding("*;q=0"));
+    }
+}
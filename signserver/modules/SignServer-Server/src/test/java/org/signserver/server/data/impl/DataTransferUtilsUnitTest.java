@@ -0,0 +1,76 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+import org.junit.Test;
+import org.signserver.common.data.ReadableData;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the DataTransferUtils class.
+ *
+ * @version $Id$
+ */
+public class DataTransferUtilsUnitTest {
+
+    private static final File TMP_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+    private static byte[] createData(final int size) {
+        final byte[] data = new byte[size];
+        new Random(4711).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Tests writing data held in memory.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testInMemory() throws Exception {
+        final byte[] data = createData(100000);
+        try (TemporarlyWritableData writable = new TemporarlyWritableData(false, TMP_DIR)) {
+            writable.getAsOutputStream().write(data);
+            final ReadableData readable = writable.toReadableData();
+            assertFalse("in memory", readable.isFile());
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals("length", data.length, DataTransferUtils.transfer(readable, out));
+            assertArrayEquals("data", data, out.toByteArray());
+        }
+    }
+
+    /**
+     * Tests writing data backed by a file to a plain stream, with sizes
+     * below, at and above the buffer size.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFileToStream() throws Exception {
+        final int[] sizes = new int[] {0, 1, DataTransferUtils.BUFFER_SIZE, 3 * DataTransferUtils.BUFFER_SIZE + 17};
+        for (int size : sizes) {
+            final byte[] data = createData(size);
+            try (TemporarlyWritableData writable = new TemporarlyWritableData(true, TMP_DIR)) {
+                writable.getAsOutputStream().write(data);
+                final ReadableData readable = writable.toReadableData();
+                assertTrue("file", readable.isFile());
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals("length of " + size, data.length, DataTransferUtils.transfer(readable, out));
+                assertArrayEquals("data of " + size, data, out.toByteArray());
+            }
+        }
+    }
+}
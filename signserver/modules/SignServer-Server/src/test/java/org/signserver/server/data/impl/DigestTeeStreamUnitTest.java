@@ -0,0 +1,115 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the DigestTeeInputStream and DigestTeeOutputStream classes.
+ *
+ * @version $Id$
+ */
+public class DigestTeeStreamUnitTest {
+
+    private static byte[] createData() {
+        final byte[] data = new byte[100000];
+        new Random(4711).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Tests that all digests are computed while the data is read.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testInputStreamMultipleDigests() throws Exception {
+        final byte[] data = createData();
+        final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+
+        final byte[] read;
+        try (DigestTeeInputStream in = new DigestTeeInputStream(new ByteArrayInputStream(data), sha256, sha1)) {
+            final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            bout.write(in.read());
+            IOUtils.copy(in, bout);
+            read = bout.toByteArray();
+            assertTrue("end of stream", in.isEndOfStream());
+        }
+
+        assertArrayEquals("data", data, read);
+        assertArrayEquals("SHA-256", MessageDigest.getInstance("SHA-256").digest(data), sha256.digest());
+        assertArrayEquals("SHA-1", MessageDigest.getInstance("SHA-1").digest(data), sha1.digest());
+    }
+
+    /**
+     * Tests that skipped and remaining data is also digested.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testInputStreamSkipAndReadRemaining() throws Exception {
+        final byte[] data = createData();
+        final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+
+        try (DigestTeeInputStream in = new DigestTeeInputStream(new ByteArrayInputStream(data), sha256)) {
+            assertEquals("skipped", 10000, in.skip(10000));
+            assertEquals("read", 100, in.read(new byte[100]));
+            assertFalse("not end of stream", in.isEndOfStream());
+            in.readRemaining();
+            assertTrue("end of stream", in.isEndOfStream());
+            assertEquals("skip at end", 0, in.skip(10));
+        }
+
+        assertArrayEquals("SHA-256", MessageDigest.getInstance("SHA-256").digest(data), sha256.digest());
+    }
+
+    /**
+     * Tests that all digests are computed while the data is written.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testOutputStreamMultipleDigests() throws Exception {
+        final byte[] data = createData();
+        final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        final MessageDigest sha512 = MessageDigest.getInstance("SHA-512");
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+
+        try (OutputStream out = new DigestTeeOutputStream(bout, sha256, sha512)) {
+            out.write(data[0]);
+            out.write(data, 1, data.length - 1);
+        }
+
+        assertArrayEquals("data", data, bout.toByteArray());
+        assertArrayEquals("SHA-256", MessageDigest.getInstance("SHA-256").digest(data), sha256.digest());
+        assertArrayEquals("SHA-512", MessageDigest.getInstance("SHA-512").digest(data), sha512.digest());
+    }
+
+    /**
+     * Tests that no digests is also supported.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testNoDigests() throws Exception {
+        final byte[] data = createData();
+        try (InputStream in = new DigestTeeInputStream(new ByteArrayInputStream(data))) {
+            assertArrayEquals("data", data, IOUtils.toByteArray(in));
+        }
+    }
+}
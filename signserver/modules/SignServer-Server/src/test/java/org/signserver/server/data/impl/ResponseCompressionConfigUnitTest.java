@@ -0,0 +1,91 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Test;
+import org.signserver.common.WorkerConfig;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ResponseCompressionConfig class.
+ *
+ * @version $Id$
+ */
+public class ResponseCompressionConfigUnitTest {
+
+    /**
+     * Tests the default configuration.
+     */
+    @Test
+    public void testDefaults() {
+        final List<String> errors = new LinkedList<>();
+        final ResponseCompressionConfig instance = ResponseCompressionConfig.create(new WorkerConfig(), errors);
+
+        assertEquals("errors", "[]", errors.toString());
+        assertTrue("enabled", instance.isEnabled());
+        assertEquals("level", 6, instance.getLevel());
+        assertEquals("threshold", 1024, instance.getThreshold());
+        assertTrue(instance.isCompressible("text/xml"));
+        assertTrue(instance.isCompressible("text/plain; charset=UTF-8"));
+        assertTrue(instance.isCompressible("application/XML"));
+        assertTrue(instance.isCompressible("application/atom+xml"));
+        assertTrue(instance.isCompressible("application/json"));
+        assertFalse(instance.isCompressible("application/pdf"));
+        assertFalse(instance.isCompressible("application/octet-stream"));
+        assertFalse(instance.isCompressible(null));
+    }
+
+    /**
+     * Tests a configured level, threshold and content types.
+     */
+    @Test
+    public void testConfigured() {
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty("HTTP_RESPONSE_COMPRESSION_LEVEL", "9");
+        config.setProperty("HTTP_RESPONSE_COMPRESSION_THRESHOLD", "0");
+        config.setProperty("HTTP_RESPONSE_COMPRESSIBLE_TYPES", "application/pkcs7-signature, application/*");
+        final List<String> errors = new LinkedList<>();
+        final ResponseCompressionConfig instance = ResponseCompressionConfig.create(config, errors);
+
+        assertEquals("errors", "[]", errors.toString());
+        assertEquals("level", 9, instance.getLevel());
+        assertEquals("threshold", 0, instance.getThreshold());
+        assertTrue(instance.isCompressible("application/pkcs7-signature"));
+        assertTrue(instance.isCompressible("application/pdf"));
+        assertFalse(instance.isCompressible("text/xml"));
+    }
+
+    /**
+     * Tests that compression can be disabled and that illegal values are
+     * reported.
+     */
+    @Test
+    public void testDisabledAndErrors() {
+        WorkerConfig config = new WorkerConfig();
+        config.setProperty("HTTP_RESPONSE_COMPRESSION_LEVEL", "0");
+        List<String> errors = new LinkedList<>();
+        assertFalse("disabled", ResponseCompressionConfig.create(config, errors).isEnabled());
+        assertEquals("errors", "[]", errors.toString());
+
+        config = new WorkerConfig();
+        config.setProperty("HTTP_RESPONSE_COMPRESSION_LEVEL", "10");
+        config.setProperty("HTTP_RESPONSE_COMPRESSION_THRESHOLD", "-1");
+        errors = new LinkedList<>();
+        ResponseCompressionConfig.create(config, errors);
+        assertEquals("errors", 2, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("HTTP_RESPONSE_COMPRESSION_LEVEL"));
+        assertTrue(errors.get(1), errors.get(1).contains("HTTP_RESPONSE_COMPRESSION_THRESHOLD"));
+    }
+}
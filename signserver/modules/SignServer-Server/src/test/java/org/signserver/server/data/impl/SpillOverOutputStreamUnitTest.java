@@ -0,0 +1,211 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.signserver.common.data.ReadableData;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SpillOverOutputStream and BufferPool classes and their
+ * use in TemporarlyWritableData.
+ *
+ * @version $Id$
+ */
+public class SpillOverOutputStreamUnitTest {
+
+    private static final File TMP_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+    private static byte[] createData(final int size) {
+        final byte[] data = new byte[size];
+        new Random(4711).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Tests that data below the threshold is kept in memory and that the
+     * chunks are returned to the pool on release.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testInMemory() throws Exception {
+        final BufferPool pool = new BufferPool(10 * BufferPool.CHUNK_SIZE, 100 * BufferPool.CHUNK_SIZE);
+        final byte[] data = createData(3 * BufferPool.CHUNK_SIZE + 17);
+        final SpillOverOutputStream out = new SpillOverOutputStream(pool, TMP_DIR, "test-");
+        out.write(data[0]);
+        out.write(data, 1, data.length - 1);
+        out.close();
+
+        assertNull("no file", out.getFile());
+        assertEquals("size", data.length, out.size());
+        assertEquals("chunks in use", 4 * BufferPool.CHUNK_SIZE, pool.getUsed());
+        assertArrayEquals("byte array", data, out.toByteArray());
+        assertArrayEquals("input stream", data, IOUtils.toByteArray(out.toInputStream()));
+
+        out.release();
+        assertEquals("chunks returned", 0, pool.getUsed());
+    }
+
+    /**
+     * Tests that the data is moved to a file when it grows larger than the
+     * threshold.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testSpillOverThreshold() throws Exception {
+        final BufferPool pool = new BufferPool(2 * BufferPool.CHUNK_SIZE, 100 * BufferPool.CHUNK_SIZE);
+        final byte[] data = createData(5 * BufferPool.CHUNK_SIZE);
+        final SpillOverOutputStream out = new SpillOverOutputStream(pool, TMP_DIR, "test-");
+        try {
+            for (int i = 0; i < data.length; i += 1000) {
+                out.write(data, i, Math.min(1000, data.length - i));
+            }
+            out.close();
+
+            assertNotNull("file", out.getFile());
+            assertEquals("size", data.length, out.size());
+            assertEquals("chunks returned", 0, pool.getUsed());
+            assertArrayEquals("data", data, Files.readAllBytes(out.getFile().toPath()));
+        } finally {
+            if (out.getFile() != null) {
+                Files.deleteIfExists(out.getFile().toPath());
+            }
+        }
+    }
+
+    /**
+     * Tests that the data is moved to a file when the budget is used up even
+     * if it is below the threshold.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testSpillOverBudget() throws Exception {
+        final BufferPool pool = new BufferPool(10 * BufferPool.CHUNK_SIZE, 3 * BufferPool.CHUNK_SIZE);
+        final SpillOverOutputStream other = new SpillOverOutputStream(pool, TMP_DIR, "test-");
+        other.write(createData(2 * BufferPool.CHUNK_SIZE));
+
+        final byte[] data = createData(2 * BufferPool.CHUNK_SIZE);
+        final SpillOverOutputStream out = new SpillOverOutputStream(pool, TMP_DIR, "test-");
+        try {
+            out.write(data);
+            out.close();
+
+            assertNotNull("file", out.getFile());
+            assertNull("other in memory", other.getFile());
+            assertEquals("only other in use", 2 * BufferPool.CHUNK_SIZE, pool.getUsed());
+            assertArrayEquals("data", data, Files.readAllBytes(out.getFile().toPath()));
+        } finally {
+            other.release();
+            if (out.getFile() != null) {
+                Files.deleteIfExists(out.getFile().toPath());
+            }
+        }
+        assertEquals("chunks returned", 0, pool.getUsed());
+    }
+
+    /**
+     * Tests that TemporarlyWritableData reads the data from the file it was
+     * moved to and removes the file on close.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testTemporarlyWritableDataSpilled() throws Exception {
+        final BufferPool pool = new BufferPool(BufferPool.CHUNK_SIZE, 100 * BufferPool.CHUNK_SIZE);
+        final byte[] data = createData(3 * BufferPool.CHUNK_SIZE);
+        final File file;
+        try (TemporarlyWritableData writable = new TemporarlyWritableData(false, TMP_DIR, pool)) {
+            writable.getAsOutputStream().write(data);
+            final ReadableData readable = writable.toReadableData();
+
+            assertTrue("file", readable.isFile());
+            assertEquals("length", data.length, readable.getLength());
+            assertArrayEquals("input stream", data, IOUtils.toByteArray(readable.getAsInputStream()));
+            assertArrayEquals("byte array", data, readable.getAsByteArray());
+            file = readable.getAsFile();
+            assertTrue("file exists", file.exists());
+        }
+        assertFalse("file removed", file.exists());
+        assertEquals("chunks returned", 0, pool.getUsed());
+    }
+
+    /**
+     * Tests that streams reading the data in memory can not be used after
+     * the chunks have been released.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testReleaseInvalidatesStreams() throws Exception {
+        final BufferPool pool = new BufferPool(10 * BufferPool.CHUNK_SIZE, 100 * BufferPool.CHUNK_SIZE);
+        final SpillOverOutputStream out = new SpillOverOutputStream(pool, TMP_DIR, "test-");
+        out.write(createData(2 * BufferPool.CHUNK_SIZE));
+        out.close();
+
+        final InputStream in = out.toInputStream();
+        assertEquals("first byte", createData(1)[0] & 0xff, in.read());
+        out.release();
+        try {
+            in.read();
+            fail("Should have thrown IOException");
+        } catch (IOException expected) { // NOPMD
+            // OK
+        }
+        try {
+            out.toInputStream();
+            fail("Should have thrown IllegalStateException");
+        } catch (IllegalStateException expected) { // NOPMD
+            // OK
+        }
+    }
+
+    /**
+     * Tests that the budget of chunks never released is given back after
+     * the stream has been garbage collected.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testAbandonedChunksReclaimed() throws Exception {
+        final BufferPool pool = new BufferPool(10 * BufferPool.CHUNK_SIZE, 100 * BufferPool.CHUNK_SIZE);
+        writeWithoutRelease(pool);
+        assertEquals("chunks in use", 2 * BufferPool.CHUNK_SIZE, pool.getUsed());
+
+        for (int i = 0; i < 100 && pool.getUsed() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals("chunks reclaimed", 0, pool.getUsed());
+    }
+
+    private static void writeWithoutRelease(final BufferPool pool) throws IOException {
+        final SpillOverOutputStream out = new SpillOverOutputStream(pool, TMP_DIR, "test-");
+        out.write(createData(2 * BufferPool.CHUNK_SIZE));
+        out.close();
+    }
+
+    /**
+     * Tests that released chunks are reused.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testChunksReused() throws Exception {
+        final BufferPool pool = new BufferPool(BufferPool.DEFAULT_THRESHOLD, BufferPool.DEFAULT_BUDGET);
+        final byte[] chunk = pool.acquire();
+        pool.release(chunk);
+        assertSame("reused", chunk, pool.acquire());
+    }
+}
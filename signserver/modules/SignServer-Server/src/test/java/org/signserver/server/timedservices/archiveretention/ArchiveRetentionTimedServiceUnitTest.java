@@ -0,0 +1,132 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.timedservices.archiveretention;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.signserver.common.ServiceContext;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.WorkerType;
+import org.signserver.server.ServicesImpl;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ArchiveRetentionTimedService class.
+ *
+ * @version $Id$
+ */
+public class ArchiveRetentionTimedServiceUnitTest {
+
+    private static final int DUMMY_WORKERID = 42;
+
+    /**
+     * Tests that the retention period is required and that illegal values
+     * gives configuration errors.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testConfigErrors() throws Exception {
+        MockedService instance = createService(new WorkerConfig());
+        assertTrue("missing retention", getFatalErrors(instance).contains("Must specify RETENTION_DAYS"));
+
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(WorkerConfig.TYPE, WorkerType.TIMED_SERVICE.name());
+        config.setProperty(ArchiveRetentionTimedService.RETENTION_DAYS, "0");
+        config.setProperty(ArchiveRetentionTimedService.BATCH_SIZE, "many");
+        config.setProperty(ArchiveRetentionTimedService.MAX_BATCHES, "-1");
+        config.setProperty(ArchiveRetentionTimedService.BATCH_PAUSE, "-1");
+        instance = createService(config);
+        final List<String> errors = getFatalErrors(instance);
+        assertTrue("retention: " + errors, errors.contains("Illegal value for property RETENTION_DAYS: 0"));
+        assertTrue("batch size: " + errors, errors.contains("Illegal value for property BATCH_SIZE: many"));
+        assertTrue("max batches: " + errors, errors.contains("Illegal value for property MAX_BATCHES: -1"));
+        assertTrue("batch pause: " + errors, errors.contains("Illegal value for property BATCH_PAUSE: -1"));
+
+        config.setProperty(ArchiveRetentionTimedService.RETENTION_DAYS, "30");
+        config.setProperty(ArchiveRetentionTimedService.BATCH_SIZE, "10");
+        config.setProperty(ArchiveRetentionTimedService.MAX_BATCHES, "2");
+        config.setProperty(ArchiveRetentionTimedService.BATCH_PAUSE, "0");
+        instance = createService(config);
+        assertEquals("no errors", Collections.<String>emptyList(), getFatalErrors(instance));
+    }
+
+    /**
+     * Tests that entries older than the retention period are removed in
+     * batches until there are no more.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRemoveUntilNoMore() throws Exception {
+        final MockedService instance = createService(30, 10, 5);
+        instance.remaining = 25;
+        final long start = System.currentTimeMillis();
+        instance.work(new ServiceContext(new ServicesImpl()));
+        final long end = System.currentTimeMillis();
+
+        assertEquals("batches", 3, instance.befores.size());
+        assertEquals("remaining", 0, instance.remaining);
+        final long before = instance.befores.get(0);
+        assertTrue("before", before >= start - TimeUnit.DAYS.toMillis(30) && before <= end - TimeUnit.DAYS.toMillis(30));
+    }
+
+    /**
+     * Tests that no more than the maximum number of batches are removed each
+     * time the service runs.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testMaxBatches() throws Exception {
+        final MockedService instance = createService(1, 10, 2);
+        instance.remaining = 100;
+        instance.work(new ServiceContext(new ServicesImpl()));
+
+        assertEquals("batches", 2, instance.befores.size());
+        assertEquals("remaining", 80, instance.remaining);
+    }
+
+    private static MockedService createService(final int retentionDays, final int batchSize, final int maxBatches) {
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(ArchiveRetentionTimedService.RETENTION_DAYS, String.valueOf(retentionDays));
+        config.setProperty(ArchiveRetentionTimedService.BATCH_SIZE, String.valueOf(batchSize));
+        config.setProperty(ArchiveRetentionTimedService.MAX_BATCHES, String.valueOf(maxBatches));
+        config.setProperty(ArchiveRetentionTimedService.BATCH_PAUSE, "0");
+        return createService(config);
+    }
+
+    private static MockedService createService(final WorkerConfig config) {
+        final MockedService instance = new MockedService();
+        instance.init(DUMMY_WORKERID, config, null, null);
+        return instance;
+    }
+
+    private static List<String> getFatalErrors(final ArchiveRetentionTimedService instance) {
+        return instance.getStatus(Collections.<String>emptyList(), new ServicesImpl()).getFatalErrors();
+    }
+
+    /** Service removing from a counter instead of the archive. */
+    private static class MockedService extends ArchiveRetentionTimedService {
+        private final List<Long> befores = new ArrayList<>();
+        private int remaining;
+
+        @Override
+        protected int removeBatch(final ServiceContext context, final long before, final int max) {
+            befores.add(before);
+            final int removed = Math.min(max, remaining);
+            remaining -= removed;
+            return removed;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.tsa;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.signserver.common.SignServerException;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ExternalTimeStampTokenFetcher class using local
+ * stand-in TSAs.
+ *
+ * @version $Id$
+ */
+public class ExternalTimeStampTokenFetcherUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ExternalTimeStampTokenFetcherUnitTest.class);
+
+    private static KeyPair tsaKeyPair;
+    private static X509Certificate tsaCertificate;
+
+    private final List<StandInTSA> tsas = new ArrayList<>();
+
+    /** Executor for the hedged requests instead of the managed executor. */
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        tsaKeyPair = kpg.generateKeyPair();
+
+        final long now = System.currentTimeMillis();
+        final X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                new X500Name("CN=Stand-in TSA"), BigInteger.ONE, new Date(now - 3600000L),
+                new Date(now + 3600000L), new X500Name("CN=Stand-in TSA"), tsaKeyPair.getPublic());
+        builder.addExtension(Extension.extendedKeyUsage, true, new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+        tsaCertificate = new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(tsaKeyPair.getPrivate())));
+    }
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        for (StandInTSA tsa : tsas) {
+            tsa.stop();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that hedged requests are not sent by default.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testNoHedgingByDefault() throws Exception {
+        LOG.info("testNoHedgingByDefault");
+        assertEquals("hedge percentile", 0, ExternalTimeStampTokenFetcher.Settings.DEFAULT.getHedgePercentile());
+    }
+
+    /**
+     * Tests that the fetcher is kept per worker and replaced when the
+     * configuration changes or the worker is reloaded.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testGetInstance() throws Exception {
+        LOG.info("testGetInstance");
+        final String url = "http://tsa.example.com/tsa";
+        final ExternalTimeStampTokenFetcher first = ExternalTimeStampTokenFetcher.getInstance(4711, url, "user", "foo123", settings(0, 3));
+        assertSame("same configuration", first, ExternalTimeStampTokenFetcher.getInstance(4711, url, "user", "foo123", settings(0, 3)));
+        assertNotSame("other worker", first, ExternalTimeStampTokenFetcher.getInstance(4712, url, "user", "foo123", settings(0, 3)));
+
+        final ExternalTimeStampTokenFetcher second = ExternalTimeStampTokenFetcher.getInstance(4711, url, "user", "bar123", settings(0, 3));
+        assertNotSame("changed password", first, second);
+
+        ExternalTimeStampTokenFetcher.removeInstance(4711);
+        assertNotSame("reloaded", second, ExternalTimeStampTokenFetcher.getInstance(4711, url, "user", "bar123", settings(0, 3)));
+        ExternalTimeStampTokenFetcher.removeInstance(4711);
+        ExternalTimeStampTokenFetcher.removeInstance(4712);
+    }
+
+    /**
+     * Tests that a token is fetched and matches the imprint.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFetchToken() throws Exception {
+        LOG.info("testFetchToken");
+        final StandInTSA tsa = startTSA();
+        final ExternalTimeStampTokenFetcher instance = createFetcher(settings(0, 3), tsa);
+
+        final byte[] imprint = new byte[32];
+        Arrays.fill(imprint, (byte) 7);
+        final TimeStampToken token = instance.fetchToken(imprint, TSPAlgorithms.SHA256, null);
+        assertArrayEquals("imprint", imprint, token.getTimeStampInfo().getMessageImprintDigest());
+
+        instance.fetchToken(imprint, TSPAlgorithms.SHA256, null);
+        assertEquals("requests", 2, tsa.requests.get());
+    }
+
+    /**
+     * Tests that the next TSA is used when the first fails and that the
+     * failing TSA is skipped after the configured number of failures.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFailover() throws Exception {
+        LOG.info("testFailover");
+        final StandInTSA failing = startTSA();
+        failing.failing = true;
+        final StandInTSA working = startTSA();
+        final ExternalTimeStampTokenFetcher instance = createFetcher(settings(0, 2), failing, working);
+
+        for (int i = 0; i < 4; i++) {
+            assertNotNull("token", instance.fetchToken(new byte[20], TSPAlgorithms.SHA1, null));
+        }
+        assertEquals("failing TSA only tried until threshold", 2, failing.requests.get());
+        assertEquals("working TSA", 4, working.requests.get());
+        assertFalse("failing TSA unavailable", instance.getEndpoints().get(0).isAvailable());
+        assertTrue("working TSA available", instance.getEndpoints().get(1).isAvailable());
+    }
+
+    /**
+     * Tests that an exception is thrown if no TSA returns a token.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testAllFailing() throws Exception {
+        LOG.info("testAllFailing");
+        final StandInTSA failing1 = startTSA();
+        failing1.failing = true;
+        final StandInTSA failing2 = startTSA();
+        failing2.failing = true;
+        final ExternalTimeStampTokenFetcher instance = createFetcher(settings(0, 3), failing1, failing2);
+
+        try {
+            instance.fetchToken(new byte[20], TSPAlgorithms.SHA1, null);
+            fail("Should have thrown SignServerException");
+        } catch (SignServerException expected) { // NOPMD
+            // OK
+        }
+        assertEquals("first TSA", 1, failing1.requests.get());
+        assertEquals("second TSA", 1, failing2.requests.get());
+    }
+
+    /**
+     * Tests that a hedged request is sent to the next TSA when the first is
+     * slower than usual.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testHedgedRequest() throws Exception {
+        LOG.info("testHedgedRequest");
+        final StandInTSA slow = startTSA();
+        final StandInTSA fast = startTSA();
+        final ExternalTimeStampTokenFetcher instance = createFetcher(settings(90, 3), slow, fast);
+
+        // Learn the usual response times, any of them could be hedged
+        for (int i = 0; i < 20; i++) {
+            instance.fetchToken(new byte[20], TSPAlgorithms.SHA1, null);
+        }
+        final int hedgedBefore = fast.requests.get();
+
+        slow.delay = 3000;
+        final long start = System.currentTimeMillis();
+        assertNotNull("token", instance.fetchToken(new byte[20], TSPAlgorithms.SHA1, null));
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("hedged request", hedgedBefore + 1, fast.requests.get());
+        assertTrue("answered by hedged request: " + elapsed, elapsed < 2000);
+    }
+
+    private static ExternalTimeStampTokenFetcher.Settings settings(final int hedgePercentile, final int failureThreshold) {
+        return new ExternalTimeStampTokenFetcher.Settings(5000, 10000, hedgePercentile, failureThreshold, 60000);
+    }
+
+    private ExternalTimeStampTokenFetcher createFetcher(final ExternalTimeStampTokenFetcher.Settings settings,
+            final StandInTSA... tsas) {
+        final List<URL> urls = new ArrayList<>();
+        for (StandInTSA tsa : tsas) {
+            urls.add(tsa.url);
+        }
+        return new ExternalTimeStampTokenFetcher(urls, null, null, settings, executor);
+    }
+
+    private StandInTSA startTSA() throws Exception {
+        final StandInTSA tsa = new StandInTSA();
+        tsas.add(tsa);
+        return tsa;
+    }
+
+    /**
+     * Minimal RFC 3161 TSA over HTTP.
+     */
+    private static class StandInTSA implements HttpHandler {
+        private final HttpServer server;
+        private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+        private final URL url;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger serial = new AtomicInteger();
+        private volatile boolean failing;
+        private volatile long delay;
+
+        StandInTSA() throws Exception {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/tsa", this);
+            server.setExecutor(serverExecutor);
+            server.start();
+            url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/tsa");
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            try {
+                final byte[] requestBytes = readFully(exchange.getRequestBody());
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                if (failing) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                final TimeStampTokenGenerator tokenGen = new TimeStampTokenGenerator(
+                        new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withRSA", tsaKeyPair.getPrivate(), tsaCertificate),
+                        new JcaDigestCalculatorProviderBuilder().build().get(
+                                new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1)),
+                        new ASN1ObjectIdentifier("1.2.3.4"));
+                final TimeStampResponse response = new TimeStampResponseGenerator(tokenGen, TSPAlgorithms.ALLOWED)
+                        .generate(new TimeStampRequest(requestBytes), BigInteger.valueOf(serial.incrementAndGet()), new Date());
+                final byte[] responseBytes = response.getEncoded();
+                exchange.getResponseHeaders().put("Content-Type", Collections.singletonList("application/timestamp-reply"));
+                exchange.sendResponseHeaders(200, responseBytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(responseBytes);
+                }
+            } catch (Exception ex) {
+                LOG.error("Stand-in TSA failed", ex);
+                exchange.sendResponseHeaders(500, -1);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        void stop() {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+
+        private static byte[] readFully(final InputStream in) throws IOException {
+            final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                bout.write(buffer, 0, n);
+            }
+            return bout.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.validationservice.server;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.util.CertTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.common.IllegalRequestException;
+import org.signserver.common.SignServerException;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.data.CertificateBatchValidationRequest;
+import org.signserver.common.data.CertificateBatchValidationResponse;
+import org.signserver.common.data.CertificateValidationRequest;
+import org.signserver.common.data.CertificateValidationResponse;
+import org.signserver.validationservice.common.Validation;
+import org.signserver.validationservice.common.ValidationServiceConstants;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the batch validation in the BaseValidationService class.
+ *
+ * @version $Id$
+ */
+public class BaseValidationServiceUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(BaseValidationServiceUnitTest.class);
+
+    private static KeyPair keyPair;
+
+    private static int serial = 1;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(1024);
+        keyPair = kpg.generateKeyPair();
+    }
+
+    /**
+     * Tests that the certificates are validated in groups by issuer and that
+     * the responses are in the requested order.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testGroupedByIssuer() throws Exception {
+        LOG.info("testGroupedByIssuer");
+        final MockValidationService instance = createInstance(new WorkerConfig());
+
+        final List<CertificateValidationRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            requests.add(new CertificateValidationRequest(createCert("CN=Leaf " + i, "CN=CA " + (i % 3)), null));
+        }
+        final CertificateBatchValidationResponse response = instance.validate(new CertificateBatchValidationRequest(requests));
+
+        assertEquals("responses", requests.size(), response.getResponses().size());
+        for (int i = 0; i < requests.size(); i++) {
+            assertSame("response " + i, requests.get(i).getCertificate(), response.getResponses().get(i).getValidation().getCertificate());
+        }
+        assertEquals("groups", 3, instance.groups.size());
+        for (List<CertificateValidationRequest> group : instance.groups) {
+            assertEquals("group size", 3, group.size());
+            final String issuer = CertTools.getIssuerDN(group.get(0).getCertificate());
+            for (CertificateValidationRequest request : group) {
+                assertEquals("same issuer", issuer, CertTools.getIssuerDN(request.getCertificate()));
+            }
+        }
+    }
+
+    /**
+     * Tests that a batch larger than BATCHMAXSIZE is rejected.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testTooLarge() throws Exception {
+        LOG.info("testTooLarge");
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(ValidationServiceConstants.VALIDATIONSERVICE_BATCHMAXSIZE, "2");
+        final MockValidationService instance = createInstance(config);
+
+        final List<CertificateValidationRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(new CertificateValidationRequest(createCert("CN=Leaf " + i, "CN=CA"), null));
+        }
+        try {
+            instance.validate(new CertificateBatchValidationRequest(requests));
+            fail("Should have thrown IllegalRequestException");
+        } catch (IllegalRequestException expected) { // NOPMD
+            // OK
+        }
+        assertEquals("limit", 2, instance.validate(new CertificateBatchValidationRequest(requests.subList(0, 2))).getResponses().size());
+    }
+
+    /**
+     * Tests that an exception from validating one of the groups is thrown
+     * as is.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFailure() throws Exception {
+        LOG.info("testFailure");
+        final MockValidationService instance = createInstance(new WorkerConfig());
+        final Certificate failing = createCert("CN=Leaf 2", "CN=CA 2");
+        instance.failing = failing;
+
+        final List<CertificateValidationRequest> requests = new ArrayList<>();
+        requests.add(new CertificateValidationRequest(createCert("CN=Leaf 1", "CN=CA 1"), null));
+        requests.add(new CertificateValidationRequest(failing, null));
+        try {
+            instance.validate(new CertificateBatchValidationRequest(requests));
+            fail("Should have thrown IllegalRequestException");
+        } catch (IllegalRequestException expected) {
+            assertEquals("message", "Not supported", expected.getMessage());
+        }
+    }
+
+    private static MockValidationService createInstance(final WorkerConfig config) {
+        final MockValidationService instance = new MockValidationService();
+        instance.init(1, config, null);
+        return instance;
+    }
+
+    private static X509Certificate createCert(final String subjectDN, final String issuerDN) throws Exception {
+        final long now = System.currentTimeMillis();
+        final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                new X500Name(issuerDN), BigInteger.valueOf(serial++), new Date(now - 3600000L),
+                new Date(now + 3600000L), new X500Name(subjectDN), keyPair.getPublic());
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+    }
+
+    private static class MockValidationService extends BaseValidationService {
+        private final List<List<CertificateValidationRequest>> groups = Collections.synchronizedList(new ArrayList<List<CertificateValidationRequest>>());
+        private volatile Certificate failing;
+
+        @Override
+        protected List<CertificateValidationResponse> validateGroup(List<CertificateValidationRequest> group) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+            groups.add(group);
+            return super.validateGroup(group);
+        }
+
+        @Override
+        public CertificateValidationResponse validate(CertificateValidationRequest validationRequest) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+            if (validationRequest.getCertificate().equals(failing)) {
+                throw new IllegalRequestException("Not supported");
+            }
+            return new CertificateValidationResponse(new Validation(validationRequest.getCertificate(), null, Validation.Status.VALID, "Valid"), null);
+        }
+    }
+}
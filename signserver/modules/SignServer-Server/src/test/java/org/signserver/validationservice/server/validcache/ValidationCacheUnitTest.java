@@ -0,0 +1,198 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.validationservice.server.validcache;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.util.CertTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.signserver.validationservice.common.Validation;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ValidationCache and ChainVerificationCache classes.
+ *
+ * @version $Id$
+ */
+public class ValidationCacheUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ValidationCacheUnitTest.class);
+
+    private static final String CA_DN = "CN=Cache Test CA";
+    private static final String OTHER_CA_DN = "CN=Other Test CA";
+
+    private static KeyPair caKeyPair;
+    private static KeyPair otherKeyPair;
+    private static X509Certificate caCert;
+    private static List<Certificate> caChain;
+
+    private static int serial = 1;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(1024);
+        caKeyPair = kpg.generateKeyPair();
+        otherKeyPair = kpg.generateKeyPair();
+        caCert = createCert(CA_DN, CA_DN, caKeyPair.getPublic(), caKeyPair.getPrivate(), true);
+        caChain = Collections.<Certificate>singletonList(caCert);
+    }
+
+    /**
+     * Tests that lookups are counted and that certificates from issuers not
+     * configured are not cached.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        LOG.info("testHitsAndMisses");
+        final ValidationCache instance = new ValidationCache(Arrays.asList(CertTools.stringToBCDNString(CA_DN)), 60000);
+        final X509Certificate cert = createCert("CN=Leaf 1", CA_DN, otherKeyPair.getPublic(), caKeyPair.getPrivate());
+        final X509Certificate otherCert = createCert("CN=Leaf 2", OTHER_CA_DN, otherKeyPair.getPublic(), otherKeyPair.getPrivate());
+
+        assertNull("not cached yet", instance.get(cert));
+        instance.put(cert, new Validation(cert, caChain, Validation.Status.VALID, "valid"));
+        instance.put(otherCert, new Validation(otherCert, null, Validation.Status.VALID, "valid"));
+
+        assertEquals("cached", Validation.Status.VALID, instance.get(cert).getStatus());
+        assertNull("other issuer not cached", instance.get(otherCert));
+        assertEquals("hits", 1, instance.getHits());
+        assertEquals("misses", 1, instance.getMisses());
+        assertEquals("size", 1, instance.getSize());
+    }
+
+    /**
+     * Tests that no more than the maximum number of validations are kept.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testMaxSize() throws Exception {
+        LOG.info("testMaxSize");
+        final ValidationCache instance = new ValidationCache(Arrays.asList(CertTools.stringToBCDNString(CA_DN)), 60000, 2);
+        for (int i = 0; i < 5; i++) {
+            final X509Certificate cert = createCert("CN=Leaf " + i, CA_DN, otherKeyPair.getPublic(), caKeyPair.getPrivate());
+            instance.put(cert, new Validation(cert, caChain, Validation.Status.VALID, "valid"));
+            assertTrue("size " + instance.getSize(), instance.getSize() <= 2);
+        }
+        assertEquals("evictions", 3, instance.getEvictions());
+    }
+
+    /**
+     * Tests that a tenth of the entries are evicted at once when the cache
+     * is full.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testEvictsBatch() throws Exception {
+        LOG.info("testEvictsBatch");
+        final ValidationCache instance = new ValidationCache(Arrays.asList(CertTools.stringToBCDNString(CA_DN)), 60000, 20);
+        for (int i = 0; i < 21; i++) {
+            final X509Certificate cert = createCert("CN=Leaf " + i, CA_DN, otherKeyPair.getPublic(), caKeyPair.getPrivate());
+            instance.put(cert, new Validation(cert, caChain, Validation.Status.VALID, "valid"));
+        }
+        assertEquals("evictions", 2, instance.getEvictions());
+        assertEquals("size", 19, instance.getSize());
+    }
+
+    /**
+     * Tests that validations are removed when the revocation data of a CA in
+     * the chain is updated but not for other CAs.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRevocationDataUpdated() throws Exception {
+        LOG.info("testRevocationDataUpdated");
+        final ValidationCache instance = new ValidationCache(Arrays.asList(CertTools.stringToBCDNString(CA_DN)), 60000);
+        final X509Certificate cert = createCert("CN=Leaf 1", CA_DN, otherKeyPair.getPublic(), caKeyPair.getPrivate());
+        instance.put(cert, new Validation(cert, caChain, Validation.Status.VALID, "valid"));
+
+        instance.revocationDataUpdated(CertTools.stringToBCDNString(OTHER_CA_DN));
+        assertNotNull("other CA updated", instance.get(cert));
+
+        instance.revocationDataUpdated(CertTools.getSubjectDN(caCert));
+        assertNull("CA updated", instance.get(cert));
+    }
+
+    /**
+     * Tests that successful verifications are remembered but not failed ones.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testChainVerification() throws Exception {
+        LOG.info("testChainVerification");
+        final ChainVerificationCache instance = new ChainVerificationCache(60000, 10);
+        final X509Certificate cert = createCert("CN=Leaf 1", CA_DN, otherKeyPair.getPublic(), caKeyPair.getPrivate());
+        final X509Certificate badCert = createCert("CN=Leaf 2", CA_DN, otherKeyPair.getPublic(), otherKeyPair.getPrivate());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("valid", Validation.Status.VALID, instance.verifyCertAndChain(cert, caChain).getStatus());
+            assertEquals("not verifying", Validation.Status.DONTVERIFY, instance.verifyCertAndChain(badCert, caChain).getStatus());
+        }
+        assertEquals("hits", 2, instance.getHits());
+        assertEquals("misses", 4, instance.getMisses());
+        assertEquals("size", 1, instance.getSize());
+    }
+
+    /**
+     * Tests that nothing is remembered when disabled.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testChainVerificationDisabled() throws Exception {
+        LOG.info("testChainVerificationDisabled");
+        final ChainVerificationCache instance = new ChainVerificationCache(0, 10);
+        final X509Certificate cert = createCert("CN=Leaf 1", CA_DN, otherKeyPair.getPublic(), caKeyPair.getPrivate());
+
+        assertEquals("valid", Validation.Status.VALID, instance.verifyCertAndChain(cert, caChain).getStatus());
+        assertEquals("valid", Validation.Status.VALID, instance.verifyCertAndChain(cert, caChain).getStatus());
+        assertEquals("size", 0, instance.getSize());
+        assertEquals("hits", 0, instance.getHits());
+    }
+
+    private static X509Certificate createCert(final String subjectDN, final String issuerDN, final PublicKey publicKey, final PrivateKey signerKey) throws Exception {
+        return createCert(subjectDN, issuerDN, publicKey, signerKey, false);
+    }
+
+    private static X509Certificate createCert(final String subjectDN, final String issuerDN, final PublicKey publicKey, final PrivateKey signerKey, final boolean ca) throws Exception {
+        final long now = System.currentTimeMillis();
+        final JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                new X500Name(issuerDN), BigInteger.valueOf(serial++), new Date(now - 3600000L),
+                new Date(now + 3600000L), new X500Name(subjectDN), publicKey);
+        if (ca) {
+            builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        }
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(signerKey)));
+    }
+}
@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.signserver.server.cryptotokens;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStoreException;
@@ -30,6 +31,7 @@ import org.cesecore.util.query.QueryCriteria;
 import org.junit.Before;
 import org.junit.Test;
 import org.signserver.common.ArchiveDataVO;
+import org.signserver.common.ArchiveExportHandler;
 import org.signserver.common.ArchiveMetadata;
 import org.signserver.common.AuthorizedClient;
 import org.signserver.common.CertificateMatchingRule;
@@ -51,6 +53,7 @@ import org.signserver.common.UnsupportedCryptoTokenParameter;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerIdentifier;
 import org.signserver.common.WorkerStatus;
+import org.signserver.common.WorkerStatusListener;
 import org.signserver.common.WorkerType;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
 import org.signserver.server.IServices;
@@ -512,6 +515,66 @@ public class InternalKeystoreCryptoTokenTest extends CryptoTokenTestBase {
                     public boolean isKeyGenerationDisabled() {
                         return false;
                     }
+
+                    @Override
+                    public List<WorkerStatus> getStatuses(List<WorkerIdentifier> wis) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public List<? extends AuditLogEntry> selectAuditLogsFromCursor(AdminInfo adminInfo, String cursor, int max, QueryCriteria criteria, String logDeviceId) throws AuthorizationDeniedException {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public void refreshStatus(WorkerIdentifier wi) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public void addStatusListener(WorkerStatusListener listener) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public void removeStatusListener(WorkerStatusListener listener) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public List<ArchiveMetadata> searchArchiveAfter(String after, int max, QueryCriteria criteria, boolean includeData) throws AuthorizationDeniedException {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public List<ArchiveMetadata> searchArchiveAfter(AdminInfo adminInfo, String after, int max, QueryCriteria criteria, boolean includeData) throws AuthorizationDeniedException {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public int exportArchiveWithIds(AdminInfo adminInfo, List<String> uniqueIds, ArchiveExportHandler handler) throws AuthorizationDeniedException, IOException {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public void warmUpWorkers(List<Integer> workerIds) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public void warmUpWorker(int workerId, boolean selfTest) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public int getWarmUpPending() {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public int removeArchiveEntriesBefore(long before, int max) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
                 };
             }
             return workerSession;
@@ -535,6 +598,11 @@ public class InternalKeystoreCryptoTokenTest extends CryptoTokenTestBase {
                 throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
             }
 
+            @Override
+            public boolean incrementIfWithinLimit(String keyHash, long limit, int count) {
+                throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+            }
+
             @Override
             public boolean isWithinLimit(String keyHash, long keyUsageLimit) {
                 throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
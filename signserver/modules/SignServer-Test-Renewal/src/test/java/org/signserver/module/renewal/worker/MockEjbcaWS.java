@@ -17,6 +17,7 @@ import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.jws.WebService;
 import org.apache.log4j.Logger;
 import org.bouncycastle.util.encoders.Base64;
@@ -88,6 +89,7 @@ public class MockEjbcaWS {
     private boolean findUserCalled;
     private boolean editUserCalled;
     private boolean pkcs10RequestCalled;
+    private final AtomicInteger pkcs10RequestCount = new AtomicInteger();
     private boolean authenticationFail;
     
     private Map<UserMatchEq,List<UserDataVOWS>> findUserResults
@@ -268,6 +270,7 @@ public class MockEjbcaWS {
         checkAuth();
         System.out.println(">certificateRequest");
         pkcs10RequestCalled = true;
+        pkcs10RequestCount.incrementAndGet();
         final CertificateResponse result = new CertificateResponse();
         LOG.debug("PKCS10 from user '"+username+"'.");
 	result.setResponseType(responseType);
@@ -489,6 +492,7 @@ public class MockEjbcaWS {
     public void resetCalls() {
         editUserCalled = false;
         pkcs10RequestCalled = false;
+        pkcs10RequestCount.set(0);
     }
 
     public boolean isFindUserCalled() {
@@ -499,6 +503,10 @@ public class MockEjbcaWS {
         return pkcs10RequestCalled;
     }
 
+    public int getPkcs10RequestCount() {
+        return pkcs10RequestCount.get();
+    }
+
     public boolean isEditUserCalled() {
         return editUserCalled;
     }
@@ -93,6 +93,9 @@ public class RenewalWorkerTest extends AbstractTestCase {
     public static final int SIGNERID_6102 = 6102;
     public static final String SIGNER_6102 = "Signer_6102";
     public static final String SIGNER_6102_ENDENTITY = "Signer_6102_endentity";
+    public static final int SIGNERID_6103 = 6103;
+    public static final String SIGNER_6103 = "Signer_6103";
+    public static final String SIGNER_6103_ENDENTITY = "Signer_6103_endentity";
     public static final int CRYPTOWORKER_6200_ID = 6200;
     public static final String CRYPTOWORKER_6200 = "CryptoToken_6200";
     private static final int RENEWALSERVICE_ID = 6109;
@@ -732,6 +735,66 @@ public class RenewalWorkerTest extends AbstractTestCase {
         doRenewalFirstTime();
     }
 
+    /**
+     * Tests renewal of multiple workers in one request.
+     * @throws Exception
+     */
+    public void test22renewalMultipleWorkers() throws Exception {
+        try {
+            // Setup workers
+            addWorkers();
+            addSigner(SIGNERID_6103, SIGNER_6103, SIGNER_6103_ENDENTITY);
+            getWorkerSession().setWorkerProperty(WORKERID, "MAXCONCURRENTRENEWALS", "2");
+            getWorkerSession().reloadConfiguration(WORKERID);
+
+            // Setup EJBCA end entities, but not for the unknown worker
+            mockSetupEjbcaSearchResult(SIGNER_6102_ENDENTITY, SIGNER_6103_ENDENTITY);
+
+            // Test starts here
+            final Properties reqProperties = new Properties();
+            reqProperties.setProperty(RenewalWorkerProperties.REQUEST_WORKER,
+                    SIGNER_6102 + ", " + SIGNER_6103 + ",_non_existing_worker_");
+            reqProperties.setProperty(RenewalWorkerProperties.REQUEST_AUTHCODE,
+                    "foo123");
+            final GenericPropertiesRequest request = new GenericPropertiesRequest(
+                    reqProperties);
+            final GenericPropertiesResponse response
+                    = (GenericPropertiesResponse) getProcessSession().process(
+                        new WorkerIdentifier(WORKERID), request, new RemoteRequestContext());
+            final Properties responseProperties = response.getProperties();
+            LOG.info("Response: " + responseProperties);
+
+            // Overall result is failure as one of the workers failed
+            assertEquals("result", RenewalWorkerProperties.RESPONSE_RESULT_FAILURE,
+                    responseProperties.getProperty(RenewalWorkerProperties.RESPONSE_RESULT));
+            assertTrue("message mentions failed worker",
+                    responseProperties.getProperty(RenewalWorkerProperties.RESPONSE_MESSAGE)
+                            .contains("_non_existing_worker_"));
+
+            // Result for each worker
+            assertEquals("result " + SIGNER_6102, RenewalWorkerProperties.RESPONSE_RESULT_OK,
+                    responseProperties.getProperty(RenewalWorkerProperties.RESPONSE_RESULT_PREFIX + SIGNER_6102));
+            assertEquals("result " + SIGNER_6103, RenewalWorkerProperties.RESPONSE_RESULT_OK,
+                    responseProperties.getProperty(RenewalWorkerProperties.RESPONSE_RESULT_PREFIX + SIGNER_6103));
+            assertEquals("result unknown worker", RenewalWorkerProperties.RESPONSE_RESULT_FAILURE,
+                    responseProperties.getProperty(RenewalWorkerProperties.RESPONSE_RESULT_PREFIX + "_non_existing_worker_"));
+            assertEquals("requested certificates", 2, mockEjbcaWs.getPkcs10RequestCount());
+
+            // Both renewed workers should have new certificates for their keys
+            for (int signerId : new int[] {SIGNERID_6102, SIGNERID_6103}) {
+                assertNull("no NEXTCERTSIGNKEY", getWorkerSession().getCurrentWorkerConfig(signerId)
+                        .getProperty("NEXTCERTSIGNKEY"));
+                final X509Certificate cert = (X509Certificate) getWorkerSession()
+                        .getSignerCertificate(new WorkerIdentifier(signerId));
+                assertNotNull("certificate", cert);
+                assertTrue("chain contains cert", getWorkerSession()
+                        .getSignerCertificateChain(new WorkerIdentifier(signerId)).contains(cert));
+            }
+        } finally {
+            removeWorker(SIGNERID_6103);
+        }
+    }
+
     private void doRenewalFirstTimeUsingCLI() throws Exception {
         LOG.info(">doRenewalFirstTimeUsingCLI");
         
@@ -970,22 +1033,28 @@ public class RenewalWorkerTest extends AbstractTestCase {
     
     
     private void mockSetupEjbcaSearchResult() {
-        // Setup EJBCA end entity
-        final UserDataVOWS user1 = new UserDataVOWS();
-        user1.setUsername(SIGNER_6102_ENDENTITY);
-        user1.setPassword("some-password-123");
-        user1.setSubjectDN("CN=" + SIGNER_6102_ENDENTITY
-                + ",O=SignServer Testing,C=SE");
-        user1.setEndEntityProfileName("EMPTY");
-        user1.setCertificateProfileName("ENDENTITY");
-        user1.setCaName("SomeCA");
-        final UserMatchEq match1 = new UserMatchEq();
-        match1.setMatchwith(MockEjbcaWS.MATCH_WITH_USERNAME);
-        match1.setMatchtype(MockEjbcaWS.MATCH_TYPE_EQUALS);
-        match1.setMatchvalue(SIGNER_6102_ENDENTITY);
+        mockSetupEjbcaSearchResult(SIGNER_6102_ENDENTITY);
+    }
+
+    private void mockSetupEjbcaSearchResult(final String... endEntities) {
         final Map<UserMatchEq, List<UserDataVOWS>> findResult
                 = new HashMap<>();
-        findResult.put(match1, Arrays.asList(user1));
+        for (String endEntity : endEntities) {
+            // Setup EJBCA end entity
+            final UserDataVOWS user1 = new UserDataVOWS();
+            user1.setUsername(endEntity);
+            user1.setPassword("some-password-123");
+            user1.setSubjectDN("CN=" + endEntity
+                    + ",O=SignServer Testing,C=SE");
+            user1.setEndEntityProfileName("EMPTY");
+            user1.setCertificateProfileName("ENDENTITY");
+            user1.setCaName("SomeCA");
+            final UserMatchEq match1 = new UserMatchEq();
+            match1.setMatchwith(MockEjbcaWS.MATCH_WITH_USERNAME);
+            match1.setMatchtype(MockEjbcaWS.MATCH_TYPE_EQUALS);
+            match1.setMatchvalue(endEntity);
+            findResult.put(match1, Arrays.asList(user1));
+        }
         mockEjbcaWs.setFindUserResults(findResult);
     }
     
@@ -22,6 +22,7 @@ import org.cesecore.audit.AuditLogEntry;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.util.query.QueryCriteria;
 import org.signserver.common.ArchiveDataVO;
+import org.signserver.common.ArchiveExportHandler;
 import org.signserver.common.ArchiveMetadata;
 import org.signserver.common.AuthorizedClient;
 import org.signserver.common.CertificateMatchingRule;
@@ -39,6 +40,7 @@ import org.signserver.common.SignServerException;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerIdentifier;
 import org.signserver.common.WorkerStatus;
+import org.signserver.common.WorkerStatusListener;
 import org.signserver.common.WorkerType;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
@@ -181,6 +183,41 @@ public class WorkerSessionMock implements WorkerSessionLocal,
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public List<WorkerStatus> getStatuses(List<WorkerIdentifier> wis) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public void refreshStatus(WorkerIdentifier wi) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public void addStatusListener(WorkerStatusListener listener) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public void removeStatusListener(WorkerStatusListener listener) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public void warmUpWorkers(List<Integer> workerIds) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public void warmUpWorker(int workerId, boolean selfTest) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public int getWarmUpPending() {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
     @Override
     public boolean isTokenActive(WorkerIdentifier workerId) throws InvalidWorkerIdException {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -422,6 +459,16 @@ public class WorkerSessionMock implements WorkerSessionLocal,
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public List<? extends AuditLogEntry> selectAuditLogsFromCursor(AdminInfo adminInfo, String cursor, int max, QueryCriteria criteria, String logDeviceId) throws AuthorizationDeniedException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public List<? extends AuditLogEntry> selectAuditLogsFromCursor(String cursor, int max, QueryCriteria criteria, String logDeviceId) throws AuthorizationDeniedException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
     @Override
     public List<ArchiveMetadata> searchArchive(int startIndex, int max,
             QueryCriteria criteria, final boolean includeData) {
@@ -435,6 +482,30 @@ public class WorkerSessionMock implements WorkerSessionLocal,
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public List<ArchiveMetadata> searchArchiveAfter(String after,
+            int max, QueryCriteria criteria, boolean includeData) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public List<ArchiveMetadata> searchArchiveAfter(AdminInfo adminInfo,
+            String after, int max, QueryCriteria criteria,
+            boolean includeData) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public int removeArchiveEntriesBefore(long before, int max) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public int exportArchiveWithIds(AdminInfo adminInfo,
+            List<String> uniqueIds, ArchiveExportHandler handler) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
     @Override
     public List<ArchiveMetadata> searchArchiveWithIds(AdminInfo adminInfo,
         List<String> uniqueIds, boolean includeData) throws AuthorizationDeniedException {
@@ -1226,6 +1226,56 @@ public class AdminWS {
         }
     }
     
+    /**
+     * Query the audit log one page at a time with the newest entries first.
+     * Unlike queryAuditLog the cost of fetching a page does not depend on
+     * how many pages that have already been fetched.
+     *
+     * The cursor for the next page is the time stamp of the last entry
+     * returned followed by a semicolon and a comma separated list of the
+     * sequence number and node ID, separated by @, of the returned entries
+     * having that time stamp.
+     *
+     * @param cursor Only return entries after this position or null to start from the newest entry
+     * @param max maximum number of results to be returned.
+     * @param conditions List of conditions defining the subset of logs to be selected.
+     * @return List of log entries
+     * @throws SignServerException In case of internal failures or a malformed cursor
+     * @throws AdminNotAuthorizedException  In case the administrator was not authorized to perform the operation
+     */
+    @WebMethod(operationName="queryAuditLogFromCursor")
+    public List<WSAuditLogEntry> queryAuditLogFromCursor(@WebParam(name="cursor") final String cursor, @WebParam(name="max") int max, @WebParam(name="condition") final List<QueryCondition> conditions) throws SignServerException, AdminNotAuthorizedException {
+        final AdminInfo adminInfo = auth.requireAuditorAuthorization(getCertificate(), "queryAuditLogFromCursor", cursor, String.valueOf(max));
+
+        if (cursor != null) {
+            try {
+                AuditLogSearchCursor.parse(cursor);
+            } catch (IllegalArgumentException ex) {
+                throw new SignServerException(ex.getMessage());
+            }
+        }
+
+        // For now we only query one of the available audit devices
+        Set<String> devices = auditor.getQuerySupportingLogDevices();
+        if (devices.isEmpty()) {
+            throw new SignServerException("No log devices available for querying");
+        }
+        final String device = devices.iterator().next();
+
+        final List<Elem> elements = QueryUtil.toElements(conditions);
+        final QueryCriteria qc = QueryCriteria.create();
+
+        if (!elements.isEmpty()) {
+            qc.add(QueryUtil.andAll(elements, 0));
+        }
+
+        try {
+            return toLogEntries(worker.selectAuditLogsFromCursor(adminInfo, cursor, max, qc, device));
+        } catch (AuthorizationDeniedException ex) {
+            throw new AdminNotAuthorizedException(ex.getMessage());
+        }
+    }
+
     /**
      * Convert to WS model LogEntry:s.
      */
@@ -1276,6 +1326,52 @@ public class AdminWS {
         }
     }
 
+    /**
+     * Query the archive one page at a time with the newest entries first.
+     * Unlike queryArchive the cost of fetching a page does not depend on how
+     * many pages that have already been fetched.
+     *
+     * The cursor for the next page is the time of the last entry returned
+     * followed by a semicolon and its unique ID.
+     *
+     * @param after Only return entries after this cursor or null to start from the newest entry
+     * @param max maximum number of results to be returned.
+     * @param conditions List of conditions defining the subset of the archive to be presented.
+     * @param includeData Set to true if archive data should be included in the result set
+     * @return List of archive entries
+     * @throws SignServerException In case of internal failures or a malformed cursor
+     * @throws AdminNotAuthorizedException
+     */
+    @WebMethod(operationName="queryArchiveAfter")
+    public List<WSArchiveMetadata> queryArchiveAfter(@WebParam(name="after") final String after,
+            @WebParam(name="max") int max, @WebParam(name="condition") final List<QueryCondition> conditions,
+            @WebParam(name="includeData") final boolean includeData)
+                    throws SignServerException, AdminNotAuthorizedException {
+        final AdminInfo adminInfo = auth.requireArchiveAuditorAuthorization(getCertificate(), "queryArchiveAfter", after, String.valueOf(max));
+
+        if (after != null) {
+            try {
+                ArchiveSearchCursor.parse(after);
+            } catch (IllegalArgumentException ex) {
+                throw new SignServerException(ex.getMessage());
+            }
+        }
+
+        final List<Elem> elements = QueryUtil.toElements(conditions);
+        final QueryCriteria qc = QueryCriteria.create();
+
+        if (!elements.isEmpty()) {
+            qc.add(QueryUtil.andAll(elements, 0));
+        }
+
+        try {
+            return toArchiveEntries(worker.searchArchiveAfter(adminInfo,
+                    after, max, qc, includeData));
+        } catch (AuthorizationDeniedException ex) {
+            throw new AdminNotAuthorizedException(ex.getMessage());
+        }
+    }
+
     /**
      * Query the archive based on unique IDs.
      *
@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.signserver.protocol.validationservice.ws;
 
+import java.util.List;
 import org.signserver.common.IllegalRequestException;
 import org.signserver.common.SignServerException;
 
@@ -40,6 +41,24 @@ public interface IValidationWS {
     ValidationResponse isValid(String serviceName, String base64Cert, String certPurposes)
             throws IllegalRequestException, SignServerException;
 
+    /**
+     * WebService method used to check the revocation status of multiple
+     * certificates in one call. It is equivalent to calling isValid for each
+     * certificate but certificates from the same issuer share the chain and
+     * revocation lookups.
+     * 
+     * @param serviceName id or name of the validation service to validate the certificates
+     * @param base64Certs the certificates to check in base64 encoding.
+     * @param certPurposes the intended purposes that the client want to use the certificates for, each a ',' separated string (optional).
+     * Either one entry per certificate, in the same order, or a single entry used for all certificates.
+     * @return A response for each certificate in the same order.
+     * @throws IllegalRequestException if the request contains illegal data.
+     * @throws SignServerException if operation couldn't be performed due to application error or communication problems
+     * with underlying systems.
+     */
+    List<ValidationResponse> isValidBatch(String serviceName, List<String> base64Certs, List<String> certPurposes)
+            throws IllegalRequestException, SignServerException;
+
     /**
      * Method used to check the status of the current node of the service. The method checks
      * the availability of this and all underlying systems.
@@ -15,6 +15,7 @@ package org.signserver.protocol.validationservice.ws.server;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import javax.annotation.Resource;
@@ -31,8 +32,12 @@ import org.apache.log4j.Logger;
 import org.bouncycastle.util.encoders.Base64;
 import org.cesecore.util.CertTools;
 import org.signserver.common.*;
+import org.signserver.common.data.CertificateBatchValidationRequest;
+import org.signserver.common.data.CertificateBatchValidationResponse;
 import org.signserver.common.data.CertificateValidationRequest;
 import org.signserver.common.data.CertificateValidationResponse;
+import org.signserver.common.data.Request;
+import org.signserver.common.data.Response;
 import org.signserver.ejb.interfaces.ProcessSessionLocal;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
 import org.signserver.healthcheck.HealthCheckUtils;
@@ -75,27 +80,65 @@ public class ValidationWS implements IValidationWS {
     @WebMethod
     @Override
     public ValidationResponse isValid(@WebParam(name = "serviceName") String serviceNameOrId, @WebParam(name = "base64Cert") String base64Cert, @WebParam(name = "certPurposes") String certPurposes) throws IllegalRequestException, SignServerException {
-        Certificate reqCert;
-
         if (base64Cert == null) {
             throw new IllegalRequestException("Error base64Cert parameter cannot be empty, it must contain a Base64 encoded DER encoded certificate.");
-        } else {
-            try {
-                reqCert = CertTools.getCertfromByteArray(Base64.decode(base64Cert.getBytes()));
-            } catch (CertificateException | IllegalArgumentException e) {
-                throw new IllegalRequestException("Error base64Cert parameter data have bad encoding, check that it contains supported certificate data");
+        }
+        Certificate reqCert = decodeCertificate(base64Cert, "base64Cert parameter");
+
+        CertificateValidationRequest req = new CertificateValidationRequest(reqCert, normalizeCertPurposes(certPurposes));
+        CertificateValidationResponse res = (CertificateValidationResponse) process(serviceNameOrId, req);
+        return new ValidationResponse(res.getValidation(), res.getValidCertificatePurposesString());
+    }
+
+    /**
+     * @see org.signserver.protocol.validationservice.ws.IValidationWS#isValidBatch(String, java.util.List, java.util.List)
+     */
+    @WebMethod
+    @Override
+    public List<ValidationResponse> isValidBatch(@WebParam(name = "serviceName") String serviceNameOrId, @WebParam(name = "base64Certs") List<String> base64Certs, @WebParam(name = "certPurposes") List<String> certPurposes) throws IllegalRequestException, SignServerException {
+        if (base64Certs == null || base64Certs.isEmpty()) {
+            throw new IllegalRequestException("Error base64Certs parameter cannot be empty, it must contain Base64 encoded DER encoded certificates.");
+        }
+        if (certPurposes != null && certPurposes.size() > 1 && certPurposes.size() != base64Certs.size()) {
+            throw new IllegalRequestException("Error certPurposes parameter must contain either one entry for all certificates or one entry per certificate.");
+        }
+
+        final List<CertificateValidationRequest> requests = new ArrayList<>(base64Certs.size());
+        for (int i = 0; i < base64Certs.size(); i++) {
+            if (base64Certs.get(i) == null) {
+                throw new IllegalRequestException("Error base64Certs entry " + i + " cannot be empty, it must contain a Base64 encoded DER encoded certificate.");
             }
+            final String purposes;
+            if (certPurposes == null || certPurposes.isEmpty()) {
+                purposes = normalizeCertPurposes(null);
+            } else {
+                purposes = normalizeCertPurposes(certPurposes.get(certPurposes.size() == 1 ? 0 : i));
+            }
+            requests.add(new CertificateValidationRequest(decodeCertificate(base64Certs.get(i), "base64Certs entry " + i), purposes));
         }
 
-        if (certPurposes == null) {
-            certPurposes = "";
-        } else {
-            certPurposes = certPurposes.trim();
+        final CertificateBatchValidationResponse res = (CertificateBatchValidationResponse) process(serviceNameOrId, new CertificateBatchValidationRequest(requests));
+        final List<ValidationResponse> result = new ArrayList<>(res.getResponses().size());
+        for (CertificateValidationResponse response : res.getResponses()) {
+            result.add(new ValidationResponse(response.getValidation(), response.getValidCertificatePurposesString()));
         }
+        return result;
+    }
 
-        CertificateValidationResponse res = null;
+    private Certificate decodeCertificate(String base64Cert, String name) throws IllegalRequestException {
+        try {
+            return CertTools.getCertfromByteArray(Base64.decode(base64Cert.getBytes()));
+        } catch (CertificateException | IllegalArgumentException e) {
+            throw new IllegalRequestException("Error " + name + " data have bad encoding, check that it contains supported certificate data");
+        }
+    }
+
+    private static String normalizeCertPurposes(String certPurposes) {
+        return certPurposes == null ? "" : certPurposes.trim();
+    }
+
+    private Response process(String serviceNameOrId, Request req) throws IllegalRequestException, SignServerException {
         try {
-            CertificateValidationRequest req = new CertificateValidationRequest(reqCert, certPurposes);
             X509Certificate clientCertificate = getClientCertificate();
             RequestContext context = new RequestContext(clientCertificate, getRequestIP());
             
@@ -103,13 +146,12 @@ public class ValidationWS implements IValidationWS {
             MessageContext msgContext = wsContext.getMessageContext();
             CredentialUtils.addToRequestContext(context, (HttpServletRequest) msgContext.get(MessageContext.SERVLET_REQUEST), clientCertificate);
         
-            res = (CertificateValidationResponse) getProcessSession().process(new AdminInfo("Client user", null, null), WorkerIdentifier.createFromIdOrName(serviceNameOrId), req, context);
+            return getProcessSession().process(new AdminInfo("Client user", null, null), WorkerIdentifier.createFromIdOrName(serviceNameOrId), req, context);
         } catch (CryptoTokenOfflineException e) {
             throw new SignServerException("Error using cryptotoken when validating certificate, it seems to be offline : " + e.getMessage());
         } catch (NoSuchWorkerException ex) {
             throw new IllegalRequestException(ex.getMessage());
         }
-        return new ValidationResponse(res.getValidation(), res.getValidCertificatePurposesString());
     }
 
     /**
@@ -13,6 +13,14 @@
 package org.signserver.ejb.interfaces;
 
 import javax.ejb.Local;
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.common.IllegalRequestException;
+import org.signserver.common.RequestContext;
+import org.signserver.common.SignServerException;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.data.Request;
+import org.signserver.common.data.Response;
+import org.signserver.server.log.AdminInfo;
 
 /**
  * Interface for the internal worker session bean.
@@ -23,5 +31,29 @@ import javax.ejb.Local;
  */
 @Local
 public interface InternalProcessSessionLocal extends ProcessSessionLocal {
-    
+
+    /**
+     * Processes the request directly by a worker supporting it, i.e. a
+     * time-stamp token request to a worker issuing time-stamp tokens.
+     * Authorization, key usage counting and worker logging are applied as by
+     * process() but the request is not archived or charged. Workers having
+     * archivers or an accounter configured process the request as by
+     * process().
+     *
+     * @param info Administrator information
+     * @param wi id of worker who should process the request
+     * @param request the request
+     * @param requestContext context of the request
+     * @return The process response or null if the worker can not process
+     * the request directly
+     * @throws CryptoTokenOfflineException if the signers token isn't activated.
+     * @throws IllegalRequestException if illegal request is sent to the method
+     * @throws SignServerException if some other error occurred server side
+     * during process.
+     */
+    Response processDirect(AdminInfo info, WorkerIdentifier wi, Request request,
+            RequestContext requestContext)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+            SignServerException;
+
 }
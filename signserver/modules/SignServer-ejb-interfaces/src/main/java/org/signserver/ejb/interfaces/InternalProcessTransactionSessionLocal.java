@@ -12,6 +12,15 @@
  ************************************************************************ */
 package org.signserver.ejb.interfaces;
 
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.common.IllegalRequestException;
+import org.signserver.common.RequestContext;
+import org.signserver.common.SignServerException;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.data.Request;
+import org.signserver.common.data.Response;
+import org.signserver.server.log.AdminInfo;
+
 /**
  * Interface for the internal transaction worker session bean.
  *
@@ -20,4 +29,24 @@ package org.signserver.ejb.interfaces;
  */
 public interface InternalProcessTransactionSessionLocal extends ProcessTransactionSessionLocal {
 
+    /**
+     * Processes the request directly by a worker supporting it, in a
+     * transaction.
+     *
+     * @param info Administrator information
+     * @param wi id of worker who should process the request
+     * @param request the request
+     * @param requestContext context of the request
+     * @return The process response or null if the worker can not process
+     * the request directly
+     * @throws IllegalRequestException
+     * @throws CryptoTokenOfflineException
+     * @throws SignServerException
+     * @see InternalProcessSessionLocal#processDirect(org.signserver.server.log.AdminInfo, org.signserver.common.WorkerIdentifier, org.signserver.common.data.Request, org.signserver.common.RequestContext)
+     */
+    Response processDirectWithTransaction(AdminInfo info, WorkerIdentifier wi, Request request,
+            RequestContext requestContext)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+            SignServerException;
+
 }
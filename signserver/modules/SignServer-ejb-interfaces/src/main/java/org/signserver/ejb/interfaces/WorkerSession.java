@@ -56,6 +56,20 @@ public interface WorkerSession {
      */
     WorkerStatus getStatus(WorkerIdentifier wi) throws InvalidWorkerIdException;
 
+    /**
+     * Returns the status of multiple workers in one call.
+     *
+     * The statuses are served from the status cache if not older than the
+     * global configuration property WORKERSTATUS_CACHETIME (milliseconds).
+     * Stale statuses are refreshed concurrently.
+     *
+     * @param wis identifiers of the workers
+     * @return list with the status of each worker in the same order as
+     * requested or null for workers that does not exist or whose status
+     * could not be obtained
+     */
+    List<WorkerStatus> getStatuses(List<WorkerIdentifier> wis);
+
     /**
      * Returns if the associated crypto token is active or not.
      *
@@ -492,6 +506,24 @@ public interface WorkerSession {
             int max, QueryCriteria criteria, boolean includeData)
             throws AuthorizationDeniedException; 
     
+    /**
+     * Query contents of archive one page at a time ordered by time and
+     * uniqueId with the newest entries first. To get the next page call this
+     * method again with a cursor created from the last entry returned using
+     * ArchiveSearchCursor.
+     * 
+     * @param after Only return entries after this cursor or null to start from the newest entry
+     * @param max Maximum number of results returned
+     * @param criteria Search criteria for matching results, orderings are ignored
+     * @param includeData If true, include actual archive data in entries
+     * @return List of metadata objects describing matching entries
+     * @throws AuthorizationDeniedException
+     * @see org.signserver.common.ArchiveSearchCursor
+     */
+    List<ArchiveMetadata> searchArchiveAfter(String after,
+            int max, QueryCriteria criteria, boolean includeData)
+            throws AuthorizationDeniedException;
+
     /**
      * Query contents of archive based on list of uniqueIds (primary key in DB).
      * 
@@ -13,6 +13,7 @@
 package org.signserver.ejb.interfaces;
 
 import org.signserver.common.WorkerIdentifier;
+import java.io.IOException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStoreException;
 import java.security.cert.Certificate;
@@ -24,6 +25,7 @@ import javax.ejb.Local;
 import org.cesecore.audit.AuditLogEntry;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.util.query.QueryCriteria;
+import org.signserver.common.ArchiveExportHandler;
 import org.signserver.common.ArchiveMetadata;
 import org.signserver.common.AuthorizedClient;
 import org.signserver.common.CertificateMatchingRule;
@@ -36,6 +38,7 @@ import org.signserver.common.OperationUnsupportedException;
 import org.signserver.common.QueryException;
 import org.signserver.common.SignServerException;
 import org.signserver.common.UnsupportedCryptoTokenParameter;
+import org.signserver.common.WorkerStatusListener;
 import org.signserver.server.cryptotokens.TokenSearchResults;
 import org.signserver.server.log.AdminInfo;
 
@@ -65,6 +68,24 @@ public interface WorkerSessionLocal extends WorkerSession {
      */
     List<? extends AuditLogEntry> selectAuditLogs(AdminInfo adminInfo, int startIndex, int max, QueryCriteria criteria, String logDeviceId) throws AuthorizationDeniedException;
 
+    /**
+     * Select events from the audit log one page at a time, newest first.
+     * To get the next page call this method again with a cursor created
+     * from this page using AuditLogSearchCursor.
+     *
+     * @param adminInfo administrator info
+     * @param cursor Only return entries after this position or null to start
+     * from the newest entry
+     * @param max maximum number of results to be returned
+     * @param criteria Criteria defining the subset of logs to be selected,
+     * orderings are ignored
+     * @param logDeviceId identifier of the AuditLogDevice
+     * @return The audit logs to the given criteria
+     * @throws AuthorizationDeniedException
+     * @see org.signserver.common.AuditLogSearchCursor
+     */
+    List<? extends AuditLogEntry> selectAuditLogsFromCursor(AdminInfo adminInfo, String cursor, int max, QueryCriteria criteria, String logDeviceId) throws AuthorizationDeniedException;
+
     /**
      * Method used to remove a key from a crypto token used by a worker.
      *
@@ -346,6 +367,56 @@ public interface WorkerSessionLocal extends WorkerSession {
             boolean includeData)
             throws AuthorizationDeniedException;
 
+    /**
+     * Query contents of archive one page at a time ordered by time and
+     * unique ID with the newest entries first. To get the next page call
+     * this method again with a cursor created from the last entry returned
+     * using ArchiveSearchCursor.
+     *
+     * @param adminInfo Administrator information
+     * @param after Only return entries after this cursor or null to start
+     * from the newest entry
+     * @param max Maximum number of results returned
+     * @param criteria Search criteria for matching results, orderings are
+     * ignored
+     * @param includeData If true, archive data is included in the meta data
+     * entries
+     * @return List of metadata objects describing matching entries
+     * @throws AuthorizationDeniedException
+     * @see org.signserver.common.ArchiveSearchCursor
+     */
+    List<ArchiveMetadata> searchArchiveAfter(AdminInfo adminInfo,
+            String after, int max, QueryCriteria criteria,
+            boolean includeData)
+            throws AuthorizationDeniedException;
+
+    /**
+     * Remove the oldest archive entries created before the given time in a
+     * transaction of its own.
+     *
+     * @param before Remove entries archived before this time (in milliseconds)
+     * @param max Maximum number of entries to remove
+     * @return Number of removed entries, if less than max there are no more
+     * entries to remove
+     */
+    int removeArchiveEntriesBefore(long before, int max);
+
+    /**
+     * Export the archive entries with the given unique IDs (primary key in
+     * DB) by writing the archive data of each of them to the handler as it is
+     * decoded.
+     *
+     * @param adminInfo Administrator information
+     * @param uniqueIds List of unique IDs to export entries for
+     * @param handler to write the entries to
+     * @return Number of exported entries
+     * @throws AuthorizationDeniedException
+     * @throws IOException in case of failure writing to the handler
+     */
+    int exportArchiveWithIds(AdminInfo adminInfo, List<String> uniqueIds,
+            ArchiveExportHandler handler)
+            throws AuthorizationDeniedException, IOException;
+
     /**
      * Query contents of archive based on list of unique IDs (primary key in
      * DB).
@@ -400,4 +471,55 @@ public interface WorkerSessionLocal extends WorkerSession {
      * @return true if key generation has been disabled globally.
      */
     boolean isKeyGenerationDisabled();
+
+    /**
+     * Refresh the cached status of the worker in the background.
+     *
+     * Note: This is an internal method used for the status cache and should
+     * only be called through the container so that it runs asynchronously.
+     *
+     * @param wi of the worker
+     */
+    void refreshStatus(WorkerIdentifier wi);
+
+    /**
+     * Register a listener to be notified when the cached status of a worker
+     * changes.
+     *
+     * @param listener to add
+     */
+    void addStatusListener(WorkerStatusListener listener);
+
+    /**
+     * Unregister a previously registered status listener.
+     *
+     * @param listener to remove
+     */
+    void removeStatusListener(WorkerStatusListener listener);
+
+    /**
+     * Start warm-up of the given workers in the background if warm-up is
+     * enabled in the global configuration. Warming up a worker loads and
+     * initializes it and its crypto token and optionally tests its key.
+     *
+     * @param workerIds of the workers to warm up or null for all workers
+     */
+    void warmUpWorkers(List<Integer> workerIds);
+
+    /**
+     * Warm up a worker in the background.
+     *
+     * Note: This is an internal method used by the warm-up and should only
+     * be called through the container so that it runs asynchronously.
+     *
+     * @param workerId of the worker
+     * @param selfTest true if the key of the worker should also be tested
+     */
+    void warmUpWorker(int workerId, boolean selfTest);
+
+    /**
+     * @return number of workers queued or being warmed up at startup or
+     * after reload of all workers, or 0 if the warm-up has timed out
+     */
+    int getWarmUpPending();
 }
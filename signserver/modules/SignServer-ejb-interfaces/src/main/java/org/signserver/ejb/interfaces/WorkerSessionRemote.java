@@ -37,6 +37,23 @@ public interface WorkerSessionRemote extends WorkerSession {
 
     List<? extends AuditLogEntry> selectAuditLogs(int startIndex, int max, QueryCriteria criteria, String logDeviceId) throws AuthorizationDeniedException;
 
+    /**
+     * Select events from the audit log one page at a time, newest first.
+     * To get the next page call this method again with a cursor created
+     * from this page using AuditLogSearchCursor.
+     *
+     * @param cursor Only return entries after this position or null to start
+     * from the newest entry
+     * @param max maximum number of results to be returned
+     * @param criteria Criteria defining the subset of logs to be selected,
+     * orderings are ignored
+     * @param logDeviceId identifier of the AuditLogDevice
+     * @return The audit logs to the given criteria
+     * @throws AuthorizationDeniedException
+     * @see org.signserver.common.AuditLogSearchCursor
+     */
+    List<? extends AuditLogEntry> selectAuditLogsFromCursor(String cursor, int max, QueryCriteria criteria, String logDeviceId) throws AuthorizationDeniedException;
+
     /**
      * Queries the specified worker's crypto token.
      *
@@ -0,0 +1,35 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.statusrepo;
+
+import org.signserver.statusrepo.common.StatusEntry;
+import org.signserver.statusrepo.common.StatusName;
+
+/**
+ * Listener notified when a status property has been updated.
+ *
+ * Notifications are delivered by the thread performing the update after the
+ * new value has been published and should not block.
+ *
+ * @version $Id$
+ */
+public interface StatusListener {
+
+    /**
+     * Called after a status property has been updated.
+     *
+     * @param name of the property
+     * @param entry the new entry
+     */
+    void statusUpdated(StatusName name, StatusEntry entry);
+}
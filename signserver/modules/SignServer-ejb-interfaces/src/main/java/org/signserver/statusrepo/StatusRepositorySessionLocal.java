@@ -22,4 +22,21 @@ import javax.ejb.Local;
  */
 @Local
 public interface StatusRepositorySessionLocal extends StatusRepositorySession {
+
+    /**
+     * Registers a listener to be notified when a status property is updated.
+     *
+     * The listener is only weakly referenced so the caller must keep a
+     * reference to it for as long as it should receive notifications.
+     *
+     * @param listener to add
+     */
+    void addListener(StatusListener listener);
+
+    /**
+     * Removes a previously registered listener.
+     *
+     * @param listener to remove
+     */
+    void removeListener(StatusListener listener);
 }
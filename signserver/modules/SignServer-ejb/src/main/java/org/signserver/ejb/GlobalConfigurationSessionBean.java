@@ -66,8 +66,23 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
         SignServerUtil.installBCProvider();
     }
 
+    /** Minimum time in milliseconds between polls of the change ID. */
+    private static final long CHANGEID_POLL_INTERVAL = 5000;
+
     private IGlobalConfigurationDataService globalConfigurationDataService;
     private final GlobalConfigurationCache cache = GlobalConfigurationCache.getInstance();
+
+    private final GlobalConfigurationCache.Loader loader = new GlobalConfigurationCache.Loader() {
+        @Override
+        public Properties loadProperties() {
+            return loadGlobalConfiguration();
+        }
+
+        @Override
+        public String loadChangeId() {
+            return getGlobalConfigurationDataService().getChangeId();
+        }
+    };
     
     @PostConstruct
     public void create() {
@@ -105,7 +120,7 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
         auditLog(adminInfo, SignServerEventTypes.SET_GLOBAL_PROPERTY, scope + key, value);
 
         if (cache.getCurrentState().equals(GlobalConfiguration.STATE_OUTOFSYNC)) {
-            cache.getCachedGlobalConfig().setProperty(propertyKeyHelper(scope, key), value);
+            cache.setCachedProperty(propertyKeyHelper(scope, key), value);
         } else {
             setPropertyHelper(propertyKeyHelper(scope, key), value);
         }
@@ -138,16 +153,17 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
         auditLog(adminInfo, SignServerEventTypes.REMOVE_GLOBAL_PROPERTY, scope + key, null);
 
         if (cache.getCurrentState().equals(GlobalConfiguration.STATE_OUTOFSYNC)) {
-            cache.getCachedGlobalConfig().remove(propertyKeyHelper(scope, key));
+            cache.setCachedProperty(propertyKeyHelper(scope, key), null);
         } else {
             try {
                 retval = getGlobalConfigurationDataService().removeGlobalProperty(propertyKeyHelper(scope, key));
-                cache.setCachedGlobalConfig(null);
             } catch (Throwable e) {
                 LOG.error("Error connecting to database, configuration is un-syncronized", e);
                 cache.setCurrentState(GlobalConfiguration.STATE_OUTOFSYNC);
-                cache.getCachedGlobalConfig().remove(propertyKeyHelper(scope, key));
+                cache.setCachedProperty(propertyKeyHelper(scope, key), null);
+                return retval;
             }
+            configurationChanged();
         }
         return retval;
     }
@@ -166,37 +182,34 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
      */
     @Override
     public GlobalConfiguration getGlobalConfiguration() {
-        GlobalConfiguration retval;
-
-        if (cache.getCachedGlobalConfig() == null) {
-            Properties properties = new Properties();
+        return cache.getGlobalConfiguration(loader, CHANGEID_POLL_INTERVAL);
+    }
 
-            Iterator<GlobalConfigurationDataBean> iter = getGlobalConfigurationDataService().findAll().iterator();
-            while (iter.hasNext()) {
-                GlobalConfigurationDataBean data = iter.next();
-                String rawkey = data.getPropertyKey();
-                String propertyValue = data.getPropertyValue();
-                
-                if (rawkey.startsWith(GlobalConfiguration.SCOPE_NODE)) {
-                    String key = rawkey.replaceFirst(WorkerConfig.getNodeId() + ".", "");
-                    properties.setProperty(key, propertyValue == null ? "" : propertyValue);
+    /**
+     * @return the global and node properties of this node from the database
+     */
+    private Properties loadGlobalConfiguration() {
+        final Properties properties = new Properties();
+
+        Iterator<GlobalConfigurationDataBean> iter = getGlobalConfigurationDataService().findAll().iterator();
+        while (iter.hasNext()) {
+            GlobalConfigurationDataBean data = iter.next();
+            String rawkey = data.getPropertyKey();
+            String propertyValue = data.getPropertyValue();
+
+            if (rawkey.startsWith(GlobalConfiguration.SCOPE_NODE)) {
+                String key = rawkey.replaceFirst(WorkerConfig.getNodeId() + ".", "");
+                properties.setProperty(key, propertyValue == null ? "" : propertyValue);
+            } else {
+                if (rawkey.startsWith(GlobalConfiguration.SCOPE_GLOBAL)) {
+                	properties.setProperty(rawkey,
+                			propertyValue == null ? "" : propertyValue);
                 } else {
-                    if (rawkey.startsWith(GlobalConfiguration.SCOPE_GLOBAL)) {
-                    	properties.setProperty(rawkey,
-                    			propertyValue == null ? "" : propertyValue);
-                    } else {
-                        LOG.error("Illegal property in Global Configuration " + rawkey);
-                    }
+                    LOG.error("Illegal property in Global Configuration " + rawkey);
                 }
             }
-
-            cache.setCachedGlobalConfig(properties);
         }
-        retval = new GlobalConfiguration(cache.getCachedGlobalConfig(), 
-                cache.getCurrentState(), 
-                CompileTimeSettings.getInstance().getProperty(CompileTimeSettings.SIGNSERVER_VERSION));
-
-        return retval;
+        return properties;
     }
 
     /**
@@ -245,7 +258,8 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
         }
 
         // add all properties
-        Iterator<?> keySet = cache.getCachedGlobalConfig().keySet().iterator();
+        final Properties cachedGlobalConfig = cache.getCachedGlobalConfig();
+        Iterator<?> keySet = cachedGlobalConfig.keySet().iterator();
         while (keySet.hasNext()) {
             String fullKey = (String) keySet.next();
 
@@ -253,12 +267,12 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
                 String scope = GlobalConfiguration.SCOPE_GLOBAL;
                 String key = fullKey.substring(GlobalConfiguration.SCOPE_GLOBAL.length());
 
-                setProperty(scope, key, cache.getCachedGlobalConfig().getProperty(fullKey));
+                setProperty(scope, key, cachedGlobalConfig.getProperty(fullKey));
             } else {
                 if (fullKey.startsWith(GlobalConfiguration.SCOPE_NODE)) {
                     String scope = GlobalConfiguration.SCOPE_NODE;
                     String key = fullKey.substring(thisNodeConfig.length());
-                    setProperty(scope, key, cache.getCachedGlobalConfig().getProperty(fullKey));
+                    setProperty(scope, key, cachedGlobalConfig.getProperty(fullKey));
                 }
             }
         }
@@ -280,7 +294,7 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
         auditLog(adminInfo, SignServerEventTypes.GLOBAL_CONFIG_RELOAD, null, null);
 
         workerManagerSession.flush();
-        cache.setCachedGlobalConfig(null);
+        cache.invalidate();
         getGlobalConfiguration();
 
         // Set the state to insync.
@@ -300,14 +314,29 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
     private void setPropertyHelper(String key, String value) {
         try {
             getGlobalConfigurationDataService().setGlobalProperty(key, value);
-            cache.setCachedGlobalConfig(null);
         } catch (Throwable e) {
             String message = "Error connecting to database, configuration is un-syncronized :";
             LOG.error(message, e);
             cache.setCurrentState(GlobalConfiguration.STATE_OUTOFSYNC);
-            cache.getCachedGlobalConfig().setProperty(key, value);
+            cache.setCachedProperty(key, value);
+            return;
         }
+        configurationChanged();
+    }
 
+    /**
+     * Stores a new change ID so that other nodes reload the configuration
+     * and makes this node reload it.
+     * The property itself has already been stored so a failure to update the
+     * change ID does not make the configuration out of sync on this node.
+     */
+    private void configurationChanged() {
+        try {
+            getGlobalConfigurationDataService().updateChangeId();
+        } catch (RuntimeException e) {
+            LOG.error("Could not update the change ID, other nodes might not pick up the change until reloaded: " + e.getMessage(), e);
+        }
+        cache.invalidate();
     }
 
     private void auditLog(final AdminInfo adminInfo, final SignServerEventTypes eventType, final String property,
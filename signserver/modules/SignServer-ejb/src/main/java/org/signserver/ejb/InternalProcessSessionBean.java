@@ -143,6 +143,20 @@ public class InternalProcessSessionBean implements InternalProcessSessionLocal {
         } else {
             return processImpl.process(adminInfo, wi, request, requestContext);
         }
-    }    
+    }
+
+    @Override
+    public Response processDirect(final AdminInfo adminInfo, final WorkerIdentifier wi,
+            final Request request, final RequestContext requestContext)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+            SignServerException {
+        requestContext.setServices(servicesImpl);
+        if (SessionUtils.needsTransaction(workerManagerSession, wi)) {
+            // use separate transaction bean to avoid deadlock
+            return internalProcessTransSession.processDirectWithTransaction(adminInfo, wi, request, requestContext);
+        } else {
+            return processImpl.processDirect(adminInfo, wi, request, requestContext);
+        }
+    }
     
 }
@@ -103,4 +103,18 @@ public class InternalProcessTransactionSessionBean implements InternalProcessTra
         return processImpl.process(info, wi, request, requestContext);
     }
 
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @Override
+    public Response processDirectWithTransaction(final AdminInfo info,
+            final WorkerIdentifier wi,
+            final Request request,
+            final RequestContext requestContext)
+            throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(">processDirect in transaction: " + wi);
+        }
+
+        return processImpl.processDirect(info, wi, request, requestContext);
+    }
+
 }
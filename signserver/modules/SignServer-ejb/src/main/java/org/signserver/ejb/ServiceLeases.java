@@ -0,0 +1,156 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.signserver.server.entities.IServiceLeaseDataService;
+import org.signserver.server.entities.ServiceLease;
+
+/**
+ * Keeps track of the leases for singleton timed services held by this node.
+ *
+ * A lease lasts the interval of the service plus a margin. A node already
+ * holding leases for other services waits an additional spread delay for
+ * each of them before taking over an expired lease so that the services are
+ * spread over the nodes. Nodes not getting the lease check again when it
+ * can be taken over.
+ *
+ * @version $Id$
+ */
+public class ServiceLeases {
+
+    private final String owner;
+    private final long margin;
+    private final long spreadDelay;
+
+    /** Services this node currently holds the lease for. */
+    private final Set<Integer> held = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /**
+     * @param owner identity of this node in the leases
+     * @param margin time in ms a lease is held in addition to the interval
+     * @param spreadDelay additional time in ms to wait before taking over an
+     * expired lease for each lease already held
+     */
+    public ServiceLeases(final String owner, final long margin, final long spreadDelay) {
+        this.owner = owner;
+        this.margin = margin;
+        this.spreadDelay = spreadDelay;
+    }
+
+    /**
+     * @param interval time in ms until the next run of the service
+     * @return time in ms the lease is held
+     */
+    public long getDuration(final long interval) {
+        return Math.max(interval, 0) + margin;
+    }
+
+    /**
+     * @param serviceId ID of the service
+     * @return time in ms to wait after another node's lease has expired
+     */
+    public long getSpreadDelay(final int serviceId) {
+        return spreadDelay * (held.size() - (held.contains(serviceId) ? 1 : 0));
+    }
+
+    /**
+     * Takes or extends the lease for the service.
+     *
+     * @param leases data service to store the lease in
+     * @param serviceId ID of the service
+     * @param interval time in ms until the next run of the service
+     * @param now current time
+     * @return true if this node now holds the lease
+     */
+    public boolean acquire(final IServiceLeaseDataService leases, final int serviceId, final long interval,
+            final long now) {
+        final boolean result = leases.acquire(serviceId, owner, now - getSpreadDelay(serviceId),
+                now + getDuration(interval));
+        if (result) {
+            held.add(serviceId);
+        } else {
+            held.remove(serviceId);
+        }
+        return result;
+    }
+
+    /**
+     * Gives the time until the lease held by another node can be taken over.
+     *
+     * @param leases data service the lease is stored in
+     * @param serviceId ID of the service
+     * @param interval time in ms until the next run of the service
+     * @param now current time
+     * @return time in ms until the next check, at least the interval
+     */
+    public long getNextCheck(final IServiceLeaseDataService leases, final int serviceId, final long interval,
+            final long now) {
+        final ServiceLease lease = leases.getLease(serviceId);
+        if (lease == null || interval < 0) {
+            return interval;
+        }
+        return Math.max(interval, lease.getExpireTime() + getSpreadDelay(serviceId) + 1 - now);
+    }
+
+    /**
+     * Tells a lost race for the lease apart from the lease table not being
+     * usable after acquiring the lease failed.
+     *
+     * @param leases data service the lease is stored in
+     * @param serviceId ID of the service
+     * @return true if another node holds the lease
+     * @throws RuntimeException if the lease could not be read
+     */
+    public boolean isHeldByOther(final IServiceLeaseDataService leases, final int serviceId) {
+        final ServiceLease lease = leases.getLease(serviceId);
+        return lease != null && !owner.equals(lease.getOwner());
+    }
+
+    /**
+     * Extends the lease while the service is running.
+     *
+     * @param leases data service the lease is stored in
+     * @param serviceId ID of the service
+     * @param duration time in ms the lease is held
+     * @param now current time
+     * @return true if the lease was extended
+     */
+    public boolean renew(final IServiceLeaseDataService leases, final int serviceId, final long duration,
+            final long now) {
+        final boolean result = leases.renew(serviceId, owner, now + duration);
+        if (!result) {
+            held.remove(serviceId);
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the lease, i.e. when storing it failed.
+     *
+     * @param serviceId ID of the service
+     */
+    public void lost(final int serviceId) {
+        held.remove(serviceId);
+    }
+
+    /**
+     * @param serviceId ID of the service
+     * @return true if this node holds the lease
+     */
+    public boolean isHeld(final int serviceId) {
+        return held.contains(serviceId);
+    }
+}
@@ -24,7 +24,7 @@ import javax.transaction.*;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.enums.EventStatus;
 import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
-import org.signserver.common.GlobalConfiguration;
+import org.cesecore.config.CesecoreConfiguration;
 import org.signserver.common.NoSuchWorkerException;
 import org.signserver.common.ServiceConfig;
 import org.signserver.common.ServiceContext;
@@ -46,13 +46,25 @@ import org.signserver.ejb.interfaces.ProcessSessionLocal;
 import org.signserver.ejb.interfaces.ServiceTimerSessionLocal;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
 import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
+import org.signserver.server.entities.FileBasedServiceLeaseDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
+import org.signserver.server.entities.IServiceLeaseDataService;
 import org.signserver.server.entities.KeyUsageCounterDataService;
+import org.signserver.server.entities.ServiceLeaseDataService;
 import org.signserver.server.nodb.FileBasedDatabaseManager;
 import org.signserver.statusrepo.StatusRepositorySessionLocal;
 
 /**
  * Timed service session bean running services on a timely basis.
+ *
+ * Singleton services are only run by the node holding the lease for the
+ * service. The lease is taken with an atomic conditional update and is
+ * extended while the service is running. Nodes not holding the lease wait
+ * until it has expired before trying again, and a node already holding
+ * leases for other services waits a bit longer so that the services are
+ * spread over the nodes. If the lease can not be stored at all, i.e. the
+ * ServiceLease table has not been created, an error is logged and the
+ * service is run without a lease.
  */
 @Stateless
 @TransactionManagement(TransactionManagementType.BEAN)
@@ -65,6 +77,8 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
     private SessionContext sessionCtx;
     
     private IKeyUsageCounterDataService keyUsageCounterDataService;
+
+    private IServiceLeaseDataService serviceLeaseDataService;
     
     @EJB
     private GlobalConfigurationSessionLocal globalConfigurationSession;
@@ -91,6 +105,18 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
     // Don't persist the timer
     private static final TimerConfig SERVICELOADER_CONFIG = new TimerConfig(SERVICELOADER_ID, false);
 
+    /** Identity of this node in the service leases, unique for each start. */
+    private static final String LEASE_OWNER = CesecoreConfiguration.getNodeIdentifier() + "/" + UUID.randomUUID().toString();
+
+    /** Time in ms a lease is held in addition to the interval of the service. */
+    private static final long LEASE_MARGIN = 30 * 1000;
+
+    /** Additional time in ms to wait before taking over an expired lease for each lease already held. */
+    private static final long LEASE_SPREAD_DELAY = 5 * 1000;
+
+    /** Leases for the singleton services held by this node. */
+    private static final ServiceLeases LEASES = new ServiceLeases(LEASE_OWNER, LEASE_MARGIN, LEASE_SPREAD_DELAY);
+
     /**
      * Default create for SessionBean without any creation Arguments.
      */
@@ -101,11 +127,13 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
                 LOG.debug("No EntityManager injected. Running without database.");
             }
             keyUsageCounterDataService = new FileBasedKeyUsageCounterDataService(FileBasedDatabaseManager.getInstance());
+            serviceLeaseDataService = new FileBasedServiceLeaseDataService(FileBasedDatabaseManager.getInstance());
         } else {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("EntityManager injected. Running with database.");
             }
             keyUsageCounterDataService = new KeyUsageCounterDataService(em);
+            serviceLeaseDataService = new ServiceLeaseDataService(em);
         }
         
         // XXX The lookups will fail on GlassFish V2
@@ -147,6 +175,10 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
      */
     @Timeout
     public void ejbTimeout(Timer timer) {
+        if (timer.getInfo() instanceof LeaseRenewal) {
+            renewLease((LeaseRenewal) timer.getInfo());
+            return;
+        }
         Integer timerInfo = (Integer) timer.getInfo();
 
         if (timerInfo.equals(SERVICELOADER_ID)) {
@@ -160,27 +192,34 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
             ITimedService timedService = null;
             boolean run = false;
             boolean isSingleton = false;
+            boolean leaseFailed = false;
+            long leaseDuration = 0;
+            long nextTimeout = -1;
             UserTransaction ut = sessionCtx.getUserTransaction();
             try {
                 ut.begin();
                 IWorker worker = workerManagerSession.getWorker(new WorkerIdentifier(timerInfo));
                 serviceConfig = new ServiceConfig(worker.getConfig());
                 timedService = (ITimedService) worker;
-                sessionCtx.getTimerService().createSingleActionTimer(timedService.getNextInterval(), new TimerConfig(timerInfo, false));
+                nextTimeout = timedService.getNextInterval();
                 isSingleton = timedService.isSingleton();
                 if (!isSingleton) {
                     run = true;
                 } else {
-                    GlobalConfiguration gc = globalConfigurationSession.getGlobalConfiguration();
-                    Date nextRunDate = new Date(0);
-                    if (gc.getProperty(GlobalConfiguration.SCOPE_GLOBAL, "SERVICENEXTRUNDATE" + timerInfo) != null) {
-                        nextRunDate = new Date(Long.parseLong(gc.getProperty(GlobalConfiguration.SCOPE_GLOBAL, "SERVICENEXTRUNDATE" + timerInfo)));
-                    }
-                    Date currentDate = new Date();
-                    if (currentDate.after(nextRunDate)) {
-                        nextRunDate = new Date(currentDate.getTime() + timedService.getNextInterval());
-                        globalConfigurationSession.setProperty(GlobalConfiguration.SCOPE_GLOBAL, "SERVICENEXTRUNDATE" + timerInfo, "" + nextRunDate.getTime());
-                        run = true;
+                    final long currentTime = System.currentTimeMillis();
+                    leaseDuration = LEASES.getDuration(nextTimeout);
+                    try {
+                        run = LEASES.acquire(serviceLeaseDataService, timerInfo, nextTimeout, currentTime);
+                        if (!run) {
+                            // Check again when the lease of the other node can be taken over
+                            nextTimeout = LEASES.getNextCheck(serviceLeaseDataService, timerInfo, nextTimeout, currentTime);
+                        }
+                    } catch (RuntimeException e) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Acquiring lease for service " + timerInfo + " failed", e);
+                        }
+                        LEASES.lost(timerInfo);
+                        leaseFailed = true;
                     }
                 }
             } catch (NotSupportedException | SystemException | SecurityException | IllegalStateException e) {
@@ -189,17 +228,53 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
                 LOG.error(ex.getMessage());
             } finally {
                 try {
-                    ut.commit();
-                } catch (RollbackException | HeuristicMixedException | HeuristicRollbackException | SystemException e) {
-                    LOG.error(e);
+                    if (leaseFailed) {
+                        ut.rollback();
+                    } else {
+                        ut.commit();
+                    }
+                } catch (RollbackException | HeuristicMixedException | HeuristicRollbackException | SystemException | IllegalStateException | SecurityException e) {
+                    if (run && isSingleton) {
+                        // The lease was not stored
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Storing lease for service " + timerInfo + " failed", e);
+                        }
+                        LEASES.lost(timerInfo);
+                        leaseFailed = true;
+                        run = false;
+                    } else {
+                        LOG.error(e);
+                    }
                 }
             }
+            final boolean leased = run && isSingleton;
+            if (leaseFailed) {
+                run = isRunWithoutLease(timerInfo);
+            }
+            if (timedService != null && nextTimeout != ITimedService.DONT_EXECUTE) {
+                sessionCtx.getTimerService().createSingleActionTimer(nextTimeout, new TimerConfig(timerInfo, false));
+            }
 
             if (run) {
                 if (serviceConfig != null && timedService != null) {
                     try {
                         if (timedService.isActive() && timedService.getNextInterval() != ITimedService.DONT_EXECUTE) {
-                            timedService.work(new ServiceContext(servicesImpl));
+                            final Timer renewal;
+                            if (leased) {
+                                // Keep the lease while the service is running
+                                final long renewalPeriod = Math.max(leaseDuration / 2, 1000);
+                                renewal = sessionCtx.getTimerService().createIntervalTimer(renewalPeriod, renewalPeriod,
+                                        new TimerConfig(new LeaseRenewal(timerInfo, leaseDuration), false));
+                            } else {
+                                renewal = null;
+                            }
+                            try {
+                                timedService.work(new ServiceContext(servicesImpl));
+                            } finally {
+                                if (renewal != null) {
+                                    renewal.cancel();
+                                }
+                            }
                             serviceConfig.setLastRunTimestamp(new Date());
                             for (final ITimedService.LogType logType :
                                     timedService.getLogTypes()) {
@@ -257,12 +332,102 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
                 }
             } else {
                 if (isSingleton) {
-                    LOG.info("Service " + timerInfo + " have been executed on another node in the cluster, waiting.");
+                    LOG.info("Service " + timerInfo + " is leased by another node in the cluster, waiting.");
                 }
             }
         }
     }
 
+    /**
+     * Decides whether to run a singleton service after taking its lease
+     * failed. If another node holds the lease it most likely created the
+     * lease at the same time and the service is not run. Otherwise the lease
+     * could not be stored at all, i.e. the ServiceLease table has not been
+     * created after an upgrade, and the service is run without a lease
+     * instead of silently not running anymore.
+     *
+     * @param serviceId ID of the service
+     * @return true if the service should be run without a lease
+     */
+    private boolean isRunWithoutLease(final int serviceId) {
+        final UserTransaction ut = sessionCtx.getUserTransaction();
+        try {
+            ut.begin();
+            try {
+                if (LEASES.isHeldByOther(serviceLeaseDataService, serviceId)) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Service " + serviceId + " was leased by another node at the same time");
+                    }
+                    return false;
+                }
+            } finally {
+                ut.rollback();
+            }
+        } catch (NotSupportedException | SystemException | RuntimeException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Reading lease for service " + serviceId + " failed", e);
+            }
+        }
+        LOG.error("Could not store the lease for singleton service " + serviceId
+                + ", running it without a lease. Make sure the ServiceLease table has been created.");
+        return true;
+    }
+
+    /**
+     * Extends the lease of a singleton service still running on this node.
+     *
+     * @param renewal the service and lease duration
+     */
+    private void renewLease(final LeaseRenewal renewal) {
+        final UserTransaction ut = sessionCtx.getUserTransaction();
+        boolean renewed = false;
+        try {
+            ut.begin();
+            final boolean updated = LEASES.renew(serviceLeaseDataService, renewal.getServiceId(), renewal.getDuration(), System.currentTimeMillis());
+            ut.commit();
+            renewed = updated;
+        } catch (NotSupportedException | SystemException | RollbackException | HeuristicMixedException | HeuristicRollbackException | RuntimeException e) {
+            LOG.error("Renewing lease for service " + renewal.getServiceId() + " failed: " + e.getMessage());
+            try {
+                if (ut.getStatus() == Status.STATUS_ACTIVE || ut.getStatus() == Status.STATUS_MARKED_ROLLBACK) {
+                    ut.rollback();
+                }
+            } catch (IllegalStateException | SecurityException | SystemException ex) {
+                LOG.error(ex);
+            }
+        }
+        if (!renewed) {
+            LOG.warn("Service " + renewal.getServiceId() + " is still running but its lease could not be renewed");
+            LEASES.lost(renewal.getServiceId());
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Renewed lease for service " + renewal.getServiceId());
+        }
+    }
+
+    /**
+     * Timer information for renewing the lease of a running service.
+     */
+    private static class LeaseRenewal implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int serviceId;
+        private final long duration;
+
+        LeaseRenewal(final int serviceId, final long duration) {
+            this.serviceId = serviceId;
+            this.duration = duration;
+        }
+
+        public int getServiceId() {
+            return serviceId;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+    }
+
     /**
      * Loads and activates one or all the services from database that are active
      *
@@ -188,7 +188,11 @@ public class StartupSingletonBean {
         } catch (NoSuchPropertyException ex) {
             throw new EJBException(ex);
         }
-        
+
+        // Start loading and activating the workers in the background so that
+        // the first requests do not have to
+        LOG.debug(">init warm-up of workers");
+        workerSession.warmUpWorkers(null);
     }
 
     private static final String CRYPTOTOKENPROPERTY_BASE = ".CRYPTOTOKEN";
@@ -63,8 +63,11 @@ import org.signserver.ejb.interfaces.WorkerSession;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
 import org.signserver.ejb.worker.impl.PreloadedWorkerConfig;
 import org.signserver.server.IServices;
+import org.signserver.server.NoAccounter;
 import org.signserver.server.log.ExceptionLoggable;
 import org.signserver.server.log.Loggable;
+import org.signserver.server.tsa.ITimeStampTokenIssuer;
+import org.signserver.server.tsa.TimeStampTokenRequest;
 
 /**
  * Implements the business logic for the process method.
@@ -114,9 +117,51 @@ class WorkerProcessImpl {
             final Request request, final RequestContext requestContext)
             throws IllegalRequestException, CryptoTokenOfflineException,
             SignServerException {
+        return process(adminInfo, wi, request, requestContext, false);
+    }
+
+    /**
+     * @see org.signserver.ejb.interfaces.InternalProcessSessionLocal#processDirect(org.signserver.server.log.AdminInfo, org.signserver.common.WorkerIdentifier, org.signserver.common.data.Request, org.signserver.common.RequestContext)
+     */
+    public Response processDirect(final AdminInfo adminInfo, final WorkerIdentifier wi,
+            final Request request, final RequestContext requestContext)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+            SignServerException {
+        final WorkerWithComponents worker;
+        try {
+            worker = workerManagerSession.getWorkerWithComponents(wi);
+        } catch (NoSuchWorkerException ex) {
+            // Let the normal processing log the failure
+            return process(adminInfo, wi, request, requestContext, false);
+        }
+
+        if (!(worker.getWorker() instanceof ITimeStampTokenIssuer)
+                || !(request instanceof TimeStampTokenRequest)) {
+            return null;
+        }
+
+        // Archiving and accounting are only performed by the normal processing
+        final List<Archiver> archivers = worker.getArchivers();
+        final boolean direct = (archivers == null || archivers.isEmpty())
+                && worker.getAccounter() instanceof NoAccounter;
+        return process(adminInfo, wi, request, requestContext, direct);
+    }
+
+    /**
+     * Processes the request.
+     *
+     * @param direct true if the worker should issue the time-stamp tokens
+     * directly, without accounting, archiving or preliminary key usage
+     * counter check
+     */
+    private Response process(final AdminInfo adminInfo, final WorkerIdentifier wi,
+            final Request request, final RequestContext requestContext,
+            final boolean direct)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+            SignServerException {
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug(">process: " + wi);
+            LOG.debug(">process: " + wi + (direct ? " (direct)" : ""));
         }
 
         // Start time
@@ -173,6 +218,9 @@ class WorkerProcessImpl {
         // Log the worker name
         logMap.put(IWorkerLogger.LOG_WORKER_NAME, pwc.getName());
 
+        // Let the HTTP interface know how to encode the response
+        requestContext.put(RequestContext.RESPONSE_COMPRESSION, pwc.getResponseCompression());
+
         // Get worker log instance
         final IWorkerLogger workerLogger = worker.getWorkerLogger();
 
@@ -217,24 +265,28 @@ class WorkerProcessImpl {
             }
 
             // Process the request
-            final Response res = handleProcessing(processable, workerId, request, requestContext, logMap, workerLogger, adminInfo);
+            final Response res = handleProcessing(processable, workerId, request, requestContext, logMap, workerLogger, adminInfo, direct);
 
             // Check signer certificate            
             Certificate signerCertificate = null;
             if (res instanceof SignatureResponse) {
                 signerCertificate = ((SignatureResponse) res).getSignerCertificate();
             }
-            handleSignerCertificate(signerCertificate, workerId, logMap, pwc, requestContext, workerLogger, adminInfo);
+            handleSignerCertificate(signerCertificate, workerId, logMap, pwc, requestContext, workerLogger, adminInfo, !direct);
 
-            // Charge the client if the request was successfull
-            handleAccounting(worker, requestContext, logMap, request, res, workerLogger, adminInfo);
+            if (!direct) {
+                // Charge the client if the request was successfull
+                handleAccounting(worker, requestContext, logMap, request, res, workerLogger, adminInfo);
 
-            // Archiving
-            handleArchiving(res, worker, requestContext);
+                // Archiving
+                handleArchiving(res, worker, requestContext);
+            }
 
             // Check key usage limit
             if (!pwc.isDisableKeyUsageCounter() || pwc.isKeyUsageLimitSpecified()) {
-                checkSignerKeyUsageCounter(signerCertificate, workerId, pwc.getKeyUsageLimit(), em, true, requestContext.getServices());
+                final int signatureCount = res instanceof SignatureResponse
+                        ? ((SignatureResponse) res).getSignatureCount() : 1;
+                checkSignerKeyUsageCounter(signerCertificate, workerId, pwc.getKeyUsageLimit(), em, true, signatureCount, requestContext.getServices());
             }
 
             // Output successfully
@@ -311,11 +363,13 @@ class WorkerProcessImpl {
      * @param workerId
      * @param awc
      * @param em
+     * @param increment if the counter should be increased
+     * @param count number of signatures to increase the counter with
      * @throws CryptoTokenOfflineException
      */
     private void checkSignerKeyUsageCounter(final Certificate cert,
             final int workerId, final long keyUsageLimit, EntityManager em,
-            final boolean increment, final IServices services)
+            final boolean increment, final int count, final IServices services)
         throws CryptoTokenOfflineException {
 
         if (cert != null) {
@@ -330,7 +384,10 @@ class WorkerProcessImpl {
             }
 
             if (increment) {
-                if (!keyUsageCounterDataService.incrementIfWithinLimit(keyHash, keyUsageLimit)) {
+                final boolean incremented = count == 1
+                        ? keyUsageCounterDataService.incrementIfWithinLimit(keyHash, keyUsageLimit)
+                        : keyUsageCounterDataService.incrementIfWithinLimit(keyHash, keyUsageLimit, count);
+                if (!incremented) {
                     final String message
                             = "Key usage limit exceeded or not initialized for worker "
                             + workerId;
@@ -429,7 +486,7 @@ class WorkerProcessImpl {
         }
     }
 
-    private void handleSignerCertificate(Certificate signerCertificate, int workerId, LogMap logMap, PreloadedWorkerConfig pwc, RequestContext requestContext, IWorkerLogger workerLogger, AdminInfo adminInfo) throws WorkerLoggerException, CryptoTokenOfflineException {
+    private void handleSignerCertificate(Certificate signerCertificate, int workerId, LogMap logMap, PreloadedWorkerConfig pwc, RequestContext requestContext, IWorkerLogger workerLogger, AdminInfo adminInfo, boolean checkKeyUsageCounter) throws WorkerLoggerException, CryptoTokenOfflineException {
         if (signerCertificate instanceof X509Certificate) {
             final X509Certificate cert = (X509Certificate) signerCertificate;
 
@@ -465,9 +522,9 @@ class WorkerProcessImpl {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Key usage counter disabled: " + pwc.isDisableKeyUsageCounter());
                 }
-                if (!pwc.isDisableKeyUsageCounter() || pwc.isKeyUsageLimitSpecified()) {
+                if (checkKeyUsageCounter && (!pwc.isDisableKeyUsageCounter() || pwc.isKeyUsageLimitSpecified())) {
                     checkSignerKeyUsageCounter(signerCertificate, workerId, pwc.getKeyUsageLimit(), em,
-                            false, requestContext.getServices());
+                            false, 0, requestContext.getServices());
                 }
             } catch (CryptoTokenOfflineException ex) {
                 final CryptoTokenOfflineException exception =
@@ -551,8 +608,11 @@ class WorkerProcessImpl {
         }
     }
 
-    private Response handleProcessing(final IProcessable processable, final int workerId, final Request request, final RequestContext requestContext, final LogMap logMap, final IWorkerLogger workerLogger, final AdminInfo adminInfo) throws AuthorizationRequiredException, WorkerLoggerException, SignServerException, IllegalRequestException, CryptoTokenOfflineException {
+    private Response handleProcessing(final IProcessable processable, final int workerId, final Request request, final RequestContext requestContext, final LogMap logMap, final IWorkerLogger workerLogger, final AdminInfo adminInfo, final boolean direct) throws AuthorizationRequiredException, WorkerLoggerException, SignServerException, IllegalRequestException, CryptoTokenOfflineException {
         try {
+            if (direct) {
+                return ((ITimeStampTokenIssuer) processable).issueTimeStampTokens((TimeStampTokenRequest) request, requestContext);
+            }
             return processable.processData(request, requestContext);
         } catch (AuthorizationRequiredException ex) {
           throw ex; // This can happen in dispatching workers
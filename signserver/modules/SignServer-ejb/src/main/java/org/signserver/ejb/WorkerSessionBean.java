@@ -22,9 +22,14 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.SessionContext;
@@ -34,6 +39,7 @@ import javax.persistence.EntityManager;
 
 import org.apache.log4j.Logger;
 import org.cesecore.audit.AuditLogEntry;
+import org.cesecore.audit.impl.integrityprotected.AuditRecordData;
 import org.cesecore.audit.audit.SecurityEventsAuditorSessionLocal;
 import org.cesecore.audit.enums.EventStatus;
 import org.cesecore.audit.log.AuditRecordStorageException;
@@ -41,7 +47,10 @@ import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
 import org.cesecore.authentication.tokens.UsernamePrincipal;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.util.CertTools;
+import org.cesecore.util.query.Criteria;
+import org.cesecore.util.query.Elem;
 import org.cesecore.util.query.QueryCriteria;
+import org.cesecore.util.query.clauses.Order;
 import org.signserver.admin.common.config.RekeyUtil;
 import org.signserver.common.*;
 import org.signserver.common.KeyTestResult;
@@ -62,6 +71,8 @@ import org.signserver.common.WorkerIdentifier;
 import org.signserver.ejb.interfaces.DispatcherProcessSessionLocal;
 import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
 import org.signserver.ejb.interfaces.ProcessSessionLocal;
+import org.signserver.ejb.worker.impl.WorkerStatusCache;
+import org.signserver.ejb.worker.impl.WorkerWarmUp;
 import org.signserver.ejb.worker.impl.WorkerWithComponents;
 import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
@@ -87,6 +98,37 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
     
     /** Log4j instance for this class. */
     private static final Logger LOG = Logger.getLogger(WorkerSessionBean.class);
+
+    /** Global configuration property for the maximum age in milliseconds of cached worker statuses. */
+    private static final String WORKERSTATUS_CACHETIME = "WORKERSTATUS_CACHETIME";
+    private static final long DEFAULT_WORKERSTATUS_CACHETIME = 5000;
+
+    /**
+     * Global configuration property for which workers to warm up at startup
+     * and after reload: NONE, ALL or TAGGED (workers with WARMUP=true).
+     */
+    private static final String WARMUP = "WARMUP";
+    private static final String WARMUP_NONE = "NONE";
+    private static final String WARMUP_ALL = "ALL";
+    private static final String WARMUP_TAGGED = "TAGGED";
+
+    /** Global configuration property for the number of parallel warm-ups. */
+    private static final String WARMUP_THREADS = "WARMUP_THREADS";
+    private static final int DEFAULT_WARMUP_THREADS = 4;
+
+    /** Global configuration property for testing the key during warm-up. */
+    private static final String WARMUP_SELFTEST = "WARMUP_SELFTEST";
+
+    /**
+     * Global configuration property for the maximum time in seconds the
+     * warm-up at startup or after reload of all workers is reported as
+     * pending.
+     */
+    private static final String WARMUP_TIMEOUT = "WARMUP_TIMEOUT";
+    private static final long DEFAULT_WARMUP_TIMEOUT = 300;
+
+    /** Maximum time in milliseconds to wait for background status refreshes. */
+    private static final long STATUS_REFRESH_TIMEOUT = 30000;
    
     /** The local home interface of Worker Config entity bean. */
     private IWorkerConfigDataService workerConfigService;
@@ -284,12 +326,189 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
             
             errorsAtEjbLevel.addAll(worker.getCreateErrors());
         
-            return new StaticWorkerStatus(worker.getWorker().getStatus(errorsAtEjbLevel, servicesImpl));
+            final WorkerStatus result = new StaticWorkerStatus(worker.getWorker().getStatus(errorsAtEjbLevel, servicesImpl));
+
+            // Keep the status cache up-to-date
+            workerManagerSession.getStatusCache().update(worker.getId(), result);
+
+            return result;
         } catch (NoSuchWorkerException ex) {
             throw new InvalidWorkerIdException(ex.getMessage());
         }
     }
 
+    @Override
+    public List<WorkerStatus> getStatuses(final List<WorkerIdentifier> wis) {
+        final WorkerStatusCache cache = workerManagerSession.getStatusCache();
+        final long maxAge = getStatusCacheTime();
+        final WorkerSessionLocal self = ctx.getBusinessObject(WorkerSessionLocal.class);
+        final List<WorkerStatus> result = new ArrayList<>(wis.size());
+        final Map<Integer, Future<WorkerStatus>> refreshes = new HashMap<>();
+
+        // Use the cached statuses that are fresh and start refresh of the
+        // others so that they all run concurrently
+        for (final WorkerIdentifier wi : wis) {
+            WorkerStatus status = null;
+            try {
+                final int id = workerManagerSession.getWorkerWithComponents(wi).getId();
+                status = cache.getFresh(id, maxAge);
+                if (status == null) {
+                    final WorkerIdentifier idOnly = new WorkerIdentifier(id);
+                    refreshes.put(result.size(), cache.refresh(id, new Runnable() {
+                        @Override
+                        public void run() {
+                            self.refreshStatus(idOnly);
+                        }
+                    }));
+                }
+            } catch (NoSuchWorkerException ex) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("No such worker: " + wi);
+                }
+            }
+            result.add(status);
+        }
+
+        // Collect the refreshed statuses
+        final long deadline = System.currentTimeMillis() + STATUS_REFRESH_TIMEOUT;
+        for (Map.Entry<Integer, Future<WorkerStatus>> refresh : refreshes.entrySet()) {
+            final WorkerIdentifier wi = wis.get(refresh.getKey());
+            WorkerStatus status;
+            try {
+                status = refresh.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new EJBException("Interrupted while waiting for worker status", ex);
+            } catch (ExecutionException | TimeoutException ex) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Background status refresh failed for worker " + wi + ": " + ex.getMessage());
+                }
+                try {
+                    status = getStatus(wi);
+                } catch (InvalidWorkerIdException | RuntimeException ex2) { // NOPMD: We safe-guard for bugs in worker implementations
+                    LOG.error("Unable to get status for worker " + wi + ": " + ex2.getMessage());
+                    status = null;
+                }
+            }
+            result.set(refresh.getKey(), status);
+        }
+        return result;
+    }
+
+    @Asynchronous
+    @Override
+    public void refreshStatus(final WorkerIdentifier wi) {
+        try {
+            getStatus(wi);
+        } catch (InvalidWorkerIdException | RuntimeException ex) {
+            workerManagerSession.getStatusCache().failed(wi.getId(), ex);
+        }
+    }
+
+    @Override
+    public void addStatusListener(final WorkerStatusListener listener) {
+        workerManagerSession.getStatusCache().addListener(listener);
+    }
+
+    @Override
+    public void removeStatusListener(final WorkerStatusListener listener) {
+        workerManagerSession.getStatusCache().removeListener(listener);
+    }
+
+    @Override
+    public void warmUpWorkers(final List<Integer> workerIds) {
+        final GlobalConfiguration config = globalConfigurationSession.getGlobalConfiguration();
+        final String mode = config.getProperty(GlobalConfiguration.SCOPE_GLOBAL, WARMUP);
+        final boolean tagged;
+        if (mode == null || WARMUP_NONE.equalsIgnoreCase(mode.trim())) {
+            return;
+        } else if (WARMUP_ALL.equalsIgnoreCase(mode.trim())) {
+            tagged = false;
+        } else if (WARMUP_TAGGED.equalsIgnoreCase(mode.trim())) {
+            tagged = true;
+        } else {
+            LOG.error("Incorrect value for global configuration property " + WARMUP + ": " + mode);
+            return;
+        }
+
+        final List<Integer> existing = workerManagerSession.getAllWorkerIDs();
+        final List<Integer> ids = new ArrayList<>();
+        for (final Integer id : workerIds == null ? existing : workerIds) {
+            if (existing.contains(id)
+                    && (!tagged || Boolean.parseBoolean(getWorkerConfig(id).getProperty(WARMUP, Boolean.FALSE.toString()).trim()))) {
+                ids.add(id);
+            }
+        }
+
+        if (!ids.isEmpty()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Warming up workers: " + ids);
+            }
+            final boolean selfTest = Boolean.parseBoolean(config.getProperty(GlobalConfiguration.SCOPE_GLOBAL, WARMUP_SELFTEST));
+            final WorkerSessionLocal self = ctx.getBusinessObject(WorkerSessionLocal.class);
+            // Only the warm-up of all workers holds back the health check
+            final long blockingTimeout = workerIds == null ? getWarmUpTimeout(config) : 0;
+            workerManagerSession.getWarmUp().submit(ids, getWarmUpThreads(config), blockingTimeout, new WorkerWarmUp.Starter() {
+                @Override
+                public void start(int workerId) {
+                    self.warmUpWorker(workerId, selfTest);
+                }
+            });
+        }
+    }
+
+    @Asynchronous
+    @Override
+    public void warmUpWorker(final int workerId, final boolean selfTest) {
+        final long startTime = System.nanoTime();
+        final List<String> errors = new LinkedList<>();
+        try {
+            // Getting the status loads the worker and its components and
+            // initializes the crypto token
+            final WorkerIdentifier wi = new WorkerIdentifier(workerId);
+            final WorkerStatus status = getStatus(wi);
+            errors.addAll(status.getFatalErrors());
+
+            if (selfTest && errors.isEmpty() && !status.isDisabled()
+                    && workerManagerSession.getWorker(wi) instanceof IProcessable) {
+                for (KeyTestResult result : testKey(new AdminInfo("CLI user", null, null), wi, null, null)) {
+                    if (!result.isSuccess()) {
+                        errors.add("Key test failed for " + result.getAlias() + ": " + result.getStatus());
+                    }
+                }
+            }
+        } catch (InvalidWorkerIdException | NoSuchWorkerException | CryptoTokenOfflineException
+                | KeyStoreException | RuntimeException ex) { // NOPMD: We safe-guard for bugs in worker implementations
+            errors.add(ex.getMessage());
+        } finally {
+            workerManagerSession.getWarmUp().completed(workerId, System.nanoTime() - startTime, errors);
+        }
+    }
+
+    @Override
+    public int getWarmUpPending() {
+        return workerManagerSession.getWarmUp().getBlockingPending();
+    }
+
+    private static int getWarmUpThreads(final GlobalConfiguration config) {
+        return config.getIntProperty(GlobalConfiguration.SCOPE_GLOBAL, WARMUP_THREADS, DEFAULT_WARMUP_THREADS);
+    }
+
+    /**
+     * @return maximum time in milliseconds the warm-up of all workers is
+     * reported as pending
+     */
+    private static long getWarmUpTimeout(final GlobalConfiguration config) {
+        return TimeUnit.SECONDS.toMillis(config.getLongProperty(GlobalConfiguration.SCOPE_GLOBAL, WARMUP_TIMEOUT, DEFAULT_WARMUP_TIMEOUT));
+    }
+
+    /**
+     * @return maximum age of cached worker statuses in milliseconds
+     */
+    private long getStatusCacheTime() {
+        return globalConfigurationSession.getGlobalConfiguration().getLongProperty(GlobalConfiguration.SCOPE_GLOBAL, WORKERSTATUS_CACHETIME, DEFAULT_WORKERSTATUS_CACHETIME);
+    }
+
     @Override
     public boolean isTokenActive(WorkerIdentifier workerId) throws InvalidWorkerIdException {
         boolean result;
@@ -353,6 +572,9 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
             serviceTimerSession.unload(workerId);
             serviceTimerSession.load(workerId);
         }
+
+        // Warm up the reloaded worker(s) again
+        warmUpWorkers(workerId == 0 ? null : Collections.singletonList(workerId));
     }
 
     /* (non-Javadoc)
@@ -372,6 +594,7 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
             IProcessable signer = (IProcessable) worker;
             
             signer.activateSigner(authenticationCode, servicesImpl);
+            invalidateStatus(signerId);
             
             // Try to initialize the key usage counter
             initKeyUsageCounter(worker, servicesImpl);
@@ -395,12 +618,25 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
             }
             IProcessable signer = (IProcessable) worker;
             
-            return signer.deactivateSigner(servicesImpl);
+            final boolean result = signer.deactivateSigner(servicesImpl);
+            invalidateStatus(signerId);
+            return result;
         } catch (NoSuchWorkerException ex) {
             throw new InvalidWorkerIdException(ex.getMessage());
         }
     }
 
+    /**
+     * Forget the cached status of the worker after a change of its state.
+     *
+     * @param wi of worker
+     * @throws NoSuchWorkerException in case the worker does not exist
+     */
+    private void invalidateStatus(final WorkerIdentifier wi) throws NoSuchWorkerException {
+        final int id = wi.hasId() ? wi.getId() : workerManagerSession.getWorkerWithComponents(wi).getId();
+        workerManagerSession.getStatusCache().invalidate(id);
+    }
+
     @Override
     public String generateSignerKey(final WorkerIdentifier signerId, String keyAlgorithm,
             String keySpec, String alias, final char[] authCode)
@@ -1352,6 +1588,53 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
         return selectAuditLogs(new AdminInfo("CLI user", null, null), startIndex, max, criteria, logDeviceId);
     }
 
+    @Override
+    public List<? extends AuditLogEntry> selectAuditLogsFromCursor(final AdminInfo adminInfo, final String cursor, final int max, final QueryCriteria criteria, final String logDeviceId) throws AuthorizationDeniedException {
+        final QueryCriteria conditions = QueryCriteria.create();
+        for (final Elem elem : criteria.getElements()) {
+            if (!(elem instanceof Order)) {
+                conditions.add(elem);
+            }
+        }
+
+        if (cursor == null) {
+            return selectAuditLogs(adminInfo, 0, max, copy(conditions).add(Criteria.orderDesc(AuditRecordData.FIELD_TIMESTAMP)), logDeviceId);
+        }
+
+        // Entries with the same time stamp as the last one already returned
+        // have no defined order so first take the ones not seen yet
+        final AuditLogSearchCursor position = AuditLogSearchCursor.parse(cursor);
+        final List<AuditLogEntry> results = new ArrayList<>(max);
+        final List<? extends AuditLogEntry> sameTime = selectAuditLogs(adminInfo, 0, position.getSeenCount() + max,
+                copy(conditions).add(Criteria.eq(AuditRecordData.FIELD_TIMESTAMP, position.getTimeStamp())), logDeviceId);
+        for (final AuditLogEntry entry : sameTime) {
+            if (results.size() < max && !position.isSeen(entry)) {
+                results.add(entry);
+            }
+        }
+
+        // Then the older ones
+        if (results.size() < max) {
+            results.addAll(selectAuditLogs(adminInfo, 0, max - results.size(),
+                    copy(conditions).add(Criteria.lsr(AuditRecordData.FIELD_TIMESTAMP, position.getTimeStamp()))
+                            .add(Criteria.orderDesc(AuditRecordData.FIELD_TIMESTAMP)), logDeviceId));
+        }
+        return results;
+    }
+
+    @Override
+    public List<? extends AuditLogEntry> selectAuditLogsFromCursor(String cursor, int max, QueryCriteria criteria, String logDeviceId) throws AuthorizationDeniedException {
+        return selectAuditLogsFromCursor(new AdminInfo("CLI user", null, null), cursor, max, criteria, logDeviceId);
+    }
+
+    private static QueryCriteria copy(final QueryCriteria criteria) {
+        final QueryCriteria result = QueryCriteria.create();
+        for (final Elem elem : criteria.getElements()) {
+            result.add(elem);
+        }
+        return result;
+    }
+
     @Override
     public List<ArchiveMetadata> searchArchive(final int startIndex, final int max,
             final QueryCriteria criteria, final boolean includeData) {
@@ -1373,6 +1656,56 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
         }
     }
 
+    @Override
+    public List<ArchiveMetadata> searchArchiveAfter(final String after,
+            final int max, final QueryCriteria criteria,
+            final boolean includeData) {
+        return searchArchiveAfter(new AdminInfo("CLI user", null, null),
+                after, max, criteria, includeData);
+    }
+
+    @Override
+    public List<ArchiveMetadata> searchArchiveAfter(final AdminInfo adminInfo,
+            final String after, final int max,
+            final QueryCriteria criteria, final boolean includeData) {
+        if (archiveDataService == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Archiving to database is not supported when running without database");
+            }
+            return Collections.emptyList();
+        } else {
+            return archiveDataService.findMatchingCriteriaAfter(
+                    after == null ? null : ArchiveSearchCursor.parse(after),
+                    max, criteria, includeData);
+        }
+    }
+
+    @Override
+    public int removeArchiveEntriesBefore(final long before, final int max) {
+        if (archiveDataService == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Archiving to database is not supported when running without database");
+            }
+            return 0;
+        } else {
+            return archiveDataService.removeBefore(before, max);
+        }
+    }
+
+    @Override
+    public int exportArchiveWithIds(final AdminInfo adminInfo,
+            final List<String> uniqueIds, final ArchiveExportHandler handler)
+            throws IOException {
+        if (archiveDataService == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Archiving to database is not supported when running without database");
+            }
+            return 0;
+        } else {
+            return archiveDataService.exportWithUniqueIdInList(uniqueIds, handler);
+        }
+    }
+
     @Override
     public List<ArchiveMetadata> searchArchiveWithIds(AdminInfo adminInfo,
         List<String> uniqueIds, boolean includeData) {
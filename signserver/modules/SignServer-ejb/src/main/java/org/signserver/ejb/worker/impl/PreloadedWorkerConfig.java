@@ -18,6 +18,7 @@ import org.signserver.common.SignServerConstants;
 import static org.signserver.common.SignServerConstants.DISABLED;
 import static org.signserver.common.SignServerConstants.DISABLEKEYUSAGECOUNTER;
 import org.signserver.common.WorkerConfig;
+import org.signserver.server.data.impl.ResponseCompressionConfig;
 import static org.signserver.common.util.PropertiesConstants.NAME;
 
 /**
@@ -39,6 +40,8 @@ public class PreloadedWorkerConfig {
     private final boolean checkPrivateKeyValidity;
     private final int minRemainingCertValidity;
 
+    private final ResponseCompressionConfig responseCompression;
+
     /**
      * Parse and construct the worker configuration.
      *
@@ -76,6 +79,8 @@ public class PreloadedWorkerConfig {
             minRemainingCertValidityValue = 0;
         }
         this.minRemainingCertValidity = minRemainingCertValidityValue;
+
+        this.responseCompression = ResponseCompressionConfig.create(config, fatalErrors);
     }
 
     public String getName() {
@@ -109,5 +114,9 @@ public class PreloadedWorkerConfig {
     public int getMinRemainingCertValidity() {
         return minRemainingCertValidity;
     }
+
+    public ResponseCompressionConfig getResponseCompression() {
+        return responseCompression;
+    }
     
 }
@@ -55,6 +55,10 @@ public class WorkerManagerSingletonBean {
     
     private SignServerContext workerContext;
 
+    private final WorkerStatusCache statusCache = new WorkerStatusCache();
+
+    private final WorkerWarmUp warmUp = new WorkerWarmUp();
+
     @PostConstruct
     public void create() {
         if (em == null) {
@@ -99,6 +103,11 @@ public class WorkerManagerSingletonBean {
      */
     public void reloadWorker(WorkerIdentifier wi) {
         workerFactory.reloadWorker(wi);
+        if (wi.hasId()) {
+            statusCache.invalidate(wi.getId());
+        } else {
+            statusCache.invalidateAll();
+        }
     }
 
     /**
@@ -106,6 +115,21 @@ public class WorkerManagerSingletonBean {
      */
     public void flush() {
         workerFactory.flush();
+        statusCache.invalidateAll();
+    }
+
+    /**
+     * @return the cache with the latest known worker statuses
+     */
+    public WorkerStatusCache getStatusCache() {
+        return statusCache;
+    }
+
+    /**
+     * @return the state of the warm-up of workers
+     */
+    public WorkerWarmUp getWarmUp() {
+        return warmUp;
     }
     
     /**
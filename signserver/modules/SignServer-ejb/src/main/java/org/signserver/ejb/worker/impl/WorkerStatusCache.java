@@ -0,0 +1,156 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+import org.signserver.common.WorkerStatus;
+import org.signserver.common.WorkerStatusListener;
+
+/**
+ * Cache of the latest known status for each worker.
+ *
+ * Refreshes of the status for a worker are de-duplicated so that only one
+ * refresh is in progress for a worker at a time and all callers interested in
+ * it gets the same result. Registered listeners are notified when the fatal
+ * errors of a worker changes.
+ *
+ * @version $Id$
+ */
+public class WorkerStatusCache {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WorkerStatusCache.class);
+
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, CompletableFuture<WorkerStatus>> inFlight = new ConcurrentHashMap<>();
+    private final List<WorkerStatusListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Get the cached status if it is not older than the given age.
+     *
+     * @param workerId of worker
+     * @param maxAge maximum age in milliseconds
+     * @return the cached status or null if none or too old
+     */
+    public WorkerStatus getFresh(final int workerId, final long maxAge) {
+        final Entry entry = entries.get(workerId);
+        if (entry != null && System.currentTimeMillis() - entry.time <= maxAge) {
+            return entry.status;
+        }
+        return null;
+    }
+
+    /**
+     * Get the future result of a refresh of the status for the worker.
+     * If no refresh is already in progress the starter is run to start one.
+     * The starter is expected to eventually call either
+     * {@link #update(int, org.signserver.common.WorkerStatus)} or
+     * {@link #failed(int, java.lang.Throwable)}.
+     *
+     * @param workerId of worker
+     * @param starter to start the refresh
+     * @return future of the refreshed status
+     */
+    public Future<WorkerStatus> refresh(final int workerId, final Runnable starter) {
+        final CompletableFuture<WorkerStatus> future = new CompletableFuture<>();
+        final CompletableFuture<WorkerStatus> existing = inFlight.putIfAbsent(workerId, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            starter.run();
+        } catch (RuntimeException ex) {
+            failed(workerId, ex);
+        }
+        return future;
+    }
+
+    /**
+     * Store a new status for the worker, completing any refresh in progress
+     * and notifying the listeners if the status has changed.
+     *
+     * @param workerId of worker
+     * @param status the new status
+     */
+    public void update(final int workerId, final WorkerStatus status) {
+        final Entry old = entries.put(workerId, new Entry(status, System.currentTimeMillis()));
+        final CompletableFuture<WorkerStatus> future = inFlight.remove(workerId);
+        if (future != null) {
+            future.complete(status);
+        }
+
+        final WorkerStatus oldStatus = old == null ? null : old.status;
+        if (oldStatus == null || !oldStatus.getFatalErrors().equals(status.getFatalErrors())) {
+            for (WorkerStatusListener listener : listeners) {
+                try {
+                    listener.statusChanged(workerId, oldStatus, status);
+                } catch (RuntimeException ex) {
+                    LOG.error("Status listener failed: " + ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Signal that a refresh of the status failed.
+     *
+     * @param workerId of worker
+     * @param cause of the failure
+     */
+    public void failed(final int workerId, final Throwable cause) {
+        final CompletableFuture<WorkerStatus> future = inFlight.remove(workerId);
+        if (future != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Forget the status for the worker, for instance after it has been
+     * reloaded or (de)activated.
+     *
+     * @param workerId of worker
+     */
+    public void invalidate(final int workerId) {
+        entries.remove(workerId);
+    }
+
+    /**
+     * Forget the status for all workers.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public void addListener(final WorkerStatusListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final WorkerStatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static class Entry {
+        private final WorkerStatus status;
+        private final long time;
+
+        Entry(final WorkerStatus status, final long time) {
+            this.status = status;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps track of the warm-up of workers.
+ *
+ * Workers submitted for warm-up are queued and started through the given
+ * starter with at most the configured number of warm-ups running at the
+ * same time. Each time a warm-up completes the next queued worker is
+ * started. A worker submitted again while its warm-up is running, for
+ * instance after a reload, is warmed up again once the current warm-up has
+ * completed.
+ *
+ * Workers submitted with a timeout, i.e. at startup or when all workers are
+ * reloaded, are reported by {@link #getBlockingPending()} until they have
+ * been warmed up or the timeout has passed. Warm-ups submitted without a
+ * timeout, for instance after the reload of a single worker, run in the
+ * background without being reported.
+ *
+ * @version $Id$
+ */
+public class WorkerWarmUp {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WorkerWarmUp.class);
+
+    /**
+     * Starts the warm-up of a worker, expected to eventually call
+     * {@link WorkerWarmUp#completed(int, long, java.util.List)}.
+     */
+    public interface Starter {
+        void start(int workerId);
+    }
+
+    private final Deque<Integer> queue = new ArrayDeque<>();
+    private final Set<Integer> running = new HashSet<>();
+    private final Set<Integer> rerun = new HashSet<>();
+    private final Map<Integer, Long> timings = new LinkedHashMap<>();
+    private final Set<Integer> blocking = new HashSet<>();
+    private long blockingDeadline;
+    private int parallelism = 1;
+    private Starter starter;
+    private long startTime;
+
+    /**
+     * Submits workers for warm-up.
+     *
+     * @param workerIds to warm up
+     * @param parallelism maximum number of warm-ups running at the same time
+     * @param blockingTimeout maximum time in milliseconds the workers are
+     * reported as pending by {@link #getBlockingPending()} or 0 to warm up
+     * the workers in the background without reporting them
+     * @param starter to start the warm-up of a worker
+     */
+    public void submit(final Collection<Integer> workerIds, final int parallelism, final long blockingTimeout, final Starter starter) {
+        final List<Integer> toStart;
+        final Starter current;
+        synchronized (this) {
+            if (queue.isEmpty() && running.isEmpty()) {
+                startTime = System.nanoTime();
+                timings.clear();
+            }
+            this.parallelism = Math.max(1, parallelism);
+            this.starter = starter;
+            for (Integer workerId : workerIds) {
+                if (running.contains(workerId)) {
+                    rerun.add(workerId);
+                } else if (!queue.contains(workerId)) {
+                    queue.add(workerId);
+                }
+            }
+            if (blockingTimeout > 0) {
+                blocking.addAll(workerIds);
+                blockingDeadline = nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockingTimeout);
+            }
+            toStart = takeStartable();
+            current = this.starter;
+        }
+        start(toStart, current);
+    }
+
+    /**
+     * Signals that the warm-up of a worker has completed.
+     *
+     * @param workerId of the worker
+     * @param elapsedNanos time the warm-up took
+     * @param errors any errors during the warm-up
+     */
+    public void completed(final int workerId, final long elapsedNanos, final List<String> errors) {
+        final List<Integer> toStart;
+        final Starter current;
+        synchronized (this) {
+            if (!running.remove(workerId)) {
+                return;
+            }
+            timings.put(workerId, elapsedNanos);
+            if (rerun.remove(workerId)) {
+                queue.add(workerId);
+            } else {
+                blocking.remove(workerId);
+            }
+
+            if (errors.isEmpty()) {
+                LOG.info("Warmed up worker " + workerId + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms");
+            } else {
+                LOG.warn("Warmed up worker " + workerId + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms with errors: " + errors);
+            }
+
+            toStart = takeStartable();
+            current = this.starter;
+            if (queue.isEmpty() && running.isEmpty()) {
+                LOG.info("Warm-up of " + timings.size() + " workers completed in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+            }
+        }
+        start(toStart, current);
+    }
+
+    /**
+     * @return number of workers queued or being warmed up
+     */
+    public synchronized int getPending() {
+        return queue.size() + running.size();
+    }
+
+    /**
+     * @return number of workers submitted with a timeout that are still
+     * queued or being warmed up, or 0 once the timeout has passed
+     */
+    public synchronized int getBlockingPending() {
+        if (!blocking.isEmpty() && nanoTime() - blockingDeadline > 0) {
+            LOG.warn("Warm-up not completed within timeout, no longer waiting for "
+                    + blocking.size() + " workers: " + blocking);
+            blocking.clear();
+        }
+        return blocking.size();
+    }
+
+    /**
+     * @return the time in nanoseconds each worker warmed up since the last
+     * time all warm-ups were completed took
+     */
+    public synchronized Map<Integer, Long> getTimings() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+    }
+
+    /**
+     * @return current value of the time source in nanoseconds
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private List<Integer> takeStartable() {
+        final List<Integer> result = new ArrayList<>();
+        while (!queue.isEmpty() && running.size() < parallelism) {
+            final Integer workerId = queue.poll();
+            running.add(workerId);
+            result.add(workerId);
+        }
+        return result;
+    }
+
+    private void start(final List<Integer> workerIds, final Starter starter) {
+        for (Integer workerId : workerIds) {
+            try {
+                starter.start(workerId);
+            } catch (RuntimeException ex) {
+                completed(workerId, 0, Collections.singletonList("Failed to start warm-up: " + ex.getMessage()));
+            }
+        }
+    }
+}
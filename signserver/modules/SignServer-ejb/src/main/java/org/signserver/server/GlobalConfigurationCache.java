@@ -12,7 +12,11 @@
  *************************************************************************/
 package org.signserver.server;
 
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.signserver.common.CompileTimeSettings;
 import org.signserver.common.GlobalConfiguration;
 
 /**
@@ -20,6 +24,12 @@ import org.signserver.common.GlobalConfiguration;
  * Should only be used from the GlobalConfigurationSessionBean!
  * 
  * FIXME: Move closer to GlobalConfigurationSessionBean and maybe shouldn't be public.
+ *
+ * The configuration is kept as an immutable snapshot published through a
+ * volatile reference so reading it does not need any locking. After the
+ * cache has been invalidated only one thread loads the configuration while
+ * the others wait for it. The change ID stored with the configuration is
+ * polled so changes made by other nodes are picked up.
  * 
  * @author Philip Vendil 2007 jan 22
  *
@@ -27,13 +37,44 @@ import org.signserver.common.GlobalConfiguration;
  */
 public class GlobalConfigurationCache {
 
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(GlobalConfigurationCache.class);
+
     private static final GlobalConfigurationCache INSTANCE = new GlobalConfigurationCache();
-    
+
     /**
-     * Cached configuration used for non-synced state.
+     * Loads the configuration from the database.
      */
-    private Properties cachedGlobalConfig;
-    private String currentState = GlobalConfiguration.STATE_INSYNC;
+    public interface Loader {
+
+        /**
+         * @return all global and node properties of this node
+         */
+        Properties loadProperties();
+
+        /**
+         * @return the current change ID or null if none
+         */
+        String loadChangeId();
+    }
+
+    private final String appVersion = CompileTimeSettings.getInstance().getProperty(CompileTimeSettings.SIGNSERVER_VERSION);
+
+    /** Incremented each time the cache is invalidated. */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Version of the last published snapshot. */
+    private final AtomicLong version = new AtomicLong();
+
+    /** Time of the next poll for the change ID. */
+    private final AtomicLong nextPoll = new AtomicLong();
+
+    /** Lock held while loading or modifying the snapshot. */
+    private final Object lock = new Object();
+
+    /** Cached configuration, also used for non-synced state. */
+    private volatile Snapshot snapshot;
+    private volatile String currentState = GlobalConfiguration.STATE_INSYNC;
 
     private GlobalConfigurationCache() {}
     
@@ -41,19 +82,123 @@ public class GlobalConfigurationCache {
         return INSTANCE;
     }
 
-    public synchronized Properties getCachedGlobalConfig() {
-        return cachedGlobalConfig;
+    /**
+     * Get the current configuration, loading it if the cache has been
+     * invalidated.
+     *
+     * @param loader to load the configuration with
+     * @param pollInterval minimum time in milliseconds between checks of the
+     * change ID or -1 to not check it
+     * @return the configuration snapshot
+     */
+    public GlobalConfiguration getGlobalConfiguration(final Loader loader, final long pollInterval) {
+        Snapshot current = snapshot;
+        if (current != null && current.generation == generation.get()) {
+            if (pollInterval < 0 || !GlobalConfiguration.STATE_INSYNC.equals(current.config.getState())
+                    || !pollChanged(current, loader, pollInterval)) {
+                return current.config;
+            }
+        }
+        synchronized (lock) {
+            current = snapshot;
+            final long gen = generation.get();
+            if (current == null || current.generation != gen) {
+                // Read the change ID first so a change made while loading is
+                // detected by the next poll
+                final String changeId = loader.loadChangeId();
+                final Properties properties = loader.loadProperties();
+                current = new Snapshot(properties, gen, changeId);
+                snapshot = current;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Loaded global configuration version " + current.config.getVersion());
+                }
+            }
+            return current.config;
+        }
+    }
+
+    /**
+     * Checks if the change ID has changed, by at most one thread per poll
+     * interval, and if so invalidates the cache.
+     */
+    private boolean pollChanged(final Snapshot current, final Loader loader, final long pollInterval) {
+        final long now = System.currentTimeMillis();
+        final long next = nextPoll.get();
+        if (now < next || !nextPoll.compareAndSet(next, now + pollInterval)) {
+            return false;
+        }
+        try {
+            if (!Objects.equals(loader.loadChangeId(), current.changeId)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Global configuration changed");
+                }
+                invalidate();
+                return true;
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn("Could not check for global configuration changes: " + ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Makes the next read load the configuration again.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return A copy of the cached properties or null if not loaded
+     */
+    public Properties getCachedGlobalConfig() {
+        final Snapshot current = snapshot;
+        return current == null ? null : current.config.getConfig();
     }
 
-    public synchronized void setCachedGlobalConfig(final Properties cachedGlobalConfig) {
-        this.cachedGlobalConfig = cachedGlobalConfig;
+    /**
+     * Sets or removes a property in the cached configuration only, used
+     * when the database is not available.
+     *
+     * @param key complete key of the property
+     * @param value to set or null to remove the property
+     */
+    public void setCachedProperty(final String key, final String value) {
+        synchronized (lock) {
+            final Snapshot current = snapshot;
+            final Properties properties = current == null ? new Properties() : current.config.getConfig();
+            if (value == null) {
+                properties.remove(key);
+            } else {
+                properties.setProperty(key, value);
+            }
+            snapshot = new Snapshot(properties, generation.get(), current == null ? null : current.changeId);
+        }
     }
 
-    public synchronized String getCurrentState() {
+    public String getCurrentState() {
         return currentState;
     }
 
-    public synchronized void setCurrentState(final String currentState) {
-        this.currentState = currentState;
+    public void setCurrentState(final String currentState) {
+        synchronized (lock) {
+            this.currentState = currentState;
+            final Snapshot current = snapshot;
+            if (current != null) {
+                snapshot = new Snapshot(current.config.getConfig(), current.generation, current.changeId);
+            }
+        }
+    }
+
+    private class Snapshot {
+        private final GlobalConfiguration config;
+        private final long generation;
+        private final String changeId;
+
+        Snapshot(final Properties properties, final long generation, final String changeId) {
+            this.config = new GlobalConfiguration(properties, currentState, appVersion, version.incrementAndGet());
+            this.generation = generation;
+            this.changeId = changeId;
+        }
     }
 }
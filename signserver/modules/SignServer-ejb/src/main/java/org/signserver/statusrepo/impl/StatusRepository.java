@@ -12,10 +12,17 @@
  *************************************************************************/
 package org.signserver.statusrepo.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.log4j.Logger;
+import org.signserver.statusrepo.StatusListener;
 import org.signserver.statusrepo.common.NoSuchPropertyException;
 import org.signserver.statusrepo.common.StatusEntry;
 import org.signserver.statusrepo.common.StatusName;
@@ -25,6 +32,9 @@ import org.signserver.statusrepo.common.StatusName;
  * 
  * All properties should be initialized in the constructor.
  *
+ * The entries are kept in an immutable snapshot which is replaced
+ * atomically on each update so readers never block.
+ *
  * @author Markus Kilås
  * @version $Id: StatusRepository.java 7314 2016-05-17 11:18:23Z malu9369 $
  */
@@ -36,8 +46,12 @@ final class StatusRepository {
     /** The instance. */
     private static final StatusRepository instance = new StatusRepository();
 
-    /** Map of the data. */
-    private Map<StatusName, EntryHolder> datas = new EnumMap<>(StatusName.class);
+    /** Current snapshot of the data, never modified after publication. */
+    private final AtomicReference<Map<StatusName, StatusEntry>> snapshot = new AtomicReference<>();
+
+    /** Weakly referenced listeners. */
+    private final Set<StatusListener> listeners =
+            Collections.newSetFromMap(new WeakHashMap<StatusListener, Boolean>());
 
     /** Creates the instance of this class. */
     private StatusRepository() {
@@ -45,10 +59,12 @@ final class StatusRepository {
             LOG.debug("Created new instance: " + this.toString());
         }
         
-        // Pre-populate with all keys as adding keys on the fly is not thread-safe
+        // Pre-populate with all keys
+        final Map<StatusName, StatusEntry> datas = new EnumMap<>(StatusName.class);
         for (StatusName name : StatusName.values()) {
-            datas.put(name, new EntryHolder());
+            datas.put(name, null);
         }
+        snapshot.set(Collections.unmodifiableMap(datas));
     }
 
     /**
@@ -66,26 +82,40 @@ final class StatusRepository {
      * @return The value associated with the given key
      */
     public StatusEntry get(final StatusName key) throws NoSuchPropertyException {
-        final StatusEntry result;
-        final EntryHolder holder = datas.get(key);
-        if (holder == null) {
+        final Map<StatusName, StatusEntry> datas = snapshot.get();
+        if (!datas.containsKey(key)) {
             throw new NoSuchPropertyException(key.name());
-        } else {
-            result = holder.getEntry();
         }
-        return result;
+        return datas.get(key);
     }
 
     /**
+     * Publishes a new entry and notifies the listeners.
+     *
      * @param key Key to store the data on
      * @param entry The data to store
+     * @return The previous entry
      */
-    public void set(final StatusName key, final StatusEntry entry) throws NoSuchPropertyException {
-        final EntryHolder holder = datas.get(key);
-        if (holder == null) {
-            throw new NoSuchPropertyException(key.name());
+    public StatusEntry set(final StatusName key, final StatusEntry entry) throws NoSuchPropertyException {
+        Map<StatusName, StatusEntry> current;
+        Map<StatusName, StatusEntry> next;
+        do {
+            current = snapshot.get();
+            if (!current.containsKey(key)) {
+                throw new NoSuchPropertyException(key.name());
+            }
+            next = new EnumMap<>(current);
+            next.put(key, entry);
+        } while (!snapshot.compareAndSet(current, Collections.unmodifiableMap(next)));
+
+        for (StatusListener listener : getListeners()) {
+            try {
+                listener.statusUpdated(key, entry);
+            } catch (RuntimeException ex) {
+                LOG.error("Status listener failed", ex);
+            }
         }
-        holder.setEntry(entry);
+        return current.get(key);
     }
 
     /**
@@ -93,22 +123,33 @@ final class StatusRepository {
      */
     public Map<String, StatusEntry> getEntries() {
         Map<String, StatusEntry> result = new HashMap<>();
-        for (Map.Entry<StatusName, EntryHolder> entry : datas.entrySet()) {
-            result.put(entry.getKey().name(), entry.getValue().getEntry());
+        for (Map.Entry<StatusName, StatusEntry> entry : snapshot.get().entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue());
         }
         return result;
     }
 
-    private static class EntryHolder {
-        private volatile StatusEntry entry;
+    /**
+     * @param listener to notify on updates, only weakly referenced
+     */
+    public void addListener(final StatusListener listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
 
-        public StatusEntry getEntry() {
-            return entry;
+    /**
+     * @param listener to not notify anymore
+     */
+    public void removeListener(final StatusListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
         }
+    }
 
-        public void setEntry(StatusEntry entry) {
-            this.entry = entry;
+    private List<StatusListener> getListeners() {
+        synchronized (listeners) {
+            return new ArrayList<>(listeners);
         }
-        
     }
 }
@@ -14,10 +14,10 @@ package org.signserver.statusrepo.impl;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
-import javax.ejb.Lock;
-import javax.ejb.LockType;
 import javax.ejb.Singleton;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.enums.EventStatus;
@@ -30,6 +30,7 @@ import org.signserver.server.log.SignServerServiceTypes;
 import org.signserver.statusrepo.common.NoSuchPropertyException;
 import org.signserver.statusrepo.common.StatusEntry;
 import org.signserver.statusrepo.common.StatusName;
+import org.signserver.statusrepo.StatusListener;
 import org.signserver.statusrepo.StatusRepositorySession;
 import org.signserver.statusrepo.StatusRepositorySessionLocal;
 import org.signserver.statusrepo.StatusRepositorySessionRemote;
@@ -37,10 +38,15 @@ import org.signserver.statusrepo.StatusRepositorySessionRemote;
 /**
  * Session bean offering an interface towards the status repository.
  *
+ * The bean does not use container managed locking: the repository publishes
+ * immutable snapshots so reads never wait for updates, and the audit logging
+ * of an update is done after the new value has been published.
+ *
  * @version $Id: StatusRepositorySessionBean.java 7566 2016-06-28 08:44:51Z malu9369 $
  * @author Markus Kilås
  */
 @Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class StatusRepositorySessionBean implements
         StatusRepositorySessionLocal, StatusRepositorySessionRemote {
 
@@ -72,7 +78,6 @@ public class StatusRepositorySessionBean implements
      * @throws NoSuchPropertyException If the property doesn't exist
      */
     @Override
-    @Lock(value=LockType.READ)
     public StatusEntry getValidEntry(String key) throws NoSuchPropertyException {
         try {
             final StatusEntry result;
@@ -104,7 +109,6 @@ public class StatusRepositorySessionBean implements
      * @param value The value to set
      */
     @Override
-    @Lock(value=LockType.WRITE)
     public void update(final String key, final String value) throws NoSuchPropertyException {
         update(key, value, 0L);
     }
@@ -120,19 +124,16 @@ public class StatusRepositorySessionBean implements
      * @throws org.signserver.statusrepo.common.NoSuchPropertyException
      */
     @Override
-    @Lock(value=LockType.WRITE)
     public void update(final String key, final String newValue,
             final long expiration) throws NoSuchPropertyException {
         try {
             final long currentTime = System.currentTimeMillis();
             final StatusName name = StatusName.valueOf(key);
-            final StatusEntry oldEntry;
 
-            // Get the old value
-            oldEntry = repository.get(name);
-            // Set the new value
-            repository.set(name, new StatusEntry(currentTime, newValue, expiration));
+            // Publish the new value and get the old one
+            final StatusEntry oldEntry = repository.set(name, new StatusEntry(currentTime, newValue, expiration));
 
+            // Audit log outside of any lock so readers are not held up
             if (shouldLog(logUpdates, oldEntry, newValue)) {
                 auditLog(key, newValue, expiration);
             }
@@ -186,10 +187,19 @@ public class StatusRepositorySessionBean implements
      * @return An unmodifiable map of all properties
      */
     @Override
-    @Lock(value=LockType.READ)
     public Map<String, StatusEntry> getAllEntries() {
         return repository.getEntries();
     }
+
+    @Override
+    public void addListener(final StatusListener listener) {
+        repository.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(final StatusListener listener) {
+        repository.removeListener(listener);
+    }
     
     private void auditLog(String property, String value, Long expiration) {
         try {
@@ -0,0 +1,198 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb;
+
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.signserver.server.entities.IServiceLeaseDataService;
+import org.signserver.server.entities.ServiceLease;
+
+/**
+ * Unit tests for the ServiceLeases class.
+ *
+ * @version $Id$
+ */
+public class ServiceLeasesUnitTest {
+
+    private static final long MARGIN = 30000;
+    private static final long SPREAD_DELAY = 5000;
+
+    /** In-memory lease table with the same conditions as the database. */
+    private static class MockedLeaseDataService implements IServiceLeaseDataService {
+        private final Map<Integer, ServiceLease> leases = new HashMap<>();
+        private boolean failing;
+
+        @Override
+        public boolean acquire(int serviceId, String owner, long expiredBefore, long expireTime) {
+            checkFailing();
+            final ServiceLease lease = leases.get(serviceId);
+            if (lease == null || owner.equals(lease.getOwner()) || lease.getExpireTime() < expiredBefore) {
+                leases.put(serviceId, new ServiceLease(serviceId, owner, expireTime));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean renew(int serviceId, String owner, long expireTime) {
+            checkFailing();
+            final ServiceLease lease = leases.get(serviceId);
+            if (lease != null && owner.equals(lease.getOwner())) {
+                leases.put(serviceId, new ServiceLease(serviceId, owner, expireTime));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public ServiceLease getLease(int serviceId) {
+            checkFailing();
+            return leases.get(serviceId);
+        }
+
+        private void checkFailing() {
+            if (failing) {
+                throw new IllegalStateException("Table SERVICELEASE does not exist");
+            }
+        }
+    }
+
+    /**
+     * Tests that the lease lasts the interval plus the margin.
+     */
+    @Test
+    public void testDuration() {
+        final ServiceLeases instance = new ServiceLeases("node1", MARGIN, SPREAD_DELAY);
+        assertEquals(60000 + MARGIN, instance.getDuration(60000));
+        assertEquals("no negative interval", MARGIN, instance.getDuration(-1));
+    }
+
+    /**
+     * Tests that a free lease is taken and that the owner can take it again
+     * but not another node before it has expired.
+     */
+    @Test
+    public void testAcquire() {
+        final MockedLeaseDataService leases = new MockedLeaseDataService();
+        final ServiceLeases node1 = new ServiceLeases("node1", MARGIN, SPREAD_DELAY);
+        final ServiceLeases node2 = new ServiceLeases("node2", MARGIN, SPREAD_DELAY);
+
+        assertTrue("free lease", node1.acquire(leases, 1, 60000, 1000));
+        assertTrue("held", node1.isHeld(1));
+        assertEquals("expire time", 1000 + 60000 + MARGIN, leases.getLease(1).getExpireTime());
+
+        assertFalse("held by other", node2.acquire(leases, 1, 60000, 2000));
+        assertFalse("not held", node2.isHeld(1));
+        assertTrue("held by other", node2.isHeldByOther(leases, 1));
+
+        assertTrue("own lease", node1.acquire(leases, 1, 60000, 61000));
+        assertFalse("own lease", node1.isHeldByOther(leases, 1));
+        assertEquals("extended", 61000 + 60000 + MARGIN, leases.getLease(1).getExpireTime());
+    }
+
+    /**
+     * Tests that an expired lease is taken over.
+     */
+    @Test
+    public void testExpiry() {
+        final MockedLeaseDataService leases = new MockedLeaseDataService();
+        final ServiceLeases node1 = new ServiceLeases("node1", MARGIN, SPREAD_DELAY);
+        final ServiceLeases node2 = new ServiceLeases("node2", MARGIN, SPREAD_DELAY);
+
+        assertTrue(node1.acquire(leases, 1, 60000, 0));
+        final long expireTime = leases.getLease(1).getExpireTime();
+
+        assertFalse("not yet expired", node2.acquire(leases, 1, 60000, expireTime));
+        assertEquals("check again after expiry", 1, node2.getNextCheck(leases, 1, 0, expireTime));
+        assertEquals("at least the interval", 60000, node2.getNextCheck(leases, 1, 60000, expireTime));
+
+        assertTrue("expired", node2.acquire(leases, 1, 60000, expireTime + 1));
+        assertTrue(node2.isHeld(1));
+
+        // The previous owner can not renew anymore
+        assertFalse("renew lost lease", node1.renew(leases, 1, 90000, expireTime + 2));
+        assertFalse(node1.isHeld(1));
+    }
+
+    /**
+     * Tests that the lease is renewed while the service is running.
+     */
+    @Test
+    public void testRenew() {
+        final MockedLeaseDataService leases = new MockedLeaseDataService();
+        final ServiceLeases node1 = new ServiceLeases("node1", MARGIN, SPREAD_DELAY);
+        final ServiceLeases node2 = new ServiceLeases("node2", MARGIN, SPREAD_DELAY);
+
+        assertFalse("no lease", node1.renew(leases, 1, 90000, 0));
+        assertTrue(node1.acquire(leases, 1, 60000, 0));
+        assertTrue("renewed", node1.renew(leases, 1, 90000, 80000));
+        assertEquals("expire time", 80000 + 90000, leases.getLease(1).getExpireTime());
+
+        assertFalse("not expired after renewal", node2.acquire(leases, 1, 60000, 100000));
+        assertFalse("renewed by other", node2.renew(leases, 1, 90000, 100000));
+    }
+
+    /**
+     * Tests that a node already holding leases waits longer before taking
+     * over an expired lease.
+     */
+    @Test
+    public void testSpread() {
+        final MockedLeaseDataService leases = new MockedLeaseDataService();
+        final ServiceLeases node1 = new ServiceLeases("node1", MARGIN, SPREAD_DELAY);
+        final ServiceLeases node2 = new ServiceLeases("node2", MARGIN, SPREAD_DELAY);
+
+        // node2 holds two other services
+        assertTrue(node2.acquire(leases, 2, 60000, 0));
+        assertTrue(node2.acquire(leases, 3, 60000, 0));
+        assertEquals("own lease not counted", SPREAD_DELAY, node2.getSpreadDelay(2));
+        assertEquals(2 * SPREAD_DELAY, node2.getSpreadDelay(1));
+        assertEquals(0, node1.getSpreadDelay(1));
+
+        assertTrue(node1.acquire(leases, 1, 60000, 0));
+        final long expireTime = leases.getLease(1).getExpireTime();
+
+        assertEquals("next check", 2 * SPREAD_DELAY + 1, node2.getNextCheck(leases, 1, 0, expireTime));
+        assertFalse("within spread delay", node2.acquire(leases, 1, 60000, expireTime + 1));
+        assertTrue("after spread delay", node2.acquire(leases, 1, 60000, expireTime + 2 * SPREAD_DELAY + 1));
+    }
+
+    /**
+     * Tests that a lease table that can not be used is not taken for a lost
+     * race.
+     */
+    @Test
+    public void testFailing() {
+        final MockedLeaseDataService leases = new MockedLeaseDataService();
+        final ServiceLeases node1 = new ServiceLeases("node1", MARGIN, SPREAD_DELAY);
+
+        assertFalse("no lease yet", node1.isHeldByOther(leases, 1));
+
+        leases.failing = true;
+        try {
+            node1.acquire(leases, 1, 60000, 0);
+            fail("Should have thrown");
+        } catch (IllegalStateException expected) { // NOPMD
+            // OK
+        }
+        try {
+            node1.isHeldByOther(leases, 1);
+            fail("Should have thrown");
+        } catch (IllegalStateException expected) { // NOPMD
+            // OK
+        }
+        assertFalse(node1.isHeld(1));
+    }
+}
@@ -0,0 +1,136 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.WorkerStatus;
+import org.signserver.common.WorkerStatusListener;
+
+/**
+ * Unit tests for the WorkerStatusCache class.
+ *
+ * @version $Id$
+ */
+public class WorkerStatusCacheUnitTest {
+
+    private static WorkerStatus createStatus(final int workerId, final String... errors) {
+        return new WorkerStatus(workerId, Arrays.asList(errors), new WorkerConfig()) {
+            @Override
+            public void displayStatus(PrintStream out, boolean complete) {
+                out.println(getFatalErrors());
+            }
+        };
+    }
+
+    /**
+     * Tests that a status is only returned while fresh and that an
+     * invalidated status is not returned.
+     */
+    @Test
+    public void testGetFresh() {
+        final WorkerStatusCache instance = new WorkerStatusCache();
+        assertNull(instance.getFresh(1, 1000));
+
+        final WorkerStatus status = createStatus(1);
+        instance.update(1, status);
+        assertSame(status, instance.getFresh(1, 1000));
+        assertNull(instance.getFresh(1, -1));
+
+        instance.invalidate(1);
+        assertNull(instance.getFresh(1, 1000));
+    }
+
+    /**
+     * Tests that only one refresh is started while one is in progress and
+     * that all callers get the result.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRefreshDeduplicated() throws Exception {
+        final WorkerStatusCache instance = new WorkerStatusCache();
+        final AtomicInteger started = new AtomicInteger();
+        final Runnable starter = new Runnable() {
+            @Override
+            public void run() {
+                started.incrementAndGet();
+            }
+        };
+
+        final Future<WorkerStatus> first = instance.refresh(1, starter);
+        final Future<WorkerStatus> second = instance.refresh(1, starter);
+        assertEquals(1, started.get());
+        assertFalse(first.isDone());
+
+        final WorkerStatus status = createStatus(1);
+        instance.update(1, status);
+        assertSame(status, first.get());
+        assertSame(status, second.get());
+
+        // A new refresh can now be started
+        instance.refresh(1, starter);
+        assertEquals(2, started.get());
+    }
+
+    /**
+     * Tests that a failed refresh is signalled to the callers.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRefreshFailed() throws Exception {
+        final WorkerStatusCache instance = new WorkerStatusCache();
+        final Future<WorkerStatus> future = instance.refresh(1, new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Failed to start");
+            }
+        });
+        try {
+            future.get();
+            fail("Should have failed");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Tests that listeners are only notified when the fatal errors changes.
+     */
+    @Test
+    public void testListenerNotifiedOnChange() {
+        final WorkerStatusCache instance = new WorkerStatusCache();
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        instance.addListener(new WorkerStatusListener() {
+            @Override
+            public void statusChanged(int workerId, WorkerStatus oldStatus, WorkerStatus newStatus) {
+                events.add(workerId + ":" + newStatus.getFatalErrors());
+            }
+        });
+
+        instance.update(1, createStatus(1));
+        instance.update(1, createStatus(1));
+        instance.update(1, createStatus(1, "Offline"));
+        instance.update(2, createStatus(2));
+
+        assertEquals("[1:[], 1:[Offline], 2:[]]", events.toString());
+    }
+}
@@ -0,0 +1,167 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit tests for the WorkerWarmUp class.
+ *
+ * @version $Id$
+ */
+public class WorkerWarmUpUnitTest {
+
+    private static final List<String> NO_ERRORS = Collections.emptyList();
+
+    /** WorkerWarmUp with a time source controlled by the test. */
+    private static class ClockedWarmUp extends WorkerWarmUp {
+        private long now;
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+
+        public void advanceMillis(long millis) {
+            now += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private static class RecordingStarter implements WorkerWarmUp.Starter {
+        private final List<Integer> started = new ArrayList<>();
+
+        @Override
+        public void start(int workerId) {
+            started.add(workerId);
+        }
+    }
+
+    /**
+     * Tests that no more than the given number of warm-ups are running at
+     * the same time and that the next is started when one completes.
+     */
+    @Test
+    public void testParallelismBounded() {
+        final WorkerWarmUp instance = new WorkerWarmUp();
+        final RecordingStarter starter = new RecordingStarter();
+
+        instance.submit(Arrays.asList(1, 2, 3, 4), 2, 0, starter);
+        assertEquals(Arrays.asList(1, 2), starter.started);
+        assertEquals(4, instance.getPending());
+
+        instance.completed(2, 100, NO_ERRORS);
+        assertEquals(Arrays.asList(1, 2, 3), starter.started);
+        assertEquals(3, instance.getPending());
+
+        instance.completed(1, 100, NO_ERRORS);
+        instance.completed(3, 100, NO_ERRORS);
+        instance.completed(4, 100, NO_ERRORS);
+        assertEquals(Arrays.asList(1, 2, 3, 4), starter.started);
+        assertEquals(0, instance.getPending());
+        assertEquals(4, instance.getTimings().size());
+    }
+
+    /**
+     * Tests that a worker submitted while it is being warmed up is warmed up
+     * again afterwards and that a queued worker is not queued twice.
+     */
+    @Test
+    public void testResubmitted() {
+        final WorkerWarmUp instance = new WorkerWarmUp();
+        final RecordingStarter starter = new RecordingStarter();
+
+        instance.submit(Arrays.asList(1, 2), 1, 0, starter);
+        instance.submit(Arrays.asList(1, 2), 1, 0, starter);
+        assertEquals(Arrays.asList(1), starter.started);
+        assertEquals(2, instance.getPending());
+
+        instance.completed(1, 100, NO_ERRORS);
+        instance.completed(2, 100, NO_ERRORS);
+        assertEquals(Arrays.asList(1, 2, 1), starter.started);
+        assertEquals(1, instance.getPending());
+
+        instance.completed(1, 100, NO_ERRORS);
+        assertEquals(0, instance.getPending());
+    }
+
+    /**
+     * Tests that a warm-up that could not be started counts as completed.
+     */
+    @Test
+    public void testStartFailed() {
+        final WorkerWarmUp instance = new WorkerWarmUp();
+
+        instance.submit(Arrays.asList(1, 2), 1, 0, new WorkerWarmUp.Starter() {
+            @Override
+            public void start(int workerId) {
+                throw new IllegalStateException("Failed to start");
+            }
+        });
+        assertEquals(0, instance.getPending());
+    }
+
+    /**
+     * Tests that only warm-ups submitted with a timeout are reported as
+     * blocking and that a worker re-submitted in the background stays
+     * blocking until its first warm-up has completed.
+     */
+    @Test
+    public void testBlockingPending() {
+        final ClockedWarmUp instance = new ClockedWarmUp();
+        final RecordingStarter starter = new RecordingStarter();
+
+        instance.submit(Arrays.asList(1, 2), 1, 0, starter);
+        assertEquals(2, instance.getPending());
+        assertEquals(0, instance.getBlockingPending());
+
+        instance.submit(Arrays.asList(1, 2, 3), 1, 60000, starter);
+        assertEquals(3, instance.getBlockingPending());
+
+        instance.completed(1, 100, NO_ERRORS);
+        assertEquals(3, instance.getBlockingPending());
+        instance.completed(2, 100, NO_ERRORS);
+        assertEquals(2, instance.getBlockingPending());
+        instance.completed(3, 100, NO_ERRORS);
+        assertEquals(1, instance.getBlockingPending());
+        instance.completed(1, 100, NO_ERRORS);
+        assertEquals(0, instance.getBlockingPending());
+
+        instance.submit(Arrays.asList(2), 1, 0, starter);
+        assertEquals(1, instance.getPending());
+        assertEquals(0, instance.getBlockingPending());
+    }
+
+    /**
+     * Tests that warm-ups never completing are no longer reported as
+     * blocking after the timeout.
+     */
+    @Test
+    public void testBlockingTimeout() {
+        final ClockedWarmUp instance = new ClockedWarmUp();
+        final RecordingStarter starter = new RecordingStarter();
+
+        instance.submit(Arrays.asList(1, 2), 2, 1000, starter);
+        instance.advanceMillis(1000);
+        assertEquals(2, instance.getBlockingPending());
+
+        instance.advanceMillis(1);
+        assertEquals(0, instance.getBlockingPending());
+        assertEquals(2, instance.getPending());
+    }
+}
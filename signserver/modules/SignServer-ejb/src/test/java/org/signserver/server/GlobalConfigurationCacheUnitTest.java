@@ -0,0 +1,156 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.signserver.common.GlobalConfiguration;
+
+/**
+ * Unit tests for the GlobalConfigurationCache class.
+ *
+ * @version $Id$
+ */
+public class GlobalConfigurationCacheUnitTest {
+
+    private final GlobalConfigurationCache instance = GlobalConfigurationCache.getInstance();
+
+    @Before
+    public void setUp() {
+        instance.setCurrentState(GlobalConfiguration.STATE_INSYNC);
+        instance.invalidate();
+    }
+
+    /**
+     * Tests that the same snapshot is returned until the cache is
+     * invalidated.
+     */
+    @Test
+    public void testSnapshot() {
+        final CountingLoader loader = new CountingLoader();
+
+        final GlobalConfiguration first = instance.getGlobalConfiguration(loader, -1);
+        assertSame(first, instance.getGlobalConfiguration(loader, -1));
+        assertEquals(1, loader.loads.get());
+
+        loader.value = "2";
+        instance.invalidate();
+        final GlobalConfiguration second = instance.getGlobalConfiguration(loader, -1);
+        assertEquals("2", second.getProperty("GLOB.VALUE"));
+        assertTrue("newer version", second.getVersion() > first.getVersion());
+        assertEquals(2, loader.loads.get());
+    }
+
+    /**
+     * Tests that only one thread loads the configuration after invalidation.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testSingleFlight() throws Exception {
+        final CountingLoader loader = new CountingLoader();
+        loader.delay = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    instance.getGlobalConfiguration(loader, -1);
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, loader.loads.get());
+    }
+
+    /**
+     * Tests that a new change ID makes the configuration to be loaded again.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testPollChangeId() throws Exception {
+        final CountingLoader loader = new CountingLoader();
+        instance.getGlobalConfiguration(loader, 0);
+
+        Thread.sleep(2);
+        assertEquals("no change", 1, loader.loads.get());
+        instance.getGlobalConfiguration(loader, 0);
+        assertEquals("no change", 1, loader.loads.get());
+
+        loader.changeId = "2";
+        loader.value = "2";
+        Thread.sleep(2);
+        assertEquals("2", instance.getGlobalConfiguration(loader, 0).getProperty("GLOB.VALUE"));
+        assertEquals(2, loader.loads.get());
+    }
+
+    /**
+     * Tests that properties changed while out of sync are kept in the cache.
+     */
+    @Test
+    public void testOutOfSync() {
+        final CountingLoader loader = new CountingLoader();
+        instance.getGlobalConfiguration(loader, -1);
+
+        instance.setCurrentState(GlobalConfiguration.STATE_OUTOFSYNC);
+        instance.setCachedProperty("GLOB.OTHER", "3");
+        final GlobalConfiguration config = instance.getGlobalConfiguration(loader, 0);
+        assertEquals(GlobalConfiguration.STATE_OUTOFSYNC, config.getState());
+        assertEquals("3", config.getProperty("GLOB.OTHER"));
+        assertEquals("1", config.getProperty("GLOB.VALUE"));
+        assertEquals(1, loader.loads.get());
+    }
+
+    private static class CountingLoader implements GlobalConfigurationCache.Loader {
+        private final AtomicInteger loads = new AtomicInteger();
+        private volatile String value = "1";
+        private volatile String changeId = "1";
+        private volatile long delay;
+
+        @Override
+        public Properties loadProperties() {
+            loads.incrementAndGet();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final Properties result = new Properties();
+            result.setProperty("GLOB.VALUE", value);
+            return result;
+        }
+
+        @Override
+        public String loadChangeId() {
+            return changeId;
+        }
+    }
+}
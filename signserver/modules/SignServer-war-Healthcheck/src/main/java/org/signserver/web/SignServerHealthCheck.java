@@ -48,6 +48,7 @@ import org.signserver.web.pub.cluster.IHealthCheck;
  * Not about to run out if memory (configurable through web.xml with param "MinimumFreeMemory")
  * Database connection can be established.
  * All SignerTokens are active if not set as offline.
+ * Warm-up of the workers, if enabled, has completed.
  * 
  * If a maintenance file has been configured during build, it can be used to enable maintenance mode.
  * When enabled, none of the above system checks are performed, instead a down-for-maintenance message is returned.
@@ -121,6 +122,7 @@ public class SignServerHealthCheck implements IHealthCheck {
             
             if (errors.size() == 0) {
                 errors.addAll(HealthCheckUtils.checkMemory(minfreememory));
+                errors.addAll(checkWarmUp());
                 errors.addAll(checkSigners());
             }
         }
@@ -144,6 +146,15 @@ public class SignServerHealthCheck implements IHealthCheck {
         return result;
     }
 
+    private List<String> checkWarmUp() {
+        final LinkedList<String> result = new LinkedList<>();
+        final int pending = getWorkerSession().getWarmUpPending();
+        if (pending > 0) {
+            result.add("Warm-up in progress: " + pending + " workers remaining");
+        }
+        return result;
+    }
+
     private List<String> checkSigners() {
         final LinkedList<String> result = new LinkedList<>();
         Iterator<Integer> iter = getWorkerSession().getWorkers(WorkerType.PROCESSABLE).iterator();
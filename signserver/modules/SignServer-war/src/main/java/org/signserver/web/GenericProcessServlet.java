@@ -13,12 +13,17 @@
 package org.signserver.web;
 
 import org.signserver.server.data.impl.BinaryFileUpload;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.ZipException;
 import javax.ejb.EJB;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -28,10 +33,8 @@ import org.apache.commons.fileupload.FileUploadBase;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.fileupload.servlet.ServletRequestContext;
 import org.apache.log4j.Logger;
-import org.bouncycastle.util.encoders.Base64;
-import org.bouncycastle.util.encoders.DecoderException;
 import org.cesecore.util.CertTools;
 import org.signserver.common.*;
 import org.signserver.ejb.interfaces.ProcessSessionLocal;
@@ -49,10 +52,14 @@ import org.signserver.common.data.DocumentValidationRequest;
 import org.signserver.common.data.DocumentValidationResponse;
 import org.signserver.common.data.LegacyResponse;
 import org.signserver.common.data.Response;
+import org.signserver.server.data.impl.Base64DecodingInputStream;
 import org.signserver.server.data.impl.CloseableReadableData;
 import org.signserver.server.data.impl.CloseableWritableData;
+import org.signserver.server.data.impl.ContentEncodingUtils;
 import org.signserver.server.data.impl.DataFactory;
+import org.signserver.server.data.impl.DataTransferUtils;
 import org.signserver.server.data.impl.DataUtils;
+import org.signserver.server.data.impl.ResponseCompressionConfig;
 import org.signserver.server.data.impl.UploadConfig;
 import org.signserver.server.log.Loggable;
 import org.signserver.validationservice.common.Validation;
@@ -90,6 +97,8 @@ public class GenericProcessServlet extends AbstractProcessServlet {
     private static final String PROCESS_TYPE_PROPERTY_NAME = "processType";
     private static final String CERT_PURPOSES_PROPERTY_NAME = "certPurposes";
     private static final String HTTP_MAX_UPLOAD_SIZE = "HTTP_MAX_UPLOAD_SIZE";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
     
     private enum ProcessType {
         signDocument,
@@ -147,6 +156,15 @@ public class GenericProcessServlet extends AbstractProcessServlet {
         ProcessType processType = ProcessType.signDocument;
         final MetaDataHolder metadataHolder = new MetaDataHolder();
 
+        // Compressed request bodies are decompressed while being uploaded
+        final String contentEncoding = req.getHeader(CONTENT_ENCODING);
+        final boolean encoded = ContentEncodingUtils.isEncoded(contentEncoding);
+        if (!ContentEncodingUtils.isSupported(contentEncoding)) {
+            LOG.info("Unsupported content encoding: " + contentEncoding);
+            res.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported content encoding: " + contentEncoding);
+            return;
+        }
+
         final UploadConfig uploadConfig = getUploadConfig();
         final DiskFileItemFactory factory = new DiskFileItemFactory();
         factory.setSizeThreshold(uploadConfig.getSizeThreshold());
@@ -160,7 +178,7 @@ public class GenericProcessServlet extends AbstractProcessServlet {
                 upload.setSizeMax(uploadConfig.getMaxUploadSize());
 
                 try {
-                    final List<FileItem> items = upload.parseRequest(req);
+                    final List<FileItem> items = upload.parseRequest(createUploadContext(req, contentEncoding, uploadConfig));
                     itemsToDelete = items;
                     final Iterator<FileItem> iter = items.iterator();
                     //FileItem fileItem = null;
@@ -243,31 +261,26 @@ public class GenericProcessServlet extends AbstractProcessServlet {
                         return;
                     }
 
-                    // Special handling of base64 encoded data. Note: no large file support for this
+                    // Special handling of base64 encoded data
                     if (encoding != null && !encoding.isEmpty()) {
-                        // Read in all data and base64 decode it
-                        byte[] bytes = data.getAsByteArray();
-                        if (bytes.length > 0) {
-                            try {
-                                bytes = Base64.decode(bytes);
-                            } catch (DecoderException ex) {
-                                sendBadRequest(res, "Incorrect base64 data");
-                                return;
-                            } finally {
-                                data.close();
-                            }
-                        }
-                        
-                        // Now put the decoded data
-                        try {
-                            data = dataFactory.createReadableData(bytes, uploadConfig.getMaxUploadSize(), uploadConfig.getRepository());
+                        // Decode the uploaded data into a new item
+                        final CloseableReadableData encodedData = data;
+                        data = null;
+                        try (InputStream in = encodedData.getAsInputStream()) {
+                            data = decodeBase64(in, factory, uploadConfig);
                         } catch (FileUploadBase.SizeLimitExceededException ex) {
                             LOG.error(HTTP_MAX_UPLOAD_SIZE + " exceeded: " + ex.getLocalizedMessage());
                             res.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
                                 "Maximum content length is " + uploadConfig.getMaxUploadSize() + " bytes");
                             return;
                         } catch (FileUploadException ex) {
+                            if (isMalformedBase64(ex)) {
+                                sendBadRequest(res, "Incorrect base64 data");
+                                return;
+                            }
                             throw new ServletException("Upload failed", ex);
+                        } finally {
+                            encodedData.close();
                         }
                     }
                 } catch (FileUploadBase.SizeLimitExceededException ex) {
@@ -276,9 +289,20 @@ public class GenericProcessServlet extends AbstractProcessServlet {
                         "Maximum content length is " + uploadConfig.getMaxUploadSize() + " bytes");
                     return;
                 } catch (FileUploadException ex) {
+                    if (encoded && isDecodingError(ex)) {
+                        sendBadRequest(res, "Malformed " + contentEncoding + " content");
+                        return;
+                    }
                     throw new ServletException("Upload failed", ex);
                 }
             } else {
+                if (encoded && (METHOD_GET.equalsIgnoreCase(req.getMethod())
+                        || (req.getContentType() != null && req.getContentType().contains(FORM_URL_ENCODED)))) {
+                    LOG.info("Content encoding not supported for form data: " + contentEncoding);
+                    res.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Content encoding not supported for form data");
+                    return;
+                }
+
                 if (!workerRequest) {
                     String name = req.getParameter(WORKERNAME_PROPERTY_NAME);
                     if (name != null) {
@@ -342,22 +366,16 @@ public class GenericProcessServlet extends AbstractProcessServlet {
                         sendBadRequest(res, "Missing field 'data' in request");
                         return;
                     }
-                    byte[] bytes = req.getParameter(DATA_PROPERTY_NAME).getBytes();
+                    final byte[] bytes = req.getParameter(DATA_PROPERTY_NAME).getBytes();
 
+                    boolean base64 = false;
                     String encoding = req.getParameter(ENCODING_PROPERTY_NAME);
                     if (encoding != null && !encoding.isEmpty()) {
                         if (ENCODING_BASE64.equalsIgnoreCase(encoding)) {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Decoding base64 data");
                             }
-                            if (bytes.length > 0) {
-                                try {
-                                    bytes = Base64.decode(bytes);
-                                } catch (DecoderException ex) {
-                                    sendBadRequest(res, "Incorrect base64 data");
-                                    return;
-                                }
-                            }
+                            base64 = true;
                         } else {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Unknown encoding: " + encoding);
@@ -369,13 +387,21 @@ public class GenericProcessServlet extends AbstractProcessServlet {
                     }
 
                     try {
-                        data = dataFactory.createReadableData(bytes, uploadConfig.getMaxUploadSize(), uploadConfig.getRepository());
+                        if (base64) {
+                            data = decodeBase64(new ByteArrayInputStream(bytes), factory, uploadConfig);
+                        } else {
+                            data = dataFactory.createReadableData(bytes, uploadConfig.getMaxUploadSize(), uploadConfig.getRepository());
+                        }
                     } catch (FileUploadBase.SizeLimitExceededException ex) {
                         LOG.error(HTTP_MAX_UPLOAD_SIZE + " exceeded: " + ex.getLocalizedMessage());
                         res.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
                             "Maximum content length is " + uploadConfig.getMaxUploadSize() + " bytes");
                         return;
                     } catch (FileUploadException ex) {
+                        if (base64 && isMalformedBase64(ex)) {
+                            sendBadRequest(res, "Incorrect base64 data");
+                            return;
+                        }
                         throw new ServletException("Upload failed", ex);
                     }
                 } else {
@@ -385,7 +411,15 @@ public class GenericProcessServlet extends AbstractProcessServlet {
                         LOG.debug("Request Content-type: " + req.getContentType());
                     }
 
-                    final BinaryFileUpload upload = new BinaryFileUpload(req.getInputStream(), req.getContentType(), factory);
+                    final InputStream in;
+                    try {
+                        in = ContentEncodingUtils.createDecodingStream(req.getInputStream(), contentEncoding, uploadConfig.getMaxDecompressionRatio());
+                    } catch (ZipException | EOFException ex) {
+                        sendBadRequest(res, "Malformed " + contentEncoding + " content");
+                        return;
+                    }
+
+                    final BinaryFileUpload upload = new BinaryFileUpload(in, req.getContentType(), factory);
                     upload.setSizeMax(uploadConfig.getMaxUploadSize());
                     
                     try {
@@ -396,6 +430,10 @@ public class GenericProcessServlet extends AbstractProcessServlet {
                             "Maximum content length is " + uploadConfig.getMaxUploadSize() + " bytes");
                         return;
                     } catch (FileUploadException ex) {
+                        if (encoded && isDecodingError(ex)) {
+                            sendBadRequest(res, "Malformed " + contentEncoding + " content");
+                            return;
+                        }
                         throw new ServletException("Upload failed", ex);
                     }
                 }
@@ -561,10 +599,7 @@ public class GenericProcessServlet extends AbstractProcessServlet {
 
                         res.setContentType(sigResponse.getContentType());
 
-                        //EE7:res.setContentLengthLong()
-                        res.addHeader("Content-Length", String.valueOf(readable.getLength()));
-
-                        IOUtils.copyLarge(readable.getAsInputStream(), res.getOutputStream());
+                        writeResponseData(req, res, context, sigResponse.getContentType(), readable);
                     } else if (response instanceof LegacyResponse) {
                         LegacyResponse legResponse = (LegacyResponse) response;
                         byte[] processedBytes = (byte[]) ((GenericSignResponse) legResponse.getLegacyResponse()).getProcessedData();
@@ -684,6 +719,105 @@ public class GenericProcessServlet extends AbstractProcessServlet {
         return fileName;
     }
 
+    /**
+     * Writes the response data, compressed if the worker is configured to
+     * compress responses of the content type and the client accepts it.
+     */
+    private static void writeResponseData(final HttpServletRequest req, final HttpServletResponse res, final RequestContext context,
+            final String contentType, final ReadableData readable) throws IOException {
+        final Object value = context.get(RequestContext.RESPONSE_COMPRESSION);
+        final ResponseCompressionConfig config = value instanceof ResponseCompressionConfig
+                ? (ResponseCompressionConfig) value : ResponseCompressionConfig.DEFAULT;
+
+        String encoding = null;
+        if (config.isEnabled() && config.isCompressible(contentType)) {
+            // Let caches know the response depends on the header
+            res.addHeader("Vary", ACCEPT_ENCODING);
+            if (readable.getLength() >= config.getThreshold()) {
+                encoding = ContentEncodingUtils.selectEncoding(req.getHeader(ACCEPT_ENCODING));
+            }
+        }
+
+        if (encoding == null) {
+            //EE7:res.setContentLengthLong()
+            res.addHeader("Content-Length", String.valueOf(readable.getLength()));
+
+            // Copied in chunks, without reading all of a file response into memory
+            DataTransferUtils.transfer(readable, res.getOutputStream());
+        } else {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Using response content encoding: " + encoding);
+            }
+            res.setHeader(CONTENT_ENCODING, encoding);
+
+            // The compressed length is not known in advance
+            try (OutputStream out = ContentEncodingUtils.createEncodingStream(res.getOutputStream(), encoding, config.getLevel())) {
+                DataTransferUtils.transfer(readable, out);
+            }
+        }
+    }
+
+    /**
+     * @return Context for parsing a multipart upload, decoding the request
+     * body if it has a content encoding
+     */
+    private static ServletRequestContext createUploadContext(final HttpServletRequest req, final String contentEncoding, final UploadConfig uploadConfig) {
+        if (!ContentEncodingUtils.isEncoded(contentEncoding)) {
+            return new ServletRequestContext(req);
+        }
+        return new ServletRequestContext(req) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return ContentEncodingUtils.createDecodingStream(req.getInputStream(), contentEncoding, uploadConfig.getMaxDecompressionRatio());
+            }
+
+            // The decoded length is not known so the size limit is checked while reading
+            @Override
+            public long contentLength() {
+                return -1;
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public int getContentLength() {
+                return -1;
+            }
+        };
+    }
+
+    /**
+     * @return True if the upload failed because the content could not be
+     * decoded
+     */
+    private static boolean isDecodingError(final Throwable ex) {
+        Throwable cause = ex;
+        while (cause != null) {
+            if (cause instanceof ZipException || cause instanceof EOFException) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Decodes base64 data into a new upload item. The decoded data is
+     * written to the file item as it is read so it is kept on disk instead of
+     * in memory when larger than the size threshold.
+     */
+    private CloseableReadableData decodeBase64(final InputStream in, final DiskFileItemFactory factory, final UploadConfig uploadConfig) throws FileUploadException {
+        final BinaryFileUpload upload = new BinaryFileUpload(new Base64DecodingInputStream(in), null, factory);
+        upload.setSizeMax(uploadConfig.getMaxUploadSize());
+        return dataFactory.createReadableData(upload.parseTheRequest(), uploadConfig.getRepository());
+    }
+
+    /**
+     * @return True if the upload failed because of malformed base64 data
+     */
+    private static boolean isMalformedBase64(final FileUploadException ex) {
+        return ex.getCause() instanceof Base64DecodingInputStream.MalformedBase64Exception;
+    }
+
     private static void sendBadRequest(HttpServletResponse res, String message)
             throws IOException {
         LOG.info("Bad request: " + message);